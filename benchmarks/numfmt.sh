@@ -0,0 +1,39 @@
+#!/usr/bin/env bash
+#
+# Measures the throughput of the 'numfmt'-style command line tool in the main jar,
+# and of GNU numfmt (if installed) on the same input, for reference.
+#
+# Usage:   benchmarks/numfmt.sh [size-in-MiB]     (default 2048)
+#
+set -euo pipefail
+
+SIZE_MIB="${1:-2048}"
+DIR="$(cd "$(dirname "$0")" && pwd)"
+JAR="$DIR/target/benchmarks.jar"
+INPUT="$DIR/target/numfmt-input.txt"
+
+if [[ ! -f "$JAR" ]]; then
+    echo "$JAR not found. Build with: mvn -f benchmarks/pom.xml package" >&2
+    exit 1
+fi
+
+if [[ ! -f "$INPUT" ]] || (( $(stat -c %s "$INPUT") < SIZE_MIB * 1024 * 1024 )); then
+    java -cp "$JAR" net.lbruun.datasize.benchmarks.NumFmtInputGenerator "$INPUT" "$SIZE_MIB"
+fi
+
+measure() {
+    local label="$1"; shift
+    local start end
+    start=$(date +%s%N)
+    "$@" < "$INPUT" > /dev/null
+    end=$(date +%s%N)
+    local ms=$(( (end - start) / 1000000 ))
+    echo "$label: ${ms} ms, $(( SIZE_MIB * 1000 / (ms > 0 ? ms : 1) )) MiB/s"
+}
+
+measure "datasize --to=iec" java -cp "$JAR" net.lbruun.datasize.cli.NumFmt --to=iec
+if command -v numfmt > /dev/null; then
+    measure "GNU numfmt --to=iec" numfmt --to=iec --invalid=ignore
+else
+    echo "(GNU numfmt not found)"
+fi
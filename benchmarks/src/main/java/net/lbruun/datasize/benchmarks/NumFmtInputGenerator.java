@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Writes a file which looks like the output of {@code find . -type f -printf '%s %p\n'}:
+ * a byte count followed by a path on each line. Input for {@code numfmt.sh}.
+ *
+ * <p>
+ * Usage: {@code NumFmtInputGenerator <file> <size-in-MiB>}
+ *
+ * <p>
+ * File sizes are log-uniformly distributed between 0 bytes and 1 TiB, so that all
+ * units get exercised. The output is deterministic for a given size.
+ */
+public final class NumFmtInputGenerator {
+
+    private static final String[] DIRS = {
+            "./src/main/java/net/lbruun/datasize/", "./target/classes/", "./node_modules/left-pad/",
+            "./var/log/", "./home/user/Videos/", "./data/inventory/2022/11/"
+    };
+
+    private NumFmtInputGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: NumFmtInputGenerator <file> <size-in-MiB>");
+            System.exit(1);
+        }
+        long target = Long.parseLong(args[1]) * 1024L * 1024L;
+        Random random = new Random(42);
+        byte[] line = new byte[256];
+        long written = 0;
+        long lines = 0;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(args[0])), 1 << 16)) {
+            while (written < target) {
+                long size = (long) Math.pow(2, random.nextDouble() * 40) - 1;
+                int pos = 0;
+                String s = Long.toString(size);
+                for (int i = 0; i < s.length(); i++) {
+                    line[pos++] = (byte) s.charAt(i);
+                }
+                line[pos++] = ' ';
+                String dir = DIRS[random.nextInt(DIRS.length)];
+                for (int i = 0; i < dir.length(); i++) {
+                    line[pos++] = (byte) dir.charAt(i);
+                }
+                for (int i = 0, n = 8 + random.nextInt(24); i < n; i++) {
+                    line[pos++] = (byte) ('a' + random.nextInt(26));
+                }
+                line[pos++] = '\n';
+                out.write(line, 0, pos);
+                written += pos;
+                lines++;
+            }
+        }
+        System.out.println("lines=" + lines + " bytes=" + written);
+    }
+}
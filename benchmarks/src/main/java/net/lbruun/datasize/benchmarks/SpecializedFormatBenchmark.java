@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.benchmarks;
+
+import net.lbruun.datasize.DataSize;
+import net.lbruun.datasize.DataSizeFormatter;
+import net.lbruun.datasize.DataSizeMethodHandles;
+import net.lbruun.datasize.DataSizeUnitDecimals;
+import net.lbruun.datasize.DataSizeUnitSuffixes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the generic {@link DataSize#asString(long, boolean, DataSizeUnitSuffixes, char, DataSizeUnitDecimals)}
+ * with a method handle from {@link DataSizeMethodHandles} specialized for the same configuration
+ * (binary, ISO-80000 suffixes, dot, default decimals), held in a {@code static final} field and,
+ * for comparison, in an instance field where the JIT cannot treat it as a constant.
+ *
+ * <p>
+ * The variants differ by some ten nanoseconds, about as much as one fork varies from the next, so
+ * results are averaged over several forks.
+ *
+ * <p>
+ * Run with: {@code java -jar benchmarks/target/benchmarks.jar SpecializedFormatBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(5)
+@State(Scope.Thread)
+public class SpecializedFormatBenchmark {
+
+    private static final int N = 1024;
+
+    private static final MethodHandle CONSTANT_HANDLE =
+            DataSizeMethodHandles.formatter(true, DataSizeUnitSuffixes.SUFFIXES_ISO80000, '.', DataSizeUnitDecimals.DEFAULT);
+
+    private MethodHandle instanceHandle;
+    private DataSizeFormatter formatter;
+    private long[] values;
+
+    @Setup
+    public void setup() {
+        instanceHandle = DataSizeMethodHandles.formatter(true, DataSizeUnitSuffixes.SUFFIXES_ISO80000, '.', DataSizeUnitDecimals.DEFAULT);
+        formatter = DataSizeFormatter.builder()
+                .withBinary(true)
+                .withSuffixes(DataSizeUnitSuffixes.SUFFIXES_ISO80000)
+                .withDecimalSeparator('.')
+                .build();
+        Random random = new Random(42);
+        values = new long[N];
+        for (int i = 0; i < N; i++) {
+            // Spread over all units, log-uniform
+            values[i] = random.nextLong() >>> (1 + random.nextInt(63));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void generic(Blackhole bh) {
+        for (int i = 0; i < N; i++) {
+            bh.consume(DataSize.asString(values[i], true, DataSizeUnitSuffixes.SUFFIXES_ISO80000, '.', DataSizeUnitDecimals.DEFAULT));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void formatter(Blackhole bh) {
+        for (int i = 0; i < N; i++) {
+            bh.consume(formatter.format(values[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void specializedConstant(Blackhole bh) throws Throwable {
+        for (int i = 0; i < N; i++) {
+            bh.consume((String) CONSTANT_HANDLE.invokeExact(values[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void specializedNonConstant(Blackhole bh) throws Throwable {
+        for (int i = 0; i < N; i++) {
+            bh.consume((String) instanceHandle.invokeExact(values[i]));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.benchmarks;
+
+import net.lbruun.datasize.DataSize;
+import net.lbruun.datasize.DataSizeFormatter;
+import net.lbruun.datasize.DataSizeUnitSuffixes;
+
+/**
+ * Measures time-to-first-format in a fresh process. Intended to be launched
+ * once per measurement, either on the JVM or as a native image, see {@code startup.sh}.
+ *
+ * <p>
+ * Must not touch any of the library's classes before the first measurement, otherwise
+ * the class initialization cost would go unnoticed.
+ *
+ * <p>
+ * Output is one {@code key=value} pair per line, all times in microseconds:
+ * <ul>
+ *     <li>{@code first_format_us}: the first call to {@code DataSize.asStringBinary()}.
+ *          Includes loading and initializing the library's core classes.</li>
+ *     <li>{@code first_locale_format_us}: the first formatting which needs the default
+ *          locale's decimal separator. Includes loading of {@code java.text} locale data.</li>
+ *     <li>{@code second_format_us}: a subsequent call, for reference.</li>
+ *     <li>{@code launch_to_first_format_us}: only if the launch time (epoch nanos,
+ *          for example from {@code date +%s%N}) is passed as first argument. Measured
+ *          with millisecond resolution.</li>
+ * </ul>
+ */
+public final class StartupProbe {
+
+    private StartupProbe() {
+    }
+
+    public static void main(String[] args) {
+        long t0 = System.nanoTime();
+        String first = DataSize.asStringBinary(2_000_000L);
+        long t1 = System.nanoTime();
+        long wallClockAtFirstFormat = System.currentTimeMillis();
+        String localized = DataSizeFormatter.builder()
+                .withSuffixes(DataSizeUnitSuffixes.SUFFIXES_ISO80000)
+                .build()
+                .format(2_000_000L);
+        long t2 = System.nanoTime();
+        String second = DataSize.asStringDecimal(3_000_000L);
+        long t3 = System.nanoTime();
+
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("first_format_us=").append((t1 - t0) / 1000).append('\n');
+        sb.append("first_locale_format_us=").append((t2 - t1) / 1000).append('\n');
+        sb.append("second_format_us=").append((t3 - t2) / 1000).append('\n');
+        if (args.length > 0) {
+            long launchMillis = Long.parseLong(args[0]) / 1_000_000L;
+            sb.append("launch_to_first_format_us=").append((wallClockAtFirstFormat - launchMillis) * 1000).append('\n');
+        }
+        // Print the results so that the work cannot be optimized away
+        sb.append("output=").append(first).append(" | ").append(localized).append(" | ").append(second).append('\n');
+        System.out.print(sb);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.benchmarks;
+
+import net.lbruun.datasize.DataSizeFormatter;
+import net.lbruun.datasize.DataSizeTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link DataSizeFormatter} with a {@link DataSizeTemplate} giving the same layout
+ * ({@code "{value}{suffix}"}) and one with a custom layout ({@code "[{value} {unit}/s]"}),
+ * as {@code String} and into a {@code byte[]}.
+ *
+ * <p>
+ * Run with: {@code java -jar benchmarks/target/benchmarks.jar TemplateBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TemplateBenchmark {
+
+    private static final int N = 1024;
+
+    private DataSizeFormatter formatter;
+    private DataSizeTemplate preset;
+    private DataSizeTemplate custom;
+    private long[] values;
+    private byte[] buffer;
+
+    @Setup
+    public void setup() {
+        formatter = DataSizeFormatter.builder().withDecimalSeparator('.').build();
+        preset = DataSizeTemplate.compile("{value}{suffix}", formatter);
+        custom = DataSizeTemplate.compile("[{value} {unit}/s]", formatter);
+        Random random = new Random(42);
+        values = new long[N];
+        for (int i = 0; i < N; i++) {
+            // Spread over all units, log-uniform
+            values[i] = random.nextLong() >>> (1 + random.nextInt(63));
+        }
+        buffer = new byte[Math.max(formatter.getMaxFormattedLength(), custom.getMaxFormattedLength())];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void formatter(Blackhole bh) {
+        for (int i = 0; i < N; i++) {
+            bh.consume(formatter.format(values[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void presetTemplate(Blackhole bh) {
+        for (int i = 0; i < N; i++) {
+            bh.consume(preset.format(values[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void customTemplate(Blackhole bh) {
+        for (int i = 0; i < N; i++) {
+            bh.consume(custom.format(values[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void formatterBytes(Blackhole bh) {
+        for (int i = 0; i < N; i++) {
+            bh.consume(formatter.formatTo(values[i], buffer, 0));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void customTemplateBytes(Blackhole bh) {
+        for (int i = 0; i < N; i++) {
+            bh.consume(custom.formatTo(values[i], buffer, 0));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.benchmarks;
+
+import net.lbruun.datasize.DataSizeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link DataSizeUnit#toBytes(long, boolean)} with the hand-written alternatives
+ * it is meant to replace: a plain multiply (which silently overflows) and a multiply
+ * with overflow check via {@link Math#multiplyExact(long, long)}.
+ *
+ * <p>
+ * Run with: {@code java -jar benchmarks/target/benchmarks.jar UnitConversionBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UnitConversionBenchmark {
+
+    private static final int N = 1024;
+
+    @Param({"true", "false"})
+    public boolean useBinary;
+
+    private long[] amounts;
+    private DataSizeUnit[] units;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        amounts = new long[N];
+        units = new DataSizeUnit[N];
+        DataSizeUnit[] all = DataSizeUnit.values();
+        for (int i = 0; i < N; i++) {
+            // Mostly realistic amounts, with an occasional overflow
+            amounts[i] = (i % 64 == 0) ? (Long.MAX_VALUE >> 4) : random.nextInt(1 << 20);
+            units[i] = all[random.nextInt(all.length)];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public long toBytes() {
+        long sum = 0;
+        for (int i = 0; i < N; i++) {
+            sum += units[i].toBytes(amounts[i], useBinary);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public long naiveMultiply() {
+        long sum = 0;
+        for (int i = 0; i < N; i++) {
+            DataSizeUnit unit = units[i];
+            sum += amounts[i] * ((useBinary) ? unit.getBinarySize() : unit.getDecimalSize());
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public long naiveMultiplyExact() {
+        long sum = 0;
+        for (int i = 0; i < N; i++) {
+            DataSizeUnit unit = units[i];
+            long size = (useBinary) ? unit.getBinarySize() : unit.getDecimalSize();
+            try {
+                sum += Math.multiplyExact(amounts[i], size);
+            } catch (ArithmeticException ex) {
+                sum += Long.MAX_VALUE;
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public long naiveDivideCheck() {
+        long sum = 0;
+        for (int i = 0; i < N; i++) {
+            DataSizeUnit unit = units[i];
+            long size = (useBinary) ? unit.getBinarySize() : unit.getDecimalSize();
+            long amount = amounts[i];
+            sum += (amount > Long.MAX_VALUE / size) ? Long.MAX_VALUE : amount * size;
+        }
+        return sum;
+    }
+}
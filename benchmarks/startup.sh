@@ -0,0 +1,39 @@
+#!/usr/bin/env bash
+#
+# Measures time-to-first-format in fresh processes, on the JVM and (if built
+# with -Pnative) as a GraalVM native image.
+#
+# Usage:   benchmarks/startup.sh [runs]
+#
+set -euo pipefail
+
+RUNS="${1:-10}"
+DIR="$(cd "$(dirname "$0")" && pwd)"
+JAR="$DIR/target/benchmarks.jar"
+NATIVE="$DIR/target/datasize-startup"
+PROBE="net.lbruun.datasize.benchmarks.StartupProbe"
+
+run() {
+    local label="$1"; shift
+    echo "== $label =="
+    for ((i = 1; i <= RUNS; i++)); do
+        local start end
+        start=$(date +%s%N)
+        "$@" "$start" | grep -v '^output=' | tr '\n' ' '
+        end=$(date +%s%N)
+        echo "process_wall_us=$(( (end - start) / 1000 ))"
+    done
+}
+
+if [[ ! -f "$JAR" ]]; then
+    echo "$JAR not found. Build with: mvn -f benchmarks/pom.xml package" >&2
+    exit 1
+fi
+
+run "JVM" java -Xshare:auto -XX:TieredStopAtLevel=1 -cp "$JAR" "$PROBE"
+
+if [[ -x "$NATIVE" ]]; then
+    run "Native image" "$NATIVE"
+else
+    echo "(native image not found, build with: mvn -f benchmarks/pom.xml package -Pnative)"
+fi
@@ -16,7 +16,6 @@
 
 package net.lbruun.datasize;
 
-import java.text.DecimalFormatSymbols;
 import java.util.Objects;
 
 /**
@@ -40,8 +39,7 @@ public class DataSize implements Comparable<DataSize> {
     protected static final long TERABYTE_BIN = 1024 * GIGABYTE_BIN;
     protected static final long PETABYTE_BIN = 1024 * TERABYTE_BIN;
     protected static final long EXABYTE_BIN = 1024 * PETABYTE_BIN;
-    private static final char DEFAULT_DEC_SEPARATOR = DecimalFormatSymbols.getInstance().getDecimalSeparator();
-    private static final long[] POWERS_OF_TEN = {
+    static final long[] POWERS_OF_TEN = {
             0L,
             10L,
             100L,
@@ -95,6 +93,19 @@ public class DataSize implements Comparable<DataSize> {
         this(value, useBinary, suffixes, '\0', null);
     }
 
+    /**
+     * Creates a wrapper for a pre-rendered data size value. Pre-rendering trades memory for speed.
+     *
+     * @param value     input value
+     * @param formatter formatter used to pre-render the value
+     * @see DataSizeFormatter#format(long)
+     */
+    public DataSize(final long value,
+                    final DataSizeFormatter formatter) {
+        this.value = value;
+        this.valueStr = formatter.format(value);
+    }
+
     /**
      * Formats a byte size value into a human-readable string.
      *
@@ -144,7 +155,7 @@ public class DataSize implements Comparable<DataSize> {
                 getMinorForExabyte(remainder, useBinary);
 
         StringBuilder sb = new StringBuilder(8);
-        sb.append(major).append((decimalSeparator == '\0') ? DEFAULT_DEC_SEPARATOR : decimalSeparator);
+        sb.append(major).append((decimalSeparator == '\0') ? DecimalSeparators.forDefaultLocale() : decimalSeparator);
         for (int z = 0; z < (noOfDecimals - noOfDigits(minor)); z++) {
             sb.append('0');
         }
@@ -200,7 +211,7 @@ public class DataSize implements Comparable<DataSize> {
      * @return no of digits in {@code value}
      * @throws IllegalArgumentException if the {@code value} has more than 12 digits.
      */
-    private static int noOfDigits(long value) {
+    static int noOfDigits(long value) {
         long x = (value < 0) ? (value * -1) : value;
         if (x < 1_000_000L) { // 6 or less
             if (x < 1_000L) { // 3 or less
@@ -251,29 +262,33 @@ public class DataSize implements Comparable<DataSize> {
      * this big, because the multiply would cause overflow. Instead, the method below is used. The downside is that it
      * will only return a value between 0 and 9, hence the consequence is that exabyte values cannot be represented with
      * more than one decimal.
+     *
+     * <p>
+     * The thresholds are the exact values ceil(k * 2<sup>60</sup> / 10) and k * 10<sup>17</sup>, so the result is
+     * the same as truncating {@code remainder * 10 / EXABYTE}.
      */
-    private static long getMinorForExabyte(long remainder, boolean useBinary) {
+    static long getMinorForExabyte(long remainder, boolean useBinary) {
         if (remainder == 0) {
             return 0;
         }
         if (useBinary) {
-            if (remainder < 114841790497947648L) {         // 102 pebibytes
+            if (remainder < 115292150460684698L) {          // 102.4 pebibytes
                 return 0;
-            } else if (remainder < 230809480902737920L) {  // 205 pebibytes
+            } else if (remainder < 230584300921369396L) {   // 204.8 pebibytes
                 return 1;
-            } else if (remainder < 345651271400685568L) {  // 307 pebibytes
+            } else if (remainder < 345876451382054093L) {   // 307.2 pebibytes
                 return 2;
-            } else if (remainder < 461618961805475840L) {  // 410 pebibytes
+            } else if (remainder < 461168601842738791L) {   // 409.6 pebibytes
                 return 3;
-            } else if (remainder < 576460752303423488L) {  // 512 pebibytes
+            } else if (remainder < 576460752303423488L) {   // 512 pebibytes
                 return 4;
-            } else if (remainder < 691302542801371136L) {  // 614 pebibytes
+            } else if (remainder < 691752902764108186L) {   // 614.4 pebibytes
                 return 5;
-            } else if (remainder < 807270233206161408L) {  // 717 pebibytes
+            } else if (remainder < 807045053224792884L) {   // 716.8 pebibytes
                 return 6;
-            } else if (remainder < 922112023704109056L) {  // 819 pebibytes
+            } else if (remainder < 922337203685477581L) {   // 819.2 pebibytes
                 return 7;
-            } else if (remainder < 1038079714108899328L) { // 922 pebibytes
+            } else if (remainder < 1037629354146162279L) {  // 921.6 pebibytes
                 return 8;
             } else {
                 return 9;
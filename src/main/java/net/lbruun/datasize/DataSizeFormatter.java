@@ -0,0 +1,1176 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize;
+
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Pre-compiled, immutable and thread-safe formatter for data size values.
+ *
+ * <p>
+ * A formatter captures the same settings as the parameters of
+ * {@link DataSize#asString(long, boolean, DataSizeUnitSuffixes, char, DataSizeUnitDecimals) DataSize.asString()}, but
+ * resolves them once, up front, rather than on every call. This includes the decimal separator, which may be derived
+ * from a {@link Locale}. Use the {@link #builder() builder} to create an instance or use one of the
+ * {@link #binary(Locale) binary(Locale)} or {@link #decimal(Locale) decimal(Locale)} methods to obtain a shared
+ * instance for a locale.
+ *
+ * <p>
+ * Example:
+ * <pre>{@code
+ *   DataSizeFormatter formatter = DataSizeFormatter.binary(request.getLocale());
+ *   formatter.format(2_000_000L);   // produces "1.9 MiB" or "1,9 MiB" depending on locale
+ * }</pre>
+ *
+ * <p>
+ * <b>Unit selection:</b>
+ * By default, the unit is selected automatically according to the magnitude of the value, as
+ * with {@code DataSize.asString()}. For columnar output it is often desirable that all values use the
+ * same unit, for example always MiB. This is achieved with {@link Builder#withFixedUnit(DataSizeUnit) fixed unit}
+ * mode, in which case no unit search takes place at all. Alternatively, the automatic selection may be
+ * clamped to a {@link Builder#withUnitRange(DataSizeUnit, DataSizeUnit) range of units}, for example never
+ * below KiB. In both cases the major part (the part before the decimal separator) may have more digits
+ * than usual, for example {@code "20480.0 MiB"}.
+ *
+ * <p>
+ * <b>Bits mode:</b>
+ * In {@link Builder#withBits(boolean) bits mode} the input value is still a number of bytes, but the output
+ * is the corresponding number of bits, for example {@code "16 Mbit"} for 2,000,000 bytes. This is intended
+ * for network telemetry where byte counters (or bytes per second) must be presented as bits
+ * (or bits per second, using for example {@link DataSizeUnitSuffixes#SUFFIXES_BITRATE_SI bitrate suffixes}).
+ * The multiplication by 8 is never carried out on the input value, so there is no risk of
+ * overflow, even for {@code Long.MAX_VALUE}. The same integer-only, truncating calculation is
+ * used as for bytes.
+ *
+ * <p>
+ * <b>Signed values:</b>
+ * By default negative values are rejected, as with {@code DataSize.asString()}. For growth and diff reports
+ * a {@link Builder#withSignPolicy(SignPolicy) sign policy} can be set which allows negative values and
+ * optionally marks positive values with a plus sign, for example {@code "+1.25 GiB"} and {@code "-300 KiB"}.
+ * The full range of {@code long}, including {@code Long.MIN_VALUE}, is supported.
+ *
+ * <p>
+ * <b>Dynamic decimals and rounding:</b>
+ * Instead of a fixed number of decimals per unit, the number of decimals can be chosen from the magnitude
+ * of the value, either as a number of {@link Builder#withSignificantDigits(int) significant digits}
+ * ({@code ls -h} style: {@code "9.8M"}, {@code "98M"}) or as whatever fits in a
+ * {@link Builder#withMaxWidth(int) max width} ({@code top} style). This is done in a single pass. By default
+ * the decimals are truncated, but {@link Builder#withRounding(RoundingMode) rounding} can be enabled.
+ *
+ * @see DataSize#asString(long, boolean, DataSizeUnitSuffixes, char, DataSizeUnitDecimals)
+ */
+public final class DataSizeFormatter {
+
+    private static final int EXA_INDEX = DataSizeUnit.EXA.ordinal();
+    static final String MIN_VALUE_MAGNITUDE = "9223372036854775808";
+
+    // Max number of decimals per unit when decimals are chosen dynamically. Same limits
+    // as for DataSizeUnitDecimals, which guarantee that the calculations cannot overflow.
+    private static final int[] MAX_DECIMALS = {0, 6, 6, 6, 6, 3, 1};
+
+    private static final int ROUND_DOWN = 0;
+    private static final int ROUND_HALF_UP = 1;
+    private static final int ROUND_UP = 2;
+
+    private final boolean useBinary;
+    private final boolean bits;
+    private final SignPolicy signPolicy;
+    private final DataSizeUnitSuffixes suffixes;
+    private final DataSizeUnitDecimals decimals;
+    private final char decimalSeparator;
+    private final int minUnit;
+    private final int maxUnit;
+    private final int significantDigits;  // 0 if not used
+    private final int maxWidth;           // 0 if not used
+    private final boolean pad;
+    private final int rounding;
+
+    // Per-unit lookup tables, indexed by DataSizeUnit ordinal
+    private final long[] dividers;
+    private final String[] suffixesArr;
+    private final int[] decimalsArr;
+    private final byte[][] suffixesUtf8;
+    private final byte[] decimalSeparatorUtf8;
+    private final int maxFormattedLength;
+
+    private DataSizeFormatter(Builder builder, DataSizeUnitSuffixes suffixes, char decimalSeparator) {
+        this.useBinary = builder.useBinary;
+        this.bits = builder.bits;
+        this.signPolicy = builder.signPolicy;
+        this.suffixes = suffixes;
+        this.decimals = builder.decimals;
+        this.decimalSeparator = decimalSeparator;
+        this.minUnit = builder.minUnit.ordinal();
+        this.maxUnit = builder.maxUnit.ordinal();
+        this.significantDigits = builder.significantDigits;
+        this.maxWidth = builder.maxWidth;
+        this.pad = builder.pad && builder.maxWidth > 0;
+        this.rounding = (builder.rounding == RoundingMode.HALF_UP) ? ROUND_HALF_UP :
+                ((builder.rounding == RoundingMode.UP) ? ROUND_UP : ROUND_DOWN);
+        DataSizeUnit[] units = DataSizeUnit.values();
+        this.dividers = new long[units.length];
+        for (int i = 0; i < units.length; i++) {
+            dividers[i] = (useBinary) ? units[i].getBinarySize() : units[i].getDecimalSize();
+        }
+        if (bits) {
+            // X bits = X/8 bytes. All unit sizes above BYTE are divisible by 8, so this is exact.
+            // The BYTE unit (a single bit) is handled separately.
+            for (int i = 1; i < units.length; i++) {
+                dividers[i] = dividers[i] >> 3;
+            }
+        }
+        this.suffixesArr = suffixes.getSuffixesArray().clone();
+        this.decimalsArr = decimals.getDecimalsArray().clone();
+        this.suffixesUtf8 = new byte[suffixesArr.length][];
+        int maxSuffixLength = 0;
+        for (int i = 0; i < suffixesArr.length; i++) {
+            suffixesUtf8[i] = suffixesArr[i].getBytes(StandardCharsets.UTF_8);
+            maxSuffixLength = Math.max(maxSuffixLength, suffixesUtf8[i].length);
+        }
+        this.decimalSeparatorUtf8 = String.valueOf(decimalSeparator).getBytes(StandardCharsets.UTF_8);
+        int maxDecimals = 0;
+        for (int d : (significantDigits > 0 || maxWidth > 0) ? MAX_DECIMALS : decimalsArr) {
+            maxDecimals = Math.max(maxDecimals, d);
+        }
+        // 19 digits is the longest possible major part (Long.MAX_VALUE in bytes), 20 digits in bits mode
+        int maxLength = ((signPolicy != SignPolicy.REJECT_NEGATIVE) ? 1 : 0)
+                + ((bits) ? 20 : 19) + decimalSeparatorUtf8.length + maxDecimals + maxSuffixLength;
+        // Padding only takes place when the result is shorter than max width
+        this.maxFormattedLength = Math.max(maxLength, (pad) ? maxWidth : 0);
+    }
+
+    /**
+     * Builder for {@code DataSizeFormatter}.
+     */
+    public static DataSizeFormatter.Builder builder() {
+        return new DataSizeFormatter.Builder();
+    }
+
+    /**
+     * Gets a shared formatter for a locale which uses binary calculation (1 kibibyte = 1024), with
+     * {@link DataSizeUnitSuffixes#SUFFIXES_ISO80000 ISO-80000 unit suffixes}, with
+     * {@link DataSizeUnitDecimals#DEFAULT default number of decimals} and with the locale's decimal separator.
+     *
+     * <p>
+     * Formatters are created on first request for a locale and are cached thereafter. Lookup of an already
+     * cached formatter is lock-free.
+     *
+     * @param locale locale from which to derive the decimal separator
+     * @return formatter, never {@code null}
+     */
+    public static DataSizeFormatter binary(Locale locale) {
+        return Registry.lookup(Registry.BINARY, locale, true);
+    }
+
+    /**
+     * Gets a shared formatter for a locale which uses decimal calculation (1 kilobyte = 1000), with
+     * {@link DataSizeUnitSuffixes#SUFFIXES_SI SI unit suffixes}, with
+     * {@link DataSizeUnitDecimals#DEFAULT default number of decimals} and with the locale's decimal separator.
+     *
+     * <p>
+     * Formatters are created on first request for a locale and are cached thereafter. Lookup of an already
+     * cached formatter is lock-free.
+     *
+     * @param locale locale from which to derive the decimal separator
+     * @return formatter, never {@code null}
+     */
+    public static DataSizeFormatter decimal(Locale locale) {
+        return Registry.lookup(Registry.DECIMAL, locale, false);
+    }
+
+    /**
+     * Formats a byte size value into a human-readable string.
+     *
+     * @param value input value. Must be positive or zero, unless a {@link SignPolicy sign policy}
+     *              which allows negative values is in effect.
+     * @return human-readable string, never {@code null}.
+     * @throws IllegalArgumentException if {@code value} is less than zero and the sign policy
+     *              is {@link SignPolicy#REJECT_NEGATIVE}.
+     * @see DataSize#asString(long, boolean, DataSizeUnitSuffixes, char, DataSizeUnitDecimals)
+     */
+    public String format(long value) {
+        return appendTo(new StringBuilder(16), value).toString();
+    }
+
+    /**
+     * Formats a byte size value into a human-readable string and appends it
+     * to a {@code StringBuilder}.
+     *
+     * @param sb    where to append the result
+     * @param value input value. Must be positive or zero, unless a {@link SignPolicy sign policy}
+     *              which allows negative values is in effect.
+     * @return {@code sb}
+     * @throws IllegalArgumentException if {@code value} is less than zero and the sign policy
+     *              is {@link SignPolicy#REJECT_NEGATIVE}.
+     */
+    public StringBuilder appendTo(StringBuilder sb, long value) {
+        if (value < 0) {
+            if (signPolicy == SignPolicy.REJECT_NEGATIVE) {
+                throw new IllegalArgumentException("value must be >= 0");
+            }
+            // The magnitude of Long.MIN_VALUE does not fit in a long, so the
+            // magnitude minus one is passed on instead.
+            return appendMagnitude(sb, '-', -(value + 1), true, -1);
+        }
+        return appendMagnitude(sb, signFor(value), value, false, -1);
+    }
+
+    /**
+     * Formats a byte size value into a human-readable string, encoded as UTF-8, and writes it into a
+     * byte array. This is intended for bulk output and byte-level I/O where the creation of a
+     * {@code String} per value is unwanted.
+     *
+     * @param value  input value. Must be positive or zero, unless a {@link SignPolicy sign policy}
+     *               which allows negative values is in effect.
+     * @param dst    destination
+     * @param offset where in {@code dst} to start writing. There must be room for at least
+     *               {@link #getMaxFormattedLength()} bytes.
+     * @return the offset in {@code dst} immediately after the last byte written
+     * @throws IllegalArgumentException if {@code value} is less than zero and the sign policy
+     *              is {@link SignPolicy#REJECT_NEGATIVE}.
+     * @throws IndexOutOfBoundsException if there is not room enough in {@code dst}
+     */
+    public int formatTo(long value, byte[] dst, int offset) {
+        if (value < 0) {
+            if (signPolicy == SignPolicy.REJECT_NEGATIVE) {
+                throw new IllegalArgumentException("value must be >= 0");
+            }
+            return putMagnitude(dst, offset, '-', -(value + 1), true);
+        }
+        return putMagnitude(dst, offset, signFor(value), value, false);
+    }
+
+    /**
+     * Formats a part of a total, with the percentage, for example {@code "1.20 GiB of 10.00 GiB (12%)"}.
+     *
+     * @see #appendPercentage(StringBuilder, long, long, int)
+     */
+    public String formatPercentage(long part, long total) {
+        return appendPercentage(new StringBuilder(32), part, total, 0).toString();
+    }
+
+    /**
+     * Appends a part of a total, with the percentage, for example {@code "1.20 GiB of 10.00 GiB (12%)"}
+     * or, with one decimal, {@code "1.20 GiB of 10.00 GiB (12.0%)"}. If {@code total} is zero the
+     * percentage is {@code "-"}. A part greater than the total gives a percentage above 100.
+     *
+     * <p>
+     * The percentage is calculated with integer arithmetic only, exactly, for any values, and is
+     * rounded according to the {@link Builder#withRounding(RoundingMode) rounding mode}. If both sizes are
+     * in the same unit, the unit is only searched for once.
+     *
+     * @param sb          where to append the result
+     * @param part        part, 0 or more
+     * @param total       total, 0 or more
+     * @param noOfDecimals number of decimals of the percentage, 0 to 6
+     * @return {@code sb}
+     * @throws IllegalArgumentException if {@code part} or {@code total} is negative
+     */
+    public StringBuilder appendPercentage(StringBuilder sb, long part, long total, int noOfDecimals) {
+        checkProportion(part, total, noOfDecimals);
+        appendPair(sb, part, " of ", total);
+        sb.append(" (");
+        if (total == 0) {
+            return sb.append("-)");
+        }
+        return appendScaledQuotient(sb, part, total, 2, noOfDecimals).append("%)");
+    }
+
+    /**
+     * Appends two sizes with their ratio, for example a compression ratio: {@code "10.00 GiB -> 1.20 GiB (8.33x)"}
+     * for {@code appendRatio(sb, original, compressed, 2)}. If {@code to} is zero the ratio is {@code "-"}.
+     *
+     * <p>
+     * The ratio is calculated with integer arithmetic only, exactly, for any values, and is rounded
+     * according to the {@link Builder#withRounding(RoundingMode) rounding mode}. If both sizes are in the
+     * same unit, the unit is only searched for once.
+     *
+     * @param sb           where to append the result
+     * @param from         size before, 0 or more
+     * @param to           size after, 0 or more
+     * @param noOfDecimals number of decimals of the ratio, 0 to 6
+     * @return {@code sb}
+     * @throws IllegalArgumentException if {@code from} or {@code to} is negative
+     */
+    public StringBuilder appendRatio(StringBuilder sb, long from, long to, int noOfDecimals) {
+        checkProportion(from, to, noOfDecimals);
+        appendPair(sb, from, " -> ", to);
+        sb.append(" (");
+        if (to == 0) {
+            return sb.append("-)");
+        }
+        return appendScaledQuotient(sb, from, to, 0, noOfDecimals).append("x)");
+    }
+
+    private static void checkProportion(long a, long b, int noOfDecimals) {
+        if (a < 0 || b < 0) {
+            throw new IllegalArgumentException("sizes must be >= 0");
+        }
+        if (noOfDecimals < 0 || noOfDecimals > 6) {
+            throw new IllegalArgumentException("noOfDecimals must be >= 0 and <= 6");
+        }
+    }
+
+    /**
+     * Appends {@code first + separator + second}. The unit found for {@code second} is reused
+     * for {@code first} if it is the unit automatic selection would find for {@code first} too.
+     */
+    private void appendPair(StringBuilder sb, long first, String separator, long second) {
+        int unit = -1;
+        if (minUnit != maxUnit && second > 0) {
+            unit = unitIndexFor(second);
+            boolean sameUnit = (first >= dividers[unit] || unit == minUnit)
+                    && (unit == maxUnit || first < dividers[unit + 1]);
+            appendMagnitude(sb, signFor(first), first, false, (sameUnit) ? unit : -1);
+        } else {
+            appendTo(sb, first);
+        }
+        sb.append(separator);
+        appendMagnitude(sb, signFor(second), second, false, unit);
+    }
+
+    /**
+     * Appends {@code a * 10^exponent / b} with the given number of decimals, rounded according to
+     * the rounding mode.
+     */
+    private StringBuilder appendScaledQuotient(StringBuilder sb, long a, long b, int exponent, int noOfDecimals) {
+        long scale = pow10(exponent + noOfDecimals);
+        // a / b = whole + remainder / b. Only the remainder is scaled, which cannot overflow,
+        // and the whole part is prepended as digits.
+        long whole = a / b;
+        long remainder = a - (whole * b);
+        long q = mulDiv(remainder, scale, b);
+        long r = remainder * scale - q * b;   // exact: wraps around, but the true value is in [0, b)
+        if ((rounding == ROUND_UP && r != 0) || (rounding == ROUND_HALF_UP && r >= b - r)) {
+            q++;
+        }
+        long pow = pow10(noOfDecimals);
+        long integerPart = q / pow;
+        long fraction = q - (integerPart * pow);
+        long wholeScale = pow10(exponent);
+        whole += integerPart / wholeScale;    // rounded up to the next whole, as in 99.996% -> 100%
+        long low = integerPart % wholeScale;
+        if (whole == 0) {
+            sb.append(low);
+        } else {
+            sb.append(whole);
+            for (int z = DataSize.noOfDigits(low); z < exponent; z++) {
+                sb.append('0');
+            }
+            if (exponent > 0) {
+                sb.append(low);
+            }
+        }
+        if (noOfDecimals > 0) {
+            sb.append(decimalSeparator);
+            for (int z = DataSize.noOfDigits(fraction); z < noOfDecimals; z++) {
+                sb.append('0');
+            }
+            sb.append(fraction);
+        }
+        return sb;
+    }
+
+    /**
+     * Calculates {@code a * b / c}, truncated, for {@code 0 <= a < c} and {@code 0 <= b < 2^32}. The
+     * product is calculated in 128 bits, so it cannot overflow, and the result is less than {@code b}.
+     */
+    static long mulDiv(long a, long b, long c) {
+        if (a <= Long.MAX_VALUE / b) {
+            return (a * b) / c;
+        }
+        long lowProduct = (a & 0xFFFFFFFFL) * b;
+        long highProduct = (a >>> 32) * b;
+        long lo = lowProduct + (highProduct << 32);
+        long hi = (highProduct >>> 32) + ((Long.compareUnsigned(lo, lowProduct) < 0) ? 1 : 0);
+        // Shift-subtract division of hi:lo by c. hi < c, so the quotient fits in 64 bits.
+        long q = 0;
+        for (int i = 0; i < 64; i++) {
+            boolean overflow = hi < 0;
+            hi = (hi << 1) | (lo >>> 63);
+            lo <<= 1;
+            q <<= 1;
+            if (overflow || Long.compareUnsigned(hi, c) >= 0) {
+                hi -= c;
+                q |= 1;
+            }
+        }
+        return q;
+    }
+
+    char signFor(long nonNegativeValue) {
+        if (signPolicy == SignPolicy.ALWAYS || (nonNegativeValue != 0 && signPolicy == SignPolicy.ALWAYS_EXCEPT_ZERO)) {
+            return '+';
+        }
+        return '\0';
+    }
+
+    /**
+     * Appends the magnitude {@code m}, or {@code m + 1} if {@code plusOne} is true, preceded by
+     * {@code sign} unless it is {@code '\0'}. If {@code unitHint} is not -1, it is the unit which
+     * automatic unit selection would find, already known by the caller.
+     */
+    private StringBuilder appendMagnitude(StringBuilder sb, char sign, long m, boolean plusOne, int unitHint) {
+        if (m == 0 && !plusOne && minUnit == 0 && maxWidth == 0) {
+            if (sign != '\0') {
+                sb.append(sign);
+            }
+            return sb.append('0').append(suffixesArr[0]);
+        }
+        int signLength = (sign != '\0') ? 1 : 0;
+        long plan = plan(m, plusOne, signLength, unitHint);
+        int unit = planUnit(plan);
+        int noOfDecimals = planDecimals(plan);
+        long major = (m / dividers[unit]) + planCarry(plan);
+        if (pad) {
+            for (int i = maxWidth - widthOf(unit, m, plusOne, major, noOfDecimals, signLength); i > 0; i--) {
+                sb.append(' ');
+            }
+        }
+        if (sign != '\0') {
+            sb.append(sign);
+        }
+        if (bits && unit == 0) {
+            return appendBitCount(sb, m, plusOne).append(suffixesArr[0]);
+        }
+        if (major < 0) {
+            // Overflow from the plus one: the magnitude of Long.MIN_VALUE in bytes
+            sb.append(MIN_VALUE_MAGNITUDE);
+        } else {
+            sb.append(major);
+        }
+        if (noOfDecimals == 0) {
+            return sb.append(suffixesArr[unit]);
+        }
+        sb.append(decimalSeparator);
+        return appendDigits(sb, planMinor(plan), noOfDecimals).append(suffixesArr[unit]);
+    }
+
+    /**
+     * Writes the magnitude {@code m}, or {@code m + 1} if {@code plusOne} is true, preceded by
+     * {@code sign} unless it is {@code '\0'}.
+     */
+    private int putMagnitude(byte[] dst, int offset, char sign, long m, boolean plusOne) {
+        if (m == 0 && !plusOne && minUnit == 0 && maxWidth == 0) {
+            if (sign != '\0') {
+                dst[offset++] = (byte) sign;
+            }
+            dst[offset++] = '0';
+            return putBytes(dst, offset, suffixesUtf8[0]);
+        }
+        int signLength = (sign != '\0') ? 1 : 0;
+        long plan = plan(m, plusOne, signLength, -1);
+        int unit = planUnit(plan);
+        int noOfDecimals = planDecimals(plan);
+        long major = (m / dividers[unit]) + planCarry(plan);
+        if (pad) {
+            for (int i = maxWidth - widthOf(unit, m, plusOne, major, noOfDecimals, signLength); i > 0; i--) {
+                dst[offset++] = ' ';
+            }
+        }
+        if (sign != '\0') {
+            dst[offset++] = (byte) sign;
+        }
+        if (bits && unit == 0) {
+            return putBytes(dst, putBitCount(dst, offset, m, plusOne), suffixesUtf8[0]);
+        }
+        if (major < 0) {
+            // Overflow from the plus one: the magnitude of Long.MIN_VALUE in bytes
+            for (int i = 0; i < MIN_VALUE_MAGNITUDE.length(); i++) {
+                dst[offset++] = (byte) MIN_VALUE_MAGNITUDE.charAt(i);
+            }
+        } else {
+            offset = putDigits(dst, offset, major, 1);
+        }
+        if (noOfDecimals != 0) {
+            offset = putBytes(dst, offset, decimalSeparatorUtf8);
+            offset = putDigits(dst, offset, planMinor(plan), noOfDecimals);
+        }
+        return putBytes(dst, offset, suffixesUtf8[unit]);
+    }
+
+    /**
+     * Decides unit, number of decimals and the minor part for the magnitude {@code m}
+     * (or {@code m + 1} if {@code plusOne} is true). The result is packed into a single {@code long},
+     * see {@link #planUnit(long)}, {@link #planDecimals(long)}, {@link #planMinor(long)} and
+     * {@link #planCarry(long)}. The major part is then {@code m / dividers[unit] + carry}.
+     *
+     * <p>
+     * The carry is 1 if the plus one or the rounding of the minor part overflowed into the major part.
+     * If this makes the major part reach the size of the next unit (for example "1024 KiB") and automatic
+     * unit selection is in effect, the next unit is used instead. The same happens if the result does not
+     * fit within the max width, even with zero decimals.
+     */
+    private long plan(long m, boolean plusOne, int signLength, int unitHint) {
+        int unit = (minUnit == maxUnit) ? minUnit :
+                ((unitHint >= 0) ? unitHint : unitIndexFor((plusOne && m != Long.MAX_VALUE) ? m + 1 : m));
+        while (true) {
+            boolean canPromote = (unit < maxUnit) && (minUnit != maxUnit);
+            if (bits && unit == 0) {
+                // A plain number of bits. No decimals, nothing to round.
+                if (canPromote && maxWidth > 0 && widthOf(0, m, plusOne, 0, 0, signLength) > maxWidth) {
+                    unit++;
+                    continue;
+                }
+                return pack(0, 0, 0, 0);
+            }
+            long divider = dividers[unit];
+            long major = m / divider;
+            long remainder = m - (major * divider);
+            int carry = 0;
+            if (plusOne && ++remainder == divider) {
+                carry = 1;
+                remainder = 0;
+            }
+            int noOfDecimals = noOfDecimalsFor(unit, major + carry, signLength);
+            long minor = 0;
+            if (noOfDecimals > 0 || rounding != ROUND_DOWN) {
+                minor = roundedMinor(remainder, divider, unit, noOfDecimals);
+                if (minor == pow10(noOfDecimals)) {
+                    // Rounded up into the major part, e.g. 9.96 -> 10.0
+                    carry = 1;
+                    minor = 0;
+                    noOfDecimals = noOfDecimalsFor(unit, major + carry, signLength);
+                }
+            }
+            major += carry;
+            if (canPromote && major > 0 && major >= dividers[unit + 1] / divider) {
+                unit++;
+                continue;
+            }
+            if (canPromote && maxWidth > 0 && widthOf(unit, m, plusOne, major, noOfDecimals, signLength) > maxWidth) {
+                unit++;
+                continue;
+            }
+            return pack(unit, noOfDecimals, minor, carry);
+        }
+    }
+
+    /**
+     * Decides how to format the magnitude {@code m} (or {@code m + 1} if {@code plusOne} is true),
+     * for {@link DataSizeTemplate}. See {@link #plan(long, boolean, int, int)}.
+     */
+    long plan(long m, boolean plusOne, int signLength) {
+        return plan(m, plusOne, signLength, -1);
+    }
+
+    long dividerOf(int unit) {
+        return dividers[unit];
+    }
+
+    String suffixOf(int unit) {
+        return suffixesArr[unit];
+    }
+
+    /**
+     * Number of decimals for a unit, given the major part.
+     */
+    private int noOfDecimalsFor(int unit, long major, int signLength) {
+        if (significantDigits == 0 && maxWidth == 0) {
+            return decimalsArr[unit];
+        }
+        int d = MAX_DECIMALS[unit];
+        if (significantDigits > 0) {
+            d = Math.min(d, significantDigits - digitCount(major));
+        }
+        if (maxWidth > 0) {
+            // Room left for decimals, after sign, major, decimal separator and suffix
+            d = Math.min(d, maxWidth - signLength - digitCount(major) - 1 - suffixesArr[unit].length());
+        }
+        return (d > 0) ? d : 0;
+    }
+
+    /**
+     * Calculates the minor part from the remainder, truncated or rounded according to the rounding mode.
+     * The result may be equal to 10<sup>noOfDecimals</sup>, meaning that it must carry into the major part.
+     */
+    private long roundedMinor(long remainder, long divider, int unit, int noOfDecimals) {
+        if (rounding == ROUND_DOWN) {
+            return minorOf(remainder, divider, unit, noOfDecimals);
+        }
+        long numerator;
+        long denominator;
+        if (unit == EXA_INDEX && !bits && noOfDecimals == 1) {
+            // remainder * 10 may overflow, remainder * 5 cannot
+            numerator = remainder * 5;
+            denominator = divider >> 1;
+        } else {
+            numerator = remainder * pow10(noOfDecimals);
+            denominator = divider;
+        }
+        long q = numerator / denominator;
+        long r = numerator - (q * denominator);
+        if (r == 0) {
+            return q;
+        }
+        if (rounding == ROUND_UP) {
+            return q + 1;
+        }
+        return (r >= denominator - r) ? q + 1 : q;  // ROUND_HALF_UP
+    }
+
+    /**
+     * Number of chars for the given parts, excluding padding.
+     */
+    private int widthOf(int unit, long m, boolean plusOne, long major, int noOfDecimals, int signLength) {
+        int majorDigits;
+        if (bits && unit == 0) {
+            // The bit count is the magnitude times 8. It has 20 digits from 10^19 / 8 bytes on. Below
+            // that it may not fit in a signed long, which digitCount reads as 19 digits.
+            long bytes = (plusOne) ? m + 1 : m;
+            majorDigits = (bytes < 0 || bytes >= 1_250_000_000_000_000_000L) ? 20 : digitCount(bytes << 3);
+        } else {
+            majorDigits = digitCount(major);
+        }
+        return signLength + majorDigits + ((noOfDecimals > 0) ? 1 + noOfDecimals : 0) + suffixesArr[unit].length();
+    }
+
+    /**
+     * Number of digits in a non-negative value of any size. A negative value is taken to be the
+     * magnitude of {@code Long.MIN_VALUE}.
+     */
+    private static int digitCount(long value) {
+        if (value < 0) {
+            return 19;
+        }
+        return (value < 1_000_000_000_000L) ?
+                DataSize.noOfDigits(value) :
+                12 + DataSize.noOfDigits(value / 1_000_000_000_000L);
+    }
+
+    private static long pow10(int exponent) {
+        return (exponent == 0) ? 1 : DataSize.POWERS_OF_TEN[exponent];
+    }
+
+    private static long pack(int unit, int noOfDecimals, long minor, int carry) {
+        return minor | ((long) noOfDecimals << 20) | ((long) unit << 23) | ((long) carry << 26);
+    }
+
+    static long planMinor(long plan) {
+        return plan & 0xFFFFF;
+    }
+
+    static int planDecimals(long plan) {
+        return (int) (plan >>> 20) & 0x7;
+    }
+
+    static int planUnit(long plan) {
+        return (int) (plan >>> 23) & 0x7;
+    }
+
+    static int planCarry(long plan) {
+        return (int) (plan >>> 26) & 0x1;
+    }
+
+    /**
+     * Gets the maximum number of bytes which {@link #formatTo(long, byte[], int)} may write for a single value.
+     */
+    public int getMaxFormattedLength() {
+        return maxFormattedLength;
+    }
+
+    /**
+     * Is binary calculation (1 kibibyte = 1024 bytes) used?
+     */
+    public boolean isBinary() {
+        return useBinary;
+    }
+
+    /**
+     * Is bits mode in use? If so, values are presented as bits rather than bytes.
+     */
+    public boolean isBits() {
+        return bits;
+    }
+
+    /**
+     * Gets the sign policy in use.
+     */
+    public SignPolicy getSignPolicy() {
+        return signPolicy;
+    }
+
+    /**
+     * Gets the number of significant digits, or 0 if not used.
+     */
+    public int getSignificantDigits() {
+        return significantDigits;
+    }
+
+    /**
+     * Gets the max width, or 0 if not used.
+     */
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    /**
+     * Is a result shorter than the max width left-padded with spaces?
+     */
+    public boolean isPadding() {
+        return pad;
+    }
+
+    /**
+     * Gets the rounding mode in use, one of {@code DOWN}, {@code HALF_UP} or {@code UP}.
+     */
+    public RoundingMode getRounding() {
+        return (rounding == ROUND_HALF_UP) ? RoundingMode.HALF_UP :
+                ((rounding == ROUND_UP) ? RoundingMode.UP : RoundingMode.DOWN);
+    }
+
+    /**
+     * Gets the suffixes in use.
+     */
+    public DataSizeUnitSuffixes getSuffixes() {
+        return suffixes;
+    }
+
+    /**
+     * Gets the decimals settings in use.
+     */
+    public DataSizeUnitDecimals getDecimals() {
+        return decimals;
+    }
+
+    /**
+     * Gets the decimal separator in use. This is always the resolved value, never {@code '\0'}.
+     */
+    public char getDecimalSeparator() {
+        return decimalSeparator;
+    }
+
+    /**
+     * Gets the smallest unit which will be used.
+     */
+    public DataSizeUnit getMinUnit() {
+        return DataSizeUnit.values()[minUnit];
+    }
+
+    /**
+     * Gets the largest unit which will be used.
+     */
+    public DataSizeUnit getMaxUnit() {
+        return DataSizeUnit.values()[maxUnit];
+    }
+
+    private long minorOf(long remainder, long divider, int unit, int noOfDecimals) {
+        // In bits mode the divider for EXA is 1/8 of the usual, so the standard calculation cannot overflow
+        return (unit != EXA_INDEX || bits) ?
+                ((remainder * DataSize.POWERS_OF_TEN[noOfDecimals]) / divider) :
+                DataSize.getMinorForExabyte(remainder, useBinary);
+    }
+
+    /**
+     * Appends the number of bits in {@code m} bytes (or {@code m + 1} bytes if {@code plusOne} is true),
+     * which may not fit in a {@code long}. The value is split as
+     * {@code m * 8 = (m / 10) * 80 + (m % 10) * 8}, giving all digits but the last
+     * in {@code high} and the last digit separately.
+     */
+    static StringBuilder appendBitCount(StringBuilder sb, long m, boolean plusOne) {
+        if (m < (Long.MAX_VALUE >> 3)) {
+            return sb.append((plusOne) ? (m + 1) << 3 : m << 3);
+        }
+        long lastDigitTimes8 = ((m % 10) + ((plusOne) ? 1 : 0)) << 3;
+        long high = ((m / 10) << 3) + (lastDigitTimes8 / 10);
+        return sb.append(high).append((char) ('0' + (lastDigitTimes8 % 10)));
+    }
+
+    static int putBitCount(byte[] dst, int offset, long m, boolean plusOne) {
+        if (m < (Long.MAX_VALUE >> 3)) {
+            return putDigits(dst, offset, (plusOne) ? (m + 1) << 3 : m << 3, 1);
+        }
+        long lastDigitTimes8 = ((m % 10) + ((plusOne) ? 1 : 0)) << 3;
+        long high = ((m / 10) << 3) + (lastDigitTimes8 / 10);
+        offset = putDigits(dst, offset, high, 1);
+        dst[offset] = (byte) ('0' + (lastDigitTimes8 % 10));
+        return offset + 1;
+    }
+
+    static int putBitCount(char[] dst, int offset, long m, boolean plusOne) {
+        if (m < (Long.MAX_VALUE >> 3)) {
+            return putDigits(dst, offset, (plusOne) ? (m + 1) << 3 : m << 3, 1);
+        }
+        long lastDigitTimes8 = ((m % 10) + ((plusOne) ? 1 : 0)) << 3;
+        long high = ((m / 10) << 3) + (lastDigitTimes8 / 10);
+        offset = putDigits(dst, offset, high, 1);
+        dst[offset] = (char) ('0' + (lastDigitTimes8 % 10));
+        return offset + 1;
+    }
+
+    private static int putBytes(byte[] dst, int offset, byte[] src) {
+        System.arraycopy(src, 0, dst, offset, src.length);
+        return offset + src.length;
+    }
+
+    /**
+     * Writes the decimal digits of a non-negative value, left-padded with zeroes to at least {@code minDigits} digits.
+     */
+    static int putDigits(byte[] dst, int offset, long value, int minDigits) {
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        if (digits < minDigits) {
+            digits = minDigits;
+        }
+        int end = offset + digits;
+        for (int i = end - 1; i >= offset; i--) {
+            dst[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        return end;
+    }
+
+    static int putDigits(char[] dst, int offset, long value, int minDigits) {
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        if (digits < minDigits) {
+            digits = minDigits;
+        }
+        int end = offset + digits;
+        for (int i = end - 1; i >= offset; i--) {
+            dst[i] = (char) ('0' + (value % 10));
+            value /= 10;
+        }
+        return end;
+    }
+
+    static StringBuilder appendDigits(StringBuilder sb, long value, int minDigits) {
+        if (minDigits > 1 && value < DataSize.POWERS_OF_TEN[minDigits - 1]) {
+            for (int z = DataSize.noOfDigits(value); z < minDigits; z++) {
+                sb.append('0');
+            }
+        }
+        return sb.append(value);
+    }
+
+    /**
+     * Finds the unit for a value, within the range of allowed units.
+     */
+    private int unitIndexFor(long value) {
+        int i = minUnit + 1;
+        while (i <= maxUnit && value >= dividers[i]) {
+            i++;
+        }
+        return i - 1;
+    }
+
+
+    /**
+     * Registry of shared formatters, keyed by locale.
+     */
+    private static class Registry {
+        private static final ConcurrentMap<Locale, DataSizeFormatter> BINARY = new ConcurrentHashMap<>();
+        private static final ConcurrentMap<Locale, DataSizeFormatter> DECIMAL = new ConcurrentHashMap<>();
+
+        private static DataSizeFormatter lookup(ConcurrentMap<Locale, DataSizeFormatter> map, Locale locale, boolean useBinary) {
+            Objects.requireNonNull(locale, "locale must be supplied");
+            DataSizeFormatter formatter = map.get(locale);
+            if (formatter == null) {
+                formatter = builder().withBinary(useBinary).withLocale(locale).build();
+                DataSizeFormatter existing = map.putIfAbsent(locale, formatter);
+                if (existing != null) {
+                    formatter = existing;
+                }
+            }
+            return formatter;
+        }
+    }
+
+    /**
+     * Defines how the sign of a value is rendered.
+     */
+    public enum SignPolicy {
+        /**
+         * Negative values are rejected with an {@code IllegalArgumentException}. This is the default
+         * and matches {@code DataSize.asString()}.
+         */
+        REJECT_NEGATIVE,
+        /**
+         * Negative values are prefixed with {@code '-'}, other values have no sign.
+         * Example: {@code "-300 KiB"}, {@code "1.25 GiB"}.
+         */
+        NEGATIVE_ONLY,
+        /**
+         * Negative values are prefixed with {@code '-'}, all other values, including zero, with {@code '+'}.
+         * Example: {@code "-300 KiB"}, {@code "+0 B"}, {@code "+1.25 GiB"}.
+         */
+        ALWAYS,
+        /**
+         * Negative values are prefixed with {@code '-'}, positive values with {@code '+'}, zero has no sign.
+         * Example: {@code "-300 KiB"}, {@code "0 B"}, {@code "+1.25 GiB"}.
+         */
+        ALWAYS_EXCEPT_ZERO
+    }
+
+    /**
+     * Builder for {@code DataSizeFormatter}.
+     */
+    public static class Builder {
+
+        private boolean useBinary = true;
+        private boolean bits = false;
+        private SignPolicy signPolicy = SignPolicy.REJECT_NEGATIVE;
+        private int significantDigits = 0;
+        private int maxWidth = 0;
+        private boolean pad = false;
+        private RoundingMode rounding = RoundingMode.DOWN;
+        private DataSizeUnitSuffixes suffixes;
+        private DataSizeUnitDecimals decimals = DataSizeUnitDecimals.DEFAULT;
+        private char decimalSeparator = '\0';
+        private Locale locale;
+        private DataSizeUnit minUnit = DataSizeUnit.BYTE;
+        private DataSizeUnit maxUnit = DataSizeUnit.EXA;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets a fixed unit. All values will be formatted using this unit, for example
+         * {@code "0.5 MiB"}, {@code "1.9 MiB"} and {@code "20480.0 MiB"}.
+         *
+         * <p>
+         * This is a shorthand for {@link #withUnitRange(DataSizeUnit, DataSizeUnit) withUnitRange(unit, unit)}.
+         */
+        public DataSizeFormatter.Builder withFixedUnit(DataSizeUnit unit) {
+            return withUnitRange(unit, unit);
+        }
+
+        /**
+         * Sets the range of units which may be used. The unit is selected automatically
+         * according to the magnitude of the value, but is never smaller than {@code minUnit}
+         * and never larger than {@code maxUnit}.
+         *
+         * <p>
+         * Default is the full range, {@link DataSizeUnit#BYTE BYTE} to {@link DataSizeUnit#EXA EXA}.
+         *
+         * @param minUnit smallest unit to use
+         * @param maxUnit largest unit to use, must not be smaller than {@code minUnit}.
+         */
+        public DataSizeFormatter.Builder withUnitRange(DataSizeUnit minUnit, DataSizeUnit maxUnit) {
+            Objects.requireNonNull(minUnit, "minUnit cannot be null");
+            Objects.requireNonNull(maxUnit, "maxUnit cannot be null");
+            if (minUnit.compareTo(maxUnit) > 0) {
+                throw new IllegalArgumentException("minUnit must not be larger than maxUnit");
+            }
+            this.minUnit = minUnit;
+            this.maxUnit = maxUnit;
+            return this;
+        }
+
+        /**
+         * Sets if binary calculation (1 kibibyte = 1024 bytes) or decimal calculation (1 kilobyte = 1000 bytes)
+         * is to be used.
+         *
+         * <p>
+         * Default is {@code true} (binary).
+         */
+        public DataSizeFormatter.Builder withBinary(boolean useBinary) {
+            this.useBinary = useBinary;
+            return this;
+        }
+
+        /**
+         * Sets suffixes to use.
+         *
+         * <p>
+         * Default is {@link DataSizeUnitSuffixes#SUFFIXES_ISO80000} for binary calculation and
+         * {@link DataSizeUnitSuffixes#SUFFIXES_SI} for decimal calculation, or the corresponding bit
+         * suffixes in {@link #withBits(boolean) bits mode}.
+         */
+        public DataSizeFormatter.Builder withSuffixes(DataSizeUnitSuffixes suffixes) {
+            Objects.requireNonNull(suffixes, "suffixes cannot be null");
+            this.suffixes = suffixes;
+            return this;
+        }
+
+        /**
+         * Sets bits mode. In bits mode input values are still byte counts (or bytes per second) but
+         * are presented as the corresponding number of bits (or bits per second). For example,
+         * 2,000,000 bytes per second is presented as {@code "16.0 Mbit/s"} with decimal calculation
+         * and {@link DataSizeUnitSuffixes#SUFFIXES_BITRATE_SI bitrate suffixes}.
+         *
+         * <p>
+         * The {@code BYTE} unit and its suffix are used for a plain number of bits.
+         *
+         * <p>
+         * Default is {@code false}. If enabled and no suffixes are set, the default suffixes are
+         * {@link DataSizeUnitSuffixes#SUFFIXES_BITS_IEC} if binary calculation is used and
+         * {@link DataSizeUnitSuffixes#SUFFIXES_BITS_SI} if decimal calculation is used.
+         */
+        public DataSizeFormatter.Builder withBits(boolean bits) {
+            this.bits = bits;
+            return this;
+        }
+
+        /**
+         * Sets the sign policy, which determines if negative values are allowed and how
+         * the sign is rendered. The sign is not subject to truncation: a small negative value
+         * may be rendered as, for example, {@code "-0.0 MiB"}.
+         *
+         * <p>
+         * Default is {@link SignPolicy#REJECT_NEGATIVE}.
+         */
+        public DataSizeFormatter.Builder withSignPolicy(SignPolicy signPolicy) {
+            Objects.requireNonNull(signPolicy, "signPolicy cannot be null");
+            this.signPolicy = signPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the number of significant digits, in the style of {@code ls -h}. The number of decimals is
+         * chosen from the number of digits in the major part: with 2 significant digits the output is
+         * for example {@code "9.8M"}, {@code "98M"} and {@code "980M"}. The major part is never truncated,
+         * so more digits than requested may be output. This overrides {@link #withDecimals(DataSizeUnitDecimals)
+         * decimals}, but the maximum number of decimals per unit is the same as for
+         * {@code DataSizeUnitDecimals}.
+         *
+         * <p>
+         * Default is not to use significant digits.
+         *
+         * @param significantDigits allowed values: 1 to 10
+         */
+        public DataSizeFormatter.Builder withSignificantDigits(int significantDigits) {
+            if (significantDigits < 1 || significantDigits > 10) {
+                throw new IllegalArgumentException("significantDigits must be between 1 and 10");
+            }
+            this.significantDigits = significantDigits;
+            return this;
+        }
+
+        /**
+         * Sets the max width, in chars, of the result, in the style of {@code top}. The result includes as many
+         * decimals as fit within the max width, including sign, decimal separator and suffix. If the result
+         * does not fit even without decimals, the next larger unit is used, for example {@code "1023K"} becomes
+         * {@code "0.9M"} with a max width of 4, unless the unit is fixed or is already the largest allowed.
+         * Only then may the result be wider than the max width.
+         * This overrides {@link #withDecimals(DataSizeUnitDecimals) decimals}, but the maximum number of decimals
+         * per unit is the same as for {@code DataSizeUnitDecimals}.
+         *
+         * <p>
+         * Default is not to use a max width.
+         *
+         * @param maxWidth allowed values: 1 or more
+         * @see #withPadding(boolean)
+         */
+        public DataSizeFormatter.Builder withMaxWidth(int maxWidth) {
+            if (maxWidth < 1) {
+                throw new IllegalArgumentException("maxWidth must be >= 1");
+            }
+            this.maxWidth = maxWidth;
+            return this;
+        }
+
+        /**
+         * Sets if a result shorter than the {@link #withMaxWidth(int) max width} is left-padded with spaces
+         * so that its width is exactly the max width. Useful for right-aligned columns.
+         *
+         * <p>
+         * Default is {@code false}. Has no effect if no max width is set.
+         */
+        public DataSizeFormatter.Builder withPadding(boolean pad) {
+            this.pad = pad;
+            return this;
+        }
+
+        /**
+         * Sets how the minor part (the decimals) is rounded. Supported values are:
+         * <ul>
+         *     <li>{@link RoundingMode#DOWN DOWN}: truncate, as with {@code DataSize.asString()}.</li>
+         *     <li>{@link RoundingMode#HALF_UP HALF_UP}: round to nearest, ties away from zero.</li>
+         *     <li>{@link RoundingMode#UP UP}: round away from zero, as with {@code ls -h}.</li>
+         * </ul>
+         * Rounding may carry into the major part and from there into the next unit, for example
+         * {@code 1023.96 KiB} is rounded to {@code "1.0 MiB"} with one decimal. Negative values are rounded
+         * by magnitude. The calculation is integer-only.
+         *
+         * <p>
+         * Default is {@link RoundingMode#DOWN DOWN}.
+         *
+         * @throws IllegalArgumentException if the rounding mode is not supported
+         */
+        public DataSizeFormatter.Builder withRounding(RoundingMode rounding) {
+            Objects.requireNonNull(rounding, "rounding cannot be null");
+            if (rounding != RoundingMode.DOWN && rounding != RoundingMode.HALF_UP && rounding != RoundingMode.UP) {
+                throw new IllegalArgumentException("rounding must be one of DOWN, HALF_UP or UP");
+            }
+            this.rounding = rounding;
+            return this;
+        }
+
+        /**
+         * Sets number of decimals to use, by unit.
+         *
+         * <p>
+         * Default is {@link DataSizeUnitDecimals#DEFAULT}.
+         */
+        public DataSizeFormatter.Builder withDecimals(DataSizeUnitDecimals decimals) {
+            Objects.requireNonNull(decimals, "decimals cannot be null");
+            this.decimals = decimals;
+            return this;
+        }
+
+        /**
+         * Sets the decimal separator. This takes precedence over {@link #withLocale(Locale) locale}.
+         *
+         * <p>
+         * Default is the decimal separator of the locale, if set, otherwise the decimal separator of the
+         * JVM's default locale.
+         *
+         * @param decimalSeparator decimal separator char, usually either dot or comma. If {@code '\0'}, the
+         *                         value is derived from the locale.
+         */
+        public DataSizeFormatter.Builder withDecimalSeparator(char decimalSeparator) {
+            this.decimalSeparator = decimalSeparator;
+            return this;
+        }
+
+        /**
+         * Sets the locale from which to derive the decimal separator. The lookup is deferred until
+         * {@link #build()}.
+         */
+        public DataSizeFormatter.Builder withLocale(Locale locale) {
+            Objects.requireNonNull(locale, "locale cannot be null");
+            this.locale = locale;
+            return this;
+        }
+
+        public DataSizeFormatter build() {
+            DataSizeUnitSuffixes s = suffixes;
+            if (s == null) {
+                if (bits) {
+                    s = (useBinary) ? DataSizeUnitSuffixes.SUFFIXES_BITS_IEC : DataSizeUnitSuffixes.SUFFIXES_BITS_SI;
+                } else {
+                    s = (useBinary) ? DataSizeUnitSuffixes.SUFFIXES_ISO80000 : DataSizeUnitSuffixes.SUFFIXES_SI;
+                }
+            }
+            char separator = decimalSeparator;
+            if (separator == '\0') {
+                separator = (locale != null) ? DecimalSeparators.forLocale(locale) : DecimalSeparators.forDefaultLocale();
+            }
+            return new DataSizeFormatter(this, s, separator);
+        }
+    }
+}
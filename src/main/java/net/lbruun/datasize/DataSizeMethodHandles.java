@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Objects;
+
+/**
+ * Creates method handles which format like {@link DataSize#asString(long, boolean, DataSizeUnitSuffixes, char, DataSizeUnitDecimals)
+ * DataSize.asString()}, specialized for one fixed configuration.
+ *
+ * <p>
+ * Everything which {@code asString()} decides from its configuration parameters on every call (the
+ * default decimals, the default decimal separator, binary versus decimal unit sizes and the per-unit
+ * suffix and number of decimals) is decided once, when the method handle is created. The result is a
+ * chain of method handles, one guard per unit boundary, each unit with its divider, suffix, number of
+ * decimals and decimal separator bound as constants.
+ *
+ * <p>
+ * The JIT compiler only treats the bound values as constants if the method handle itself is a
+ * constant, that is, if it is held in a {@code static final} field. It must be invoked
+ * with {@code invokeExact}:
+ * <pre>{@code
+ *   private static final MethodHandle FORMAT =
+ *           DataSizeMethodHandles.formatter(true, DataSizeUnitSuffixes.SUFFIXES_ISO80000, '.', null);
+ *
+ *   String s = (String) FORMAT.invokeExact(value);
+ * }</pre>
+ * Divisions by a constant divider are then compiled into multiplications or, for binary
+ * units, shifts, and the result is written straight into a character array of the exact
+ * length. A method handle which is not held in a {@code static final} field works too. In
+ * {@code SpecializedFormatBenchmark} it is still faster than {@code asString()}, and its
+ * difference from the {@code static final} one is within the measurement error.
+ */
+public final class DataSizeMethodHandles {
+
+    private static final MethodHandle FORMAT_IN_UNIT;
+    private static final MethodHandle LESS_THAN;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            FORMAT_IN_UNIT = lookup.findStatic(DataSizeMethodHandles.class, "formatInUnit",
+                    MethodType.methodType(String.class, long.class, long.class, String.class, int.class, char.class, boolean.class, boolean.class));
+            LESS_THAN = lookup.findStatic(DataSizeMethodHandles.class, "lessThan",
+                    MethodType.methodType(boolean.class, long.class, long.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private DataSizeMethodHandles() {
+    }
+
+    /**
+     * Creates a method handle of type {@code (long)String} which produces the same result as
+     * {@code DataSize.asString(value, useBinary, suffixes, decimalSeparator, decimals)}.
+     *
+     * @param useBinary        {@code true} to use binary calculation (1 kibibyte = 1024 bytes). {@code false} to use
+     *                         decimal calculation (1 kilobyte = 1000 bytes).
+     * @param suffixes         suffixes to use, for example for kibibyte : {@code ' KiB'}.
+     * @param decimalSeparator decimal separator char. If {@code '\0'}, the decimal separator for the default
+     *                         locale is used.
+     * @param decimals         settings for decimals, if {@code null} the {@link DataSizeUnitDecimals#DEFAULT DEFAULT}
+     *                         is used.
+     * @return method handle which throws {@code IllegalArgumentException} for values less than zero.
+     * @see DataSize#asString(long, boolean, DataSizeUnitSuffixes, char, DataSizeUnitDecimals)
+     */
+    public static MethodHandle formatter(boolean useBinary, DataSizeUnitSuffixes suffixes, char decimalSeparator, DataSizeUnitDecimals decimals) {
+        Objects.requireNonNull(suffixes, "suffixes must be supplied");
+        String[] suffixesArr = suffixes.getSuffixesArray();
+        int[] decimalsArr = (decimals == null) ? DataSizeUnitDecimals.DEFAULT.getDecimalsArray() : decimals.getDecimalsArray();
+        char separator = (decimalSeparator == '\0') ? DecimalSeparators.forDefaultLocale() : decimalSeparator;
+
+        // Build from the largest unit down: value < size(next unit) ? this unit : (chain for larger units)
+        DataSizeUnit[] units = DataSizeUnit.values();
+        MethodHandle chain = null;
+        for (int i = units.length - 1; i >= 0; i--) {
+            DataSizeUnit unit = units[i];
+            MethodHandle target = MethodHandles.insertArguments(FORMAT_IN_UNIT, 1,
+                    size(unit, useBinary),
+                    suffixesArr[i],
+                    decimalsArr[i],
+                    separator,
+                    unit == DataSizeUnit.EXA,
+                    useBinary);
+            if (chain == null) {
+                chain = target;
+            } else {
+                long nextSize = size(units[i + 1], useBinary);
+                chain = MethodHandles.guardWithTest(
+                        MethodHandles.insertArguments(LESS_THAN, 1, nextSize),
+                        target,
+                        chain);
+            }
+        }
+        return chain;
+    }
+
+    private static long size(DataSizeUnit unit, boolean useBinary) {
+        return (useBinary) ? unit.getBinarySize() : unit.getDecimalSize();
+    }
+
+    private static boolean lessThan(long value, long limit) {
+        return value < limit;
+    }
+
+    /**
+     * Formats a value known to be in a given unit. All parameters but {@code value} are
+     * bound as constants. Within a unit, the major part has at most 4 digits (1023), so the
+     * exact length of the result is known after counting them and the characters are written
+     * straight into an array of that length.
+     */
+    private static String formatInUnit(long value, long divider, String suffix, int noOfDecimals, char separator,
+                                       boolean exa, boolean useBinary) {
+        if (value <= 0) {
+            if (value == 0) {
+                return "0" + suffix;
+            }
+            throw new IllegalArgumentException("value must be >= 0");
+        }
+        int major = (int) (value / divider);
+        int majorDigits = (major < 10) ? 1 : (major < 100) ? 2 : (major < 1000) ? 3 : 4;
+        int suffixLength = suffix.length();
+        if (noOfDecimals == 0) {
+            char[] chars = new char[majorDigits + suffixLength];
+            putDigits(chars, majorDigits, major);
+            suffix.getChars(0, suffixLength, chars, majorDigits);
+            return new String(chars);
+        }
+        long remainder = value - (major * divider);
+        long minor = (!exa) ?
+                ((remainder * DataSize.POWERS_OF_TEN[noOfDecimals]) / divider) :
+                DataSize.getMinorForExabyte(remainder, useBinary);
+
+        int end = majorDigits + 1 + noOfDecimals;
+        char[] chars = new char[end + suffixLength];
+        putDigits(chars, majorDigits, major);
+        chars[majorDigits] = separator;
+        // Minor has at most 6 digits and is zero-padded to the number of decimals
+        int m = (int) minor;
+        for (int pos = end - 1; pos > majorDigits; pos--) {
+            chars[pos] = (char) ('0' + (m % 10));
+            m /= 10;
+        }
+        suffix.getChars(0, suffixLength, chars, end);
+        return new String(chars);
+    }
+
+    /**
+     * Writes the digits of {@code value} into {@code chars}, ending just before {@code end}.
+     */
+    private static void putDigits(char[] chars, int end, int value) {
+        for (int pos = end - 1; pos >= 0; pos--) {
+            chars[pos] = (char) ('0' + (value % 10));
+            value /= 10;
+        }
+    }
+}
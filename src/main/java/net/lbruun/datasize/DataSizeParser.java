@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses human-readable data size strings, such as {@code "1.9M"}, {@code "1.9 MiB"},
+ * {@code "64 MB"} or {@code "4096"}, into a number of bytes.
+ *
+ * <p>
+ * Accepted syntax is: digits, optionally followed by the decimal separator and more digits,
+ * optionally followed by blanks, optionally followed by a unit letter ({@code K}, {@code M}, {@code G},
+ * {@code T}, {@code P}, {@code E}, case-insensitive), optionally followed by {@code i}, optionally
+ * followed by {@code B}. Leading and trailing blanks are ignored. A unit letter followed by {@code i}
+ * (as in {@code "MiB"}) always means binary calculation. A unit letter on its own (as in {@code "M"} or
+ * {@code "MB"}) means binary or decimal calculation, as requested by the caller.
+ *
+ * <p>
+ * Parsing is done with integer arithmetic only. Decimals which represent less than a byte are
+ * truncated. At most 9 decimals are taken into account, any further decimals are ignored.
+ *
+ * <p>
+ * The byte array variant does not create any objects, unless the input is invalid.
+ */
+public final class DataSizeParser {
+
+    private static final int MAX_FRACTION_DIGITS = 9;
+
+    private DataSizeParser() {
+    }
+
+    /**
+     * Parses a data size string using dot ({@code '.'}) as decimal separator.
+     *
+     * @see #parse(CharSequence, boolean, char)
+     */
+    public static long parse(CharSequence text, boolean useBinary) {
+        return parse(text, useBinary, '.');
+    }
+
+    /**
+     * Parses a data size string.
+     *
+     * @param text             input
+     * @param useBinary        {@code true} if a unit letter without {@code i} (as in {@code "M"} or {@code "MB"})
+     *                         means binary calculation (1 kibibyte = 1024 bytes), {@code false} if it means
+     *                         decimal calculation (1 kilobyte = 1000 bytes).
+     * @param decimalSeparator decimal separator char
+     * @return number of bytes
+     * @throws NumberFormatException if the input is not a valid data size or if the result
+     *                               does not fit in a {@code long}.
+     */
+    public static long parse(CharSequence text, boolean useBinary, char decimalSeparator) {
+        return parse(null, text, 0, text.length(), useBinary, decimalSeparator);
+    }
+
+    /**
+     * Parses a data size string which is encoded as ASCII (or UTF-8) bytes.
+     *
+     * @param buf              input
+     * @param off              offset of first byte of input in {@code buf}
+     * @param len              length of input
+     * @param useBinary        {@code true} if a unit letter without {@code i} (as in {@code "M"} or {@code "MB"})
+     *                         means binary calculation (1 kibibyte = 1024 bytes), {@code false} if it means
+     *                         decimal calculation (1 kilobyte = 1000 bytes).
+     * @param decimalSeparator decimal separator char, must be an ASCII char
+     * @return number of bytes
+     * @throws NumberFormatException if the input is not a valid data size or if the result
+     *                               does not fit in a {@code long}.
+     */
+    public static long parse(byte[] buf, int off, int len, boolean useBinary, char decimalSeparator) {
+        if (off < 0 || len < 0 || off > buf.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        return parse(buf, null, off, off + len, useBinary, decimalSeparator);
+    }
+
+    private static long parse(byte[] b, CharSequence cs, int start, int end, boolean useBinary, char decimalSeparator) {
+        int i = start;
+        while (i < end && isBlank(charAt(b, cs, i))) {
+            i++;
+        }
+        while (end > i && isBlank(charAt(b, cs, end - 1))) {
+            end--;
+        }
+
+        // Major
+        long major = 0;
+        int digitsStart = i;
+        while (i < end) {
+            int c = charAt(b, cs, i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            if (major > (Long.MAX_VALUE - (c - '0')) / 10) {
+                throw invalid(b, cs, start, end, "value out of range");
+            }
+            major = (major * 10) + (c - '0');
+            i++;
+        }
+        if (i == digitsStart) {
+            throw invalid(b, cs, start, end, "no digits");
+        }
+
+        // Minor
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (i < end && charAt(b, cs, i) == decimalSeparator) {
+            i++;
+            int fractionStart = i;
+            while (i < end) {
+                int c = charAt(b, cs, i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                if (fractionDigits < MAX_FRACTION_DIGITS) {
+                    fraction = (fraction * 10) + (c - '0');
+                    fractionDigits++;
+                }
+                i++;
+            }
+            if (i == fractionStart) {
+                throw invalid(b, cs, start, end, "no digits after decimal separator");
+            }
+        }
+
+        // Unit
+        while (i < end && isBlank(charAt(b, cs, i))) {
+            i++;
+        }
+        DataSizeUnit unit = DataSizeUnit.BYTE;
+        boolean binary = useBinary;
+        if (i < end) {
+            unit = unitForLetter(charAt(b, cs, i));
+            if (unit != null) {
+                i++;
+                if (i < end && charAt(b, cs, i) == 'i') {
+                    binary = true;
+                    i++;
+                }
+            } else {
+                unit = DataSizeUnit.BYTE;
+            }
+        }
+        if (i < end && charAt(b, cs, i) == 'B') {
+            i++;
+        }
+        if (i != end) {
+            throw invalid(b, cs, start, end, "unexpected character");
+        }
+
+        long bytes;
+        try {
+            bytes = unit.toBytesExact(major, binary);
+        } catch (ArithmeticException ex) {
+            throw invalid(b, cs, start, end, "value out of range");
+        }
+        if (fraction != 0 && unit != DataSizeUnit.BYTE) {
+            // fraction * unitSize / 10^fractionDigits, without overflow: split unitSize
+            long unitSize = (binary) ? unit.getBinarySize() : unit.getDecimalSize();
+            long p = DataSize.POWERS_OF_TEN[fractionDigits];
+            long add = (fraction * (unitSize / p)) + ((fraction * (unitSize % p)) / p);
+            if (bytes > Long.MAX_VALUE - add) {
+                throw invalid(b, cs, start, end, "value out of range");
+            }
+            bytes += add;
+        }
+        return bytes;
+    }
+
+    private static DataSizeUnit unitForLetter(int c) {
+        switch (c) {
+            case 'K':
+            case 'k':
+                return DataSizeUnit.KILO;
+            case 'M':
+            case 'm':
+                return DataSizeUnit.MEGA;
+            case 'G':
+            case 'g':
+                return DataSizeUnit.GIGA;
+            case 'T':
+            case 't':
+                return DataSizeUnit.TERA;
+            case 'P':
+            case 'p':
+                return DataSizeUnit.PETA;
+            case 'E':
+            case 'e':
+                return DataSizeUnit.EXA;
+            default:
+                return null;
+        }
+    }
+
+    private static int charAt(byte[] b, CharSequence cs, int i) {
+        return (b != null) ? (b[i] & 0xFF) : cs.charAt(i);
+    }
+
+    private static boolean isBlank(int c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static NumberFormatException invalid(byte[] b, CharSequence cs, int start, int end, String reason) {
+        String text = (b != null) ?
+                new String(b, start, end - start, StandardCharsets.UTF_8) :
+                cs.subSequence(start, end).toString();
+        return new NumberFormatException("Invalid data size \"" + text + "\": " + reason);
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize;
+
+import java.util.Objects;
+
+/**
+ * Inclusive range of byte values, {@code [min, max]}.
+ *
+ * <p>
+ * Because {@link DataSize#asString(long, boolean, DataSizeUnitSuffixes, char, DataSizeUnitDecimals) DataSize.asString()}
+ * truncates, each string it produces represents a range of byte values. For example, with binary calculation
+ * and default decimals, {@code "1.9 MiB"} is produced for all values from 1992295 to 2097151. The
+ * {@link #ofDisplayed(CharSequence, boolean, DataSizeUnitSuffixes, char, DataSizeUnitDecimals) ofDisplayed()}
+ * methods compute that range, exactly and with integer arithmetic only. This allows filtering on what the user
+ * sees without formatting every value:
+ * <pre>{@code
+ *   DataSizeRange range = DataSizeRange.ofDisplayedBinary("1.9 MiB");
+ *   files.stream().filter(f -> range.contains(f.size()))
+ * }</pre>
+ *
+ * <p>
+ * Instances are immutable.
+ */
+public final class DataSizeRange {
+
+    /**
+     * Range which contains no values.
+     */
+    public static final DataSizeRange EMPTY = new DataSizeRange(0, -1);
+
+    private final long min;
+    private final long max;
+
+    private DataSizeRange(long min, long max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Creates a range.
+     *
+     * @param min smallest value in range
+     * @param max largest value in range
+     * @throws IllegalArgumentException if {@code min} is greater than {@code max}
+     */
+    public static DataSizeRange of(long min, long max) {
+        if (min > max) {
+            throw new IllegalArgumentException("min must be <= max");
+        }
+        return new DataSizeRange(min, max);
+    }
+
+    /**
+     * Gets the range of values which {@link DataSize#asStringBinary(long)} formats as {@code text}.
+     *
+     * @see #ofDisplayed(CharSequence, boolean, DataSizeUnitSuffixes, char, DataSizeUnitDecimals)
+     */
+    public static DataSizeRange ofDisplayedBinary(CharSequence text) {
+        return ofDisplayed(text, true, DataSizeUnitSuffixes.SUFFIXES_ISO80000, '.', null);
+    }
+
+    /**
+     * Gets the range of values which {@link DataSize#asStringDecimal(long)} formats as {@code text}.
+     *
+     * @see #ofDisplayed(CharSequence, boolean, DataSizeUnitSuffixes, char, DataSizeUnitDecimals)
+     */
+    public static DataSizeRange ofDisplayedDecimal(CharSequence text) {
+        return ofDisplayed(text, false, DataSizeUnitSuffixes.SUFFIXES_SI, '.', null);
+    }
+
+    /**
+     * Gets the range of values which {@link DataSize#asString(long, boolean, DataSizeUnitSuffixes, char, DataSizeUnitDecimals)
+     * DataSize.asString()} formats as {@code text}, given the same parameters. Leading and trailing whitespace
+     * in {@code text} is ignored.
+     *
+     * <p>
+     * The result is {@link #EMPTY} if {@code text} is well-formed but is never produced with these
+     * parameters, for example {@code "1.90 MiB"} when megabytes are formatted with one decimal, or
+     * {@code "1500 KiB"}, which would be formatted as {@code "1.4 MiB"}.
+     *
+     * @param text             formatted size, for example {@code "1.9 MiB"}
+     * @param useBinary        {@code true} if binary calculation (1 kibibyte = 1024 bytes) was used.
+     *                         {@code false} if decimal calculation (1 kilobyte = 1000 bytes) was used.
+     * @param suffixes         suffixes used
+     * @param decimalSeparator decimal separator char used. If {@code '\0'}, the decimal separator for the
+     *                         default locale.
+     * @param decimals         settings for decimals used, if {@code null} the {@link DataSizeUnitDecimals#DEFAULT DEFAULT}.
+     * @return range of values, possibly {@link #EMPTY}
+     * @throws NumberFormatException if {@code text} is not a number followed by one of the suffixes
+     */
+    public static DataSizeRange ofDisplayed(CharSequence text, boolean useBinary, DataSizeUnitSuffixes suffixes, char decimalSeparator, DataSizeUnitDecimals decimals) {
+        Objects.requireNonNull(text, "text must be supplied");
+        Objects.requireNonNull(suffixes, "suffixes must be supplied");
+        String s = text.toString().trim();
+        String[] suffixesArr = suffixes.getSuffixesArray();
+        int[] decimalsArr = (decimals == null) ? DataSizeUnitDecimals.DEFAULT.getDecimalsArray() : decimals.getDecimalsArray();
+        char separator = (decimalSeparator == '\0') ? DecimalSeparators.forDefaultLocale() : decimalSeparator;
+
+        // A suffix may end with another suffix (for example "" for bytes), so longer suffixes are tried first
+        boolean wellFormed = false;
+        boolean[] tried = new boolean[suffixesArr.length];
+        for (int n = 0; n < suffixesArr.length; n++) {
+            int unit = -1;
+            for (int i = 0; i < suffixesArr.length; i++) {
+                if (!tried[i] && (unit == -1 || suffixesArr[i].length() > suffixesArr[unit].length())) {
+                    unit = i;
+                }
+            }
+            tried[unit] = true;
+            String suffix = suffixesArr[unit];
+            if (!s.endsWith(suffix)) {
+                continue;
+            }
+            int numberEnd = s.length() - suffix.length();
+            int sepPos = s.lastIndexOf(separator, numberEnd - 1);
+            int majorEnd = (sepPos >= 0) ? sepPos : numberEnd;
+            if (!isDigits(s, 0, majorEnd) || (sepPos >= 0 && !isDigits(s, sepPos + 1, numberEnd))) {
+                continue;
+            }
+            wellFormed = true;
+            DataSizeRange range = rangeInUnit(s, majorEnd, sepPos, numberEnd, unit, useBinary, decimalsArr[unit]);
+            if (range != EMPTY) {
+                return range;
+            }
+        }
+        if (!wellFormed) {
+            throw new NumberFormatException("Not a formatted data size: \"" + text + "\"");
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Computes the range for a well-formed number in a given unit.
+     */
+    private static DataSizeRange rangeInUnit(String s, int majorEnd, int sepPos, int numberEnd, int unitIndex, boolean useBinary, int noOfDecimals) {
+        int minorDigits = (sepPos >= 0) ? numberEnd - sepPos - 1 : 0;
+        if (minorDigits != noOfDecimals) {
+            return EMPTY;
+        }
+        // asString() never produces leading zeros, and at most 19 digits fit in a long
+        if ((majorEnd > 1 && s.charAt(0) == '0') || majorEnd > 19) {
+            return EMPTY;
+        }
+        long major = Long.parseLong(s.substring(0, majorEnd));
+        DataSizeUnit unit = DataSizeUnit.values()[unitIndex];
+        long divider = (useBinary) ? unit.getBinarySize() : unit.getDecimalSize();
+        if (unit == DataSizeUnit.BYTE) {
+            long limit = (useBinary) ? DataSizeUnit.KILO.getBinarySize() : DataSizeUnit.KILO.getDecimalSize();
+            return (major < limit) ? new DataSizeRange(major, major) : EMPTY;
+        }
+        // The unit is the largest one which is not larger than the value
+        long majorLimit = (unit == DataSizeUnit.EXA) ?
+                Long.MAX_VALUE / divider :
+                ((useBinary) ? DataSizeUnit.values()[unitIndex + 1].getBinarySize() : DataSizeUnit.values()[unitIndex + 1].getDecimalSize()) / divider - 1;
+        if (major < 1 || major > majorLimit) {
+            return EMPTY;
+        }
+        long base = major * divider;
+        if (noOfDecimals == 0) {
+            return range(base, 0, divider);
+        }
+        long minor = Long.parseLong(s.substring(sepPos + 1, numberEnd));
+        // Smallest remainder for which remainder * 10^decimals / divider (truncated) is 'minor', and the
+        // same for minor + 1. For exabytes this gives the thresholds used by DataSize.getMinorForExabyte().
+        long p = DataSize.POWERS_OF_TEN[noOfDecimals];
+        return range(base, ceilMulDiv(minor, divider, p), ceilMulDiv(minor + 1, divider, p));
+    }
+
+    /**
+     * Gets the range {@code [base + from, base + to - 1]}, clipped to {@code Long.MAX_VALUE}.
+     */
+    private static DataSizeRange range(long base, long from, long to) {
+        if (from >= to || from > Long.MAX_VALUE - base) {
+            return EMPTY;
+        }
+        long max = (to - 1 > Long.MAX_VALUE - base) ? Long.MAX_VALUE : base + to - 1;
+        return new DataSizeRange(base + from, max);
+    }
+
+    /**
+     * Computes ceil(m * d / p) without overflow, for {@code m <= p <= 10^6}.
+     */
+    private static long ceilMulDiv(long m, long d, long p) {
+        long r = m * (d % p);
+        return m * (d / p) + (r / p) + ((r % p == 0) ? 0 : 1);
+    }
+
+    private static boolean isDigits(String s, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the smallest value in the range. Undefined if the range is empty.
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * Gets the largest value in the range. Undefined if the range is empty.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Checks if the range contains no values.
+     */
+    public boolean isEmpty() {
+        return min > max;
+    }
+
+    /**
+     * Checks if the range contains a value.
+     */
+    public boolean contains(long value) {
+        return value >= min && value <= max;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DataSizeRange)) {
+            return false;
+        }
+        DataSizeRange other = (DataSizeRange) o;
+        return (isEmpty() && other.isEmpty()) || (min == other.min && max == other.max);
+    }
+
+    @Override
+    public int hashCode() {
+        return (isEmpty()) ? 0 : Long.hashCode(min) * 31 + Long.hashCode(max);
+    }
+
+    @Override
+    public String toString() {
+        return (isEmpty()) ? "[]" : "[" + min + ", " + max + "]";
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Custom layout for formatted data sizes, for example {@code "[1.9 MiB]"}, {@code "1.9MiB/s"} or
+ * {@code "size=1.9 (MiB)"}, where {@link DataSizeUnitSuffixes suffixes} only allow text after the number.
+ *
+ * <p>
+ * A template is text with tokens in braces:
+ * <table>
+ *     <caption>Tokens</caption>
+ *     <tr><td>{@code {value}}</td><td>the number: sign, major part and, if there are decimals,
+ *     decimal separator and minor part. Example: {@code "1.9"}</td></tr>
+ *     <tr><td>{@code {major}}</td><td>sign and major part. Example: {@code "1"}</td></tr>
+ *     <tr><td>{@code {sep}}</td><td>decimal separator, or nothing if there are no decimals</td></tr>
+ *     <tr><td>{@code {minor}}</td><td>minor part, or nothing if there are no decimals. Example: {@code "9"}</td></tr>
+ *     <tr><td>{@code {unit}}</td><td>suffix without leading and trailing blanks. Example: {@code "MiB"}</td></tr>
+ *     <tr><td>{@code {suffix}}</td><td>suffix as is. Example: {@code " MiB"}</td></tr>
+ * </table>
+ * Literal braces are written as {@code "{{"} and {@code "}}"}. The examples above are produced by
+ * {@code "[{value}{suffix}]"}, {@code "{value}{unit}/s"} and {@code "size={value} ({unit})"}.
+ *
+ * <p>
+ * Everything but the layout comes from the {@link DataSizeFormatter} the template is compiled
+ * with: units, decimals, decimal separator, sign policy, rounding and so on. The template
+ * {@code "{value}{suffix}"} gives the same result as the formatter, except that a template
+ * never pads.
+ *
+ * <p>
+ * The template is compiled once into a list of operations. Formatting decides unit and decimals
+ * with the same code as the formatter, then runs the operations, writing each part directly into
+ * a {@code char[]}, a {@code byte[]} (UTF-8) or a {@code StringBuilder}, so a custom layout costs
+ * about the same as the formatter itself.
+ *
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public final class DataSizeTemplate {
+
+    private static final int OP_LITERAL = 0;
+    private static final int OP_VALUE = 1;
+    private static final int OP_MAJOR = 2;
+    private static final int OP_SEP = 3;
+    private static final int OP_MINOR = 4;
+    private static final int OP_UNIT = 5;
+    private static final int OP_SUFFIX = 6;
+    private static final String[] TOKENS = {null, "value", "major", "sep", "minor", "unit", "suffix"};
+
+    private static final int MAX_MAJOR_LENGTH = 1 + 20;  // sign and digits of the bits of Long.MIN_VALUE
+    private static final int MAX_MINOR_LENGTH = 6;
+    private static final char[] MIN_VALUE_MAGNITUDE = DataSizeFormatter.MIN_VALUE_MAGNITUDE.toCharArray();
+    private static final byte[] MIN_VALUE_MAGNITUDE_UTF8 = DataSizeFormatter.MIN_VALUE_MAGNITUDE.getBytes(StandardCharsets.UTF_8);
+
+    private final String pattern;
+    private final DataSizeFormatter formatter;
+    private final int[] ops;  // op code in low 4 bits, literal index above
+    private final char[][] literals;
+    private final byte[][] literalsUtf8;
+    private final char[][] units;
+    private final byte[][] unitsUtf8;
+    private final char[][] suffixes;
+    private final byte[][] suffixesUtf8;
+    private final char[] separator;
+    private final byte[] separatorUtf8;
+    private final int maxFormattedLength;
+
+    private DataSizeTemplate(String pattern, DataSizeFormatter formatter, List<Integer> ops, List<String> literals) {
+        this.pattern = pattern;
+        this.formatter = formatter;
+        this.ops = new int[ops.size()];
+        for (int i = 0; i < this.ops.length; i++) {
+            this.ops[i] = ops.get(i);
+        }
+        this.literals = new char[literals.size()][];
+        this.literalsUtf8 = new byte[literals.size()][];
+        for (int i = 0; i < literals.size(); i++) {
+            this.literals[i] = literals.get(i).toCharArray();
+            this.literalsUtf8[i] = literals.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        int unitCount = DataSizeUnit.values().length;
+        this.units = new char[unitCount][];
+        this.unitsUtf8 = new byte[unitCount][];
+        this.suffixes = new char[unitCount][];
+        this.suffixesUtf8 = new byte[unitCount][];
+        int maxUnitLength = 0;
+        int maxSuffixLength = 0;
+        for (int i = 0; i < unitCount; i++) {
+            String suffix = formatter.suffixOf(i);
+            units[i] = suffix.trim().toCharArray();
+            unitsUtf8[i] = suffix.trim().getBytes(StandardCharsets.UTF_8);
+            suffixes[i] = suffix.toCharArray();
+            suffixesUtf8[i] = suffix.getBytes(StandardCharsets.UTF_8);
+            maxUnitLength = Math.max(maxUnitLength, unitsUtf8[i].length);
+            maxSuffixLength = Math.max(maxSuffixLength, suffixesUtf8[i].length);
+        }
+        this.separator = new char[]{formatter.getDecimalSeparator()};
+        this.separatorUtf8 = new String(separator).getBytes(StandardCharsets.UTF_8);
+
+        int max = 0;
+        for (int op : this.ops) {
+            switch (op & 0xF) {
+                case OP_LITERAL:
+                    max += literalsUtf8[op >>> 4].length;
+                    break;
+                case OP_VALUE:
+                    max += MAX_MAJOR_LENGTH + separatorUtf8.length + MAX_MINOR_LENGTH;
+                    break;
+                case OP_MAJOR:
+                    max += MAX_MAJOR_LENGTH;
+                    break;
+                case OP_SEP:
+                    max += separatorUtf8.length;
+                    break;
+                case OP_MINOR:
+                    max += MAX_MINOR_LENGTH;
+                    break;
+                case OP_UNIT:
+                    max += maxUnitLength;
+                    break;
+                default:
+                    max += maxSuffixLength;
+            }
+        }
+        this.maxFormattedLength = max;
+    }
+
+    /**
+     * Compiles a template.
+     *
+     * @param pattern   template, see class description
+     * @param formatter formatter which decides everything but the layout
+     * @throws IllegalArgumentException if the template has an unknown token or an unmatched brace
+     */
+    public static DataSizeTemplate compile(String pattern, DataSizeFormatter formatter) {
+        Objects.requireNonNull(pattern, "pattern cannot be null");
+        Objects.requireNonNull(formatter, "formatter cannot be null");
+        List<Integer> ops = new ArrayList<>();
+        List<String> literals = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if ((c == '{' || c == '}') && i + 1 < pattern.length() && pattern.charAt(i + 1) == c) {
+                literal.append(c);
+                i += 2;
+            } else if (c == '{') {
+                int end = pattern.indexOf('}', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unmatched '{' at index " + i + " in template \"" + pattern + "\"");
+                }
+                int op = opFor(pattern.substring(i + 1, end));
+                if (op < 0) {
+                    throw new IllegalArgumentException("Unknown token \"" + pattern.substring(i, end + 1)
+                            + "\" in template \"" + pattern + "\"");
+                }
+                if (literal.length() > 0) {
+                    ops.add(OP_LITERAL | (literals.size() << 4));
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                }
+                ops.add(op);
+                i = end + 1;
+            } else if (c == '}') {
+                throw new IllegalArgumentException("Unmatched '}' at index " + i + " in template \"" + pattern + "\"");
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        if (literal.length() > 0) {
+            ops.add(OP_LITERAL | (literals.size() << 4));
+            literals.add(literal.toString());
+        }
+        return new DataSizeTemplate(pattern, formatter, ops, literals);
+    }
+
+    private static int opFor(String token) {
+        for (int op = 1; op < TOKENS.length; op++) {
+            if (TOKENS[op].equals(token)) {
+                return op;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Formats a byte size value.
+     *
+     * @throws IllegalArgumentException if {@code value} is less than zero and the sign policy
+     *              of the formatter is {@link DataSizeFormatter.SignPolicy#REJECT_NEGATIVE}.
+     */
+    public String format(long value) {
+        char[] chars = new char[maxFormattedLength];
+        return new String(chars, 0, write(value, null, chars, null, 0));
+    }
+
+    /**
+     * Formats a byte size value and appends it to a {@code StringBuilder}.
+     *
+     * @return {@code sb}
+     * @throws IllegalArgumentException if {@code value} is less than zero and the sign policy
+     *              of the formatter is {@link DataSizeFormatter.SignPolicy#REJECT_NEGATIVE}.
+     */
+    public StringBuilder appendTo(StringBuilder sb, long value) {
+        Objects.requireNonNull(sb, "sb cannot be null");
+        write(value, sb, null, null, 0);
+        return sb;
+    }
+
+    /**
+     * Formats a byte size value into a char array.
+     *
+     * @param dst    destination
+     * @param offset where in {@code dst} to start writing. There must be room for at least
+     *               {@link #getMaxFormattedLength()} chars.
+     * @return the offset in {@code dst} immediately after the last char written
+     * @throws IllegalArgumentException  if {@code value} is less than zero and the sign policy
+     *              of the formatter is {@link DataSizeFormatter.SignPolicy#REJECT_NEGATIVE}.
+     * @throws IndexOutOfBoundsException if there is not room enough in {@code dst}
+     */
+    public int formatTo(long value, char[] dst, int offset) {
+        Objects.requireNonNull(dst, "dst cannot be null");
+        return write(value, null, dst, null, offset);
+    }
+
+    /**
+     * Formats a byte size value into a byte array, encoded as UTF-8.
+     *
+     * @param dst    destination
+     * @param offset where in {@code dst} to start writing. There must be room for at least
+     *               {@link #getMaxFormattedLength()} bytes.
+     * @return the offset in {@code dst} immediately after the last byte written
+     * @throws IllegalArgumentException  if {@code value} is less than zero and the sign policy
+     *              of the formatter is {@link DataSizeFormatter.SignPolicy#REJECT_NEGATIVE}.
+     * @throws IndexOutOfBoundsException if there is not room enough in {@code dst}
+     */
+    public int formatTo(long value, byte[] dst, int offset) {
+        Objects.requireNonNull(dst, "dst cannot be null");
+        return write(value, null, null, dst, offset);
+    }
+
+    /**
+     * Gets the maximum number of bytes, or chars, which a single value may be formatted into.
+     */
+    public int getMaxFormattedLength() {
+        return maxFormattedLength;
+    }
+
+    /**
+     * Gets the template text.
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Gets the formatter the template was compiled with.
+     */
+    public DataSizeFormatter getFormatter() {
+        return formatter;
+    }
+
+    @Override
+    public String toString() {
+        return "DataSizeTemplate[" + pattern + "]";
+    }
+
+    /**
+     * Runs the operations for one value. Exactly one of {@code sb}, {@code chars} and {@code bytes}
+     * is the destination, the others are {@code null}.
+     *
+     * @return the offset after the last char or byte written; {@code offset} if the destination is {@code sb}
+     */
+    private int write(long value, StringBuilder sb, char[] chars, byte[] bytes, int offset) {
+        char sign;
+        long m;
+        boolean plusOne;
+        if (value < 0) {
+            if (formatter.getSignPolicy() == DataSizeFormatter.SignPolicy.REJECT_NEGATIVE) {
+                throw new IllegalArgumentException("value must be >= 0");
+            }
+            sign = '-';
+            m = -(value + 1);
+            plusOne = true;
+        } else {
+            sign = formatter.signFor(value);
+            m = value;
+            plusOne = false;
+        }
+        long plan = formatter.plan(m, plusOne, (sign != '\0') ? 1 : 0);
+        int unit = DataSizeFormatter.planUnit(plan);
+        boolean bitCount = formatter.isBits() && unit == 0;
+        int noOfDecimals = (bitCount) ? 0 : DataSizeFormatter.planDecimals(plan);
+        long major = (m / formatter.dividerOf(unit)) + DataSizeFormatter.planCarry(plan);
+        long minor = DataSizeFormatter.planMinor(plan);
+        for (int op : ops) {
+            switch (op & 0xF) {
+                case OP_LITERAL:
+                    offset = put(sb, chars, bytes, offset, literals[op >>> 4], literalsUtf8[op >>> 4]);
+                    break;
+                case OP_VALUE:
+                    offset = putMajor(sb, chars, bytes, offset, sign, major, m, plusOne, bitCount);
+                    if (noOfDecimals > 0) {
+                        offset = put(sb, chars, bytes, offset, separator, separatorUtf8);
+                        offset = putDigits(sb, chars, bytes, offset, minor, noOfDecimals);
+                    }
+                    break;
+                case OP_MAJOR:
+                    offset = putMajor(sb, chars, bytes, offset, sign, major, m, plusOne, bitCount);
+                    break;
+                case OP_SEP:
+                    if (noOfDecimals > 0) {
+                        offset = put(sb, chars, bytes, offset, separator, separatorUtf8);
+                    }
+                    break;
+                case OP_MINOR:
+                    if (noOfDecimals > 0) {
+                        offset = putDigits(sb, chars, bytes, offset, minor, noOfDecimals);
+                    }
+                    break;
+                case OP_UNIT:
+                    offset = put(sb, chars, bytes, offset, units[unit], unitsUtf8[unit]);
+                    break;
+                default:
+                    offset = put(sb, chars, bytes, offset, suffixes[unit], suffixesUtf8[unit]);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Writes sign and major part. In bits mode with the smallest unit, the major part is the number
+     * of bits in {@code m} bytes (or {@code m + 1}), which may not fit in a {@code long}.
+     */
+    private static int putMajor(StringBuilder sb, char[] chars, byte[] bytes, int offset,
+                                char sign, long major, long m, boolean plusOne, boolean bitCount) {
+        if (sign != '\0') {
+            // Always ASCII
+            if (sb != null) {
+                sb.append(sign);
+            } else if (chars != null) {
+                chars[offset++] = sign;
+            } else {
+                bytes[offset++] = (byte) sign;
+            }
+        }
+        if (bitCount) {
+            if (sb != null) {
+                DataSizeFormatter.appendBitCount(sb, m, plusOne);
+                return offset;
+            }
+            return (chars != null) ?
+                    DataSizeFormatter.putBitCount(chars, offset, m, plusOne) :
+                    DataSizeFormatter.putBitCount(bytes, offset, m, plusOne);
+        }
+        if (major < 0) {
+            // Overflow from the plus one: the magnitude of Long.MIN_VALUE in bytes
+            return put(sb, chars, bytes, offset, MIN_VALUE_MAGNITUDE, MIN_VALUE_MAGNITUDE_UTF8);
+        }
+        return putDigits(sb, chars, bytes, offset, major, 1);
+    }
+
+    private static int putDigits(StringBuilder sb, char[] chars, byte[] bytes, int offset, long value, int minDigits) {
+        if (sb != null) {
+            DataSizeFormatter.appendDigits(sb, value, minDigits);
+            return offset;
+        }
+        return (chars != null) ?
+                DataSizeFormatter.putDigits(chars, offset, value, minDigits) :
+                DataSizeFormatter.putDigits(bytes, offset, value, minDigits);
+    }
+
+    private static int put(StringBuilder sb, char[] chars, byte[] bytes, int offset, char[] text, byte[] utf8) {
+        if (sb != null) {
+            sb.append(text);
+            return offset;
+        }
+        if (chars != null) {
+            System.arraycopy(text, 0, chars, offset, text.length);
+            return offset + text.length;
+        }
+        System.arraycopy(utf8, 0, bytes, offset, utf8.length);
+        return offset + utf8.length;
+    }
+}
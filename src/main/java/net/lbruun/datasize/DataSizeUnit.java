@@ -68,6 +68,11 @@ package net.lbruun.datasize;
  * </tbody>
  * </table>
  *
+ * <p>
+ * In the style of {@link java.util.concurrent.TimeUnit}, a unit can convert amounts from other units,
+ * see {@link #convert(long, DataSizeUnit, boolean) convert()} and {@link #toBytes(long, boolean) toBytes()}.
+ * Conversions which would overflow saturate to {@code Long.MAX_VALUE} (or {@code Long.MIN_VALUE} if
+ * negative) rather than silently wrapping around. Conversions never allocate.
  *
  */
 public enum DataSizeUnit {
@@ -104,6 +109,32 @@ public enum DataSizeUnit {
     ;
 
 
+    // Cached, to avoid the array clone of values()
+    private static final DataSizeUnit[] VALUES = values();
+
+    // Indexed by the distance (in number of units) between two units. For example, MEGA is
+    // at distance 2 from BYTE. The limits are the largest values which can be scaled up by the
+    // given distance without overflow.
+    private static final long[] DECIMAL_RATIOS = {
+            1L,
+            1_000L,
+            1_000_000L,
+            1_000_000_000L,
+            1_000_000_000_000L,
+            1_000_000_000_000_000L,
+            1_000_000_000_000_000_000L
+    };
+    private static final long[] DECIMAL_LIMITS = {
+            Long.MAX_VALUE,
+            Long.MAX_VALUE / DECIMAL_RATIOS[1],
+            Long.MAX_VALUE / DECIMAL_RATIOS[2],
+            Long.MAX_VALUE / DECIMAL_RATIOS[3],
+            Long.MAX_VALUE / DECIMAL_RATIOS[4],
+            Long.MAX_VALUE / DECIMAL_RATIOS[5],
+            Long.MAX_VALUE / DECIMAL_RATIOS[6]
+    };
+    private static final int BINARY_SHIFT_PER_UNIT = 10;
+
     private final long decimalSize;
     private final long binarySize;
     private final int decimalExponentBase10;
@@ -145,6 +176,119 @@ public enum DataSizeUnit {
         return decimalExponentBase10;
     }
 
+    /**
+     * Converts an amount in this unit to bytes, saturating on overflow.
+     *
+     * <p>
+     * Example: {@code DataSizeUnit.MEGA.toBytes(64, true)} returns 67108864.
+     *
+     * @param amount    amount in this unit
+     * @param useBinary {@code true} to use binary calculation (1 kibibyte = 1024 bytes).
+     *                  {@code false} to use decimal calculation (1 kilobyte = 1000 bytes).
+     * @return amount in bytes, or {@code Long.MAX_VALUE} if it would positively overflow, or
+     *         {@code Long.MIN_VALUE} if it would negatively overflow.
+     */
+    public long toBytes(long amount, boolean useBinary) {
+        return scaleUp(amount, ordinal(), useBinary);
+    }
+
+    /**
+     * Converts an amount in this unit to bytes, throwing on overflow.
+     *
+     * @param amount    amount in this unit
+     * @param useBinary {@code true} to use binary calculation (1 kibibyte = 1024 bytes).
+     *                  {@code false} to use decimal calculation (1 kilobyte = 1000 bytes).
+     * @return amount in bytes
+     * @throws ArithmeticException if the result overflows a {@code long}
+     */
+    public long toBytesExact(long amount, boolean useBinary) {
+        if (useBinary) {
+            int shift = ordinal() * BINARY_SHIFT_PER_UNIT;
+            long bytes = amount << shift;
+            // The shift is exact only if shifting back gives the amount, which includes Long.MIN_VALUE
+            if ((bytes >> shift) != amount) {
+                throw new ArithmeticException("long overflow");
+            }
+            return bytes;
+        } else {
+            return Math.multiplyExact(amount, DECIMAL_RATIOS[ordinal()]);
+        }
+    }
+
+    /**
+     * Converts an amount in bytes to this unit. Conversion truncates towards zero.
+     *
+     * <p>
+     * Example: {@code DataSizeUnit.MEGA.fromBytes(67108865, true)} returns 64.
+     *
+     * @param bytes     amount in bytes
+     * @param useBinary {@code true} to use binary calculation (1 kibibyte = 1024 bytes).
+     *                  {@code false} to use decimal calculation (1 kilobyte = 1000 bytes).
+     * @return amount in this unit
+     */
+    public long fromBytes(long bytes, boolean useBinary) {
+        return scaleDown(bytes, ordinal(), useBinary);
+    }
+
+    /**
+     * Converts an amount in another unit to this unit. Conversion from a smaller unit to
+     * a larger unit truncates towards zero. Conversion from a larger unit to a smaller unit
+     * saturates on overflow.
+     *
+     * <p>
+     * Example: converting 3 gibibytes to mebibytes: {@code DataSizeUnit.MEGA.convert(3, DataSizeUnit.GIGA, true)}
+     * returns 3072.
+     *
+     * @param sourceAmount amount in {@code sourceUnit}
+     * @param sourceUnit   unit of {@code sourceAmount}
+     * @param useBinary    {@code true} to use binary calculation (1 kibibyte = 1024 bytes).
+     *                     {@code false} to use decimal calculation (1 kilobyte = 1000 bytes).
+     * @return amount in this unit, or {@code Long.MAX_VALUE} if it would positively overflow, or
+     *         {@code Long.MIN_VALUE} if it would negatively overflow.
+     */
+    public long convert(long sourceAmount, DataSizeUnit sourceUnit, boolean useBinary) {
+        int distance = sourceUnit.ordinal() - ordinal();
+        if (distance > 0) {
+            return scaleUp(sourceAmount, distance, useBinary);
+        } else if (distance < 0) {
+            return scaleDown(sourceAmount, -distance, useBinary);
+        }
+        return sourceAmount;
+    }
+
+    private static long scaleUp(long amount, int distance, boolean useBinary) {
+        if (useBinary) {
+            int shift = distance * BINARY_SHIFT_PER_UNIT;
+            long limit = Long.MAX_VALUE >> shift;
+            if (amount > limit) {
+                return Long.MAX_VALUE;
+            }
+            if (amount < -limit) {
+                return Long.MIN_VALUE;
+            }
+            return amount << shift;
+        } else {
+            long limit = DECIMAL_LIMITS[distance];
+            if (amount > limit) {
+                return Long.MAX_VALUE;
+            }
+            if (amount < -limit) {
+                return Long.MIN_VALUE;
+            }
+            return amount * DECIMAL_RATIOS[distance];
+        }
+    }
+
+    private static long scaleDown(long amount, int distance, boolean useBinary) {
+        if (useBinary) {
+            int shift = distance * BINARY_SHIFT_PER_UNIT;
+            // Arithmetic shift rounds towards negative infinity, division truncates towards zero
+            return (amount >= 0) ? (amount >> shift) : (amount / (1L << shift));
+        } else {
+            return amount / DECIMAL_RATIOS[distance];
+        }
+    }
+
     /**
      * Finds and returns the appropriate measurement unit for a size value.
      * @param value
@@ -153,13 +297,13 @@ public enum DataSizeUnit {
      * @return data size unit which is appropriate for measuring {@code value} in.
      */
     public static DataSizeUnit findUnitForValue(long value, boolean useBinary) {
-        int len = DataSizeUnit.values().length;
+        int len = VALUES.length;
         for (int i = 0; i < len - 1; i++) {
-            long size = (useBinary) ? DataSizeUnit.values()[i + 1].getBinarySize() : DataSizeUnit.values()[i + 1].getDecimalSize();
+            long size = (useBinary) ? VALUES[i + 1].getBinarySize() : VALUES[i + 1].getDecimalSize();
             if (value < size) {
-                return DataSizeUnit.values()[i];
+                return VALUES[i];
             }
         }
-        return DataSizeUnit.values()[len - 1];
+        return VALUES[len - 1];
     }
 }
@@ -316,6 +316,291 @@ public class DataSizeUnitSuffixes {
             "P",
             "E");
 
+    /**
+     * Unit suffixes for an amount of bits, using SI prefixes. These are recommended for use with decimal
+     * calculation.
+     *
+     * <p>
+     * Intended usage: DECIMAL calculation, {@link DataSizeFormatter.Builder#withBits(boolean) bits mode}.
+     *
+     * <p>
+     * <table class="striped" style="text-align:left; margin-left:2em">
+     * <caption style="display:none">SI bit suffixes</caption>
+     * <thead>
+     * <tr>
+     *   <th scope="col">Unit type<br>name
+     *   <th scope="col">Suffix
+     * </tr>
+     * </thead>
+     * <tbody>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#BYTE BYTE}</th>
+     *     <td>{@code " bit"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#KILO KILO}</th>
+     *     <td>{@code " kbit"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#MEGA MEGA}</th>
+     *     <td>{@code " Mbit"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#GIGA GIGA}</th>
+     *     <td>{@code " Gbit"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#TERA TERA}</th>
+     *     <td>{@code " Tbit"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#PETA PETA}</th>
+     *     <td>{@code " Pbit"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#EXA EXA}</th>
+     *     <td>{@code " Ebit"}</td>
+     *   </tr>
+     * </tbody>
+     * </table>
+     */
+    public static final DataSizeUnitSuffixes SUFFIXES_BITS_SI = new DataSizeUnitSuffixes(
+            " bit",
+            " kbit",
+            " Mbit",
+            " Gbit",
+            " Tbit",
+            " Pbit",
+            " Ebit");
+
+    /**
+     * Unit suffixes for an amount of bits, using ISO 80000 / IEC prefixes. These are recommended for use with binary
+     * calculation.
+     *
+     * <p>
+     * Intended usage: BINARY calculation, {@link DataSizeFormatter.Builder#withBits(boolean) bits mode}.
+     *
+     * <p>
+     * <table class="striped" style="text-align:left; margin-left:2em">
+     * <caption style="display:none">IEC bit suffixes</caption>
+     * <thead>
+     * <tr>
+     *   <th scope="col">Unit type<br>name
+     *   <th scope="col">Suffix
+     * </tr>
+     * </thead>
+     * <tbody>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#BYTE BYTE}</th>
+     *     <td>{@code " bit"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#KILO KILO}</th>
+     *     <td>{@code " Kibit"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#MEGA MEGA}</th>
+     *     <td>{@code " Mibit"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#GIGA GIGA}</th>
+     *     <td>{@code " Gibit"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#TERA TERA}</th>
+     *     <td>{@code " Tibit"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#PETA PETA}</th>
+     *     <td>{@code " Pibit"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#EXA EXA}</th>
+     *     <td>{@code " Eibit"}</td>
+     *   </tr>
+     * </tbody>
+     * </table>
+     */
+    public static final DataSizeUnitSuffixes SUFFIXES_BITS_IEC = new DataSizeUnitSuffixes(
+            " bit",
+            " Kibit",
+            " Mibit",
+            " Gibit",
+            " Tibit",
+            " Pibit",
+            " Eibit");
+
+    /**
+     * Unit suffixes for a bitrate (bits per second), using SI prefixes. Values must be supplied as bytes
+     * per second. These are recommended for use with decimal calculation.
+     *
+     * <p>
+     * Intended usage: DECIMAL calculation, {@link DataSizeFormatter.Builder#withBits(boolean) bits mode}.
+     *
+     * <p>
+     * <table class="striped" style="text-align:left; margin-left:2em">
+     * <caption style="display:none">SI bitrate suffixes</caption>
+     * <thead>
+     * <tr>
+     *   <th scope="col">Unit type<br>name
+     *   <th scope="col">Suffix
+     * </tr>
+     * </thead>
+     * <tbody>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#BYTE BYTE}</th>
+     *     <td>{@code " bit/s"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#KILO KILO}</th>
+     *     <td>{@code " kbit/s"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#MEGA MEGA}</th>
+     *     <td>{@code " Mbit/s"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#GIGA GIGA}</th>
+     *     <td>{@code " Gbit/s"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#TERA TERA}</th>
+     *     <td>{@code " Tbit/s"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#PETA PETA}</th>
+     *     <td>{@code " Pbit/s"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#EXA EXA}</th>
+     *     <td>{@code " Ebit/s"}</td>
+     *   </tr>
+     * </tbody>
+     * </table>
+     */
+    public static final DataSizeUnitSuffixes SUFFIXES_BITRATE_SI = new DataSizeUnitSuffixes(
+            " bit/s",
+            " kbit/s",
+            " Mbit/s",
+            " Gbit/s",
+            " Tbit/s",
+            " Pbit/s",
+            " Ebit/s");
+
+    /**
+     * Unit suffixes for a bitrate (bits per second), using ISO 80000 / IEC prefixes. Values must be supplied as bytes
+     * per second. These are recommended for use with binary calculation.
+     *
+     * <p>
+     * Intended usage: BINARY calculation, {@link DataSizeFormatter.Builder#withBits(boolean) bits mode}.
+     *
+     * <p>
+     * <table class="striped" style="text-align:left; margin-left:2em">
+     * <caption style="display:none">IEC bitrate suffixes</caption>
+     * <thead>
+     * <tr>
+     *   <th scope="col">Unit type<br>name
+     *   <th scope="col">Suffix
+     * </tr>
+     * </thead>
+     * <tbody>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#BYTE BYTE}</th>
+     *     <td>{@code " bit/s"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#KILO KILO}</th>
+     *     <td>{@code " Kibit/s"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#MEGA MEGA}</th>
+     *     <td>{@code " Mibit/s"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#GIGA GIGA}</th>
+     *     <td>{@code " Gibit/s"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#TERA TERA}</th>
+     *     <td>{@code " Tibit/s"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#PETA PETA}</th>
+     *     <td>{@code " Pibit/s"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#EXA EXA}</th>
+     *     <td>{@code " Eibit/s"}</td>
+     *   </tr>
+     * </tbody>
+     * </table>
+     */
+    public static final DataSizeUnitSuffixes SUFFIXES_BITRATE_IEC = new DataSizeUnitSuffixes(
+            " bit/s",
+            " Kibit/s",
+            " Mibit/s",
+            " Gibit/s",
+            " Tibit/s",
+            " Pibit/s",
+            " Eibit/s");
+
+    /**
+     * Unit suffixes for a bitrate in the compact style commonly used for network equipment, for example
+     * {@code "10 Gbps"}. Values must be supplied as bytes per second.
+     *
+     * <p>
+     * Intended usage: DECIMAL calculation, {@link DataSizeFormatter.Builder#withBits(boolean) bits mode}.
+     *
+     * <p>
+     * <table class="striped" style="text-align:left; margin-left:2em">
+     * <caption style="display:none">bps suffixes</caption>
+     * <thead>
+     * <tr>
+     *   <th scope="col">Unit type<br>name
+     *   <th scope="col">Suffix
+     * </tr>
+     * </thead>
+     * <tbody>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#BYTE BYTE}</th>
+     *     <td>{@code " bps"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#KILO KILO}</th>
+     *     <td>{@code " kbps"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#MEGA MEGA}</th>
+     *     <td>{@code " Mbps"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#GIGA GIGA}</th>
+     *     <td>{@code " Gbps"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#TERA TERA}</th>
+     *     <td>{@code " Tbps"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#PETA PETA}</th>
+     *     <td>{@code " Pbps"}</td>
+     *   </tr>
+     *   <tr>
+     *     <th scope="row">{@link DataSizeUnit#EXA EXA}</th>
+     *     <td>{@code " Ebps"}</td>
+     *   </tr>
+     * </tbody>
+     * </table>
+     */
+    public static final DataSizeUnitSuffixes SUFFIXES_BPS = new DataSizeUnitSuffixes(
+            " bps",
+            " kbps",
+            " Mbps",
+            " Gbps",
+            " Tbps",
+            " Pbps",
+            " Ebps");
+
 
     private final String[] suffixesArray;
 
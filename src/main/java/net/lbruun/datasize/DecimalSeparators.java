@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Lazy lookup of decimal separators by locale.
+ *
+ * <p>
+ * Looking up {@link DecimalFormatSymbols} is comparatively expensive as it pulls in the locale providers. Nothing in
+ * here is resolved until it is first asked for. The separator for the JVM's default locale is resolved through an
+ * initialization-on-demand holder and is therefore captured only once, on first use.
+ */
+final class DecimalSeparators {
+
+    private static final ConcurrentMap<Locale, Character> CACHE = new ConcurrentHashMap<>();
+
+    private DecimalSeparators() {
+    }
+
+    /**
+     * Gets the decimal separator for the JVM's default locale (format category).
+     */
+    static char forDefaultLocale() {
+        return DefaultLocaleHolder.DECIMAL_SEPARATOR;
+    }
+
+    /**
+     * Gets the decimal separator for a locale. Lookups are cached. Reads are lock-free.
+     */
+    static char forLocale(Locale locale) {
+        Objects.requireNonNull(locale, "locale must be supplied");
+        Character separator = CACHE.get(locale);
+        if (separator == null) {
+            separator = DecimalFormatSymbols.getInstance(locale).getDecimalSeparator();
+            Character existing = CACHE.putIfAbsent(locale, separator);
+            if (existing != null) {
+                separator = existing;
+            }
+        }
+        return separator;
+    }
+
+    private static class DefaultLocaleHolder {
+        private static final char DECIMAL_SEPARATOR = DecimalFormatSymbols.getInstance().getDecimalSeparator();
+    }
+}
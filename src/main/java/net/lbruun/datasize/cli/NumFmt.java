@@ -0,0 +1,511 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.cli;
+
+import net.lbruun.datasize.DataSizeFormatter;
+import net.lbruun.datasize.DataSizeParser;
+import net.lbruun.datasize.DataSizeUnitDecimals;
+import net.lbruun.datasize.DataSizeUnitSuffixes;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Command line tool, in the style of GNU {@code numfmt}, which converts one field on each line of
+ * its input to (or from) human-readable data size form. All other fields are passed through unchanged.
+ *
+ * <p>
+ * Example:
+ * <pre>
+ *   find . -type f -printf '%s %p\n' | java -jar datasize.jar --to=iec
+ * </pre>
+ *
+ * <p>
+ * The tool processes its input as bytes, in large buffers, without creating a {@code String} per line.
+ * Run with {@code --help} for the list of options.
+ */
+public final class NumFmt {
+
+    /**
+     * Exit code: success.
+     */
+    public static final int EXIT_OK = 0;
+    /**
+     * Exit code: invalid command line.
+     */
+    public static final int EXIT_USAGE = 1;
+    /**
+     * Exit code: invalid input (with {@code --invalid=abort}).
+     */
+    public static final int EXIT_INVALID_INPUT = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final String USAGE =
+            "Usage: java -jar datasize.jar [OPTION]...\n"
+            + "Reformat a numeric field on each line of standard input, writing to standard output.\n"
+            + "\n"
+            + "  --to=STYLE          format byte counts in human-readable form. STYLE is one of:\n"
+            + "                        iec      binary, GNU suffixes (1.9M)       [default]\n"
+            + "                        iec-i    binary, ISO-80000 suffixes (1.9 MiB)\n"
+            + "                        si       decimal, GNU SI suffixes (2.0M)\n"
+            + "                        si-b     decimal, SI suffixes (2.0 MB)\n"
+            + "                        customary  binary, customary suffixes (1.9 MB)\n"
+            + "  --from=STYLE        parse human-readable sizes into byte counts. STYLE is one of:\n"
+            + "                        auto     'Ki', 'Mi', .. are binary, 'K', 'M', .. are decimal\n"
+            + "                        iec      'K', 'M', .. (and 'Ki', 'Mi', ..) are binary\n"
+            + "                        si       same as auto\n"
+            + "  --suffixes=SET      override suffixes: SI, ISO80000, CUSTOMARY, GNU or GNU_SI\n"
+            + "  --binary            use binary calculation (1 KiB = 1024 bytes)\n"
+            + "  --decimal           use decimal calculation (1 kB = 1000 bytes)\n"
+            + "  --decimals=K,M,G,T,P,E  number of decimals per unit, e.g. 0,1,2,3,3,1\n"
+            + "  --decimal-separator=C   decimal separator, default '.'\n"
+            + "  --field=N           field to convert, counting from 1, default 1\n"
+            + "  -d, --delimiter=X   use X as field delimiter, default is runs of blanks\n"
+            + "  --invalid=MODE      on invalid input: 'abort' (default) or 'ignore' (pass through)\n"
+            + "  --help              display this help and exit\n";
+
+    private final DataSizeFormatter formatter;
+    private final boolean parseMode;
+    private final boolean parseBinary;
+    private final char decimalSeparator;
+    private final int field;
+    private final int delimiter;   // -1 means runs of blanks
+    private final boolean abortOnInvalid;
+
+    private long lineNo;
+
+    private NumFmt(DataSizeFormatter formatter, boolean parseMode, boolean parseBinary, char decimalSeparator,
+                   int field, int delimiter, boolean abortOnInvalid) {
+        this.formatter = formatter;
+        this.parseMode = parseMode;
+        this.parseBinary = parseBinary;
+        this.decimalSeparator = decimalSeparator;
+        this.field = field;
+        this.delimiter = delimiter;
+        this.abortOnInvalid = abortOnInvalid;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int exitCode = run(args,
+                new FileInputStream(FileDescriptor.in),
+                new FileOutputStream(FileDescriptor.out),
+                System.err);
+        if (exitCode != EXIT_OK) {
+            System.exit(exitCode);
+        }
+    }
+
+    /**
+     * Runs the tool.
+     *
+     * @param args command line arguments
+     * @param in   input
+     * @param out  output. Is flushed, but not closed.
+     * @param err  where to print error messages
+     * @return exit code
+     */
+    public static int run(String[] args, InputStream in, OutputStream out, PrintStream err) throws IOException {
+        NumFmt numFmt;
+        try {
+            numFmt = fromArgs(args);
+        } catch (IllegalArgumentException ex) {
+            err.println("datasize: " + ex.getMessage());
+            err.print(USAGE);
+            return EXIT_USAGE;
+        }
+        if (numFmt == null) {
+            err.print(USAGE);
+            return EXIT_OK;
+        }
+        return numFmt.process(in, out, err);
+    }
+
+    /**
+     * Parses command line arguments. Returns {@code null} if help was requested.
+     */
+    private static NumFmt fromArgs(String[] args) {
+        String to = null;
+        String from = null;
+        DataSizeUnitSuffixes suffixes = null;
+        Boolean binary = null;
+        DataSizeUnitDecimals decimals = DataSizeUnitDecimals.DEFAULT;
+        char decimalSeparator = '.';
+        int field = 1;
+        int delimiter = -1;
+        boolean abortOnInvalid = true;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--help") || arg.equals("-h")) {
+                return null;
+            } else if (arg.startsWith("--to=")) {
+                to = value(arg);
+            } else if (arg.startsWith("--from=")) {
+                from = value(arg);
+            } else if (arg.startsWith("--suffixes=")) {
+                suffixes = suffixesByName(value(arg));
+            } else if (arg.equals("--binary")) {
+                binary = Boolean.TRUE;
+            } else if (arg.equals("--decimal")) {
+                binary = Boolean.FALSE;
+            } else if (arg.startsWith("--decimals=")) {
+                decimals = decimalsFromList(value(arg));
+            } else if (arg.startsWith("--decimal-separator=")) {
+                decimalSeparator = singleAsciiChar(value(arg), "decimal separator");
+            } else if (arg.startsWith("--field=")) {
+                field = parsePositiveInt(value(arg), "field");
+            } else if (arg.startsWith("--delimiter=")) {
+                delimiter = singleAsciiChar(value(arg), "delimiter");
+            } else if (arg.equals("-d") && i + 1 < args.length) {
+                delimiter = singleAsciiChar(args[++i], "delimiter");
+            } else if (arg.startsWith("--invalid=")) {
+                String mode = value(arg);
+                if (mode.equals("abort")) {
+                    abortOnInvalid = true;
+                } else if (mode.equals("ignore")) {
+                    abortOnInvalid = false;
+                } else {
+                    throw new IllegalArgumentException("invalid mode for --invalid: '" + mode + "'");
+                }
+            } else {
+                throw new IllegalArgumentException("unrecognized option '" + arg + "'");
+            }
+        }
+        if (to != null && from != null) {
+            throw new IllegalArgumentException("--to and --from are mutually exclusive");
+        }
+
+        if (from != null) {
+            boolean parseBinary;
+            if (from.equals("auto") || from.equals("si")) {
+                parseBinary = false;
+            } else if (from.equals("iec")) {
+                parseBinary = true;
+            } else {
+                throw new IllegalArgumentException("invalid style for --from: '" + from + "'");
+            }
+            if (binary != null) {
+                parseBinary = binary;
+            }
+            return new NumFmt(null, true, parseBinary, decimalSeparator, field, delimiter, abortOnInvalid);
+        }
+
+        boolean useBinary;
+        DataSizeUnitSuffixes styleSuffixes;
+        String style = (to == null) ? "iec" : to;
+        switch (style) {
+            case "iec":
+                useBinary = true;
+                styleSuffixes = DataSizeUnitSuffixes.SUFFIXES_GNU;
+                break;
+            case "iec-i":
+                useBinary = true;
+                styleSuffixes = DataSizeUnitSuffixes.SUFFIXES_ISO80000;
+                break;
+            case "si":
+                useBinary = false;
+                styleSuffixes = DataSizeUnitSuffixes.SUFFIXES_GNU_SI;
+                break;
+            case "si-b":
+                useBinary = false;
+                styleSuffixes = DataSizeUnitSuffixes.SUFFIXES_SI;
+                break;
+            case "customary":
+                useBinary = true;
+                styleSuffixes = DataSizeUnitSuffixes.SUFFIXES_CUSTOMARY;
+                break;
+            default:
+                throw new IllegalArgumentException("invalid style for --to: '" + style + "'");
+        }
+        DataSizeFormatter formatter = DataSizeFormatter.builder()
+                .withBinary((binary != null) ? binary : useBinary)
+                .withSuffixes((suffixes != null) ? suffixes : styleSuffixes)
+                .withDecimals(decimals)
+                .withDecimalSeparator(decimalSeparator)
+                .build();
+        return new NumFmt(formatter, false, false, decimalSeparator, field, delimiter, abortOnInvalid);
+    }
+
+    /**
+     * Processes all input. Lines are processed in place in the input buffer. A line which is incomplete at
+     * the end of the buffer is moved to the start of the buffer before the next read. The buffer is grown
+     * only if a single line does not fit in it.
+     */
+    private int process(InputStream in, OutputStream out, PrintStream err) throws IOException {
+        byte[] inBuf = new byte[BUFFER_SIZE];
+        byte[] outBuf = new byte[BUFFER_SIZE];
+        int outPos = 0;
+        int filled = 0;
+        boolean eof = false;
+        lineNo = 0;
+
+        while (!eof || filled > 0) {
+            if (!eof) {
+                if (filled == inBuf.length) {
+                    inBuf = Arrays.copyOf(inBuf, inBuf.length * 2);
+                }
+                int n = in.read(inBuf, filled, inBuf.length - filled);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    filled += n;
+                }
+            }
+            int lineStart = 0;
+            while (true) {
+                int lineEnd = indexOf(inBuf, (byte) '\n', lineStart, filled);
+                if (lineEnd < 0) {
+                    if (eof && lineStart < filled) {
+                        lineEnd = filled;  // last line without line terminator
+                    } else {
+                        break;
+                    }
+                }
+                lineNo++;
+                // Worst case a line grows by the max formatted length (or 19 digits when parsing)
+                int needed = (lineEnd - lineStart) + 1 + ((formatter != null) ? formatter.getMaxFormattedLength() : 20);
+                if (outPos + needed > outBuf.length) {
+                    out.write(outBuf, 0, outPos);
+                    outPos = 0;
+                    if (needed > outBuf.length) {
+                        outBuf = new byte[needed];
+                    }
+                }
+                int result = processLine(inBuf, lineStart, lineEnd, outBuf, outPos);
+                if (result < 0) {
+                    out.write(outBuf, 0, outPos);
+                    out.flush();
+                    err.println("datasize: invalid number in field " + field + " on line " + lineNo);
+                    return EXIT_INVALID_INPUT;
+                }
+                outPos = result;
+                if (lineEnd < filled) {
+                    outBuf[outPos++] = '\n';
+                }
+                lineStart = Math.min(lineEnd + 1, filled);
+                if (lineStart >= filled) {
+                    break;
+                }
+            }
+            // Move the incomplete line (if any) to the start of the buffer
+            int remaining = filled - lineStart;
+            if (remaining > 0 && lineStart > 0) {
+                System.arraycopy(inBuf, lineStart, inBuf, 0, remaining);
+            }
+            filled = remaining;
+            if (eof && filled == 0) {
+                break;
+            }
+        }
+        out.write(outBuf, 0, outPos);
+        out.flush();
+        return EXIT_OK;
+    }
+
+    /**
+     * Copies a line to the output while converting the selected field.
+     *
+     * @return new output position or -1 if the field is invalid (and {@code --invalid=abort})
+     */
+    private int processLine(byte[] in, int start, int end, byte[] out, int outPos) {
+        int fieldStart;
+        int fieldEnd;
+        if (delimiter < 0) {
+            // Fields are separated by runs of blanks. Leading blanks are not a field.
+            int i = start;
+            int f = 0;
+            fieldStart = -1;
+            fieldEnd = -1;
+            while (i < end) {
+                while (i < end && isBlank(in[i])) {
+                    i++;
+                }
+                if (i == end) {
+                    break;
+                }
+                int s = i;
+                while (i < end && !isBlank(in[i])) {
+                    i++;
+                }
+                if (++f == field) {
+                    fieldStart = s;
+                    fieldEnd = i;
+                    break;
+                }
+            }
+        } else {
+            int f = 1;
+            int s = start;
+            while (f < field) {
+                int next = indexOf(in, (byte) delimiter, s, end);
+                if (next < 0) {
+                    break;
+                }
+                s = next + 1;
+                f++;
+            }
+            if (f == field) {
+                int e = indexOf(in, (byte) delimiter, s, end);
+                fieldStart = s;
+                fieldEnd = (e < 0) ? end : e;
+            } else {
+                fieldStart = -1;
+                fieldEnd = -1;
+            }
+        }
+
+        if (fieldStart < 0 || fieldStart == fieldEnd) {
+            // No such field: pass through
+            return copy(in, start, end, out, outPos);
+        }
+
+        int pos = copy(in, start, fieldStart, out, outPos);
+        int converted = convertField(in, fieldStart, fieldEnd, out, pos);
+        if (converted < 0) {
+            if (abortOnInvalid) {
+                return -1;
+            }
+            converted = copy(in, fieldStart, fieldEnd, out, pos);
+        }
+        return copy(in, fieldEnd, end, out, converted);
+    }
+
+    private int convertField(byte[] in, int start, int end, byte[] out, int outPos) {
+        if (parseMode) {
+            long bytes;
+            try {
+                bytes = DataSizeParser.parse(in, start, end - start, parseBinary, decimalSeparator);
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+            return putDigits(bytes, out, outPos);
+        } else {
+            long value = 0;
+            for (int i = start; i < end; i++) {
+                int d = in[i] - '0';
+                if (d < 0 || d > 9 || value > (Long.MAX_VALUE - d) / 10) {
+                    return -1;
+                }
+                value = (value * 10) + d;
+            }
+            return formatter.formatTo(value, out, outPos);
+        }
+    }
+
+    private static int putDigits(long value, byte[] out, int pos) {
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = pos + digits;
+        for (int i = end - 1; i >= pos; i--) {
+            out[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        return end;
+    }
+
+    private static int copy(byte[] in, int start, int end, byte[] out, int outPos) {
+        int len = end - start;
+        System.arraycopy(in, start, out, outPos, len);
+        return outPos + len;
+    }
+
+    private static int indexOf(byte[] buf, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static String value(String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+
+    private static char singleAsciiChar(String s, String what) {
+        if (s.length() != 1 || s.charAt(0) > 127) {
+            throw new IllegalArgumentException(what + " must be a single ASCII character");
+        }
+        return s.charAt(0);
+    }
+
+    private static int parsePositiveInt(String s, String what) {
+        try {
+            int v = Integer.parseInt(s);
+            if (v < 1) {
+                throw new IllegalArgumentException(what + " must be 1 or more");
+            }
+            return v;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("invalid " + what + ": '" + s + "'");
+        }
+    }
+
+    private static DataSizeUnitSuffixes suffixesByName(String name) {
+        switch (name.toUpperCase(Locale.ROOT)) {
+            case "SI":
+                return DataSizeUnitSuffixes.SUFFIXES_SI;
+            case "ISO80000":
+                return DataSizeUnitSuffixes.SUFFIXES_ISO80000;
+            case "CUSTOMARY":
+                return DataSizeUnitSuffixes.SUFFIXES_CUSTOMARY;
+            case "GNU":
+                return DataSizeUnitSuffixes.SUFFIXES_GNU;
+            case "GNU_SI":
+                return DataSizeUnitSuffixes.SUFFIXES_GNU_SI;
+            default:
+                throw new IllegalArgumentException("unknown suffixes set '" + name + "'");
+        }
+    }
+
+    private static DataSizeUnitDecimals decimalsFromList(String list) {
+        String[] parts = list.split(",");
+        if (parts.length != 6) {
+            throw new IllegalArgumentException("--decimals requires 6 comma-separated values (K,M,G,T,P,E)");
+        }
+        int[] d = new int[6];
+        for (int i = 0; i < 6; i++) {
+            try {
+                d[i] = Integer.parseInt(parts[i].trim());
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("invalid value in --decimals: '" + parts[i] + "'");
+            }
+        }
+        return DataSizeUnitDecimals.builder()
+                .withKilobyteDecimals(d[0])
+                .withMegabyteDecimals(d[1])
+                .withGigabyteDecimals(d[2])
+                .withTerabyteDecimals(d[3])
+                .withPetabyteDecimals(d[4])
+                .withExabyteDecimals(d[5])
+                .build();
+    }
+}
@@ -0,0 +1,728 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.collect;
+
+import net.lbruun.datasize.DataSizeFormatter;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Concurrent map from {@code long} key to accumulated {@code long} size, for example
+ * bytes stored per tenant.
+ *
+ * <p>
+ * Keys and values are held in primitive arrays using open addressing (linear probing), so
+ * there is no {@code Long} or {@code AtomicLong} object per entry. The map is split into
+ * stripes, selected by key hash, each with its own arrays and its own {@link StampedLock}.
+ * Updates lock a single stripe. Lookups use optimistic reads and only fall back to
+ * locking if a concurrent update to the same stripe interferes.
+ *
+ * <p>
+ * Values saturate at {@code Long.MAX_VALUE} and {@code Long.MIN_VALUE} rather than overflow.
+ * A key which has never been added has value 0.
+ *
+ * <p>
+ * Bulk operations ({@link #size()}, {@link #total()}, {@link #forEach(EntryConsumer)},
+ * {@link #snapshot()}, {@link #topN(int)}, {@link #countAtLeast(long)}) are consistent per stripe
+ * but not across stripes: an update made concurrently with a bulk operation may or may not be
+ * reflected. This is the same guarantee as given by the iterators of {@code ConcurrentHashMap}.
+ */
+public final class ConcurrentSizeMap {
+
+    /**
+     * Default number of stripes.
+     */
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 64;
+
+    private static final int MAX_STRIPES = 1 << 16;
+    private static final int MIN_TABLE_SIZE = 8;
+    private static final int MAX_TABLE_SIZE = 1 << 30;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    /**
+     * Creates a map with default capacity and concurrency level.
+     */
+    public ConcurrentSizeMap() {
+        this(0, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates a map sized for the expected number of keys.
+     *
+     * @param expectedKeys expected number of keys, the map grows beyond this if needed
+     */
+    public ConcurrentSizeMap(int expectedKeys) {
+        this(expectedKeys, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates a map sized for the expected number of keys and the expected number
+     * of concurrently updating threads.
+     *
+     * @param expectedKeys     expected number of keys, the map grows beyond this if needed
+     * @param concurrencyLevel number of stripes, rounded up to a power of two
+     */
+    public ConcurrentSizeMap(int expectedKeys, int concurrencyLevel) {
+        if (expectedKeys < 0) {
+            throw new IllegalArgumentException("expectedKeys must be >= 0");
+        }
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("concurrencyLevel must be >= 1");
+        }
+        int n = Integer.highestOneBit((Math.min(concurrencyLevel, MAX_STRIPES) << 1) - 1);
+        int perStripe = expectedKeys / n + 1;
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+        this.stripeMask = n - 1;
+    }
+
+    /**
+     * Adds to the value of a key, creating the entry if absent.
+     *
+     * @param key   key
+     * @param delta amount to add, may be negative
+     * @return the new value
+     */
+    public long add(long key, long delta) {
+        long h = hash(key);
+        Stripe stripe = stripeFor(h);
+        long stamp = stripe.lock.writeLock();
+        try {
+            return stripe.add(key, (int) h, delta);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Sets the value of a key, creating the entry if absent.
+     *
+     * @return the previous value, or 0 if the key was absent
+     */
+    public long put(long key, long value) {
+        long h = hash(key);
+        Stripe stripe = stripeFor(h);
+        long stamp = stripe.lock.writeLock();
+        try {
+            return stripe.put(key, (int) h, value);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @return the value of the removed entry, or 0 if the key was absent
+     */
+    public long remove(long key) {
+        long h = hash(key);
+        Stripe stripe = stripeFor(h);
+        long stamp = stripe.lock.writeLock();
+        try {
+            return stripe.remove(key, (int) h);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @return value, or 0 if the key is absent
+     */
+    public long get(long key) {
+        long h = hash(key);
+        Stripe stripe = stripeFor(h);
+        StampedLock lock = stripe.lock;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            long value = stripe.get(key, (int) h);
+            if (lock.validate(stamp)) {
+                return value;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return stripe.get(key, (int) h);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Checks if the map has an entry for a key.
+     */
+    public boolean containsKey(long key) {
+        long h = hash(key);
+        Stripe stripe = stripeFor(h);
+        StampedLock lock = stripe.lock;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            boolean found = stripe.contains(key, (int) h);
+            if (lock.validate(stamp)) {
+                return found;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return stripe.contains(key, (int) h);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Gets the number of entries.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                size += stripe.size + (stripe.hasZeroKey ? 1 : 0);
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Checks if the map has no entries.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Gets the sum of all values, saturating at {@code Long.MAX_VALUE} and
+     * {@code Long.MIN_VALUE}.
+     */
+    public long total() {
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                long[] keys = stripe.keys;
+                long[] values = stripe.values;
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != 0) {
+                        total = addSaturated(total, values[i]);
+                    }
+                }
+                if (stripe.hasZeroKey) {
+                    total = addSaturated(total, stripe.zeroValue);
+                }
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.writeLock();
+            try {
+                stripe.clear();
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Performs an action for each entry. Each stripe is copied while locked, and the
+     * action is invoked on the copy, so the action may safely update this map.
+     *
+     * @param action action to perform
+     */
+    public void forEach(EntryConsumer action) {
+        Objects.requireNonNull(action, "action cannot be null");
+        long[] keys = new long[0];
+        long[] values = new long[0];
+        for (Stripe stripe : stripes) {
+            int n;
+            long stamp = stripe.lock.readLock();
+            try {
+                int required = stripe.size + 1;
+                if (keys.length < required) {
+                    keys = new long[required];
+                    values = new long[required];
+                }
+                n = stripe.copyTo(keys, values, 0, Long.MIN_VALUE);
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+            for (int i = 0; i < n; i++) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot of all entries.
+     */
+    public Snapshot snapshot() {
+        return snapshot(Long.MIN_VALUE);
+    }
+
+    /**
+     * Takes a snapshot of the entries with a value of at least {@code threshold},
+     * for example the tenants above a quota.
+     *
+     * @param threshold minimum value, inclusive
+     */
+    public Snapshot snapshot(long threshold) {
+        long[] keys = new long[16];
+        long[] values = new long[16];
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                int required = count + stripe.size + 1;
+                if (keys.length < required) {
+                    int newLength = Math.max(required, keys.length + (keys.length >> 1));
+                    keys = Arrays.copyOf(keys, newLength);
+                    values = Arrays.copyOf(values, newLength);
+                }
+                count = stripe.copyTo(keys, values, count, threshold);
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return new Snapshot(keys, values, count);
+    }
+
+    /**
+     * Counts the entries with a value of at least {@code threshold}.
+     *
+     * @param threshold minimum value, inclusive
+     */
+    public int countAtLeast(long threshold) {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                long[] keys = stripe.keys;
+                long[] values = stripe.values;
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != 0 && values[i] >= threshold) {
+                        count++;
+                    }
+                }
+                if (stripe.hasZeroKey && stripe.zeroValue >= threshold) {
+                    count++;
+                }
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the {@code n} entries with the largest values. A key object is only created for
+     * entries which are (at least temporarily) among the largest.
+     *
+     * @param n number of entries
+     */
+    public SizeTopK<Long> topN(int n) {
+        SizeTopK<Long> topK = new SizeTopK<>(n);
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                long[] keys = stripe.keys;
+                long[] values = stripe.values;
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != 0 && topK.accepts(values[i])) {
+                        topK.offer(values[i], keys[i]);
+                    }
+                }
+                if (stripe.hasZeroKey && topK.accepts(stripe.zeroValue)) {
+                    topK.offer(stripe.zeroValue, 0L);
+                }
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return topK;
+    }
+
+    /**
+     * Appends the value of a key and a limit, such as {@code "4.20 GiB of 5.00 GiB"}.
+     *
+     * @param sb        where to append
+     * @param key       key
+     * @param limit     limit, for example the quota of the tenant
+     * @param formatter formatter for both the value and the limit
+     * @return {@code sb}
+     */
+    public StringBuilder appendUsage(StringBuilder sb, long key, long limit, DataSizeFormatter formatter) {
+        Objects.requireNonNull(formatter, "formatter cannot be null");
+        formatter.appendTo(sb, get(key));
+        sb.append(" of ");
+        return formatter.appendTo(sb, limit);
+    }
+
+    /**
+     * Formats the value of a key and a limit, such as {@code "4.20 GiB of 5.00 GiB"}.
+     *
+     * @see #appendUsage(StringBuilder, long, long, DataSizeFormatter)
+     */
+    public String formatUsage(long key, long limit, DataSizeFormatter formatter) {
+        Objects.requireNonNull(formatter, "formatter cannot be null");
+        return appendUsage(new StringBuilder(2 * formatter.getMaxFormattedLength() + 4), key, limit, formatter).toString();
+    }
+
+    private Stripe stripeFor(long h) {
+        return stripes[(int) (h >>> 32) & stripeMask];
+    }
+
+    /**
+     * Spreads the key. The upper 32 bits select the stripe, the lower 32 bits the slot.
+     */
+    private static long hash(long key) {
+        long h = key * 0x9E37_79B9_7F4A_7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    static long addSaturated(long a, long b) {
+        long r = a + b;
+        if (((a ^ r) & (b ^ r)) < 0) {
+            return (a < 0) ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return r;
+    }
+
+    /**
+     * Receives a key and its value.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    /**
+     * Point-in-time copy of the entries of a {@link ConcurrentSizeMap}. Entries are in
+     * no particular order.
+     */
+    public static final class Snapshot {
+        private final long[] keys;
+        private final long[] values;
+        private final int count;
+
+        private Snapshot(long[] keys, long[] values, int count) {
+            this.keys = keys;
+            this.values = values;
+            this.count = count;
+        }
+
+        /**
+         * Gets the number of entries.
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Gets the key of the entry at {@code index}.
+         */
+        public long getKey(int index) {
+            checkIndex(index);
+            return keys[index];
+        }
+
+        /**
+         * Gets the value of the entry at {@code index}.
+         */
+        public long getValue(int index) {
+            checkIndex(index);
+            return values[index];
+        }
+
+        /**
+         * Gets the sum of all values, saturating at {@code Long.MAX_VALUE} and
+         * {@code Long.MIN_VALUE}.
+         */
+        public long total() {
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                total = addSaturated(total, values[i]);
+            }
+            return total;
+        }
+
+        /**
+         * Performs an action for each entry.
+         */
+        public void forEach(EntryConsumer action) {
+            Objects.requireNonNull(action, "action cannot be null");
+            for (int i = 0; i < count; i++) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+
+        /**
+         * Finds the {@code n} entries with the largest values.
+         */
+        public SizeTopK<Long> topN(int n) {
+            SizeTopK<Long> topK = new SizeTopK<>(n);
+            for (int i = 0; i < count; i++) {
+                if (topK.accepts(values[i])) {
+                    topK.offer(values[i], keys[i]);
+                }
+            }
+            return topK;
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + count);
+            }
+        }
+    }
+
+    /**
+     * Open addressing table with linear probing. Key 0 marks a free slot, so an entry
+     * for key 0 is held outside of the table.
+     *
+     * <p>
+     * All methods must be called with the lock held, except {@link #get(long, int)} and
+     * {@link #contains(long, int)} which are also called optimistically without a lock.
+     * These must therefore tolerate arrays in an inconsistent state: they must not
+     * throw or loop forever.
+     */
+    private static final class Stripe {
+        final StampedLock lock = new StampedLock();
+        long[] keys;
+        long[] values;
+        int size;       // number of entries in the table, excluding key 0
+        int resizeAt;
+        boolean hasZeroKey;
+        long zeroValue;
+
+        Stripe(int expectedKeys) {
+            allocate(tableSizeFor(expectedKeys));
+        }
+
+        long get(long key, int h) {
+            if (key == 0) {
+                return hasZeroKey ? zeroValue : 0;
+            }
+            long[] k = keys;
+            long[] v = values;
+            if (k.length != v.length) {
+                return 0;  // torn read during resize, will fail validation
+            }
+            int i = slot(k, key, h);
+            return (i >= 0) ? v[i] : 0;
+        }
+
+        boolean contains(long key, int h) {
+            if (key == 0) {
+                return hasZeroKey;
+            }
+            return slot(keys, key, h) >= 0;
+        }
+
+        long add(long key, int h, long delta) {
+            if (key == 0) {
+                hasZeroKey = true;
+                return zeroValue = addSaturated(zeroValue, delta);
+            }
+            int i = slotForInsert(key, h);
+            return values[i] = addSaturated(values[i], delta);
+        }
+
+        long put(long key, int h, long value) {
+            if (key == 0) {
+                long previous = zeroValue;
+                hasZeroKey = true;
+                zeroValue = value;
+                return previous;
+            }
+            int i = slotForInsert(key, h);
+            long previous = values[i];
+            values[i] = value;
+            return previous;
+        }
+
+        long remove(long key, int h) {
+            if (key == 0) {
+                long previous = zeroValue;
+                hasZeroKey = false;
+                zeroValue = 0;
+                return previous;
+            }
+            int i = slot(keys, key, h);
+            if (i < 0) {
+                return 0;
+            }
+            long previous = values[i];
+            deleteAt(i);
+            size--;
+            return previous;
+        }
+
+        void clear() {
+            Arrays.fill(keys, 0);
+            Arrays.fill(values, 0);
+            size = 0;
+            hasZeroKey = false;
+            zeroValue = 0;
+        }
+
+        /**
+         * Copies the entries with a value of at least {@code threshold} to the arrays,
+         * starting at {@code offset}.
+         *
+         * @return offset after the last entry copied
+         */
+        int copyTo(long[] dstKeys, long[] dstValues, int offset, long threshold) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && values[i] >= threshold) {
+                    dstKeys[offset] = keys[i];
+                    dstValues[offset++] = values[i];
+                }
+            }
+            if (hasZeroKey && zeroValue >= threshold) {
+                dstKeys[offset] = 0;
+                dstValues[offset++] = zeroValue;
+            }
+            return offset;
+        }
+
+        /**
+         * Finds the slot of a key.
+         *
+         * @return slot, or -1 if the key is absent
+         */
+        private static int slot(long[] k, long key, int h) {
+            int mask = k.length - 1;
+            int i = h & mask;
+            for (int probes = 0; probes < k.length; probes++) {
+                long current = k[i];
+                if (current == key) {
+                    return i;
+                }
+                if (current == 0) {
+                    return -1;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Finds the slot of a key, inserting the key with value 0 if absent.
+         */
+        private int slotForInsert(long key, int h) {
+            int mask = keys.length - 1;
+            int i = h & mask;
+            while (true) {
+                long current = keys[i];
+                if (current == key) {
+                    return i;
+                }
+                if (current == 0) {
+                    break;
+                }
+                i = (i + 1) & mask;
+            }
+            if (size >= resizeAt) {
+                resize();
+                return slotForInsert(key, h);
+            }
+            keys[i] = key;
+            values[i] = 0;
+            size++;
+            return i;
+        }
+
+        /**
+         * Deletes the entry at a slot by shifting back any later entry of the same probe
+         * sequence, so that lookups need no tombstones.
+         */
+        private void deleteAt(int i) {
+            int mask = keys.length - 1;
+            int gap = i;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                long key = keys[j];
+                if (key == 0) {
+                    break;
+                }
+                int home = (int) hash(key) & mask;
+                // Move the entry at j into the gap if its home slot is not within (gap, j]
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    keys[gap] = key;
+                    values[gap] = values[j];
+                    gap = j;
+                }
+            }
+            keys[gap] = 0;
+            values[gap] = 0;
+        }
+
+        private void resize() {
+            if (keys.length >= MAX_TABLE_SIZE) {
+                throw new IllegalStateException("Stripe is full");
+            }
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            allocate(oldKeys.length << 1);
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                long key = oldKeys[i];
+                if (key != 0) {
+                    int j = (int) hash(key) & mask;
+                    while (keys[j] != 0) {
+                        j = (j + 1) & mask;
+                    }
+                    keys[j] = key;
+                    values[j] = oldValues[i];
+                }
+            }
+        }
+
+        private void allocate(int tableSize) {
+            values = new long[tableSize];
+            keys = new long[tableSize];
+            resizeAt = (tableSize >> 1) + (tableSize >> 2);  // load factor 0.75
+        }
+
+        private static int tableSizeFor(int expectedKeys) {
+            long required = ((long) expectedKeys << 2) / 3 + 1;
+            if (required >= MAX_TABLE_SIZE) {
+                return MAX_TABLE_SIZE;
+            }
+            return Math.max(MIN_TABLE_SIZE, Integer.highestOneBit((int) required - 1) << 1);
+        }
+    }
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.collect;
+
+import net.lbruun.datasize.DataSizeFormatter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Append-only column of size values stored outside of the Java heap.
+ *
+ * <p>
+ * Intended for very large numbers of values, for example the object sizes of an object store
+ * inventory, where neither a {@code DataSize} object per value nor a {@code long[]} is an option: the
+ * former because of the per-object overhead, the latter because an array is limited to 2<sup>31</sup>
+ * elements and is scanned by the garbage collector.
+ *
+ * <p>
+ * Values are stored in fixed-size chunks, each a direct {@code ByteBuffer}. Indexes are {@code long}
+ * so the column is not limited to 2<sup>31</sup> values. A column may alternatively be backed by a
+ * memory-mapped file, see {@link #mapped(Path, int) mapped()}. Such a column can be re-opened later, for
+ * example to re-render a report, without reloading the values from their original source.
+ *
+ * <p>
+ * Appending is not thread-safe, but the aggregation methods ({@link #stats()}, {@link #countAtLeast(long)})
+ * process chunks in parallel.
+ *
+ * <p>
+ * Memory of a column which is not file-backed is released when the column is garbage collected.
+ * File-backed columns should be {@link #close() closed}.
+ */
+public final class OffHeapSizeColumn implements Closeable {
+
+    /**
+     * Default number of values per chunk (8 MiB per chunk).
+     */
+    public static final int DEFAULT_CHUNK_CAPACITY = 1 << 20;
+
+    private static final long MAGIC = 0x4453_5A43_4F4C_3031L;  // "DSZCOL01"
+    private static final int HEADER_BYTES = 64;
+    private static final int HEADER_MAGIC_POS = 0;
+    private static final int HEADER_CHUNK_CAPACITY_POS = 8;
+    private static final int HEADER_COUNT_POS = 16;
+
+    private final int chunkShift;
+    private final int chunkMask;
+    private final List<LongBuffer> chunks = new ArrayList<>();
+    private final List<MappedByteBuffer> mappedChunks = new ArrayList<>();  // empty if not file-backed
+    private final FileChannel channel;   // null if not file-backed
+    private final MappedByteBuffer header;  // null if not file-backed
+    private long count;
+
+    private OffHeapSizeColumn(int chunkCapacity, FileChannel channel, MappedByteBuffer header) {
+        if (chunkCapacity < 1 || Integer.bitCount(chunkCapacity) != 1 || chunkCapacity > (1 << 27)) {
+            throw new IllegalArgumentException("chunkCapacity must be a power of two between 1 and 2^27");
+        }
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkCapacity);
+        this.chunkMask = chunkCapacity - 1;
+        this.channel = channel;
+        this.header = header;
+    }
+
+    /**
+     * Creates a column backed by direct memory, with {@link #DEFAULT_CHUNK_CAPACITY default chunk capacity}.
+     */
+    public static OffHeapSizeColumn allocateDirect() {
+        return allocateDirect(DEFAULT_CHUNK_CAPACITY);
+    }
+
+    /**
+     * Creates a column backed by direct memory.
+     *
+     * @param chunkCapacity number of values per chunk, must be a power of two no larger than 2<sup>27</sup>.
+     *                      Memory is allocated in chunks of this size.
+     */
+    public static OffHeapSizeColumn allocateDirect(int chunkCapacity) {
+        return new OffHeapSizeColumn(chunkCapacity, null, null);
+    }
+
+    /**
+     * Opens a column backed by a memory-mapped file. If the file exists and is non-empty,
+     * its values are made available without copying. Otherwise a new column file is created.
+     *
+     * @param file          file to use
+     * @param chunkCapacity number of values per chunk, must be a power of two no larger than 2<sup>27</sup>.
+     *                      Ignored if the file already exists, in which case the chunk capacity which
+     *                      was used when the file was created is used.
+     * @throws IOException if the file cannot be opened or is not a column file
+     */
+    public static OffHeapSizeColumn mapped(Path file, int chunkCapacity) throws IOException {
+        Objects.requireNonNull(file, "file must be supplied");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean existing = channel.size() > 0;
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (existing) {
+                if (header.getLong(HEADER_MAGIC_POS) != MAGIC) {
+                    throw new IOException("Not a size column file: " + file);
+                }
+                OffHeapSizeColumn column = new OffHeapSizeColumn(header.getInt(HEADER_CHUNK_CAPACITY_POS), channel, header);
+                long storedCount = header.getLong(HEADER_COUNT_POS);
+                long noOfChunks = (storedCount + column.chunkMask) >>> column.chunkShift;
+                for (long i = 0; i < noOfChunks; i++) {
+                    column.addChunk();
+                }
+                column.count = storedCount;
+                return column;
+            } else {
+                OffHeapSizeColumn column = new OffHeapSizeColumn(chunkCapacity, channel, header);
+                header.putLong(HEADER_MAGIC_POS, MAGIC);
+                header.putInt(HEADER_CHUNK_CAPACITY_POS, chunkCapacity);
+                header.putLong(HEADER_COUNT_POS, 0);
+                return column;
+            }
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Appends a value.
+     */
+    public void append(long value) {
+        int offset = (int) (count & chunkMask);
+        if (offset == 0 && (count >>> chunkShift) == chunks.size()) {
+            addChunk();
+        }
+        chunks.get((int) (count >>> chunkShift)).put(offset, value);
+        count++;
+    }
+
+    /**
+     * Appends values in bulk.
+     *
+     * @param values source
+     * @param off    offset in {@code values}
+     * @param len    number of values to append
+     */
+    public void appendAll(long[] values, int off, int len) {
+        if (off < 0 || len < 0 || off > values.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            int offset = (int) (count & chunkMask);
+            if (offset == 0 && (count >>> chunkShift) == chunks.size()) {
+                addChunk();
+            }
+            LongBuffer chunk = chunks.get((int) (count >>> chunkShift)).duplicate();
+            int n = Math.min(len, chunk.capacity() - offset);
+            chunk.position(offset);
+            chunk.put(values, off, n);
+            off += n;
+            len -= n;
+            count += n;
+        }
+    }
+
+    /**
+     * Gets a value.
+     *
+     * @param index index of value, between 0 (inclusive) and {@link #size()} (exclusive)
+     */
+    public long get(long index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + count);
+        }
+        return chunks.get((int) (index >>> chunkShift)).get((int) (index & chunkMask));
+    }
+
+    /**
+     * Gets the number of values in the column.
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Performs an action for each value, in order.
+     */
+    public void forEach(LongConsumer action) {
+        long remaining = count;
+        for (LongBuffer chunk : chunks) {
+            int n = (int) Math.min(remaining, chunk.capacity());
+            for (int i = 0; i < n; i++) {
+                action.accept(chunk.get(i));
+            }
+            remaining -= n;
+        }
+    }
+
+    /**
+     * Calculates count, sum, minimum and maximum of all values. Chunks are processed in parallel.
+     *
+     * @throws ArithmeticException if the sum overflows a {@code long}
+     */
+    public Stats stats() {
+        return IntStream.range(0, chunks.size())
+                .parallel()
+                .mapToObj(this::chunkStats)
+                .reduce(Stats.EMPTY, Stats::combine);
+    }
+
+    /**
+     * Counts the values which are equal to or larger than a threshold. Chunks are processed in parallel.
+     */
+    public long countAtLeast(long threshold) {
+        return IntStream.range(0, chunks.size())
+                .parallel()
+                .mapToLong(c -> {
+                    LongBuffer chunk = chunks.get(c);
+                    int n = chunkLength(c);
+                    long found = 0;
+                    for (int i = 0; i < n; i++) {
+                        if (chunk.get(i) >= threshold) {
+                            found++;
+                        }
+                    }
+                    return found;
+                })
+                .sum();
+    }
+
+    /**
+     * Writes all values, in human-readable form, to an {@code Appendable}. Values are separated by
+     * {@code delimiter}, which is also written after the last value. If {@code out} is a
+     * {@code Writer}, each value is written from a reused {@code char[]}, and if it is a
+     * {@code StringBuilder}, appended directly, so in both cases no object is created per value.
+     * Other destinations get each value through {@link Appendable#append(CharSequence)}, which
+     * may create objects.
+     *
+     * @param out       destination, for example a buffered {@code Writer}
+     * @param formatter formatter to use
+     * @param delimiter delimiter, for example a line separator
+     */
+    public void writeFormatted(Appendable out, DataSizeFormatter formatter, CharSequence delimiter) throws IOException {
+        Objects.requireNonNull(formatter, "formatter must be supplied");
+        Writer writer = (out instanceof Writer) ? (Writer) out : null;
+        StringBuilder sb = (out instanceof StringBuilder) ? (StringBuilder) out : new StringBuilder(64);
+        char[] chars = (writer != null) ? new char[64] : null;
+        long remaining = count;
+        for (LongBuffer chunk : chunks) {
+            int n = (int) Math.min(remaining, chunk.capacity());
+            for (int i = 0; i < n; i++) {
+                if (sb == out) {
+                    formatter.appendTo(sb, chunk.get(i)).append(delimiter);
+                    continue;
+                }
+                sb.setLength(0);
+                formatter.appendTo(sb, chunk.get(i)).append(delimiter);
+                if (writer != null) {
+                    if (chars.length < sb.length()) {
+                        chars = new char[sb.length()];
+                    }
+                    sb.getChars(0, sb.length(), chars, 0);
+                    writer.write(chars, 0, sb.length());
+                } else {
+                    out.append(sb);
+                }
+            }
+            remaining -= n;
+        }
+    }
+
+    /**
+     * Is this column backed by a file?
+     */
+    public boolean isMapped() {
+        return channel != null;
+    }
+
+    /**
+     * For a file-backed column, writes the number of values to the file and forces all changes to storage.
+     * Does nothing for a column which is not file-backed.
+     */
+    public void flush() {
+        if (header != null) {
+            for (MappedByteBuffer buffer : mappedChunks) {
+                buffer.force();
+            }
+            header.putLong(HEADER_COUNT_POS, count);
+            header.force();
+        }
+    }
+
+    /**
+     * Flushes (if file-backed) and releases the column. The column must not be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            flush();
+            channel.close();
+        }
+        chunks.clear();
+        mappedChunks.clear();
+        count = 0;
+    }
+
+    private int chunkLength(int chunkIndex) {
+        long start = ((long) chunkIndex) << chunkShift;
+        return (int) Math.min(count - start, chunkMask + 1L);
+    }
+
+    private Stats chunkStats(int chunkIndex) {
+        LongBuffer chunk = chunks.get(chunkIndex);
+        int n = chunkLength(chunkIndex);
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            long v = chunk.get(i);
+            sum = Math.addExact(sum, v);
+            if (v < min) {
+                min = v;
+            }
+            if (v > max) {
+                max = v;
+            }
+        }
+        return new Stats(n, sum, min, max);
+    }
+
+    private void addChunk() {
+        int capacity = chunkMask + 1;
+        long bytes = ((long) capacity) << 3;
+        ByteBuffer buffer;
+        if (channel != null) {
+            long position = HEADER_BYTES + (((long) chunks.size()) * bytes);
+            try {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+                mappedChunks.add(mapped);
+                buffer = mapped;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        } else {
+            buffer = ByteBuffer.allocateDirect((int) bytes);
+        }
+        chunks.add(buffer.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer());
+    }
+
+    /**
+     * Aggregated values of a column.
+     */
+    public static final class Stats {
+        private static final Stats EMPTY = new Stats(0, 0, Long.MAX_VALUE, Long.MIN_VALUE);
+
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        private Stats(long count, long sum, long min, long max) {
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        private Stats combine(Stats other) {
+            return new Stats(count + other.count, Math.addExact(sum, other.sum), Math.min(min, other.min), Math.max(max, other.max));
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * Gets the smallest value, or {@code Long.MAX_VALUE} if there are no values.
+         */
+        public long getMin() {
+            return min;
+        }
+
+        /**
+         * Gets the largest value, or {@code Long.MIN_VALUE} if there are no values.
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Gets the average value (truncated), or zero if there are no values.
+         */
+        public long getAverage() {
+            return (count == 0) ? 0 : sum / count;
+        }
+
+        /**
+         * Renders the statistics in human-readable form, for example
+         * {@code "count=1234, total=1.9 GiB, min=0 B, avg=1 MiB, max=4.00 GiB"}.
+         */
+        public String format(DataSizeFormatter formatter) {
+            StringBuilder sb = new StringBuilder(96);
+            sb.append("count=").append(count).append(", total=");
+            formatter.appendTo(sb, sum);
+            if (count > 0) {
+                formatter.appendTo(sb.append(", min="), min);
+                formatter.appendTo(sb.append(", avg="), getAverage());
+                formatter.appendTo(sb.append(", max="), max);
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{count=" + count + ", sum=" + sum + ", min=" + min + ", max=" + max + '}';
+        }
+    }
+}
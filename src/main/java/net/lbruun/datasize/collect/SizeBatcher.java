@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.collect;
+
+import net.lbruun.datasize.DataSizeFormatter;
+import net.lbruun.datasize.DataSizeParser;
+import net.lbruun.datasize.DataSizeUnit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Groups items into batches of at most a given number of bytes and, optionally, items, for example
+ * records to upload in batches of at most 64 MiB:
+ * <pre>{@code
+ *   SizeBatcher<Record> batcher = SizeBatcher.<Record>builder(this::upload)
+ *           .withMaxBytes("64 MiB", true)
+ *           .withMaxCount(10_000)
+ *           .build();
+ *   batcher.add(record, record.length());
+ *   ...
+ *   batcher.flush();
+ * }</pre>
+ *
+ * <p>
+ * A batch is closed as soon as it is full, or when the next item does not fit in it. It is then
+ * passed to the sink, in the thread which completes the last {@code add()} into the batch. An
+ * item heavier than the byte limit is passed in a batch of its own.
+ *
+ * <p>
+ * With several threads adding, the sink may therefore be called by several threads at once, and
+ * batches may reach it out of order: if a thread is slow to complete its {@code add()} into one
+ * batch, the next batch can be delivered first. The sink must be thread-safe. Within a batch, items
+ * are in the order in which their {@code add()} calls reserved a place. With a single thread adding,
+ * batches arrive one at a time and in order.
+ *
+ * <p>
+ * Instances are thread-safe and {@link #add(Object, long) add()} takes no lock: the item count and
+ * byte total of the open batch are packed into one {@code long}, and an item reserves its place in
+ * the batch with a single compare-and-set of that {@code long}. Only a thread which arrives while
+ * another thread is closing the batch waits, for the brief moment it takes to open the next one. The
+ * packing limits a batch to {@link #MAX_COUNT} items and {@link #MAX_BYTES} bytes.
+ *
+ * <p>
+ * Each closed batch is logged at level {@code FINE}, with human-readable sizes, to the
+ * {@code java.util.logging} logger named after this class.
+ *
+ * @param <T> item type
+ */
+public final class SizeBatcher<T> {
+
+    /**
+     * Largest possible item limit, 2097151.
+     */
+    public static final int MAX_COUNT = (1 << 21) - 1;
+
+    /**
+     * Largest possible byte limit, 4 TiB minus one byte.
+     */
+    public static final long MAX_BYTES = (1L << 42) - 1;
+
+    private static final Logger LOGGER = Logger.getLogger(SizeBatcher.class.getName());
+    private static final int COUNT_BITS = 21;
+    private static final long SEALED = Long.MIN_VALUE;
+    private static final int SEGMENT_BITS = 10;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+    private final Consumer<? super List<T>> sink;
+    private final long maxBytes;
+    private final int maxCount;
+    private final DataSizeFormatter formatter;
+    private final AtomicLong batchCount = new AtomicLong();
+    private volatile Batch current;
+
+    private SizeBatcher(Builder<T> builder) {
+        this.sink = builder.sink;
+        this.maxBytes = builder.maxBytes;
+        this.maxCount = builder.maxCount;
+        this.formatter = builder.formatter;
+        this.current = new Batch(maxCount);
+    }
+
+    /**
+     * Creates a builder.
+     *
+     * @param sink receives each batch. It must be thread-safe if items are added from several
+     *             threads, and batches may then arrive out of order, see the class description.
+     *             The list is unmodifiable.
+     */
+    public static <T> Builder<T> builder(Consumer<? super List<T>> sink) {
+        return new Builder<>(sink);
+    }
+
+    /**
+     * Adds an item. If this completes a closed batch, the batch is passed to the sink before
+     * returning, and any exception thrown by the sink is thrown from here.
+     *
+     * @param item   item
+     * @param weight size of item, in bytes
+     */
+    public void add(T item, long weight) {
+        Objects.requireNonNull(item, "item cannot be null");
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must be >= 0");
+        }
+        while (true) {
+            Batch batch = current;
+            long state = batch.state.get();
+            if (state < 0) {
+                // Being closed, the next batch is about to be installed
+                Thread.yield();
+                continue;
+            }
+            int count = count(state);
+            long bytes = bytes(state);
+            if (count > 0 && weight > maxBytes - bytes) {
+                if (batch.state.compareAndSet(state, state | SEALED)) {
+                    close(batch, count, "size limit");
+                    tryDeliver(batch);
+                }
+                continue;
+            }
+            boolean byCount = count + 1 == maxCount;
+            boolean bySize = weight >= maxBytes - bytes;
+            long next = pack(count + 1, bytes + Math.min(weight, maxBytes - bytes));
+            if (byCount || bySize) {
+                next |= SEALED;
+            }
+            if (!batch.state.compareAndSet(state, next)) {
+                continue;
+            }
+            batch.set(count, item, weight);
+            if (byCount || bySize) {
+                close(batch, count + 1, (bySize) ? "size limit" : "count limit");
+            }
+            batch.published.incrementAndGet();
+            tryDeliver(batch);
+            return;
+        }
+    }
+
+    /**
+     * Closes the open batch, if it has any items. The batch is passed to the sink when all
+     * {@code add()} calls into it have completed; normally before this method returns.
+     */
+    public void flush() {
+        Batch batch = current;
+        long state;
+        do {
+            state = batch.state.get();
+            if (state < 0 || count(state) == 0) {
+                return;
+            }
+        } while (!batch.state.compareAndSet(state, state | SEALED));
+        close(batch, count(state), "flush");
+        tryDeliver(batch);
+    }
+
+    /**
+     * Gets the byte limit.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Gets the item limit.
+     */
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Gets the number of batches passed to the sink so far.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SizeBatcher[maxBytes=" + formatter.format(maxBytes) + ", maxCount=" + maxCount + "]";
+    }
+
+    /**
+     * Installs the next batch, after {@code batch} has been sealed by the current thread.
+     */
+    private void close(Batch batch, int count, String reason) {
+        current = new Batch(maxCount);
+        batch.reason = reason;
+        batch.finalCount = count;
+    }
+
+    /**
+     * Delivers a batch if it is closed and all its items are set. Called both by the thread which
+     * closes the batch and by each thread which sets an item, so that the last one delivers.
+     */
+    private void tryDeliver(Batch batch) {
+        int finalCount = batch.finalCount;
+        if (finalCount < 0 || batch.published.get() != finalCount || !batch.delivered.compareAndSet(false, true)) {
+            return;
+        }
+        List<T> items = new ArrayList<>(finalCount);
+        long bytes = 0;
+        for (int i = 0; i < finalCount; i++) {
+            Segment segment = batch.segments.get(i >>> SEGMENT_BITS);
+            @SuppressWarnings("unchecked")
+            T item = (T) segment.items[i & (SEGMENT_SIZE - 1)];
+            items.add(item);
+            bytes += segment.weights[i & (SEGMENT_SIZE - 1)];
+        }
+        batchCount.incrementAndGet();
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Batch of " + finalCount + " items, " + formatter.format(bytes)
+                    + ", closed by " + batch.reason + " (" + formatter.format(maxBytes) + ", " + maxCount + " items)");
+        }
+        sink.accept(Collections.unmodifiableList(items));
+    }
+
+    private static long pack(int count, long bytes) {
+        return (bytes << COUNT_BITS) | count;
+    }
+
+    private static int count(long state) {
+        return (int) (state & MAX_COUNT);
+    }
+
+    private static long bytes(long state) {
+        return (state & ~SEALED) >>> COUNT_BITS;
+    }
+
+    /**
+     * One batch. Items are stored in segments, allocated as the batch fills, so that a batch with
+     * a high item limit costs little until it actually holds many items.
+     */
+    private static final class Batch {
+        final AtomicLong state = new AtomicLong();  // sealed bit, bytes, count
+        final AtomicInteger published = new AtomicInteger();  // number of items set
+        final AtomicBoolean delivered = new AtomicBoolean();
+        final AtomicReferenceArray<Segment> segments;
+        volatile int finalCount = -1;
+        volatile String reason;
+
+        Batch(int maxCount) {
+            this.segments = new AtomicReferenceArray<>((maxCount + SEGMENT_SIZE - 1) >>> SEGMENT_BITS);
+        }
+
+        void set(int index, Object item, long weight) {
+            int s = index >>> SEGMENT_BITS;
+            Segment segment = segments.get(s);
+            if (segment == null) {
+                segments.compareAndSet(s, null, new Segment());
+                segment = segments.get(s);
+            }
+            segment.items[index & (SEGMENT_SIZE - 1)] = item;
+            segment.weights[index & (SEGMENT_SIZE - 1)] = weight;
+        }
+    }
+
+    private static final class Segment {
+        final Object[] items = new Object[SEGMENT_SIZE];
+        final long[] weights = new long[SEGMENT_SIZE];
+    }
+
+    /**
+     * Builder for {@link SizeBatcher}.
+     */
+    public static class Builder<T> {
+        private final Consumer<? super List<T>> sink;
+        private long maxBytes = MAX_BYTES;
+        private int maxCount = MAX_COUNT;
+        private DataSizeFormatter formatter = DataSizeFormatter.builder().build();
+
+        private Builder(Consumer<? super List<T>> sink) {
+            this.sink = Objects.requireNonNull(sink, "sink cannot be null");
+        }
+
+        /**
+         * Sets the maximum number of bytes in a batch. Defaults to {@link #MAX_BYTES}.
+         *
+         * @param maxBytes number of bytes, from 1 to {@link #MAX_BYTES}
+         */
+        public Builder<T> withMaxBytes(long maxBytes) {
+            if (maxBytes < 1 || maxBytes > MAX_BYTES) {
+                throw new IllegalArgumentException("maxBytes must be >= 1 and <= " + MAX_BYTES);
+            }
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of bytes in a batch, as an amount in a unit. Example:
+         * {@code withMaxBytes(64, DataSizeUnit.MEGA, true)} for 64 MiB.
+         *
+         * @param useBinary {@code true} to use binary calculation (1 kibibyte = 1024 bytes).
+         *                  {@code false} to use decimal calculation (1 kilobyte = 1000 bytes).
+         */
+        public Builder<T> withMaxBytes(long amount, DataSizeUnit unit, boolean useBinary) {
+            Objects.requireNonNull(unit, "unit cannot be null");
+            return withMaxBytes(unit.toBytes(amount, useBinary));
+        }
+
+        /**
+         * Sets the maximum number of bytes in a batch, as text such as {@code "64 MiB"}.
+         *
+         * @param useBinary how a unit letter without {@code i} is interpreted, see {@link DataSizeParser}
+         * @throws NumberFormatException if {@code maxBytes} is not a valid data size
+         */
+        public Builder<T> withMaxBytes(String maxBytes, boolean useBinary) {
+            Objects.requireNonNull(maxBytes, "maxBytes cannot be null");
+            return withMaxBytes(DataSizeParser.parse(maxBytes, useBinary));
+        }
+
+        /**
+         * Sets the maximum number of items in a batch. Defaults to {@link #MAX_COUNT}.
+         *
+         * @param maxCount number of items, from 1 to {@link #MAX_COUNT}
+         */
+        public Builder<T> withMaxCount(int maxCount) {
+            if (maxCount < 1 || maxCount > MAX_COUNT) {
+                throw new IllegalArgumentException("maxCount must be >= 1 and <= " + MAX_COUNT);
+            }
+            this.maxCount = maxCount;
+            return this;
+        }
+
+        /**
+         * Sets the formatter for sizes in log messages. Defaults to binary units for the
+         * default locale.
+         */
+        public Builder<T> withFormatter(DataSizeFormatter formatter) {
+            this.formatter = Objects.requireNonNull(formatter, "formatter cannot be null");
+            return this;
+        }
+
+        public SizeBatcher<T> build() {
+            return new SizeBatcher<>(this);
+        }
+    }
+}
@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.collect;
+
+import net.lbruun.datasize.DataSizeFormatter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Fixed-memory time series of size readings, for example the used bytes of a volume
+ * sampled every few seconds.
+ *
+ * <p>
+ * The most recent readings are kept in a ring buffer. In addition, any number of downsampled
+ * tiers may be configured, for example one bucket per minute for the last day and one bucket per
+ * hour for the last month. Each bucket holds the minimum, maximum and last reading within its
+ * interval. All memory is allocated up front: {@link #record(long, long)} does not create any objects.
+ *
+ * <p>
+ * Recording must be done by a single thread. Reading ({@link #samples()}, {@link #growthRate(long)} etc.)
+ * may be done by any number of threads concurrently with recording. Readers copy the buffer under an
+ * optimistic {@link StampedLock} read and retry if a reading was recorded meanwhile, so they do not
+ * hold up the writer. Only a reader which keeps losing that race falls back to a read lock.
+ *
+ * <p>
+ * Timestamps are in milliseconds, for example from {@code System.currentTimeMillis()}, and
+ * must not decrease.
+ *
+ * <p>
+ * Example: {@code series.appendSummary(sb, formatter, 3_600_000L, capacity)} appends
+ * something like {@code "used: 812.45 GiB, +3.2 GiB/h, full in 2d"}.
+ */
+public final class SizeTimeSeries {
+
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+    private static final long[] DURATION_UNITS = {86_400_000L, MILLIS_PER_HOUR, 60_000L, 1_000L};
+    private static final char[] DURATION_UNIT_LETTERS = {'d', 'h', 'm', 's'};
+    private static final int OPTIMISTIC_ATTEMPTS = 3;
+
+    private final StampedLock lock = new StampedLock();
+
+    private final Ring raw;
+    private final Ring[] tiers;
+    private final long[] tierIntervals;
+
+    // Open bucket of each tier, only accessed by the writer
+    private final long[] openBucket;
+    private final long[] openMin;
+    private final long[] openMax;
+    private final long[] openLast;
+    private boolean hasReading;
+    private long lastTimestamp;
+
+    private SizeTimeSeries(Builder builder) {
+        this.raw = new Ring(builder.capacity, false);
+        int n = builder.tierIntervals.size();
+        this.tiers = new Ring[n];
+        this.tierIntervals = new long[n];
+        for (int i = 0; i < n; i++) {
+            tiers[i] = new Ring(builder.tierCapacities.get(i), true);
+            tierIntervals[i] = builder.tierIntervals.get(i);
+        }
+        this.openBucket = new long[n];
+        this.openMin = new long[n];
+        this.openMax = new long[n];
+        this.openLast = new long[n];
+    }
+
+    /**
+     * Creates a builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Records a reading. Must only be called by one thread at a time.
+     *
+     * @param timestamp time of the reading, in milliseconds
+     * @param bytes     reading
+     * @throws IllegalArgumentException if {@code timestamp} is less than the timestamp of the
+     *                                  previous reading
+     */
+    public void record(long timestamp, long bytes) {
+        if (hasReading && timestamp < lastTimestamp) {
+            throw new IllegalArgumentException("timestamp must be >= timestamp of previous reading");
+        }
+        long stamp = lock.writeLock();
+        try {
+            append(timestamp, bytes);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        hasReading = true;
+        lastTimestamp = timestamp;
+    }
+
+    private void append(long timestamp, long bytes) {
+        raw.append(timestamp, bytes, bytes, bytes);
+        for (int i = 0; i < tiers.length; i++) {
+            long bucket = timestamp - Math.floorMod(timestamp, tierIntervals[i]);
+            if (hasReading && bucket == openBucket[i]) {
+                openMin[i] = Math.min(openMin[i], bytes);
+                openMax[i] = Math.max(openMax[i], bytes);
+            } else {
+                if (hasReading) {
+                    tiers[i].append(openBucket[i], openLast[i], openMin[i], openMax[i]);
+                }
+                openBucket[i] = bucket;
+                openMin[i] = bytes;
+                openMax[i] = bytes;
+            }
+            openLast[i] = bytes;
+        }
+    }
+
+    /**
+     * Gets the retained raw readings, oldest first.
+     */
+    public Samples samples() {
+        return read(raw, raw.capacity());
+    }
+
+    /**
+     * Gets the completed buckets of a downsampled tier, oldest first. The bucket which
+     * is still receiving readings is not included.
+     *
+     * @param tier index of tier, in the order the tiers were added to the builder
+     */
+    public Samples samples(int tier) {
+        if (tier < 0 || tier >= tiers.length) {
+            throw new IndexOutOfBoundsException("tier " + tier + " out of bounds for " + tiers.length + " tiers");
+        }
+        return read(tiers[tier], tiers[tier].capacity());
+    }
+
+    /**
+     * Gets the number of downsampled tiers.
+     */
+    public int getTierCount() {
+        return tiers.length;
+    }
+
+    /**
+     * Gets the most recent reading, or 0 if there is none.
+     */
+    public long latest() {
+        Samples s = read(raw, 1);
+        return (s.size() == 0) ? 0 : s.getValue(0);
+    }
+
+    /**
+     * Estimates the growth rate by least squares linear regression over the raw readings
+     * of the most recent {@code windowMillis} milliseconds.
+     *
+     * @param windowMillis length of window, in milliseconds
+     * @return growth in bytes per hour, negative if shrinking, or 0 if there are fewer than
+     * two readings with distinct timestamps in the window
+     */
+    public double growthRate(long windowMillis) {
+        return growthRate(samples(), windowMillis);
+    }
+
+    /**
+     * Estimates the time until readings reach {@code threshold}, by extrapolating the
+     * {@link #growthRate(long) growth rate} from the most recent reading.
+     *
+     * @param threshold    threshold, for example the capacity of a volume
+     * @param windowMillis length of window used for estimating the growth rate
+     * @return milliseconds until the threshold is reached, 0 if it is already reached,
+     * or -1 if readings are not growing towards it
+     */
+    public long timeToThreshold(long threshold, long windowMillis) {
+        Samples s = samples();
+        if (s.size() == 0) {
+            return -1;
+        }
+        long latest = s.getValue(s.size() - 1);
+        if (latest >= threshold) {
+            return 0;
+        }
+        double rate = growthRate(s, windowMillis);
+        if (rate <= 0) {
+            return -1;
+        }
+        double millis = ((double) threshold - (double) latest) / rate * MILLIS_PER_HOUR;
+        return (millis >= Long.MAX_VALUE) ? Long.MAX_VALUE : (long) Math.ceil(millis);
+    }
+
+    /**
+     * Appends a one line summary such as {@code "used: 812.45 GiB, +3.2 GiB/h, full in 2d"}.
+     * If the readings are not growing, the projection reads {@code "full in -"}.
+     *
+     * @param sb           where to append
+     * @param formatter    formatter for the latest reading and the growth rate
+     * @param windowMillis length of window used for estimating the growth rate
+     * @param capacity     size at which the volume is full
+     * @return {@code sb}
+     */
+    public StringBuilder appendSummary(StringBuilder sb, DataSizeFormatter formatter, long windowMillis, long capacity) {
+        Objects.requireNonNull(formatter, "formatter cannot be null");
+        sb.append("used: ");
+        formatter.appendTo(sb, latest());
+        double rate = growthRate(windowMillis);
+        long rounded = (long) rate;   // saturates, truncating towards zero
+        sb.append(", ").append((rate < 0) ? '-' : '+');
+        formatter.appendTo(sb, (rounded == Long.MIN_VALUE) ? Long.MAX_VALUE : Math.abs(rounded));
+        sb.append("/h, full in ");
+        return appendDuration(sb, timeToThreshold(capacity, windowMillis));
+    }
+
+    /**
+     * Appends a duration in its largest whole unit, for example {@code "2d"} or {@code "45m"},
+     * or {@code "-"} if the duration is negative.
+     */
+    static StringBuilder appendDuration(StringBuilder sb, long millis) {
+        if (millis < 0) {
+            return sb.append('-');
+        }
+        for (int i = 0; i < DURATION_UNITS.length; i++) {
+            if (millis >= DURATION_UNITS[i] || i == DURATION_UNITS.length - 1) {
+                return sb.append(millis / DURATION_UNITS[i]).append(DURATION_UNIT_LETTERS[i]);
+            }
+        }
+        return sb;
+    }
+
+    private Samples read(Ring ring, int max) {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                Samples s = ring.copyLast(max);
+                if (lock.validate(stamp)) {
+                    return s;
+                }
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            return ring.copyLast(max);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static double growthRate(Samples s, long windowMillis) {
+        int n = s.size();
+        if (n < 2) {
+            return 0;
+        }
+        long end = s.getTimestamp(n - 1);
+        int first = n - 1;
+        while (first > 0 && end - s.getTimestamp(first - 1) <= windowMillis) {
+            first--;
+        }
+        int count = n - first;
+        if (count < 2) {
+            return 0;
+        }
+        // Centre both axes on their means to keep precision with epoch timestamps and large sizes
+        double meanT = 0;
+        double meanV = 0;
+        for (int i = first; i < n; i++) {
+            meanT += (double) (s.getTimestamp(i) - end);
+            meanV += (double) s.getValue(i);
+        }
+        meanT /= count;
+        meanV /= count;
+        double sxy = 0;
+        double sxx = 0;
+        for (int i = first; i < n; i++) {
+            double dt = (double) (s.getTimestamp(i) - end) - meanT;
+            sxy += dt * ((double) s.getValue(i) - meanV);
+            sxx += dt * dt;
+        }
+        return (sxx == 0) ? 0 : sxy / sxx * MILLIS_PER_HOUR;
+    }
+
+    /**
+     * Copy of readings or buckets, oldest first. For raw readings minimum, maximum
+     * and value are the same.
+     */
+    public static final class Samples {
+        private final long[] timestamps;
+        private final long[] values;
+        private final long[] mins;
+        private final long[] maxs;
+        private final int count;
+
+        private Samples(long[] timestamps, long[] values, long[] mins, long[] maxs, int count) {
+            this.timestamps = timestamps;
+            this.values = values;
+            this.mins = mins;
+            this.maxs = maxs;
+            this.count = count;
+        }
+
+        /**
+         * Gets the number of readings or buckets.
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Gets the timestamp of a reading, or the start of a bucket.
+         */
+        public long getTimestamp(int index) {
+            return timestamps[checkIndex(index)];
+        }
+
+        /**
+         * Gets a reading, or the last reading of a bucket.
+         */
+        public long getValue(int index) {
+            return values[checkIndex(index)];
+        }
+
+        /**
+         * Gets the smallest reading of a bucket.
+         */
+        public long getMin(int index) {
+            return mins[checkIndex(index)];
+        }
+
+        /**
+         * Gets the largest reading of a bucket.
+         */
+        public long getMax(int index) {
+            return maxs[checkIndex(index)];
+        }
+
+        private int checkIndex(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + count);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Ring buffer. Appending is done under the write lock, copying under an optimistic
+     * read, so {@link #copyLast(int)} must tolerate a concurrent append: it must not throw.
+     */
+    private static final class Ring {
+        private final long[] timestamps;
+        private final long[] values;
+        private final long[] mins;  // null for raw readings
+        private final long[] maxs;  // null for raw readings
+        private long head;  // number of entries ever appended
+
+        Ring(int capacity, boolean withRange) {
+            this.timestamps = new long[capacity];
+            this.values = new long[capacity];
+            this.mins = (withRange) ? new long[capacity] : null;
+            this.maxs = (withRange) ? new long[capacity] : null;
+        }
+
+        int capacity() {
+            return timestamps.length;
+        }
+
+        void append(long timestamp, long value, long min, long max) {
+            int i = (int) (head % timestamps.length);
+            timestamps[i] = timestamp;
+            values[i] = value;
+            if (mins != null) {
+                mins[i] = min;
+                maxs[i] = max;
+            }
+            head++;
+        }
+
+        Samples copyLast(int max) {
+            int capacity = timestamps.length;
+            long h = head;
+            int n = (int) Math.min(h, Math.min(max, capacity));
+            long from = h - n;
+            long[] t = new long[n];
+            long[] v = new long[n];
+            long[] lo = (mins != null) ? new long[n] : v;
+            long[] hi = (maxs != null) ? new long[n] : v;
+            for (int k = 0; k < n; k++) {
+                int i = (int) ((from + k) % capacity);
+                t[k] = timestamps[i];
+                v[k] = values[i];
+                if (mins != null) {
+                    lo[k] = mins[i];
+                    hi[k] = maxs[i];
+                }
+            }
+            return new Samples(t, v, lo, hi, n);
+        }
+    }
+
+    /**
+     * Builder for {@link SizeTimeSeries}.
+     */
+    public static class Builder {
+        private int capacity = 1024;
+        private final List<Long> tierIntervals = new ArrayList<>();
+        private final List<Integer> tierCapacities = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the number of raw readings retained. Defaults to 1024.
+         *
+         * @param capacity number of readings, must be 2 or more
+         */
+        public Builder withCapacity(int capacity) {
+            if (capacity < 2) {
+                throw new IllegalArgumentException("capacity must be >= 2");
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Adds a downsampled tier. Buckets are aligned to multiples of the interval.
+         *
+         * @param intervalMillis length of each bucket, in milliseconds
+         * @param capacity       number of buckets retained, must be 1 or more
+         */
+        public Builder withTier(long intervalMillis, int capacity) {
+            if (intervalMillis < 1) {
+                throw new IllegalArgumentException("intervalMillis must be >= 1");
+            }
+            if (capacity < 1) {
+                throw new IllegalArgumentException("capacity must be >= 1");
+            }
+            tierIntervals.add(intervalMillis);
+            tierCapacities.add(capacity);
+            return this;
+        }
+
+        public SizeTimeSeries build() {
+            return new SizeTimeSeries(this);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.collect;
+
+import net.lbruun.datasize.DataSize;
+import net.lbruun.datasize.DataSizeFormatter;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+
+/**
+ * Tracks the {@code k} largest entries of a stream of sized entries, for example
+ * "the 100 biggest files", in fixed memory.
+ *
+ * <p>
+ * Sizes are kept in a primitive min-heap of {@code long}. Keys are held in a parallel array
+ * which is re-arranged together with the heap. Memory use is therefore proportional to {@code k}, not
+ * to the number of entries offered, and no object is created per offered entry. Callers for which
+ * creating the key itself is costly may use {@link #accepts(long)} to check if an entry would
+ * be retained before creating the key.
+ *
+ * <p>
+ * Offering is O(1) for an entry which is rejected and O(log k) for an entry which is retained.
+ * Only the survivors are rendered to human-readable form, at the end, using {@link #render(DataSizeFormatter)}.
+ *
+ * <p>
+ * Instances are not thread-safe. For concurrent use, let each thread track its own instance and
+ * {@link #merge(SizeTopK) merge} them at the end. The {@link #collector(int, Function, ToLongFunction) collector}
+ * does exactly that for parallel streams.
+ *
+ * <p>
+ * An entry is only retained if it is larger than the smallest retained entry, so an entry
+ * the same size as that entry is rejected. Which of several entries of that size are retained
+ * otherwise depends on the order of the heap, and is unspecified.
+ *
+ * @param <K> key type, for example a path
+ */
+public final class SizeTopK<K> {
+
+    private final long[] sizes;
+    private final Object[] keys;
+    private int count;
+
+    /**
+     * Creates a tracker.
+     *
+     * @param k number of entries to retain, must be 1 or more
+     */
+    public SizeTopK(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be >= 1");
+        }
+        this.sizes = new long[k];
+        this.keys = new Object[k];
+    }
+
+    /**
+     * Checks if an entry of the given size would be retained if offered now.
+     */
+    public boolean accepts(long size) {
+        return count < sizes.length || size > sizes[0];
+    }
+
+    /**
+     * Offers an entry.
+     *
+     * @param size size of entry
+     * @param key  key of entry
+     * @return {@code true} if the entry was retained (for now), {@code false} if it was rejected
+     */
+    public boolean offer(long size, K key) {
+        if (count < sizes.length) {
+            sizes[count] = size;
+            keys[count] = key;
+            siftUp(count++);
+            return true;
+        }
+        if (size > sizes[0]) {
+            sizes[0] = size;
+            keys[0] = key;
+            siftDown(0, count);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Offers all entries of another tracker to this one. The other tracker is not modified.
+     *
+     * @return this instance
+     */
+    @SuppressWarnings("unchecked")
+    public SizeTopK<K> merge(SizeTopK<? extends K> other) {
+        for (int i = 0; i < other.count; i++) {
+            offer(other.sizes[i], (K) other.keys[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Gets the number of entries currently retained. This is at most {@link #capacity()}.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Gets {@code k}, the maximum number of entries retained.
+     */
+    public int capacity() {
+        return sizes.length;
+    }
+
+    /**
+     * Gets the size of the smallest retained entry, or {@code Long.MIN_VALUE} if fewer than
+     * {@code k} entries are retained. Entries must be larger than this value to be retained.
+     */
+    public long threshold() {
+        return (count < sizes.length) ? Long.MIN_VALUE : sizes[0];
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * Gets the retained sizes, largest first.
+     */
+    public long[] sizesDescending() {
+        long[] s = new long[count];
+        Object[] k = new Object[count];
+        sortDescending(s, k);
+        return s;
+    }
+
+    /**
+     * Gets the retained entries, largest first.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Entry<K>> entries() {
+        long[] s = new long[count];
+        Object[] k = new Object[count];
+        sortDescending(s, k);
+        List<Entry<K>> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(new Entry<>((K) k[i], s[i]));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Renders the retained entries, largest first. Only the (at most {@code k}) retained
+     * entries are formatted.
+     *
+     * @param formatter formatter to use for rendering the sizes
+     * @return key and pre-rendered size of retained entries
+     */
+    @SuppressWarnings("unchecked")
+    public List<Map.Entry<K, DataSize>> render(DataSizeFormatter formatter) {
+        Objects.requireNonNull(formatter, "formatter must be supplied");
+        long[] s = new long[count];
+        Object[] k = new Object[count];
+        sortDescending(s, k);
+        List<Map.Entry<K, DataSize>> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(new AbstractMap.SimpleImmutableEntry<>((K) k[i], new DataSize(s[i], formatter)));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Collector which finds the {@code k} largest elements of a stream. Works with parallel
+     * streams, in which case each thread collects into its own tracker and the trackers are merged.
+     *
+     * @param k      number of entries to retain
+     * @param keyFn  extracts the key from an element
+     * @param sizeFn extracts the size from an element
+     * @param <T>    element type
+     * @param <K>    key type
+     */
+    public static <T, K> Collector<T, ?, SizeTopK<K>> collector(int k, Function<? super T, ? extends K> keyFn, ToLongFunction<? super T> sizeFn) {
+        Objects.requireNonNull(keyFn, "keyFn must be supplied");
+        Objects.requireNonNull(sizeFn, "sizeFn must be supplied");
+        return Collector.of(
+                () -> new SizeTopK<K>(k),
+                (topK, element) -> {
+                    long size = sizeFn.applyAsLong(element);
+                    if (topK.accepts(size)) {
+                        topK.offer(size, keyFn.apply(element));
+                    }
+                },
+                SizeTopK::merge,
+                Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    /**
+     * Copies the heap into the given arrays (of length {@code count}) and heap-sorts them
+     * so that the largest is first.
+     */
+    private void sortDescending(long[] s, Object[] k) {
+        System.arraycopy(sizes, 0, s, 0, count);
+        System.arraycopy(keys, 0, k, 0, count);
+        // The arrays are a valid min-heap. Repeatedly moving the root (the smallest)
+        // to the end leaves them ordered descending.
+        for (int end = count - 1; end > 0; end--) {
+            swap(s, k, 0, end);
+            siftDown(s, k, 0, end);
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (sizes[parent] <= sizes[i]) {
+                break;
+            }
+            swap(sizes, keys, parent, i);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int n) {
+        siftDown(sizes, keys, i, n);
+    }
+
+    private static void siftDown(long[] s, Object[] k, int i, int n) {
+        while (true) {
+            int left = (i << 1) + 1;
+            if (left >= n) {
+                return;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < n && s[right] < s[left]) {
+                smallest = right;
+            }
+            if (s[i] <= s[smallest]) {
+                return;
+            }
+            swap(s, k, i, smallest);
+            i = smallest;
+        }
+    }
+
+    private static void swap(long[] s, Object[] k, int a, int b) {
+        long ts = s[a];
+        s[a] = s[b];
+        s[b] = ts;
+        Object tk = k[a];
+        k[a] = k[b];
+        k[b] = tk;
+    }
+
+    /**
+     * Retained entry.
+     *
+     * @param <K> key type
+     */
+    public static final class Entry<K> {
+        private final K key;
+        private final long size;
+
+        private Entry(K key, long size) {
+            this.key = key;
+            this.size = size;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + size;
+        }
+    }
+}
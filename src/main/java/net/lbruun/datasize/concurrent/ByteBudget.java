@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.concurrent;
+
+import net.lbruun.datasize.DataSizeFormatter;
+import net.lbruun.datasize.DataSizeParser;
+import net.lbruun.datasize.DataSizeUnit;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Admission control by bytes, for example capping the request bodies in flight at 2 GiB:
+ * <pre>{@code
+ *   ByteBudget budget = ByteBudget.builder().withLimit(2, DataSizeUnit.GIGA, true).build();
+ *
+ *   if (!budget.tryAcquire(length, 100, TimeUnit.MILLISECONDS)) {
+ *       reject();
+ *   }
+ *   try {
+ *       ...
+ *   } finally {
+ *       budget.release(length);
+ *   }
+ * }</pre>
+ * Like a {@link java.util.concurrent.Semaphore} with one permit per byte, but with {@code long}
+ * permits and without locks: the available bytes are a {@code long} which is updated with
+ * compare-and-set. Threads which wait for bytes are parked, and are unparked by
+ * {@link #release(long)} when enough bytes may have become available. Admission is not fair:
+ * a thread which arrives while others wait may take bytes before them.
+ *
+ * <p>
+ * Under high concurrency the single {@code long} becomes contended. The budget may then be
+ * striped: released bytes are kept in one of several stripes, each in its own cache line,
+ * selected by thread, up to a small share of the limit per stripe. Acquiring takes from the
+ * stripe of the thread first. Only when the stripe and the shared {@code long} together
+ * cannot satisfy a request are all stripes drained back into the shared {@code long}. Without
+ * concurrent releases, a striped budget therefore grants the same requests as an unstriped one.
+ * Bytes released while the stripes are being drained may be missed, so a request may then be
+ * refused where an unstriped budget would have granted it.
+ *
+ * <p>
+ * An unstriped budget detects every release of more bytes than were acquired. A striped budget
+ * keeps running totals of bytes acquired and released, in {@link LongAdder}s, and detects such a
+ * release unless it races with acquisitions in other threads, which may hide it.
+ *
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class ByteBudget {
+
+    // Stripes are this many longs apart, so that each is in its own cache line
+    private static final int STRIPE_SPACING = 16;
+
+    private final long limit;
+    private final DataSizeFormatter formatter;
+    private final AtomicLong available;
+    private final AtomicLongArray stripes;  // null if not striped
+    private final int stripeMask;
+    private final long stripeCap;
+    private final LongAdder acquired;  // null if not striped
+    private final LongAdder released;  // null if not striped
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    private ByteBudget(Builder builder) {
+        this.limit = builder.limit;
+        this.formatter = builder.formatter;
+        this.available = new AtomicLong(limit);
+        if (builder.stripes > 1) {
+            int n = Integer.highestOneBit(builder.stripes - 1) << 1;
+            this.stripes = new AtomicLongArray(n * STRIPE_SPACING);
+            this.stripeMask = n - 1;
+            this.stripeCap = limit / (4L * n);
+            this.acquired = new LongAdder();
+            this.released = new LongAdder();
+        } else {
+            this.stripes = null;
+            this.stripeMask = 0;
+            this.stripeCap = 0;
+            this.acquired = null;
+            this.released = null;
+        }
+    }
+
+    /**
+     * Creates a builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Acquires bytes if they are available now.
+     *
+     * @param bytes number of bytes, 0 or more
+     * @return {@code true} if acquired
+     * @throws IllegalArgumentException if {@code bytes} is negative or greater than the limit
+     */
+    public boolean tryAcquire(long bytes) {
+        checkBytes(bytes);
+        if (stripes == null) {
+            return take(bytes);
+        }
+        if (takeFromStripe(stripeIndex(), bytes) || take(bytes)) {
+            acquired.add(bytes);
+            return true;
+        }
+        drainStripes();
+        if (take(bytes)) {
+            acquired.add(bytes);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Acquires bytes, waiting up to a timeout for them to become available.
+     *
+     * @param bytes number of bytes, 0 or more
+     * @return {@code true} if acquired, {@code false} if the timeout expired
+     * @throws IllegalArgumentException if {@code bytes} is negative or greater than the limit
+     * @throws InterruptedException     if interrupted while waiting
+     */
+    public boolean tryAcquire(long bytes, long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(unit, "unit cannot be null");
+        if (tryAcquire(bytes)) {
+            return true;
+        }
+        return await(bytes, System.nanoTime() + unit.toNanos(timeout), true);
+    }
+
+    /**
+     * Acquires bytes, waiting for them to become available.
+     *
+     * @param bytes number of bytes, 0 or more
+     * @throws IllegalArgumentException if {@code bytes} is negative or greater than the limit
+     * @throws InterruptedException     if interrupted while waiting
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        if (!tryAcquire(bytes)) {
+            await(bytes, 0, false);
+        }
+    }
+
+    /**
+     * Releases bytes previously acquired.
+     *
+     * @param bytes number of bytes, 0 or more
+     * @throws IllegalArgumentException if {@code bytes} is negative
+     * @throws IllegalStateException    if more bytes are released than were acquired
+     */
+    public void release(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("bytes must be >= 0");
+        }
+        if (stripes != null) {
+            checkStripedRelease(bytes);
+        }
+        if (stripes != null && waiters.isEmpty()) {
+            bytes -= putInStripe(stripeIndex(), bytes);
+            if (bytes == 0) {
+                // A thread may have started waiting after the check above
+                if (!waiters.isEmpty()) {
+                    drainStripes();
+                    signalWaiters();
+                }
+                return;
+            }
+        }
+        long current;
+        do {
+            current = available.get();
+            if (bytes > limit - current) {
+                throw new IllegalStateException("released more bytes than were acquired");
+            }
+        } while (!available.compareAndSet(current, current + bytes));
+        if (!waiters.isEmpty()) {
+            signalWaiters();
+        }
+    }
+
+    /**
+     * Gets the limit, in bytes.
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Gets the number of bytes available. Only a snapshot when other threads acquire or release concurrently.
+     */
+    public long getAvailable() {
+        long sum = available.get();
+        if (stripes != null) {
+            for (int i = 0; i <= stripeMask; i++) {
+                sum += stripes.get(i * STRIPE_SPACING);
+            }
+        }
+        // Bytes moved between stripes and the shared long while summing may be counted twice
+        return Math.min(sum, limit);
+    }
+
+    /**
+     * Gets the number of bytes acquired and not yet released.
+     */
+    public long getUsed() {
+        return limit - getAvailable();
+    }
+
+    /**
+     * Gets the number of threads waiting for bytes. Only an estimate.
+     */
+    public int getWaitingThreads() {
+        return waiters.size();
+    }
+
+    /**
+     * Appends the utilization, for example {@code "1.50 GiB of 2.00 GiB (75%), 3 waiting"}.
+     *
+     * @return {@code sb}
+     */
+    public StringBuilder appendUsage(StringBuilder sb) {
+        formatter.appendPercentage(sb, getUsed(), limit, 0);
+        int waiting = getWaitingThreads();
+        if (waiting > 0) {
+            sb.append(", ").append(waiting).append(" waiting");
+        }
+        return sb;
+    }
+
+    @Override
+    public String toString() {
+        return appendUsage(new StringBuilder("ByteBudget[")).append(']').toString();
+    }
+
+    private void checkBytes(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("bytes must be >= 0");
+        }
+        if (bytes > limit) {
+            throw new IllegalArgumentException("bytes must be <= limit (" + limit + ")");
+        }
+    }
+
+    /**
+     * Checks a release against the running totals, and counts it. The released total is read
+     * before the acquired total: the acquisition of any counted release happened before that
+     * release, so it is counted too, and a valid release is never rejected.
+     */
+    private void checkStripedRelease(long bytes) {
+        long releasedSum = released.sum();
+        if (bytes > acquired.sum() - releasedSum) {
+            throw new IllegalStateException("released more bytes than were acquired");
+        }
+        released.add(bytes);
+    }
+
+    private boolean take(long bytes) {
+        long current;
+        do {
+            current = available.get();
+            if (current < bytes) {
+                return false;
+            }
+        } while (!available.compareAndSet(current, current - bytes));
+        return true;
+    }
+
+    /**
+     * Waits for bytes, with the waiter registered before each attempt, so that a release which
+     * happens between a failed attempt and parking still unparks this thread.
+     */
+    private boolean await(long bytes, long deadline, boolean timed) throws InterruptedException {
+        Waiter waiter = new Waiter(Thread.currentThread(), bytes);
+        waiters.add(waiter);
+        boolean acquired = false;
+        try {
+            while (true) {
+                if (tryAcquire(bytes)) {
+                    acquired = true;
+                    return true;
+                }
+                if (timed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waiters.remove(waiter);
+            // A release may have counted on this thread taking the bytes; pass them on
+            if (!acquired || available.get() > 0) {
+                signalWaiters();
+            }
+        }
+    }
+
+    /**
+     * Unparks waiters for which there are bytes available, in order of arrival.
+     */
+    private void signalWaiters() {
+        long remaining = available.get();
+        for (Waiter waiter : waiters) {
+            if (waiter.bytes <= remaining) {
+                remaining -= waiter.bytes;
+                LockSupport.unpark(waiter.thread);
+            }
+        }
+    }
+
+    private int stripeIndex() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & stripeMask;
+    }
+
+    private boolean takeFromStripe(int stripe, long bytes) {
+        int i = stripe * STRIPE_SPACING;
+        long current;
+        do {
+            current = stripes.get(i);
+            if (current < bytes) {
+                return false;
+            }
+        } while (!stripes.compareAndSet(i, current, current - bytes));
+        return true;
+    }
+
+    /**
+     * Keeps up to {@code bytes} in a stripe, without exceeding the stripe cap.
+     *
+     * @return number of bytes kept
+     */
+    private long putInStripe(int stripe, long bytes) {
+        int i = stripe * STRIPE_SPACING;
+        long current;
+        long kept;
+        do {
+            current = stripes.get(i);
+            kept = Math.min(bytes, stripeCap - current);
+            if (kept <= 0) {
+                return 0;
+            }
+        } while (!stripes.compareAndSet(i, current, current + kept));
+        return kept;
+    }
+
+    private void drainStripes() {
+        for (int s = 0; s <= stripeMask; s++) {
+            long bytes = stripes.getAndSet(s * STRIPE_SPACING, 0);
+            if (bytes > 0) {
+                available.addAndGet(bytes);
+            }
+        }
+    }
+
+    private static final class Waiter {
+        final Thread thread;
+        final long bytes;
+
+        Waiter(Thread thread, long bytes) {
+            this.thread = thread;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Builder for {@link ByteBudget}.
+     */
+    public static class Builder {
+        private long limit = -1;
+        private int stripes = 1;
+        private DataSizeFormatter formatter = DataSizeFormatter.builder().build();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the limit. Required.
+         *
+         * @param limit number of bytes, must be 1 or more
+         */
+        public Builder withLimit(long limit) {
+            if (limit < 1) {
+                throw new IllegalArgumentException("limit must be >= 1");
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * Sets the limit as an amount in a unit. Example: {@code withLimit(2, DataSizeUnit.GIGA, true)}
+         * for 2 GiB.
+         *
+         * @param useBinary {@code true} to use binary calculation (1 kibibyte = 1024 bytes).
+         *                  {@code false} to use decimal calculation (1 kilobyte = 1000 bytes).
+         * @throws ArithmeticException if the limit does not fit in a {@code long}
+         */
+        public Builder withLimit(long amount, DataSizeUnit unit, boolean useBinary) {
+            Objects.requireNonNull(unit, "unit cannot be null");
+            return withLimit(unit.toBytesExact(amount, useBinary));
+        }
+
+        /**
+         * Sets the limit as text such as {@code "2 GiB"}.
+         *
+         * @param useBinary how a unit letter without {@code i} is interpreted, see {@link DataSizeParser}
+         * @throws NumberFormatException if {@code limit} is not a valid data size
+         */
+        public Builder withLimit(String limit, boolean useBinary) {
+            Objects.requireNonNull(limit, "limit cannot be null");
+            return withLimit(DataSizeParser.parse(limit, useBinary));
+        }
+
+        /**
+         * Sets the number of stripes, rounded up to a power of two. Defaults to 1, not striped.
+         *
+         * @param stripes number of stripes, 1 or more
+         */
+        public Builder withStripes(int stripes) {
+            if (stripes < 1 || stripes > (1 << 16)) {
+                throw new IllegalArgumentException("stripes must be >= 1 and <= 65536");
+            }
+            this.stripes = stripes;
+            return this;
+        }
+
+        /**
+         * Sets the number of stripes to the number of available processors.
+         */
+        public Builder withStripesPerCore() {
+            return withStripes(Runtime.getRuntime().availableProcessors());
+        }
+
+        /**
+         * Sets the formatter for {@link #appendUsage(StringBuilder)}. Defaults to binary units for the
+         * default locale.
+         */
+        public Builder withFormatter(DataSizeFormatter formatter) {
+            this.formatter = Objects.requireNonNull(formatter, "formatter cannot be null");
+            return this;
+        }
+
+        /**
+         * @throws IllegalStateException if no limit has been set
+         */
+        public ByteBudget build() {
+            if (limit < 0) {
+                throw new IllegalStateException("limit must be set");
+            }
+            return new ByteBudget(this);
+        }
+    }
+}
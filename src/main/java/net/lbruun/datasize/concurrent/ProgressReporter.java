@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.concurrent;
+
+import net.lbruun.datasize.DataSizeFormatter;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Progress lines for many concurrent transfers, rendered by one thread at a fixed rate:
+ * <pre>{@code
+ *   ProgressReporter reporter = ProgressReporter.builder(System.out::print)
+ *           .withInterval(1, TimeUnit.SECONDS)
+ *           .build();
+ *
+ *   try (ProgressReporter.Handle handle = reporter.register(file.getName(), file.length())) {
+ *       while ((n = in.read(buf)) > 0) {
+ *           out.write(buf, 0, n);
+ *           handle.add(n);
+ *       }
+ *   }
+ *   ...
+ *   reporter.close();
+ * }</pre>
+ * which prints lines such as
+ * <pre>
+ *   backup.tar: 1.20 GiB of 10.00 GiB (12%), 35.0 MiB/s
+ *   photos.zip: 712.0 MiB of 712.0 MiB (100%), done
+ * </pre>
+ *
+ * <p>
+ * Updating a {@link Handle} costs an ordered write of a {@code long}: no lock, no compare-and-set and
+ * no formatting in the transfer thread. A single daemon thread samples all handles at the interval
+ * and renders the handles which changed since the previous sample, and those which were closed,
+ * into one string, one line per handle in order of registration. The string is passed to the sink,
+ * so the sink is called at most once per interval however many transfers there are and however
+ * small their chunks. A closed handle gets a final line and is then forgotten.
+ *
+ * <p>
+ * Anything thrown by the sink, {@code Error}s included, is logged at level {@code WARNING} to the
+ * {@code java.util.logging} logger named after this class, and sampling continues.
+ *
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class ProgressReporter implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ProgressReporter.class.getName());
+
+    private final Consumer<? super String> sink;
+    private final long intervalNanos;
+    private final DataSizeFormatter formatter;
+    private final ConcurrentLinkedQueue<Handle> handles = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+    private final StringBuilder lines = new StringBuilder();  // sampling thread only
+
+    private ProgressReporter(Builder builder) {
+        this.sink = builder.sink;
+        this.intervalNanos = builder.intervalNanos;
+        this.formatter = builder.formatter;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ProgressReporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> report(System.nanoTime()), intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates a builder.
+     *
+     * @param sink receives the rendered lines, each terminated by {@code '\n'}, from the sampling thread
+     */
+    public static Builder builder(Consumer<? super String> sink) {
+        return new Builder(sink);
+    }
+
+    /**
+     * Registers a transfer.
+     *
+     * @param name  name shown at the start of its line
+     * @param total total number of bytes, or -1 if unknown
+     * @throws IllegalStateException if the reporter is closed
+     */
+    public Handle register(String name, long total) {
+        Objects.requireNonNull(name, "name cannot be null");
+        if (total < -1) {
+            throw new IllegalArgumentException("total must be >= -1");
+        }
+        if (closed.get()) {
+            throw new IllegalStateException("Reporter is closed");
+        }
+        Handle handle = new Handle(name, total, System.nanoTime());
+        handles.add(handle);
+        return handle;
+    }
+
+    /**
+     * Gets the number of registered transfers which have not yet been reported as closed.
+     * This walks all handles.
+     */
+    public int getHandleCount() {
+        return handles.size();
+    }
+
+    /**
+     * Gets the sampling interval, in nanoseconds.
+     */
+    public long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    /**
+     * Stops the sampling thread, then renders what changed since the last sample, in the
+     * calling thread. Handles which are still open are then no longer reported.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        report(System.nanoTime());
+    }
+
+    @Override
+    public String toString() {
+        return "ProgressReporter[interval=" + TimeUnit.NANOSECONDS.toMillis(intervalNanos) + " ms]";
+    }
+
+    /**
+     * Samples all handles and passes the lines of those which changed to the sink. Called by one
+     * thread at a time: the sampling thread, or the thread closing the reporter once the sampling
+     * thread has stopped.
+     */
+    void report(long nowNanos) {
+        lines.setLength(0);
+        for (Iterator<Handle> it = handles.iterator(); it.hasNext(); ) {
+            Handle handle = it.next();
+            // Read the flag first: a value written before close() is then seen
+            boolean done = handle.closed;
+            long transferred = handle.transferred;
+            if (transferred != handle.reported || done) {
+                long elapsed = nowNanos - handle.sampledNanos;
+                long rate = (elapsed > 0) ? (long) ((transferred - handle.sampled) * 1e9 / elapsed) : 0;
+                appendLine(handle, transferred, rate, done);
+                handle.reported = transferred;
+            }
+            handle.sampled = transferred;
+            handle.sampledNanos = nowNanos;
+            if (done) {
+                it.remove();
+            }
+        }
+        if (lines.length() == 0) {
+            return;
+        }
+        try {
+            sink.accept(lines.toString());
+        } catch (Throwable e) {
+            // Also Errors: letting one escape would silently stop the sampling thread
+            LOGGER.log(Level.WARNING, "Progress sink failed", e);
+        }
+    }
+
+    private void appendLine(Handle handle, long transferred, long rate, boolean done) {
+        lines.append(handle.name).append(": ");
+        if (handle.total >= 0) {
+            formatter.appendPercentage(lines, transferred, handle.total, 0);
+        } else {
+            formatter.appendTo(lines, transferred);
+        }
+        lines.append(", ");
+        if (done) {
+            lines.append("done");
+        } else {
+            formatter.appendTo(lines, Math.max(rate, 0)).append("/s");
+        }
+        lines.append('\n');
+    }
+
+    /**
+     * Progress of one transfer. Updated by the transfer, one thread at a time, and read by the
+     * sampling thread of the reporter.
+     */
+    public static final class Handle implements AutoCloseable {
+        private static final AtomicLongFieldUpdater<Handle> TRANSFERRED =
+                AtomicLongFieldUpdater.newUpdater(Handle.class, "transferred");
+
+        private final String name;
+        private final long total;
+        private volatile long transferred;
+        private volatile boolean closed;
+        // Sampling thread only
+        private long reported = -1;
+        private long sampled;
+        private long sampledNanos;
+
+        private Handle(String name, long total, long nowNanos) {
+            this.name = name;
+            this.total = total;
+            this.sampledNanos = nowNanos;
+        }
+
+        /**
+         * Adds to the number of bytes transferred. Not atomic: the handle must not be updated
+         * by more than one thread at a time.
+         *
+         * @param bytes number of bytes, must be 0 or more
+         */
+        public void add(long bytes) {
+            if (bytes < 0) {
+                throw new IllegalArgumentException("bytes must be >= 0");
+            }
+            TRANSFERRED.lazySet(this, transferred + bytes);
+        }
+
+        /**
+         * Sets the number of bytes transferred.
+         *
+         * @param transferred number of bytes, must be 0 or more
+         */
+        public void set(long transferred) {
+            if (transferred < 0) {
+                throw new IllegalArgumentException("transferred must be >= 0");
+            }
+            TRANSFERRED.lazySet(this, transferred);
+        }
+
+        /**
+         * Gets the number of bytes transferred.
+         */
+        public long getTransferred() {
+            return transferred;
+        }
+
+        /**
+         * Gets the name of the transfer.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the total number of bytes, or -1 if unknown.
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        /**
+         * Marks the transfer as finished. It gets a final line at the next sample.
+         */
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public String toString() {
+            return "Handle[" + name + ", " + transferred + " of " + total + " bytes]";
+        }
+    }
+
+    /**
+     * Builder for {@link ProgressReporter}.
+     */
+    public static class Builder {
+        private final Consumer<? super String> sink;
+        private long intervalNanos = TimeUnit.SECONDS.toNanos(1);
+        private DataSizeFormatter formatter = DataSizeFormatter.builder().build();
+
+        private Builder(Consumer<? super String> sink) {
+            this.sink = Objects.requireNonNull(sink, "sink cannot be null");
+        }
+
+        /**
+         * Sets the sampling interval. Defaults to 1 second.
+         */
+        public Builder withInterval(long interval, TimeUnit unit) {
+            Objects.requireNonNull(unit, "unit cannot be null");
+            if (interval < 1) {
+                throw new IllegalArgumentException("interval must be >= 1");
+            }
+            this.intervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        /**
+         * Sets the formatter for sizes and rates. Defaults to binary units for the
+         * default locale.
+         */
+        public Builder withFormatter(DataSizeFormatter formatter) {
+            this.formatter = Objects.requireNonNull(formatter, "formatter cannot be null");
+            return this;
+        }
+
+        /**
+         * Creates the reporter and starts its sampling thread.
+         */
+        public ProgressReporter build() {
+            return new ProgressReporter(this);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.io;
+
+import net.lbruun.datasize.DataSizeFormatter;
+import net.lbruun.datasize.DataSizeParser;
+import net.lbruun.datasize.DataSizeUnit;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Splits a file into chunks of a given size, for example the parts of a multipart upload. Each
+ * chunk is an offset and a length, ready for {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+ * which copies without going through the Java heap:
+ * <pre>{@code
+ *   ChunkPlanner planner = ChunkPlanner.builder()
+ *           .withChunkSize("8 MiB", true)
+ *           .withMaxChunks(10_000)
+ *           .build();
+ *   ChunkPlanner.Plan plan = planner.plan(channel.size());
+ *   for (int i = 0; i < plan.size(); i++) {
+ *       plan.transfer(channel, i, partChannel(i));
+ *   }
+ * }</pre>
+ *
+ * <p>
+ * All chunks but the last have the chunk size. If that would give more than the maximum number of
+ * chunks, the chunk size is raised for that file, to the smallest multiple of the alignment which
+ * stays within the maximum. A file of 0 bytes has no chunks.
+ *
+ * <p>
+ * Each plan is logged at level {@code FINE}, with human-readable sizes, to the
+ * {@code java.util.logging} logger named after this class. Instances are immutable.
+ */
+public final class ChunkPlanner {
+
+    private static final Logger LOGGER = Logger.getLogger(ChunkPlanner.class.getName());
+
+    private final long chunkSize;
+    private final int maxChunks;
+    private final long alignment;
+    private final DataSizeFormatter formatter;
+
+    private ChunkPlanner(Builder builder) {
+        this.chunkSize = builder.chunkSize;
+        this.maxChunks = builder.maxChunks;
+        this.alignment = builder.alignment;
+        this.formatter = builder.formatter;
+    }
+
+    /**
+     * Creates a builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Plans the chunks of a file.
+     *
+     * @param length length of the file
+     * @throws IllegalArgumentException if {@code length} is negative
+     */
+    public Plan plan(long length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("length must be >= 0");
+        }
+        long size = chunkSize;
+        if (ceilDiv(length, size) > maxChunks) {
+            long units = ceilDiv(ceilDiv(length, maxChunks), alignment);
+            size = (units > Long.MAX_VALUE / alignment) ? length : units * alignment;
+        }
+        Plan plan = new Plan(length, size);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Planned " + formatter.format(length) + " as " + plan.size() + " chunks of "
+                    + formatter.format(size)
+                    + ((size != chunkSize) ? ", raised from " + formatter.format(chunkSize) + " to stay within " + maxChunks + " chunks" : ""));
+        }
+        return plan;
+    }
+
+    /**
+     * Gets the configured chunk size.
+     */
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Gets the maximum number of chunks.
+     */
+    public int getMaxChunks() {
+        return maxChunks;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkPlanner[chunkSize=" + formatter.format(chunkSize) + ", maxChunks=" + maxChunks + "]";
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return x / y + ((x % y == 0) ? 0 : 1);
+    }
+
+    /**
+     * Chunks of one file. Offsets and lengths are computed on demand, so a plan takes
+     * constant memory however many chunks it has.
+     */
+    public static final class Plan {
+        private final long length;
+        private final long chunkSize;
+        private final int count;
+
+        private Plan(long length, long chunkSize) {
+            this.length = length;
+            this.chunkSize = chunkSize;
+            this.count = (int) ceilDiv(length, chunkSize);
+        }
+
+        /**
+         * Gets the number of chunks.
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Gets the length of the file.
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Gets the length of all chunks but the last.
+         */
+        public long getChunkSize() {
+            return chunkSize;
+        }
+
+        /**
+         * Gets the position in the file of a chunk.
+         */
+        public long getOffset(int index) {
+            checkIndex(index);
+            return index * chunkSize;
+        }
+
+        /**
+         * Gets the length of a chunk.
+         */
+        public long getLength(int index) {
+            checkIndex(index);
+            return Math.min(chunkSize, length - index * chunkSize);
+        }
+
+        /**
+         * Gets all chunks as offset and length pairs: {@code {offset0, length0, offset1, length1, ...}}.
+         */
+        public long[] toArray() {
+            long[] pairs = new long[2 * count];
+            for (int i = 0; i < count; i++) {
+                pairs[2 * i] = getOffset(i);
+                pairs[2 * i + 1] = getLength(i);
+            }
+            return pairs;
+        }
+
+        /**
+         * Copies a chunk from a file to a channel with {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+         * repeating the call until the whole chunk is copied.
+         *
+         * @return number of bytes copied, the length of the chunk
+         * @throws EOFException if the file ends before the chunk does
+         * @throws IOException  if copying fails
+         */
+        public long transfer(FileChannel source, int index, WritableByteChannel target) throws IOException {
+            Objects.requireNonNull(source, "source cannot be null");
+            Objects.requireNonNull(target, "target cannot be null");
+            long position = getOffset(index);
+            long end = position + getLength(index);
+            while (position < end) {
+                long n = source.transferTo(position, end - position, target);
+                if (n == 0 && position >= source.size()) {
+                    throw new EOFException("File ends at " + source.size() + ", before end of chunk " + index + " at " + end);
+                }
+                position += n;
+            }
+            return end - getOffset(index);
+        }
+
+        @Override
+        public String toString() {
+            return "Plan[" + count + " chunks of " + chunkSize + " bytes, " + length + " bytes]";
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("index " + index + " out of bounds for " + count + " chunks");
+            }
+        }
+    }
+
+    /**
+     * Builder for {@link ChunkPlanner}.
+     */
+    public static class Builder {
+        private long chunkSize = 8L << 20;
+        private int maxChunks = Integer.MAX_VALUE;
+        private long alignment = 1;
+        private DataSizeFormatter formatter = DataSizeFormatter.builder().build();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the chunk size. Defaults to 8 MiB.
+         *
+         * @param chunkSize number of bytes, must be 1 or more
+         */
+        public Builder withChunkSize(long chunkSize) {
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("chunkSize must be >= 1");
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Sets the chunk size as an amount in a unit. Example: {@code withChunkSize(8, DataSizeUnit.MEGA, true)}
+         * for 8 MiB.
+         *
+         * @param useBinary {@code true} to use binary calculation (1 kibibyte = 1024 bytes).
+         *                  {@code false} to use decimal calculation (1 kilobyte = 1000 bytes).
+         */
+        public Builder withChunkSize(long amount, DataSizeUnit unit, boolean useBinary) {
+            Objects.requireNonNull(unit, "unit cannot be null");
+            return withChunkSize(unit.toBytes(amount, useBinary));
+        }
+
+        /**
+         * Sets the chunk size as text such as {@code "8 MiB"}.
+         *
+         * @param useBinary how a unit letter without {@code i} is interpreted, see {@link DataSizeParser}
+         * @throws NumberFormatException if {@code chunkSize} is not a valid data size
+         */
+        public Builder withChunkSize(String chunkSize, boolean useBinary) {
+            Objects.requireNonNull(chunkSize, "chunkSize cannot be null");
+            return withChunkSize(DataSizeParser.parse(chunkSize, useBinary));
+        }
+
+        /**
+         * Sets the maximum number of chunks, for example 10000 for Amazon S3 multipart uploads.
+         * Defaults to {@code Integer.MAX_VALUE}.
+         */
+        public Builder withMaxChunks(int maxChunks) {
+            if (maxChunks < 1) {
+                throw new IllegalArgumentException("maxChunks must be >= 1");
+            }
+            this.maxChunks = maxChunks;
+            return this;
+        }
+
+        /**
+         * Sets the alignment of raised chunk sizes. Defaults to 1, no alignment. Example: with
+         * {@code DataSizeUnit.MEGA.getBinarySize()}, raised chunk sizes are whole mebibytes.
+         *
+         * @param alignment number of bytes, must be 1 or more
+         */
+        public Builder withAlignment(long alignment) {
+            if (alignment < 1) {
+                throw new IllegalArgumentException("alignment must be >= 1");
+            }
+            this.alignment = alignment;
+            return this;
+        }
+
+        /**
+         * Sets the formatter for sizes in log messages. Defaults to binary units for the
+         * default locale.
+         */
+        public Builder withFormatter(DataSizeFormatter formatter) {
+            this.formatter = Objects.requireNonNull(formatter, "formatter cannot be null");
+            return this;
+        }
+
+        public ChunkPlanner build() {
+            return new ChunkPlanner(this);
+        }
+    }
+}
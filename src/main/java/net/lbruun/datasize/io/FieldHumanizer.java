@@ -0,0 +1,545 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.io;
+
+import net.lbruun.datasize.DataSizeFormatter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Rewrites byte counts in line-oriented text, such as structured logs, into human-readable form
+ * while passing everything else through unchanged.
+ *
+ * <p>
+ * Fields are selected either by key or by column:
+ * <ul>
+ *     <li><b>Keys</b>. A field is a key, immediately followed by the key-value separator
+ *     (default {@code '='}), immediately followed by digits. The key must be at the start of the
+ *     line or be preceded by a character which cannot be part of a key (anything but letters, digits,
+ *     {@code '_'}, {@code '-'} and {@code '.'}). The digits must be followed by the end of
+ *     the line or by such a character. Example: with key {@code bytes_sent}, the line
+ *     {@code "GET /x status=200 bytes_sent=2000000"} becomes {@code "GET /x status=200 bytes_sent=1.9 MiB"}.</li>
+ *     <li><b>Columns</b>. A field is the n'th field of the line (counting from 1), where fields are
+ *     separated by runs of blanks or, if configured, by a single delimiter char.
+ *     The field must consist of digits only.</li>
+ * </ul>
+ * Fields which do not match, or whose value does not fit in a {@code long}, are left as they are.
+ *
+ * <p>
+ * Fields are found by a hand-written scanner (not regular expressions) and the input is never
+ * decoded into {@code String}s. Channel input is processed as bytes, which works for ASCII and UTF-8
+ * input (keys and delimiter must be ASCII). Formatted values are written into a reused
+ * output buffer. Long runs of unchanged input are written directly from the input buffer without
+ * copying. An instance is immutable and may be used by several threads concurrently, each
+ * {@code transfer} call uses its own buffers.
+ */
+public final class FieldHumanizer {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Unchanged runs of input at least this long are written directly from the input buffer
+     * instead of being copied to the output buffer.
+     */
+    private static final int DIRECT_WRITE_THRESHOLD = 1 << 12;
+
+    private final DataSizeFormatter formatter;
+    private final char[][] keys;       // null if columns are used
+    private final char keyValueSeparator;
+    private final boolean[] columns;   // indexed by column number, null if keys are used
+    private final int delimiter;       // -1 means runs of blanks
+
+    private FieldHumanizer(DataSizeFormatter formatter, String[] keys, char keyValueSeparator, int[] columns, int delimiter) {
+        this.formatter = formatter;
+        this.keyValueSeparator = keyValueSeparator;
+        this.delimiter = delimiter;
+        if (keys != null) {
+            this.keys = new char[keys.length][];
+            for (int i = 0; i < keys.length; i++) {
+                this.keys[i] = keys[i].toCharArray();
+            }
+            this.columns = null;
+        } else {
+            this.keys = null;
+            int max = 0;
+            for (int c : columns) {
+                max = Math.max(max, c);
+            }
+            this.columns = new boolean[max + 1];
+            for (int c : columns) {
+                this.columns[c] = true;
+            }
+        }
+    }
+
+    /**
+     * Builder for {@code FieldHumanizer}.
+     */
+    public static FieldHumanizer.Builder builder() {
+        return new FieldHumanizer.Builder();
+    }
+
+    /**
+     * Reads all of {@code in} and writes the rewritten result to {@code out}. Neither channel is closed.
+     *
+     * @return number of fields rewritten
+     */
+    public long transfer(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        Objects.requireNonNull(in, "in cannot be null");
+        Objects.requireNonNull(out, "out cannot be null");
+        byte[] buf = new byte[BUFFER_SIZE];
+        ByteBuffer bb = ByteBuffer.wrap(buf);
+        ByteInput input = new ByteInput();
+        input.buf = buf;
+        ByteBuffer outBb = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] outBuf = outBb.array();
+        int outPos = 0;
+        Spans spans = new Spans();
+        int filled = 0;
+        long rewritten = 0;
+        boolean eof = false;
+        while (!eof) {
+            if (filled == buf.length) {
+                // A single line which is longer than the buffer
+                buf = Arrays.copyOf(buf, buf.length * 2);
+                bb = ByteBuffer.wrap(buf);
+                input.buf = buf;
+            }
+            bb.clear();
+            bb.position(filled);
+            int n = in.read(bb);
+            if (n < 0) {
+                eof = true;
+            } else {
+                filled += n;
+            }
+            int lineStart = 0;
+            while (lineStart < filled) {
+                int lineEnd = indexOf(input, '\n', lineStart, filled);
+                if (lineEnd < 0) {
+                    if (!eof) {
+                        break;
+                    }
+                    lineEnd = filled;
+                }
+                spans.clear();
+                if (keys != null) {
+                    scanKeys(input, lineStart, lineEnd, spans);
+                } else {
+                    scanColumns(input, lineStart, lineEnd, spans);
+                }
+                int next = Math.min(lineEnd + 1, filled);
+                int pos = lineStart;
+                for (int s = 0; s <= spans.count; s++) {
+                    int segmentEnd = (s < spans.count) ? spans.starts[s] : next;
+                    int len = segmentEnd - pos;
+                    if (len >= DIRECT_WRITE_THRESHOLD || len > outBuf.length - outPos) {
+                        // Zero-copy: write directly from the input buffer
+                        outPos = writeFully(out, outBb, outPos);
+                        bb.clear();
+                        bb.position(pos);
+                        bb.limit(segmentEnd);
+                        writeFully(out, bb);
+                    } else {
+                        System.arraycopy(buf, pos, outBuf, outPos, len);
+                        outPos += len;
+                    }
+                    if (s < spans.count) {
+                        if (formatter.getMaxFormattedLength() > outBuf.length - outPos) {
+                            outPos = writeFully(out, outBb, outPos);
+                        }
+                        outPos = formatter.formatTo(spans.values[s], outBuf, outPos);
+                        pos = spans.ends[s];
+                    }
+                }
+                rewritten += spans.count;
+                lineStart = next;
+            }
+            int remaining = filled - lineStart;
+            if (remaining > 0 && lineStart > 0) {
+                System.arraycopy(buf, lineStart, buf, 0, remaining);
+            }
+            filled = remaining;
+        }
+        writeFully(out, outBb, outPos);
+        return rewritten;
+    }
+
+    /**
+     * Reads all of {@code in} and writes the rewritten result to {@code out}. Neither
+     * {@code in} nor {@code out} is closed, {@code out} is flushed.
+     *
+     * @return number of fields rewritten
+     */
+    public long transfer(Reader in, Writer out) throws IOException {
+        Objects.requireNonNull(in, "in cannot be null");
+        Objects.requireNonNull(out, "out cannot be null");
+        char[] buf = new char[BUFFER_SIZE];
+        char[] outBuf = new char[BUFFER_SIZE];
+        CharInput input = new CharInput();
+        input.buf = buf;
+        StringBuilder scratch = new StringBuilder(formatter.getMaxFormattedLength());
+        int outPos = 0;
+        Spans spans = new Spans();
+        int filled = 0;
+        long rewritten = 0;
+        boolean eof = false;
+        while (!eof) {
+            if (filled == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+                input.buf = buf;
+            }
+            int n = in.read(buf, filled, buf.length - filled);
+            if (n < 0) {
+                eof = true;
+            } else {
+                filled += n;
+            }
+            int lineStart = 0;
+            while (lineStart < filled) {
+                int lineEnd = indexOf(input, '\n', lineStart, filled);
+                if (lineEnd < 0) {
+                    if (!eof) {
+                        break;
+                    }
+                    lineEnd = filled;
+                }
+                spans.clear();
+                if (keys != null) {
+                    scanKeys(input, lineStart, lineEnd, spans);
+                } else {
+                    scanColumns(input, lineStart, lineEnd, spans);
+                }
+                int next = Math.min(lineEnd + 1, filled);
+                int pos = lineStart;
+                for (int s = 0; s <= spans.count; s++) {
+                    int segmentEnd = (s < spans.count) ? spans.starts[s] : next;
+                    int len = segmentEnd - pos;
+                    if (len >= DIRECT_WRITE_THRESHOLD || len > outBuf.length - outPos) {
+                        out.write(outBuf, 0, outPos);
+                        outPos = 0;
+                        out.write(buf, pos, len);
+                    } else {
+                        System.arraycopy(buf, pos, outBuf, outPos, len);
+                        outPos += len;
+                    }
+                    if (s < spans.count) {
+                        scratch.setLength(0);
+                        formatter.appendTo(scratch, spans.values[s]);
+                        if (scratch.length() > outBuf.length - outPos) {
+                            out.write(outBuf, 0, outPos);
+                            outPos = 0;
+                        }
+                        scratch.getChars(0, scratch.length(), outBuf, outPos);
+                        outPos += scratch.length();
+                        pos = spans.ends[s];
+                    }
+                }
+                rewritten += spans.count;
+                lineStart = next;
+            }
+            int remaining = filled - lineStart;
+            if (remaining > 0 && lineStart > 0) {
+                System.arraycopy(buf, lineStart, buf, 0, remaining);
+            }
+            filled = remaining;
+        }
+        out.write(outBuf, 0, outPos);
+        out.flush();
+        return rewritten;
+    }
+
+    private void scanKeys(Input b, int start, int end, Spans spans) {
+        for (int p = indexOf(b, keyValueSeparator, start, end); p >= 0; p = indexOf(b, keyValueSeparator, p + 1, end)) {
+            if (!keyEndsAt(b, start, p)) {
+                continue;
+            }
+            int digitsEnd = p + 1;
+            while (digitsEnd < end && b.at(digitsEnd) >= '0' && b.at(digitsEnd) <= '9') {
+                digitsEnd++;
+            }
+            if (digitsEnd < end && isKeyChar(b.at(digitsEnd))) {
+                continue;
+            }
+            long value = parseDigits(b, p + 1, digitsEnd);
+            if (value >= 0) {
+                spans.add(p + 1, digitsEnd, value);
+                p = digitsEnd - 1;
+            }
+        }
+    }
+
+    private boolean keyEndsAt(Input b, int lineStart, int p) {
+        for (char[] key : keys) {
+            int keyStart = p - key.length;
+            if (keyStart < lineStart || (keyStart > lineStart && isKeyChar(b.at(keyStart - 1)))) {
+                continue;
+            }
+            int i = 0;
+            while (i < key.length && b.at(keyStart + i) == key[i]) {
+                i++;
+            }
+            if (i == key.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void scanColumns(Input b, int start, int end, Spans spans) {
+        int column = 0;
+        int i = start;
+        while (i < end && column < columns.length - 1) {
+            int fieldStart;
+            int fieldEnd;
+            if (delimiter < 0) {
+                while (i < end && isBlank(b.at(i))) {
+                    i++;
+                }
+                if (i == end) {
+                    break;
+                }
+                fieldStart = i;
+                while (i < end && !isBlank(b.at(i))) {
+                    i++;
+                }
+                fieldEnd = i;
+            } else {
+                fieldStart = i;
+                int d = indexOf(b, delimiter, i, end);
+                fieldEnd = (d < 0) ? end : d;
+                i = (d < 0) ? end : d + 1;
+            }
+            column++;
+            if (columns[column]) {
+                long value = parseDigits(b, fieldStart, fieldEnd);
+                if (value >= 0) {
+                    spans.add(fieldStart, fieldEnd, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses a non-empty run of digits. Returns -1 if the input is empty, contains anything but
+     * digits or if the value does not fit in a {@code long}.
+     */
+    private static long parseDigits(Input b, int start, int end) {
+        if (start == end) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int d = b.at(i) - '0';
+            if (d < 0 || d > 9 || value > (Long.MAX_VALUE - d) / 10) {
+                return -1;
+            }
+            value = (value * 10) + d;
+        }
+        return value;
+    }
+
+    private static int writeFully(WritableByteChannel out, ByteBuffer outBb, int outPos) throws IOException {
+        outBb.clear();
+        outBb.limit(outPos);
+        writeFully(out, outBb);
+        return 0;
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            out.write(src);
+        }
+    }
+
+    private static int indexOf(Input buf, int c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf.at(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isKeyChar(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '_' || c == '-' || c == '.';
+    }
+
+    private static boolean isBlank(int c) {
+        return c == ' ' || c == '\t';
+    }
+
+    /**
+     * The buffer being scanned. The scanner reads it one element at a time through {@link #at(int)},
+     * so the same code serves both {@code byte[]} and {@code char[]} input. There are only ever these
+     * two subclasses, so the JIT can inline the call behind a type check; that check is the cost over
+     * scanning the array directly.
+     * The array is replaced when the buffer grows.
+     */
+    private abstract static class Input {
+        abstract int at(int i);
+    }
+
+    private static final class ByteInput extends Input {
+        private byte[] buf;
+
+        @Override
+        int at(int i) {
+            return buf[i];
+        }
+    }
+
+    private static final class CharInput extends Input {
+        private char[] buf;
+
+        @Override
+        int at(int i) {
+            return buf[i];
+        }
+    }
+
+    /**
+     * Fields found on the current line, reused from line to line.
+     */
+    private static final class Spans {
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private long[] values = new long[16];
+        private int count;
+
+        private void clear() {
+            count = 0;
+        }
+
+        private void add(int start, int end, long value) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            values[count] = value;
+            count++;
+        }
+    }
+
+    /**
+     * Builder for {@code FieldHumanizer}. Either keys or columns must be configured, but not both.
+     */
+    public static class Builder {
+
+        private DataSizeFormatter formatter;
+        private String[] keys;
+        private char keyValueSeparator = '=';
+        private int[] columns;
+        private int delimiter = -1;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the formatter to use. If not set, a formatter with default settings is used, see
+         * {@link DataSizeFormatter#builder()}.
+         */
+        public FieldHumanizer.Builder withFormatter(DataSizeFormatter formatter) {
+            this.formatter = Objects.requireNonNull(formatter, "formatter cannot be null");
+            return this;
+        }
+
+        /**
+         * Selects fields by key name. Keys must be ASCII and consist of letters, digits,
+         * {@code '_'}, {@code '-'} and {@code '.'} only.
+         */
+        public FieldHumanizer.Builder withKeys(String... keys) {
+            Objects.requireNonNull(keys, "keys cannot be null");
+            if (keys.length == 0) {
+                throw new IllegalArgumentException("at least one key must be supplied");
+            }
+            for (String key : keys) {
+                Objects.requireNonNull(key, "key cannot be null");
+                if (key.isEmpty()) {
+                    throw new IllegalArgumentException("key cannot be empty");
+                }
+                for (int i = 0; i < key.length(); i++) {
+                    if (!isKeyChar(key.charAt(i))) {
+                        throw new IllegalArgumentException("invalid character in key '" + key + "'");
+                    }
+                }
+            }
+            this.keys = keys.clone();
+            return this;
+        }
+
+        /**
+         * Sets the char which separates a key from its value. Default is {@code '='}.
+         * Only relevant when fields are selected by key.
+         */
+        public FieldHumanizer.Builder withKeyValueSeparator(char keyValueSeparator) {
+            if (keyValueSeparator > 127 || isKeyChar(keyValueSeparator)) {
+                throw new IllegalArgumentException("keyValueSeparator must be an ASCII char which cannot be part of a key");
+            }
+            this.keyValueSeparator = keyValueSeparator;
+            return this;
+        }
+
+        /**
+         * Selects fields by column number, counting from 1.
+         */
+        public FieldHumanizer.Builder withColumns(int... columns) {
+            Objects.requireNonNull(columns, "columns cannot be null");
+            if (columns.length == 0) {
+                throw new IllegalArgumentException("at least one column must be supplied");
+            }
+            for (int c : columns) {
+                if (c < 1) {
+                    throw new IllegalArgumentException("column must be >= 1");
+                }
+            }
+            this.columns = columns.clone();
+            return this;
+        }
+
+        /**
+         * Sets the char which separates columns. If not set, columns are separated by runs of
+         * blanks (spaces and tabs). Only relevant when fields are selected by column.
+         */
+        public FieldHumanizer.Builder withDelimiter(char delimiter) {
+            if (delimiter > 127 || delimiter == '\n') {
+                throw new IllegalArgumentException("delimiter must be an ASCII char other than newline");
+            }
+            this.delimiter = delimiter;
+            return this;
+        }
+
+        public FieldHumanizer build() {
+            if ((keys == null) == (columns == null)) {
+                throw new IllegalArgumentException("either keys or columns must be configured, but not both");
+            }
+            DataSizeFormatter f = (formatter != null) ? formatter : DataSizeFormatter.builder().build();
+            return new FieldHumanizer(f, keys, keyValueSeparator, columns, delimiter);
+        }
+    }
+}
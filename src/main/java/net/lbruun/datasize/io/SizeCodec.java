@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.io;
+
+import net.lbruun.datasize.DataSize;
+import net.lbruun.datasize.DataSizeFormatter;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.function.LongConsumer;
+
+/**
+ * Compact binary encoding of sequences of sizes.
+ *
+ * <p>
+ * A sequence is encoded as a block:
+ * <ol>
+ *     <li>number of values, as unsigned varint</li>
+ *     <li>shift, one byte: the number of trailing zero bits which all values have in common</li>
+ *     <li>for each value: the difference to the previous value (the first value: to 0), after shifting
+ *     both right by the shift, zigzag-encoded as unsigned varint</li>
+ * </ol>
+ * Varints are little-endian base 128 (LEB128), as in Protocol Buffers. Zigzag encoding maps small negative
+ * differences to small numbers. The shift makes sizes which are multiples of a unit, such as block sizes
+ * or whole kibibytes, cost the same as small numbers. Sorted sequences, where differences are small,
+ * typically take 1 to 3 bytes per value, against 8 for a raw {@code long}.
+ *
+ * <p>
+ * Any {@code long} value, including negative values, can be encoded. Decoding into an array or a
+ * {@link LongConsumer} creates no objects. Only the numbers are encoded; rendering to human-readable
+ * form is left to the receiver, see {@link #decode(ByteBuffer, DataSizeFormatter)}.
+ */
+public final class SizeCodec {
+
+    private static final int MAX_VARINT_LONG_BYTES = 10;
+    private static final int MAX_VARINT_INT_BYTES = 5;
+
+    private SizeCodec() {
+    }
+
+    /**
+     * Gets the maximum number of bytes needed to encode {@code count} values.
+     */
+    public static long maxEncodedLength(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must be >= 0");
+        }
+        return MAX_VARINT_INT_BYTES + 1 + (long) MAX_VARINT_LONG_BYTES * count;
+    }
+
+    /**
+     * Encodes values into a buffer, starting at its position. On return the position is just
+     * after the encoded block.
+     *
+     * @param values values to encode
+     * @param off    index of first value in {@code values}
+     * @param len    number of values
+     * @param dst    destination
+     * @throws BufferOverflowException if there is insufficient space in {@code dst}. The
+     *                                 position of {@code dst} is then unchanged.
+     */
+    public static void encode(long[] values, int off, int len, ByteBuffer dst) {
+        Objects.requireNonNull(dst, "dst cannot be null");
+        if (off < 0 || len < 0 || off > values.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        long common = 0;
+        for (int i = off; i < off + len; i++) {
+            common |= values[i];
+        }
+        int shift = (common == 0) ? 0 : Long.numberOfTrailingZeros(common);
+
+        int start = dst.position();
+        try {
+            putVarint(dst, len);
+            dst.put((byte) shift);
+            long previous = 0;
+            for (int i = off; i < off + len; i++) {
+                long v = values[i] >> shift;
+                long delta = v - previous;  // may wrap around, as does the addition when decoding
+                putVarint(dst, (delta << 1) ^ (delta >> 63));
+                previous = v;
+            }
+        } catch (BufferOverflowException ex) {
+            dst.position(start);
+            throw ex;
+        }
+    }
+
+    /**
+     * Encodes the values of {@code DataSize} objects. The pre-rendered strings are not encoded.
+     *
+     * @see #encode(long[], int, int, ByteBuffer)
+     */
+    public static void encode(DataSize[] sizes, ByteBuffer dst) {
+        long[] values = new long[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            values[i] = sizes[i].getValue();
+        }
+        encode(values, 0, values.length, dst);
+    }
+
+    /**
+     * Gets the number of values of the block at the position of a buffer, without
+     * changing the position.
+     *
+     * @throws BufferUnderflowException if the buffer does not hold a complete count
+     * @throws IllegalArgumentException if the count is malformed
+     */
+    public static int peekCount(ByteBuffer src) {
+        int start = src.position();
+        try {
+            return readCount(src);
+        } finally {
+            src.position(start);
+        }
+    }
+
+    /**
+     * Decodes a block into an array. On return the position of {@code src} is just after
+     * the block.
+     *
+     * @param src source
+     * @param dst destination
+     * @param off index in {@code dst} of the first decoded value
+     * @return number of values decoded
+     * @throws IndexOutOfBoundsException if the values do not fit in {@code dst}. Nothing is
+     *                                   decoded in this case.
+     * @throws BufferUnderflowException  if the buffer does not hold a complete block
+     * @throws IllegalArgumentException  if the block is malformed
+     */
+    public static int decode(ByteBuffer src, long[] dst, int off) {
+        int start = src.position();
+        int count = getCount(src);
+        if (off < 0 || off > dst.length - count) {
+            src.position(start);
+            throw new IndexOutOfBoundsException("block of " + count + " values does not fit at index " + off);
+        }
+        int shift = getShift(src);
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += unzigzag(getVarint(src));
+            dst[off + i] = previous << shift;
+        }
+        return count;
+    }
+
+    /**
+     * Decodes a block, passing each value to a consumer. On return the position of {@code src}
+     * is just after the block.
+     *
+     * @return number of values decoded
+     * @throws BufferUnderflowException if the buffer does not hold a complete block
+     * @throws IllegalArgumentException if the block is malformed
+     */
+    public static int decode(ByteBuffer src, LongConsumer consumer) {
+        Objects.requireNonNull(consumer, "consumer cannot be null");
+        int count = getCount(src);
+        int shift = getShift(src);
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += unzigzag(getVarint(src));
+            consumer.accept(previous << shift);
+        }
+        return count;
+    }
+
+    /**
+     * Decodes a block and renders each value with a formatter.
+     *
+     * @return the decoded sizes, each pre-rendered using {@code formatter}
+     * @throws BufferUnderflowException if the buffer does not hold a complete block
+     * @throws IllegalArgumentException if the block is malformed, or if a value cannot be
+     *                                  formatted by {@code formatter}
+     */
+    public static DataSize[] decode(ByteBuffer src, DataSizeFormatter formatter) {
+        Objects.requireNonNull(formatter, "formatter cannot be null");
+        int start = src.position();
+        long[] values = new long[getCount(src)];
+        src.position(start);
+        decode(src, values, 0);
+        DataSize[] sizes = new DataSize[values.length];
+        for (int i = 0; i < values.length; i++) {
+            sizes[i] = new DataSize(values[i], formatter);
+        }
+        return sizes;
+    }
+
+    /**
+     * Reads the count of a block which is about to be decoded. Each value takes at least one
+     * byte, so a count greater than the bytes left is rejected before anything is allocated
+     * for it.
+     */
+    private static int getCount(ByteBuffer src) {
+        int count = readCount(src);
+        if (count > src.remaining()) {
+            throw new IllegalArgumentException("Malformed block: count " + count + " exceeds the "
+                    + src.remaining() + " bytes left");
+        }
+        return count;
+    }
+
+    private static int readCount(ByteBuffer src) {
+        long count = getVarint(src);
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Malformed block: count out of range");
+        }
+        return (int) count;
+    }
+
+    private static int getShift(ByteBuffer src) {
+        int shift = src.get();
+        if (shift < 0 || shift > 63) {
+            throw new IllegalArgumentException("Malformed block: shift out of range");
+        }
+        return shift;
+    }
+
+    static void putVarint(ByteBuffer dst, long v) {
+        while ((v & ~0x7FL) != 0) {
+            dst.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        dst.put((byte) v);
+    }
+
+    static long getVarint(ByteBuffer src) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = src.get();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed block: varint too long");
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.io;
+
+import net.lbruun.datasize.DataSizeFormatter;
+import net.lbruun.datasize.collect.SizeTopK;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Differences between two snapshots of path sizes, for example last night's and tonight's:
+ * the paths which grew and shrank the most, and totals.
+ *
+ * <p>
+ * The snapshots are compared with a sorted merge: both are read once, side by side, in path order.
+ * Memory use is therefore proportional to {@code top}, not to the number of paths, and snapshots of
+ * tens of millions of paths can be compared. A path missing from a snapshot counts as having size 0
+ * there. Each path is compared on its own, so if the snapshots hold directory totals, a directory
+ * which grew is listed together with its parent directories.
+ *
+ * <p>
+ * The result renders as a report:
+ * <pre>
+ * total: +14.1 GiB (812.5 GiB -&gt; 826.6 GiB), 2 added, 0 removed, 5 changed
+ * grew:
+ *   +12.4 GiB in /data/tenant42
+ *   ...
+ * shrank:
+ *   -1.1 GiB in /data/tenant7
+ *   ...
+ * </pre>
+ *
+ * <p>
+ * Instances are immutable.
+ */
+public final class SizeSnapshotDiff {
+
+    private final List<Change> growers;
+    private final List<Change> shrinkers;
+    private final long oldTotal;
+    private final long newTotal;
+    private final long added;
+    private final long removed;
+    private final long changed;
+
+    private SizeSnapshotDiff(List<Change> growers, List<Change> shrinkers, long oldTotal, long newTotal,
+                             long added, long removed, long changed) {
+        this.growers = growers;
+        this.shrinkers = shrinkers;
+        this.oldTotal = oldTotal;
+        this.newTotal = newTotal;
+        this.added = added;
+        this.removed = removed;
+        this.changed = changed;
+    }
+
+    /**
+     * Compares two snapshot files.
+     *
+     * @param older snapshot taken first
+     * @param newer snapshot taken last
+     * @param top   maximum number of growers, and of shrinkers, to retain
+     * @throws IOException if a snapshot cannot be read
+     */
+    public static SizeSnapshotDiff compare(Path older, Path newer, int top) throws IOException {
+        Objects.requireNonNull(older, "older cannot be null");
+        Objects.requireNonNull(newer, "newer cannot be null");
+        SizeTopK<Change> growers = new SizeTopK<>(top);
+        SizeTopK<Change> shrinkers = new SizeTopK<>(top);
+        long oldTotal = 0;
+        long newTotal = 0;
+        long added = 0;
+        long removed = 0;
+        long changed = 0;
+        try (SizeSnapshotReader oldReader = SizeSnapshotReader.open(older);
+             SizeSnapshotReader newReader = SizeSnapshotReader.open(newer)) {
+            boolean hasOld = oldReader.next();
+            boolean hasNew = newReader.next();
+            while (hasOld || hasNew) {
+                int c = (!hasOld) ? 1 : (!hasNew) ? -1 : SizeSnapshotReader.comparePaths(oldReader, newReader);
+                long oldSize = (c <= 0) ? oldReader.size() : 0;
+                long newSize = (c >= 0) ? newReader.size() : 0;
+                SizeSnapshotReader current = (c <= 0) ? oldReader : newReader;
+                long delta = newSize - oldSize;
+                if (delta > 0 && growers.accepts(delta)) {
+                    growers.offer(delta, new Change(current.path(), oldSize, newSize));
+                } else if (delta < 0 && shrinkers.accepts(-delta)) {
+                    shrinkers.offer(-delta, new Change(current.path(), oldSize, newSize));
+                }
+                oldTotal = addSaturated(oldTotal, oldSize);
+                newTotal = addSaturated(newTotal, newSize);
+                if (c < 0) {
+                    removed++;
+                } else if (c > 0) {
+                    added++;
+                } else if (delta != 0) {
+                    changed++;
+                }
+                if (c <= 0) {
+                    hasOld = oldReader.next();
+                }
+                if (c >= 0) {
+                    hasNew = newReader.next();
+                }
+            }
+        }
+        return new SizeSnapshotDiff(keys(growers), keys(shrinkers), oldTotal, newTotal, added, removed, changed);
+    }
+
+    private static List<Change> keys(SizeTopK<Change> topK) {
+        List<Change> list = new ArrayList<>(topK.size());
+        for (SizeTopK.Entry<Change> entry : topK.entries()) {
+            list.add(entry.getKey());
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    private static long addSaturated(long a, long b) {
+        long sum = a + b;
+        return (sum < 0) ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * Gets the paths which grew the most, largest growth first.
+     */
+    public List<Change> getGrowers() {
+        return growers;
+    }
+
+    /**
+     * Gets the paths which shrank the most, largest shrinkage first.
+     */
+    public List<Change> getShrinkers() {
+        return shrinkers;
+    }
+
+    /**
+     * Gets the sum of all sizes in the older snapshot, saturating at {@code Long.MAX_VALUE}.
+     */
+    public long getOldTotal() {
+        return oldTotal;
+    }
+
+    /**
+     * Gets the sum of all sizes in the newer snapshot, saturating at {@code Long.MAX_VALUE}.
+     */
+    public long getNewTotal() {
+        return newTotal;
+    }
+
+    /**
+     * Gets the number of paths only in the newer snapshot.
+     */
+    public long getAdded() {
+        return added;
+    }
+
+    /**
+     * Gets the number of paths only in the older snapshot.
+     */
+    public long getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Gets the number of paths in both snapshots, with different sizes.
+     */
+    public long getChanged() {
+        return changed;
+    }
+
+    /**
+     * Appends the report shown in the class description, one line per path.
+     *
+     * @param sb        where to append
+     * @param formatter formatter for sizes and deltas. Deltas are formatted without sign, and
+     *                  preceded by {@code '+'} or {@code '-'}.
+     * @return {@code sb}
+     * @throws IllegalArgumentException if the formatter adds a sign to positive values, that is if
+     *                                  its sign policy is {@code ALWAYS} or {@code ALWAYS_EXCEPT_ZERO}
+     */
+    public StringBuilder appendReport(StringBuilder sb, DataSizeFormatter formatter) {
+        checkFormatter(formatter);
+        sb.append("total: ");
+        appendDelta(sb, formatter, oldTotal, newTotal);
+        sb.append(" (");
+        formatter.appendTo(sb, oldTotal);
+        sb.append(" -> ");
+        formatter.appendTo(sb, newTotal);
+        sb.append("), ").append(added).append(" added, ")
+                .append(removed).append(" removed, ")
+                .append(changed).append(" changed\n");
+        sb.append("grew:\n");
+        for (Change change : growers) {
+            change.appendTo(sb.append("  "), formatter).append('\n');
+        }
+        sb.append("shrank:\n");
+        for (Change change : shrinkers) {
+            change.appendTo(sb.append("  "), formatter).append('\n');
+        }
+        return sb;
+    }
+
+    /**
+     * Sizes and deltas are passed to the formatter as non-negative values, and the report puts its
+     * own sign in front of deltas. A formatter which also adds one would print {@code "++2 GiB"}, and
+     * {@code '+'} in front of every absolute size.
+     */
+    private static void checkFormatter(DataSizeFormatter formatter) {
+        Objects.requireNonNull(formatter, "formatter cannot be null");
+        DataSizeFormatter.SignPolicy signPolicy = formatter.getSignPolicy();
+        if (signPolicy == DataSizeFormatter.SignPolicy.ALWAYS || signPolicy == DataSizeFormatter.SignPolicy.ALWAYS_EXCEPT_ZERO) {
+            throw new IllegalArgumentException("formatter must not add a sign to positive values, its sign policy is " + signPolicy);
+        }
+    }
+
+    private static void appendDelta(StringBuilder sb, DataSizeFormatter formatter, long oldSize, long newSize) {
+        if (newSize >= oldSize) {
+            sb.append('+');
+            formatter.appendTo(sb, newSize - oldSize);
+        } else {
+            sb.append('-');
+            formatter.appendTo(sb, oldSize - newSize);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SizeSnapshotDiff[" + oldTotal + " -> " + newTotal + ", " + added + " added, "
+                + removed + " removed, " + changed + " changed]";
+    }
+
+    /**
+     * Change in size of one path.
+     */
+    public static final class Change {
+        private final String path;
+        private final long oldSize;
+        private final long newSize;
+
+        Change(String path, long oldSize, long newSize) {
+            this.path = path;
+            this.oldSize = oldSize;
+            this.newSize = newSize;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Gets the size in the older snapshot, 0 if the path was added.
+         */
+        public long getOldSize() {
+            return oldSize;
+        }
+
+        /**
+         * Gets the size in the newer snapshot, 0 if the path was removed.
+         */
+        public long getNewSize() {
+            return newSize;
+        }
+
+        /**
+         * Gets the change in size, negative if the path shrank.
+         */
+        public long getDelta() {
+            return newSize - oldSize;
+        }
+
+        /**
+         * Appends the change, for example {@code "+12.4 GiB in /data/tenant42"}.
+         *
+         * @return {@code sb}
+         * @throws IllegalArgumentException if the formatter adds a sign to positive values, see
+         *                                  {@link SizeSnapshotDiff#appendReport(StringBuilder, DataSizeFormatter)}
+         */
+        public StringBuilder appendTo(StringBuilder sb, DataSizeFormatter formatter) {
+            checkFormatter(formatter);
+            appendDelta(sb, formatter, oldSize, newSize);
+            return sb.append(" in ").append(path);
+        }
+
+        @Override
+        public String toString() {
+            return ((newSize >= oldSize) ? "+" : "") + getDelta() + " in " + path;
+        }
+    }
+}
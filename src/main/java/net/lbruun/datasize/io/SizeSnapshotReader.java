@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Reads a snapshot written by {@link SizeSnapshotWriter}, one path at a time, in path order:
+ * <pre>{@code
+ *   try (SizeSnapshotReader reader = SizeSnapshotReader.open(file)) {
+ *       while (reader.next()) {
+ *           ... reader.path() ... reader.size() ...
+ *       }
+ *   }
+ * }</pre>
+ *
+ * <p>
+ * Memory use is independent of the number of paths. Creating the {@code String} of a path is
+ * deferred until {@link #path()} is called. Instances are not thread-safe.
+ */
+public final class SizeSnapshotReader implements Closeable {
+
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(SizeSnapshotWriter.BUFFER_BYTES);
+    private boolean endOfFile;
+    private boolean done;
+    private byte[] path = new byte[256];
+    private int pathLength;
+    private long size;
+    private long count;
+
+    private SizeSnapshotReader(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+        buffer.flip();
+    }
+
+    /**
+     * Opens a snapshot file.
+     *
+     * @throws IOException if the file cannot be opened or is not a snapshot
+     */
+    public static SizeSnapshotReader open(Path file) throws IOException {
+        Objects.requireNonNull(file, "file cannot be null");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        SizeSnapshotReader reader = new SizeSnapshotReader(file, channel);
+        try {
+            reader.fill(8);
+            if (reader.buffer.remaining() < 8 || reader.buffer.getLong() != SizeSnapshotWriter.MAGIC) {
+                throw new IOException("Not a size snapshot: " + file);
+            }
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+        return reader;
+    }
+
+    /**
+     * Advances to the next path.
+     *
+     * @return {@code false} if there are no more paths
+     * @throws IOException if reading fails, or if the file is truncated or corrupt
+     */
+    public boolean next() throws IOException {
+        if (done) {
+            return false;
+        }
+        try {
+            fill(2 * MAX_VARINT_BYTES);
+            long shared = SizeCodec.getVarint(buffer) - 1;
+            if (shared < 0) {
+                if (SizeCodec.getVarint(buffer) != count) {
+                    throw corrupt();
+                }
+                done = true;
+                return false;
+            }
+            long suffixLength = SizeCodec.getVarint(buffer);
+            if (shared > pathLength || suffixLength > Integer.MAX_VALUE - shared) {
+                throw corrupt();
+            }
+            int length = (int) (shared + suffixLength);
+            if (path.length < length) {
+                path = Arrays.copyOf(path, Math.max(length, path.length * 2));
+            }
+            for (int pos = (int) shared; pos < length; ) {
+                if (!buffer.hasRemaining()) {
+                    fill(1);
+                    if (!buffer.hasRemaining()) {
+                        throw corrupt();
+                    }
+                }
+                int n = Math.min(buffer.remaining(), length - pos);
+                buffer.get(path, pos, n);
+                pos += n;
+            }
+            pathLength = length;
+            fill(MAX_VARINT_BYTES);
+            size = SizeCodec.getVarint(buffer);
+            if (size < 0) {
+                throw corrupt();
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw corrupt();
+        }
+        count++;
+        return true;
+    }
+
+    /**
+     * Gets the current path.
+     */
+    public String path() {
+        checkCurrent();
+        return new String(path, 0, pathLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the size of the current path.
+     */
+    public long size() {
+        checkCurrent();
+        return size;
+    }
+
+    /**
+     * Gets the number of paths read so far.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return "SizeSnapshotReader[" + file + "]";
+    }
+
+    /**
+     * Compares the current paths of two readers, in the order of {@link SizeSnapshotWriter}.
+     */
+    static int comparePaths(SizeSnapshotReader a, SizeSnapshotReader b) {
+        int max = Math.min(a.pathLength, b.pathLength);
+        for (int i = 0; i < max; i++) {
+            int c = (a.path[i] & 0xFF) - (b.path[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.pathLength - b.pathLength;
+    }
+
+    /**
+     * Gets the UTF-8 bytes of the current path. Only the first {@link #pathLength()} are valid,
+     * and they change with {@link #next()}.
+     */
+    byte[] pathBytes() {
+        return path;
+    }
+
+    int pathLength() {
+        return pathLength;
+    }
+
+    private void checkCurrent() {
+        if (count == 0 || done) {
+            throw new IllegalStateException("No current path");
+        }
+    }
+
+    /**
+     * Reads from the file until at least {@code n} bytes are buffered, or until the end of the file.
+     */
+    private void fill(int n) throws IOException {
+        if (buffer.remaining() >= n || endOfFile) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < n) {
+            if (channel.read(buffer) < 0) {
+                endOfFile = true;
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+    private IOException corrupt() {
+        return new IOException("Truncated or corrupt size snapshot: " + file);
+    }
+}
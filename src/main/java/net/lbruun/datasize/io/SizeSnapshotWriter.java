@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes a snapshot of path sizes, for example the size of each directory of a volume, to a file.
+ * Read it back with {@link SizeSnapshotReader} and compare two snapshots with {@link SizeSnapshotDiff}.
+ *
+ * <p>
+ * Paths must be added in increasing order of their UTF-8 bytes, compared as unsigned values. For
+ * ASCII paths this is the same as {@link String#compareTo(String)}. Use {@link SortingSizeSnapshotWriter}
+ * if the paths are not produced in that order.
+ *
+ * <p>
+ * The file starts with an 8 byte magic, followed by one record per path:
+ * <ol>
+ *     <li>length of the prefix shared with the previous path, plus one, as unsigned varint</li>
+ *     <li>length of the rest of the path, as unsigned varint</li>
+ *     <li>the rest of the path, UTF-8</li>
+ *     <li>size, as unsigned varint</li>
+ * </ol>
+ * and ends with a 0 and the number of paths, as unsigned varint. Varints are those of {@link SizeCodec}.
+ * Because sorted paths share long prefixes, a record typically takes a few bytes more than the last
+ * path component. The trailing count lets readers detect a truncated file.
+ *
+ * <p>
+ * The snapshot is written to a temporary file next to the target file, and only
+ * {@link #finish()} writes the trailer and moves the temporary file into place, atomically where
+ * the file system allows it. Closing the writer without finishing it, for example because an
+ * exception was thrown inside a try-with-resources block, discards the snapshot and leaves the
+ * target file as it was:
+ * <pre>{@code
+ *   try (SizeSnapshotWriter writer = SizeSnapshotWriter.create(file)) {
+ *       for (...) {
+ *           writer.add(path, size);
+ *       }
+ *       writer.finish();
+ *   }
+ * }</pre>
+ *
+ * <p>
+ * Memory use is independent of the number of paths. Instances are not thread-safe.
+ */
+public final class SizeSnapshotWriter implements Closeable {
+
+    static final long MAGIC = 0x4453_5A53_4E50_3031L;  // "DSZSNP01"
+    static final int BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_RECORD_OVERHEAD = 5 + 5 + 10;
+
+    private final Path file;
+    private final Path temporary;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private byte[] previous = new byte[256];
+    private int previousLength = -1;  // no path yet
+    private long count;
+    private boolean failed;  // a write failed, the temporary file is incomplete
+    private boolean finished;
+
+    private SizeSnapshotWriter(Path file, Path temporary, FileChannel channel) {
+        this.file = file;
+        this.temporary = temporary;
+        this.channel = channel;
+    }
+
+    /**
+     * Creates a writer for a snapshot file. The file is only created, or replaced if it exists,
+     * by {@link #finish()}.
+     *
+     * @throws IOException if the temporary file cannot be created
+     */
+    public static SizeSnapshotWriter create(Path file) throws IOException {
+        Objects.requireNonNull(file, "file cannot be null");
+        Path temporary = createSibling(file, ".tmp");
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        SizeSnapshotWriter writer = new SizeSnapshotWriter(file, temporary, channel);
+        writer.buffer.putLong(MAGIC);
+        return writer;
+    }
+
+    /**
+     * Creates a new, empty file with a unique name in the directory of {@code file}. Unlike
+     * {@link Files#createTempFile}, which restricts the file to its owner, this leaves the
+     * permissions to the platform default (the umask on POSIX systems). A snapshot keeps the
+     * permissions of its temporary file when moved into place.
+     */
+    static Path createSibling(Path file, String suffix) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path directory = (absolute.getParent() == null) ? absolute : absolute.getParent();
+        String prefix = file.getFileName() + ".";
+        while (true) {
+            Path candidate = directory.resolve(prefix + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + suffix);
+            try {
+                return Files.createFile(candidate);
+            } catch (FileAlreadyExistsException e) {
+                // Try another name
+            }
+        }
+    }
+
+    /**
+     * Adds a path.
+     *
+     * @param path path
+     * @param size size of path
+     * @throws IllegalArgumentException if {@code size} is negative, or if {@code path} is not greater than
+     *                                  the previously added path
+     * @throws IOException              if writing fails
+     */
+    public void add(String path, long size) throws IOException {
+        Objects.requireNonNull(path, "path cannot be null");
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        add(bytes, bytes.length, size);
+    }
+
+    /**
+     * Adds a path given as its first {@code length} UTF-8 bytes of {@code path}.
+     */
+    void add(byte[] path, int length, long size) throws IOException {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must be >= 0");
+        }
+        checkWritable();
+        int shared = 0;
+        if (previousLength >= 0) {
+            int max = Math.min(length, previousLength);
+            while (shared < max && path[shared] == previous[shared]) {
+                shared++;
+            }
+            if (shared == length || (shared < previousLength && (path[shared] & 0xFF) < (previous[shared] & 0xFF))) {
+                throw new IllegalArgumentException("paths must be added in increasing order, but "
+                        + new String(path, 0, length, StandardCharsets.UTF_8) + " follows "
+                        + new String(previous, 0, previousLength, StandardCharsets.UTF_8));
+            }
+        }
+        int suffixLength = length - shared;
+        if (buffer.remaining() < MAX_RECORD_OVERHEAD + suffixLength) {
+            flush();
+        }
+        SizeCodec.putVarint(buffer, shared + 1);
+        SizeCodec.putVarint(buffer, suffixLength);
+        if (buffer.remaining() < suffixLength + 10) {
+            // Path longer than the buffer
+            flush();
+            writeFully(ByteBuffer.wrap(path, shared, suffixLength));
+        } else {
+            buffer.put(path, shared, suffixLength);
+        }
+        SizeCodec.putVarint(buffer, size);
+
+        if (previous.length < length) {
+            previous = Arrays.copyOf(previous, Math.max(length, previous.length * 2));
+        }
+        System.arraycopy(path, shared, previous, shared, suffixLength);
+        previousLength = length;
+        count++;
+    }
+
+    /**
+     * Gets the number of paths added so far.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Completes the snapshot: writes the trailer, closes the temporary file and moves it into
+     * place as the snapshot file.
+     *
+     * @throws IOException           if writing or moving fails. The snapshot is then discarded.
+     * @throws IllegalStateException if the writer is closed, or an earlier write failed
+     */
+    public void finish() throws IOException {
+        checkWritable();
+        try {
+            if (buffer.remaining() < 1 + 10) {
+                flush();
+            }
+            buffer.put((byte) 0);
+            SizeCodec.putVarint(buffer, count);
+            flush();
+            channel.force(false);
+            channel.close();
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            finished = true;
+        } finally {
+            if (!finished) {
+                failed = true;
+                close();
+            }
+        }
+    }
+
+    /**
+     * Closes the writer. Unless {@link #finish()} completed, the snapshot is discarded and
+     * the snapshot file is left as it was.
+     *
+     * @throws IOException if the temporary file cannot be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        if (finished) {
+            return;
+        }
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SizeSnapshotWriter[" + file + ", " + count + " paths]";
+    }
+
+    private void checkWritable() {
+        if (finished || !channel.isOpen()) {
+            throw new IllegalStateException("Snapshot " + file + " is closed");
+        }
+        if (failed) {
+            throw new IllegalStateException("Snapshot " + file + " is incomplete, an earlier write failed");
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer src) throws IOException {
+        try {
+            while (src.hasRemaining()) {
+                channel.write(src);
+            }
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        }
+    }
+}
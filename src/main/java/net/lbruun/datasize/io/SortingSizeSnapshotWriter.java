@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+/**
+ * Writes a snapshot of path sizes from paths added in any order, for example while walking a
+ * file tree.
+ *
+ * <p>
+ * At most {@code maxBufferedPaths} paths are held in memory. When that many have been added,
+ * they are sorted and written to a temporary snapshot file (a run) next to the target file. On
+ * {@link #finish()} the runs are merged into the target file, which is then a snapshot as written by
+ * {@link SizeSnapshotWriter}. As with that class, closing the writer without finishing it discards
+ * the snapshot and leaves the target file as it was. If no more than {@code maxBufferedPaths} paths were added, no
+ * temporary file is used. All runs are open at the same time while merging, so
+ * {@code maxBufferedPaths} should be chosen such that the number of runs stays well below the
+ * limit of open files: with 1 million, 50 million paths give 50 runs.
+ *
+ * <p>
+ * A path added more than once is written once, with the sum of its sizes. Instances are not
+ * thread-safe.
+ */
+public final class SortingSizeSnapshotWriter implements Closeable {
+
+    private static final Comparator<byte[]> UNSIGNED_ORDER = (a, b) -> {
+        int max = Math.min(a.length, b.length);
+        for (int i = 0; i < max; i++) {
+            int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    };
+
+    private final Path file;
+    private final Entry[] entries;
+    private final List<Path> runs = new ArrayList<>();
+    private int buffered;
+    private boolean closed;
+
+    private SortingSizeSnapshotWriter(Path file, int maxBufferedPaths) {
+        this.file = file;
+        this.entries = new Entry[maxBufferedPaths];
+    }
+
+    /**
+     * Creates a writer. The target file is only created on {@link #finish()}.
+     *
+     * @param file             snapshot file, replaced if it exists
+     * @param maxBufferedPaths maximum number of paths to hold in memory
+     */
+    public static SortingSizeSnapshotWriter create(Path file, int maxBufferedPaths) {
+        Objects.requireNonNull(file, "file cannot be null");
+        if (maxBufferedPaths < 1) {
+            throw new IllegalArgumentException("maxBufferedPaths must be >= 1");
+        }
+        return new SortingSizeSnapshotWriter(file, maxBufferedPaths);
+    }
+
+    /**
+     * Adds a path.
+     *
+     * @param path path
+     * @param size size of path
+     * @throws IllegalArgumentException if {@code size} is negative
+     * @throws IOException              if writing a run fails
+     */
+    public void add(String path, long size) throws IOException {
+        Objects.requireNonNull(path, "path cannot be null");
+        if (size < 0) {
+            throw new IllegalArgumentException("size must be >= 0");
+        }
+        if (closed) {
+            throw new IllegalStateException("Snapshot " + file + " is closed");
+        }
+        if (buffered == entries.length) {
+            Path run = SizeSnapshotWriter.createSibling(file, ".run");
+            runs.add(run);
+            writeBuffered(run);
+        }
+        entries[buffered++] = new Entry(path.getBytes(StandardCharsets.UTF_8), size);
+    }
+
+    /**
+     * Writes the snapshot file, and deletes the temporary files.
+     *
+     * @throws IOException           if writing fails. The snapshot is then discarded.
+     * @throws IllegalStateException if the writer is closed
+     */
+    public void finish() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Snapshot " + file + " is closed");
+        }
+        closed = true;
+        try {
+            if (runs.isEmpty()) {
+                writeBuffered(file);
+            } else {
+                if (buffered > 0) {
+                    Path run = SizeSnapshotWriter.createSibling(file, ".run");
+                    runs.add(run);
+                    writeBuffered(run);
+                }
+                merge();
+            }
+        } finally {
+            deleteRuns();
+        }
+    }
+
+    /**
+     * Closes the writer. Unless {@link #finish()} was called, the snapshot is discarded and the
+     * snapshot file is left as it was.
+     *
+     * @throws IOException if a temporary file cannot be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Arrays.fill(entries, 0, buffered, null);
+        deleteRuns();
+    }
+
+    private void deleteRuns() throws IOException {
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+    }
+
+    /**
+     * Sorts the buffered paths and writes them to a file, summing duplicates.
+     */
+    private void writeBuffered(Path target) throws IOException {
+        Arrays.sort(entries, 0, buffered, (a, b) -> UNSIGNED_ORDER.compare(a.path, b.path));
+        try (SizeSnapshotWriter writer = SizeSnapshotWriter.create(target)) {
+            int i = 0;
+            while (i < buffered) {
+                byte[] path = entries[i].path;
+                long size = entries[i].size;
+                for (i++; i < buffered && Arrays.equals(entries[i].path, path); i++) {
+                    size = addSaturated(size, entries[i].size);
+                }
+                writer.add(path, path.length, size);
+            }
+            writer.finish();
+        }
+        Arrays.fill(entries, 0, buffered, null);
+        buffered = 0;
+    }
+
+    /**
+     * Merges the runs into the target file, summing paths which occur in more than one run.
+     */
+    private void merge() throws IOException {
+        PriorityQueue<SizeSnapshotReader> queue = new PriorityQueue<>(runs.size(), SizeSnapshotReader::comparePaths);
+        List<SizeSnapshotReader> readers = new ArrayList<>(runs.size());
+        try (SizeSnapshotWriter writer = SizeSnapshotWriter.create(file)) {
+            for (Path run : runs) {
+                SizeSnapshotReader reader = SizeSnapshotReader.open(run);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            byte[] pending = new byte[256];
+            int pendingLength = -1;  // nothing pending
+            long pendingSize = 0;
+            while (!queue.isEmpty()) {
+                SizeSnapshotReader reader = queue.poll();
+                byte[] path = reader.pathBytes();
+                int length = reader.pathLength();
+                if (length == pendingLength && equals(path, pending, length)) {
+                    pendingSize = addSaturated(pendingSize, reader.size());
+                } else {
+                    if (pendingLength >= 0) {
+                        writer.add(pending, pendingLength, pendingSize);
+                    }
+                    if (pending.length < length) {
+                        pending = new byte[Math.max(length, pending.length * 2)];
+                    }
+                    System.arraycopy(path, 0, pending, 0, length);
+                    pendingLength = length;
+                    pendingSize = reader.size();
+                }
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            if (pendingLength >= 0) {
+                writer.add(pending, pendingLength, pendingSize);
+            }
+            writer.finish();
+        } finally {
+            for (SizeSnapshotReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static boolean equals(byte[] a, byte[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long addSaturated(long a, long b) {
+        long sum = a + b;
+        return (sum < 0) ? Long.MAX_VALUE : sum;
+    }
+
+    private static final class Entry {
+        private final byte[] path;
+        private final long size;
+
+        Entry(byte[] path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+    }
+}
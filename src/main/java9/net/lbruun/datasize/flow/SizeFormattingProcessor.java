@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.flow;
+
+import net.lbruun.datasize.DataSizeFormatter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * {@link Flow.Processor} which formats the sizes of a stream of elements, for example
+ * the byte counts of requests, into human-readable form.
+ *
+ * <p>
+ * Formatting is done on an {@link Executor} (by default the common pool), not on the thread
+ * which publishes the elements. Elements are buffered and delivered downstream in batches of up
+ * to {@link Builder#withMaxBatchSize(int) maxBatchSize}: one {@code onNext} call, and one unit of
+ * demand, per batch. All elements are formatted with the same {@link DataSizeFormatter}.
+ *
+ * <p>
+ * Backpressure is honored in both directions: no more than {@link Builder#withBufferCapacity(int)
+ * bufferCapacity} elements are requested from upstream before they have been delivered
+ * downstream, and batches are only delivered when the subscriber has requested them.
+ *
+ * <p>
+ * With {@link Builder#withCoalescing(Function) coalescing}, an element replaces a buffered
+ * element with the same key, for example the same connection. A subscriber which falls behind
+ * thus only receives the latest size per key, while the upstream is not held back.
+ *
+ * <p>
+ * Only one subscriber is supported.
+ *
+ * <p>
+ * Requires Java 9 or later.
+ *
+ * @param <T> element type
+ */
+public final class SizeFormattingProcessor<T> implements Flow.Processor<T, List<SizeFormattingProcessor.Formatted<T>>> {
+
+    /**
+     * Default maximum number of elements per batch.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+    private static final Flow.Subscription NO_OP_SUBSCRIPTION = new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final DataSizeFormatter formatter;
+    private final ToLongFunction<? super T> sizeFn;
+    private final Function<? super T, ?> keyFn;  // null if not coalescing
+    private final Executor executor;
+    private final int maxBatchSize;
+    private final int bufferCapacity;
+
+    // Guarded by 'lock'
+    private final Object lock = new Object();
+    private final ArrayDeque<T> queue;                 // used if not coalescing
+    private final LinkedHashMap<Object, T> latest;     // used if coalescing
+    private Flow.Subscription upstream;
+    private Flow.Subscriber<? super List<Formatted<T>>> downstream;
+    private boolean done;
+    private Throwable error;
+
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean cancelled;
+    private boolean terminated;  // only accessed by the drain loop
+
+    private SizeFormattingProcessor(Builder<T> builder) {
+        this.formatter = builder.formatter;
+        this.sizeFn = builder.sizeFn;
+        this.keyFn = builder.keyFn;
+        this.executor = builder.executor;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.bufferCapacity = builder.bufferCapacity;
+        this.queue = (keyFn == null) ? new ArrayDeque<>() : null;
+        this.latest = (keyFn != null) ? new LinkedHashMap<>() : null;
+    }
+
+    /**
+     * Creates a builder.
+     *
+     * @param formatter formatter for all sizes
+     * @param sizeFn    extracts the size from an element
+     * @param <T>       element type
+     */
+    public static <T> Builder<T> builder(DataSizeFormatter formatter, ToLongFunction<? super T> sizeFn) {
+        return new Builder<>(formatter, sizeFn);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription, "subscription cannot be null");
+        synchronized (lock) {
+            if (upstream != null || cancelled) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+        }
+        subscription.request(bufferCapacity);
+    }
+
+    @Override
+    public void onNext(T item) {
+        Objects.requireNonNull(item, "item cannot be null");
+        boolean replaced = false;
+        synchronized (lock) {
+            if (done) {
+                return;
+            }
+            if (keyFn == null) {
+                queue.add(item);
+            } else {
+                replaced = latest.put(keyFn.apply(item), item) != null;
+            }
+        }
+        if (replaced) {
+            // The replaced element will never be delivered, so its slot is free again
+            requestUpstream(1);
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        Objects.requireNonNull(throwable, "throwable cannot be null");
+        synchronized (lock) {
+            if (done) {
+                return;
+            }
+            error = throwable;
+            done = true;
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (lock) {
+            done = true;
+        }
+        drain();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<Formatted<T>>> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber cannot be null");
+        synchronized (lock) {
+            if (downstream == null) {
+                downstream = subscriber;
+            } else {
+                subscriber.onSubscribe(NO_OP_SUBSCRIPTION);
+                subscriber.onError(new IllegalStateException("Only one subscriber is supported"));
+                return;
+            }
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    synchronized (lock) {
+                        if (error == null) {
+                            error = new IllegalArgumentException("number of requested batches must be > 0");
+                        }
+                        clearBuffer();
+                    }
+                    cancelUpstream();
+                } else {
+                    demand.getAndAccumulate(n, (current, add) -> (current + add < 0) ? Long.MAX_VALUE : current + add);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                cancelUpstream();
+                synchronized (lock) {
+                    clearBuffer();
+                }
+            }
+        });
+        drain();
+    }
+
+    /**
+     * Schedules the drain loop, unless it is already scheduled or running.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() == 0) {
+            executor.execute(this::drainLoop);
+        }
+    }
+
+    private void drainLoop() {
+        int missed = 1;
+        do {
+            while (!cancelled && !terminated) {
+                Flow.Subscriber<? super List<Formatted<T>>> subscriber;
+                List<T> items;
+                synchronized (lock) {
+                    subscriber = downstream;
+                    if (subscriber == null) {
+                        break;
+                    }
+                    int buffered = (keyFn == null) ? queue.size() : latest.size();
+                    if (buffered == 0 || (error != null && done)) {
+                        if (done) {
+                            terminated = true;
+                        } else {
+                            break;
+                        }
+                        items = null;
+                    } else if (demand.get() == 0) {
+                        break;
+                    } else {
+                        items = poll(Math.min(buffered, maxBatchSize));
+                    }
+                }
+                if (items == null) {
+                    Throwable t;
+                    synchronized (lock) {
+                        t = error;
+                    }
+                    if (t != null) {
+                        subscriber.onError(t);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                    break;
+                }
+                List<Formatted<T>> batch;
+                try {
+                    batch = format(items);
+                } catch (RuntimeException ex) {
+                    terminated = true;
+                    cancelUpstream();
+                    subscriber.onError(ex);
+                    break;
+                }
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                subscriber.onNext(batch);
+                requestUpstream(items.size());
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private List<T> poll(int n) {
+        List<T> items = new ArrayList<>(n);
+        if (keyFn == null) {
+            for (int i = 0; i < n; i++) {
+                items.add(queue.poll());
+            }
+        } else {
+            Iterator<T> it = latest.values().iterator();
+            for (int i = 0; i < n; i++) {
+                items.add(it.next());
+                it.remove();
+            }
+        }
+        return items;
+    }
+
+    private List<Formatted<T>> format(List<T> items) {
+        List<Formatted<T>> batch = new ArrayList<>(items.size());
+        for (T item : items) {
+            long size = sizeFn.applyAsLong(item);
+            batch.add(new Formatted<>(item, size, formatter.format(size)));
+        }
+        return Collections.unmodifiableList(batch);
+    }
+
+    private void clearBuffer() {
+        if (keyFn == null) {
+            queue.clear();
+        } else {
+            latest.clear();
+        }
+    }
+
+    private void requestUpstream(long n) {
+        Flow.Subscription s;
+        synchronized (lock) {
+            s = (done) ? null : upstream;
+        }
+        if (s != null) {
+            s.request(n);
+        }
+    }
+
+    private void cancelUpstream() {
+        Flow.Subscription s;
+        synchronized (lock) {
+            s = upstream;
+            upstream = null;
+            done = true;
+        }
+        if (s != null) {
+            s.cancel();
+        }
+    }
+
+    /**
+     * Element together with its size and the formatted size.
+     *
+     * @param <T> element type
+     */
+    public static final class Formatted<T> {
+        private final T element;
+        private final long size;
+        private final String text;
+
+        private Formatted(T element, long size, String text) {
+            this.element = element;
+            this.size = size;
+            this.text = text;
+        }
+
+        public T getElement() {
+            return element;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Gets the formatted size.
+         */
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /**
+     * Builder for {@link SizeFormattingProcessor}.
+     *
+     * @param <T> element type
+     */
+    public static class Builder<T> {
+        private final DataSizeFormatter formatter;
+        private final ToLongFunction<? super T> sizeFn;
+        private Function<? super T, ?> keyFn;
+        private Executor executor = ForkJoinPool.commonPool();
+        private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        private int bufferCapacity = Flow.defaultBufferSize();
+
+        private Builder(DataSizeFormatter formatter, ToLongFunction<? super T> sizeFn) {
+            this.formatter = Objects.requireNonNull(formatter, "formatter cannot be null");
+            this.sizeFn = Objects.requireNonNull(sizeFn, "sizeFn cannot be null");
+        }
+
+        /**
+         * Sets the executor on which formatting and delivery to the subscriber is done.
+         * Defaults to {@link ForkJoinPool#commonPool()}.
+         */
+        public Builder<T> withExecutor(Executor executor) {
+            this.executor = Objects.requireNonNull(executor, "executor cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of elements per batch. Defaults to {@value #DEFAULT_MAX_BATCH_SIZE}.
+         */
+        public Builder<T> withMaxBatchSize(int maxBatchSize) {
+            if (maxBatchSize < 1) {
+                throw new IllegalArgumentException("maxBatchSize must be >= 1");
+            }
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of elements buffered, that is requested from upstream
+         * but not yet delivered downstream. Defaults to {@link Flow#defaultBufferSize()}.
+         */
+        public Builder<T> withBufferCapacity(int bufferCapacity) {
+            if (bufferCapacity < 1) {
+                throw new IllegalArgumentException("bufferCapacity must be >= 1");
+            }
+            this.bufferCapacity = bufferCapacity;
+            return this;
+        }
+
+        /**
+         * Enables coalescing: a buffered element is replaced by a newer element with the same key.
+         *
+         * @param keyFn extracts the key from an element; keys must implement {@code equals()}
+         *              and {@code hashCode()}
+         */
+        public Builder<T> withCoalescing(Function<? super T, ?> keyFn) {
+            this.keyFn = Objects.requireNonNull(keyFn, "keyFn cannot be null");
+            return this;
+        }
+
+        public SizeFormattingProcessor<T> build() {
+            return new SizeFormattingProcessor<>(this);
+        }
+    }
+}
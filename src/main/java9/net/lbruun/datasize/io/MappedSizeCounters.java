@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2022  lbruun.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lbruun.datasize.io;
+
+import net.lbruun.datasize.DataSize;
+import net.lbruun.datasize.DataSizeFormatter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Named byte counters stored in a memory-mapped file, for example bytes sent and received.
+ *
+ * <p>
+ * Counters survive restarts, and any number of processes may map the same file and update the
+ * counters concurrently. Updates are atomic: they are done with compare-and-set and get-and-add
+ * operations directly on the mapped memory, through a {@link VarHandle}. This relies on the
+ * operating system presenting one shared page to all processes which map the file, which is
+ * the case on all mainstream operating systems for local files. It does not work for files on
+ * network file systems.
+ *
+ * <p>
+ * The file has a header followed by one slot per counter. Each slot is 64 bytes (a cache line),
+ * so that processes updating different counters do not contend: the counter value followed by the
+ * UTF-8 encoded counter name. Values are stored little-endian. The names, and therefore the number of
+ * counters, are fixed when the file is created.
+ *
+ * <p>
+ * Updates are visible to other processes immediately, but are only guaranteed to be on storage
+ * after {@link #force()}. The mapping remains valid until the instance is garbage collected, even
+ * after {@link #close()}.
+ *
+ * <p>
+ * Requires Java 9 or later.
+ */
+public final class MappedSizeCounters implements Closeable {
+
+    private static final long MAGIC = 0x4453_5A43_4E54_3031L;  // "DSZCNT01"
+    private static final int HEADER_BYTES = 64;
+    private static final int HEADER_MAGIC_POS = 0;
+    private static final int HEADER_COUNT_POS = 8;
+    private static final int SLOT_BYTES = 64;
+    private static final int SLOT_NAME_LENGTH_POS = 8;
+    private static final int SLOT_NAME_POS = 9;
+    private static final int MAX_NAME_BYTES = SLOT_BYTES - SLOT_NAME_POS;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final String[] names;
+
+    private MappedSizeCounters(Path file, FileChannel channel, MappedByteBuffer buffer, String[] names) {
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.names = names;
+    }
+
+    /**
+     * Opens a counter file, creating it if it does not exist or is empty.
+     *
+     * @param file  file
+     * @param names names of the counters, used if the file is created. If the file exists,
+     *              its counters must have exactly these names, in this order.
+     * @throws IOException if the file cannot be opened, is not a counter file, or has
+     *                     other counters
+     */
+    public static MappedSizeCounters open(Path file, String... names) throws IOException {
+        Objects.requireNonNull(file, "file cannot be null");
+        Objects.requireNonNull(names, "names cannot be null");
+        if (names.length == 0) {
+            throw new IllegalArgumentException("names must not be empty");
+        }
+        byte[][] encoded = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            encoded[i] = Objects.requireNonNull(names[i], "name cannot be null").getBytes(StandardCharsets.UTF_8);
+            if (encoded[i].length > MAX_NAME_BYTES) {
+                throw new IllegalArgumentException("name must be at most " + MAX_NAME_BYTES + " bytes in UTF-8: " + names[i]);
+            }
+        }
+        MappedSizeCounters counters = open(file, names, encoded);
+        if (!Arrays.equals(counters.names, names)) {
+            counters.close();
+            throw new IOException("Counter file " + file + " has counters " + Arrays.toString(counters.names)
+                    + ", not " + Arrays.toString(names));
+        }
+        return counters;
+    }
+
+    /**
+     * Opens an existing counter file for reading, for example to monitor counters maintained by
+     * another process. Only read access to the file is needed. The counters are read-only:
+     * {@link #add(int, long)}, {@link #set(int, long)} and {@link #compareAndSet(int, long, long)}
+     * throw {@link java.nio.ReadOnlyBufferException}.
+     *
+     * @throws IOException if the file cannot be opened or is not a counter file
+     */
+    public static MappedSizeCounters openExisting(Path file) throws IOException {
+        Objects.requireNonNull(file, "file cannot be null");
+        return open(file, null, null);
+    }
+
+    /**
+     * Opens the file. If {@code names} is null the file must exist and is opened read-only.
+     */
+    private static MappedSizeCounters open(Path file, String[] names, byte[][] encoded) throws IOException {
+        boolean readOnly = (names == null);
+        FileChannel channel = (readOnly) ?
+                FileChannel.open(file, StandardOpenOption.READ) :
+                FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Serializes creation against other processes opening the same file. Readers only
+            // need to keep a creator out, so they share the lock.
+            FileLock lock = channel.lock(0, Long.MAX_VALUE, readOnly);
+            try {
+                if (channel.size() == 0) {
+                    if (readOnly) {
+                        throw new IOException("Not a counter file: " + file);
+                    }
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) SLOT_BYTES * names.length);
+                    buffer.putInt(HEADER_COUNT_POS, names.length);
+                    for (int i = 0; i < names.length; i++) {
+                        int slot = HEADER_BYTES + i * SLOT_BYTES;
+                        buffer.put(slot + SLOT_NAME_LENGTH_POS, (byte) encoded[i].length);
+                        for (int b = 0; b < encoded[i].length; b++) {
+                            buffer.put(slot + SLOT_NAME_POS + b, encoded[i][b]);
+                        }
+                    }
+                    // Magic last: a file with a magic is always completely initialized
+                    buffer.putLong(HEADER_MAGIC_POS, MAGIC);
+                    buffer.force();
+                    return new MappedSizeCounters(file, channel, buffer, names.clone());
+                }
+                if (channel.size() < HEADER_BYTES) {
+                    throw new IOException("Not a counter file: " + file);
+                }
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+                int count = header.getInt(HEADER_COUNT_POS);
+                if (header.getLong(HEADER_MAGIC_POS) != MAGIC || count < 1 || channel.size() != HEADER_BYTES + (long) SLOT_BYTES * count) {
+                    throw new IOException("Not a counter file: " + file);
+                }
+                MappedByteBuffer buffer = channel.map((readOnly) ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE,
+                        0, channel.size());
+                String[] existing = new String[count];
+                for (int i = 0; i < count; i++) {
+                    int slot = HEADER_BYTES + i * SLOT_BYTES;
+                    byte[] b = new byte[Math.min(buffer.get(slot + SLOT_NAME_LENGTH_POS) & 0xFF, MAX_NAME_BYTES)];
+                    for (int k = 0; k < b.length; k++) {
+                        b[k] = buffer.get(slot + SLOT_NAME_POS + k);
+                    }
+                    existing[i] = new String(b, StandardCharsets.UTF_8);
+                }
+                return new MappedSizeCounters(file, channel, buffer, existing);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Gets the number of counters.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Gets the name of a counter.
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * Gets the index of a counter.
+     *
+     * @return index, or -1 if there is no counter with that name
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the value of a counter.
+     */
+    public long get(int index) {
+        return (long) LONGS.getVolatile(buffer, offset(index));
+    }
+
+    /**
+     * Adds to a counter, atomically.
+     *
+     * @return the new value
+     */
+    public long add(int index, long delta) {
+        return (long) LONGS.getAndAdd(buffer, offset(index), delta) + delta;
+    }
+
+    /**
+     * Sets a counter.
+     */
+    public void set(int index, long value) {
+        LONGS.setVolatile(buffer, offset(index), value);
+    }
+
+    /**
+     * Sets a counter to {@code newValue} if its current value is {@code expectedValue}, atomically.
+     *
+     * @return {@code true} if successful
+     */
+    public boolean compareAndSet(int index, long expectedValue, long newValue) {
+        return LONGS.compareAndSet(buffer, offset(index), expectedValue, newValue);
+    }
+
+    /**
+     * Gets the values of all counters. Each value is read atomically, but the counters
+     * are not read as a group.
+     */
+    public long[] snapshot() {
+        long[] values = new long[names.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = get(i);
+        }
+        return values;
+    }
+
+    /**
+     * Gets the values of all counters, pre-rendered with a formatter.
+     *
+     * @return counter name to value, in counter order
+     */
+    public Map<String, DataSize> snapshot(DataSizeFormatter formatter) {
+        Objects.requireNonNull(formatter, "formatter cannot be null");
+        Map<String, DataSize> map = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            map.put(names[i], new DataSize(get(i), formatter));
+        }
+        return map;
+    }
+
+    /**
+     * Forces the counters to storage. Does nothing if the counters were opened with
+     * {@link #openExisting(Path)}.
+     */
+    public void force() {
+        if (!buffer.isReadOnly()) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Forces the counters to storage and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            force();
+            channel.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappedSizeCounters[" + file + ", " + Arrays.toString(names) + "]";
+    }
+
+    private int offset(int index) {
+        if (index < 0 || index >= names.length) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for " + names.length + " counters");
+        }
+        return HEADER_BYTES + index * SLOT_BYTES;
+    }
+}
@@ -0,0 +1,420 @@
+package net.lbruun.datasize;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataSizeFormatterTest {
+
+    @Test
+    public void testFormatMatchesAsString() {
+        DataSizeFormatter formatter = DataSizeFormatter.builder()
+                .withBinary(true)
+                .withDecimalSeparator('.')
+                .build();
+        long[] values = {0, 1, 950, 1023, 1024, 1256, 2_000_000L, 9L * 1024L * 1024L * 1024L,
+                3L * 1024L * 1024L * 1024L * 1024L * 1024L, Long.MAX_VALUE - 1, Long.MAX_VALUE};
+        for (long value : values) {
+            assertEquals(DataSize.asStringBinary(value), formatter.format(value));
+        }
+
+        DataSizeFormatter decFormatter = DataSizeFormatter.builder()
+                .withBinary(false)
+                .withDecimalSeparator('.')
+                .build();
+        for (long value : values) {
+            assertEquals(DataSize.asStringDecimal(value), decFormatter.format(value));
+        }
+    }
+
+    @Test
+    public void testAppendTo() {
+        DataSizeFormatter formatter = DataSizeFormatter.builder()
+                .withSuffixes(DataSizeUnitSuffixes.SUFFIXES_GNU)
+                .withDecimals(DataSizeUnitDecimals.builder().withMegabyteDecimals(3).build())
+                .withDecimalSeparator('.')
+                .build();
+        StringBuilder sb = new StringBuilder("size=");
+        assertSame(sb, formatter.appendTo(sb, 2_000_000L));
+        assertEquals("size=1.907M", sb.toString());
+        assertThrows(IllegalArgumentException.class, () -> formatter.format(-1));
+    }
+
+    @Test
+    public void testLocaleRegistry() {
+        assertEquals("1,9 MiB", DataSizeFormatter.binary(Locale.GERMANY).format(2_000_000L));
+        assertEquals("1.9 MiB", DataSizeFormatter.binary(Locale.US).format(2_000_000L));
+        assertEquals("2,0 MB", DataSizeFormatter.decimal(Locale.GERMANY).format(2_000_000L));
+        assertSame(DataSizeFormatter.binary(Locale.GERMANY), DataSizeFormatter.binary(Locale.GERMANY));
+        assertNotSame(DataSizeFormatter.binary(Locale.GERMANY), DataSizeFormatter.decimal(Locale.GERMANY));
+    }
+
+    @Test
+    public void testSeparatorPrecedence() {
+        DataSizeFormatter formatter = DataSizeFormatter.builder()
+                .withLocale(Locale.GERMANY)
+                .withDecimalSeparator('.')
+                .build();
+        assertEquals('.', formatter.getDecimalSeparator());
+        assertEquals(',', DataSizeFormatter.builder().withLocale(Locale.FRANCE).build().getDecimalSeparator());
+    }
+
+    @Test
+    public void testFixedUnit() {
+        DataSizeFormatter formatter = DataSizeFormatter.builder()
+                .withFixedUnit(DataSizeUnit.MEGA)
+                .withDecimalSeparator('.')
+                .build();
+        assertEquals("0.0 MiB", formatter.format(0));
+        assertEquals("0.0 MiB", formatter.format(1000));
+        assertEquals("0.5 MiB", formatter.format(512 * 1024));
+        assertEquals("1.9 MiB", formatter.format(2_000_000L));
+        assertEquals("20480.0 MiB", formatter.format(20L * 1024L * 1024L * 1024L));
+        assertEquals("8796093022207.9 MiB", formatter.format(Long.MAX_VALUE));
+
+        DataSizeFormatter byteFormatter = DataSizeFormatter.builder()
+                .withFixedUnit(DataSizeUnit.BYTE)
+                .build();
+        assertEquals("9223372036854775807 B", byteFormatter.format(Long.MAX_VALUE));
+
+        DataSizeFormatter exaFormatter = DataSizeFormatter.builder()
+                .withFixedUnit(DataSizeUnit.EXA)
+                .withDecimalSeparator('.')
+                .build();
+        assertEquals("0.0 EiB", exaFormatter.format(2_000_000L));
+        assertEquals("7.9 EiB", exaFormatter.format(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testUnitRange() {
+        DataSizeFormatter formatter = DataSizeFormatter.builder()
+                .withUnitRange(DataSizeUnit.KILO, DataSizeUnit.GIGA)
+                .withDecimalSeparator('.')
+                .build();
+        assertEquals("0 KiB", formatter.format(0));
+        assertEquals("0 KiB", formatter.format(950));
+        assertEquals("1 KiB", formatter.format(1256));
+        assertEquals("1.9 MiB", formatter.format(2_000_000L));
+        assertEquals("8.50 GiB", formatter.format((9L * 1024L * 1024L * 1024L) - (512L * 1024L * 1024L)));
+        assertEquals("3072.00 GiB", formatter.format(3L * 1024L * 1024L * 1024L * 1024L));
+        assertEquals(DataSizeUnit.KILO, formatter.getMinUnit());
+        assertEquals(DataSizeUnit.GIGA, formatter.getMaxUnit());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> DataSizeFormatter.builder().withUnitRange(DataSizeUnit.GIGA, DataSizeUnit.KILO));
+    }
+
+    @Test
+    public void testFormatToBytes() {
+        DataSizeFormatter formatter = DataSizeFormatter.builder()
+                .withSuffixes(DataSizeUnitSuffixes.SUFFIXES_ISO80000)
+                .withDecimalSeparator('.')
+                .build();
+        byte[] dst = new byte[4 + formatter.getMaxFormattedLength()];
+        dst[0] = 'x';
+        int end = formatter.formatTo(2_000_000L, dst, 1);
+        assertEquals("x1.9 MiB", new String(dst, 0, end, StandardCharsets.UTF_8));
+        end = formatter.formatTo(Long.MAX_VALUE, dst, 0);
+        assertEquals(formatter.format(Long.MAX_VALUE), new String(dst, 0, end, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testBits() {
+        DataSizeFormatter formatter = DataSizeFormatter.builder()
+                .withBinary(false)
+                .withBits(true)
+                .withDecimalSeparator('.')
+                .build();
+        assertTrue(formatter.isBits());
+        assertEquals("0 bit", formatter.format(0));
+        assertEquals("8 bit", formatter.format(1));
+        assertEquals("992 bit", formatter.format(124));
+        assertEquals("1 kbit", formatter.format(125));
+        assertEquals("16.0 Mbit", formatter.format(2_000_000L));
+        assertEquals("1.00 Gbit", formatter.format(125_000_000L));
+        assertEquals("73.7 Ebit", formatter.format(Long.MAX_VALUE));
+
+        DataSizeFormatter bitrate = DataSizeFormatter.builder()
+                .withBinary(false)
+                .withBits(true)
+                .withSuffixes(DataSizeUnitSuffixes.SUFFIXES_BPS)
+                .withDecimalSeparator('.')
+                .build();
+        assertEquals("10.00 Gbps", bitrate.format(1_250_000_000L));
+
+        DataSizeFormatter binary = DataSizeFormatter.builder()
+                .withBits(true)
+                .withDecimalSeparator('.')
+                .build();
+        assertEquals("1 Kibit", binary.format(128));
+        assertEquals("15.2 Mibit", binary.format(2_000_000L));
+        assertEquals("63.9 Eibit", binary.format(Long.MAX_VALUE));
+
+        // Plain bits, beyond the range of a long
+        DataSizeFormatter fixed = DataSizeFormatter.builder()
+                .withBits(true)
+                .withFixedUnit(DataSizeUnit.BYTE)
+                .build();
+        assertEquals("73786976294838206456 bit", fixed.format(Long.MAX_VALUE));
+        assertEquals("9223372036854775808 bit", fixed.format(1L << 60));
+        byte[] dst = new byte[fixed.getMaxFormattedLength()];
+        int end = fixed.formatTo(Long.MAX_VALUE, dst, 0);
+        assertTrue(end <= fixed.getMaxFormattedLength());
+        assertEquals("73786976294838206456 bit", new String(dst, 0, end, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSignPolicy() {
+        DataSizeFormatter.Builder builder = DataSizeFormatter.builder().withDecimalSeparator('.');
+        DataSizeFormatter always = builder.withSignPolicy(DataSizeFormatter.SignPolicy.ALWAYS).build();
+        assertEquals("+1.25 GiB", always.format(1342177280L));
+        assertEquals("-300 KiB", always.format(-300 * 1024));
+        assertEquals("+0 B", always.format(0));
+        assertEquals("-1 B", always.format(-1));
+
+        DataSizeFormatter exceptZero = builder.withSignPolicy(DataSizeFormatter.SignPolicy.ALWAYS_EXCEPT_ZERO).build();
+        assertEquals("0 B", exceptZero.format(0));
+        assertEquals("+1 B", exceptZero.format(1));
+
+        DataSizeFormatter negativeOnly = builder.withSignPolicy(DataSizeFormatter.SignPolicy.NEGATIVE_ONLY).build();
+        assertEquals("1.9 MiB", negativeOnly.format(2_000_000L));
+        assertEquals("-1.9 MiB", negativeOnly.format(-2_000_000L));
+        assertEquals("-1023 B", negativeOnly.format(-1023));
+        assertEquals("-1 KiB", negativeOnly.format(-1024));
+        // -(Long.MAX_VALUE) is 7.99.. EiB, while Long.MIN_VALUE is exactly 8 EiB
+        assertEquals("-7.9 EiB", negativeOnly.format(-Long.MAX_VALUE));
+        assertEquals("-8.0 EiB", negativeOnly.format(Long.MIN_VALUE));
+
+        DataSizeFormatter bytes = builder.withFixedUnit(DataSizeUnit.BYTE).build();
+        assertEquals("-9223372036854775808 B", bytes.format(Long.MIN_VALUE));
+        DataSizeFormatter bits = builder.withBits(true).build();
+        assertEquals("-73786976294838206464 bit", bits.format(Long.MIN_VALUE));
+        assertEquals("-73786976294838206456 bit", bits.format(-Long.MAX_VALUE));
+
+        DataSizeFormatter fixedMiB = builder.withBits(false).withFixedUnit(DataSizeUnit.MEGA).build();
+        assertEquals("-0.0 MiB", fixedMiB.format(-1000));
+        assertEquals("-8796093022208.0 MiB", fixedMiB.format(Long.MIN_VALUE));
+
+        // Same results through the byte path
+        DataSizeFormatter[] formatters = {always, exceptZero, negativeOnly, bytes, bits, fixedMiB};
+        long[] values = {0, 1, -1, -1023, -1024, 2_000_000L, -2_000_000L, Long.MAX_VALUE, -Long.MAX_VALUE, Long.MIN_VALUE};
+        for (DataSizeFormatter formatter : formatters) {
+            byte[] dst = new byte[formatter.getMaxFormattedLength()];
+            for (long value : values) {
+                int end = formatter.formatTo(value, dst, 0);
+                assertEquals(formatter.format(value), new String(dst, 0, end, StandardCharsets.UTF_8));
+            }
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> DataSizeFormatter.builder().build().format(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testSignificantDigits() {
+        DataSizeFormatter formatter = DataSizeFormatter.builder()
+                .withSuffixes(DataSizeUnitSuffixes.SUFFIXES_GNU)
+                .withSignificantDigits(2)
+                .withDecimalSeparator('.')
+                .build();
+        assertEquals("0", formatter.format(0));
+        assertEquals("1023", formatter.format(1023));
+        assertEquals("1.5K", formatter.format(1536));
+        assertEquals("9.8M", formatter.format(10_276_045L));
+        assertEquals("98M", formatter.format(98L * 1024L * 1024L + 1000L));
+        assertEquals("980M", formatter.format(980L * 1024L * 1024L));
+        assertEquals("7.9E", formatter.format(Long.MAX_VALUE));
+
+        DataSizeFormatter lsStyle = DataSizeFormatter.builder()
+                .withSuffixes(DataSizeUnitSuffixes.SUFFIXES_GNU)
+                .withSignificantDigits(2)
+                .withRounding(RoundingMode.UP)
+                .withDecimalSeparator('.')
+                .build();
+        assertEquals("1.1K", lsStyle.format(1025));
+        assertEquals("10K", lsStyle.format(10239));
+        assertEquals("1.0M", lsStyle.format(1048575));
+        assertEquals("1.0K", lsStyle.format(1024));
+        assertEquals("8.0E", lsStyle.format(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testRounding() {
+        DataSizeFormatter halfUp = DataSizeFormatter.builder()
+                .withRounding(RoundingMode.HALF_UP)
+                .withDecimalSeparator('.')
+                .build();
+        assertEquals("1 KiB", halfUp.format(1535));
+        assertEquals("2 KiB", halfUp.format(1536));
+        assertEquals("1.0 MiB", halfUp.format(1048575));
+        assertEquals("2.0 MiB", halfUp.format(2_044_724L));  // 1.95 MiB
+        assertEquals("1.9 MiB", halfUp.format(2_044_723L));
+        assertEquals("8.0 EiB", halfUp.format(Long.MAX_VALUE));
+        assertEquals("7.5 EiB", halfUp.format(8646911284551352320L));
+
+        DataSizeFormatter fixedKiB = DataSizeFormatter.builder()
+                .withRounding(RoundingMode.HALF_UP)
+                .withFixedUnit(DataSizeUnit.KILO)
+                .withSignPolicy(DataSizeFormatter.SignPolicy.NEGATIVE_ONLY)
+                .build();
+        // No promotion to the next unit with a fixed unit
+        assertEquals("1024 KiB", fixedKiB.format(1048575));
+        assertEquals("-1024 KiB", fixedKiB.format(-1048575));
+        assertEquals("-9007199254740992 KiB", fixedKiB.format(Long.MIN_VALUE));
+
+        assertThrows(IllegalArgumentException.class, () -> DataSizeFormatter.builder().withRounding(RoundingMode.FLOOR));
+    }
+
+    @Test
+    public void testMaxWidth() {
+        DataSizeFormatter.Builder builder = DataSizeFormatter.builder()
+                .withSuffixes(DataSizeUnitSuffixes.SUFFIXES_GNU)
+                .withMaxWidth(4)
+                .withDecimalSeparator('.');
+        DataSizeFormatter top = builder.build();
+        assertEquals("1023", top.format(1023));
+        assertEquals("1.5K", top.format(1536));
+        assertEquals("15K", top.format(15 * 1024 + 512));
+        assertEquals("0.9M", top.format(1023 * 1024));
+        assertEquals("1.9M", top.format(2_000_000L));
+        assertEquals("7.9E", top.format(Long.MAX_VALUE));
+
+        DataSizeFormatter padded = builder.withPadding(true).build();
+        assertEquals("   0", padded.format(0));
+        assertEquals(" 15K", padded.format(15 * 1024));
+        assertEquals("950", top.format(950));
+        assertEquals(" 950", padded.format(950));
+
+        DataSizeFormatter iso = DataSizeFormatter.builder()
+                .withMaxWidth(8)
+                .withDecimalSeparator('.')
+                .build();
+        assertEquals("1.90 MiB", iso.format(2_000_000L));
+        assertEquals("1023 KiB", iso.format(1023 * 1024));
+
+        // Sign counts towards the width
+        DataSizeFormatter signed = builder.withPadding(false)
+                .withMaxWidth(5)
+                .withSignPolicy(DataSizeFormatter.SignPolicy.ALWAYS)
+                .build();
+        assertEquals("+1.5K", signed.format(1536));
+        assertEquals("-1.9M", signed.format(-2_000_000L));
+        assertEquals("-8.0E", signed.format(Long.MIN_VALUE));
+
+        // A bit count of 19 digits which no longer fits in a long
+        DataSizeFormatter bitsPadded = DataSizeFormatter.builder()
+                .withBits(true)
+                .withFixedUnit(DataSizeUnit.BYTE)
+                .withSuffixes(DataSizeUnitSuffixes.SUFFIXES_GNU)
+                .withMaxWidth(21)
+                .withPadding(true)
+                .build();
+        assertEquals("  9223372036854775808", bitsPadded.format(1L << 60));
+        assertEquals("  9999999999999999992", bitsPadded.format(1_249_999_999_999_999_999L));
+        assertEquals(" 10000000000000000000", bitsPadded.format(1_250_000_000_000_000_000L));
+    }
+
+    @Test
+    public void testDynamicDecimalsByteOutput() {
+        DataSizeFormatter[] formatters = {
+                DataSizeFormatter.builder().withSignificantDigits(3).withRounding(RoundingMode.HALF_UP).build(),
+                DataSizeFormatter.builder().withMaxWidth(9).withPadding(true).withBits(true).build(),
+                DataSizeFormatter.builder().withMaxWidth(4).withSuffixes(DataSizeUnitSuffixes.SUFFIXES_GNU_SI)
+                        .withBinary(false).withRounding(RoundingMode.UP)
+                        .withSignPolicy(DataSizeFormatter.SignPolicy.NEGATIVE_ONLY).build()
+        };
+        Random random = new Random(36);
+        for (DataSizeFormatter formatter : formatters) {
+            byte[] dst = new byte[formatter.getMaxFormattedLength()];
+            for (int i = 0; i < 10_000; i++) {
+                long value = random.nextLong() >> random.nextInt(64);
+                if (value < 0 && formatter.getSignPolicy() == DataSizeFormatter.SignPolicy.REJECT_NEGATIVE) {
+                    value = -(value + 1);
+                }
+                int end = formatter.formatTo(value, dst, 0);
+                assertEquals(formatter.format(value), new String(dst, 0, end, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void testPercentage() {
+        DataSizeFormatter formatter = DataSizeFormatter.builder()
+                .withDecimals(DataSizeUnitDecimals.builder().withGigabyteDecimals(2).build())
+                .withDecimalSeparator('.')
+                .build();
+        long gib = 1L << 30;
+        assertEquals("1.20 GiB of 10.00 GiB (12%)", formatter.formatPercentage(gib * 12 / 10 + 1, 10 * gib));
+        assertEquals("512 KiB of 1.00 GiB (0.048%)",
+                formatter.appendPercentage(new StringBuilder(), 512 * 1024, gib, 3).toString());
+        assertEquals("0 B of 0 B (-)", formatter.formatPercentage(0, 0));
+        assertEquals("3.00 GiB of 2.00 GiB (150%)", formatter.formatPercentage(3 * gib, 2 * gib));
+        assertEquals("7.9 EiB of 7.9 EiB (100%)", formatter.formatPercentage(Long.MAX_VALUE, Long.MAX_VALUE));
+        assertEquals("7.9 EiB of 7.9 EiB (99.9999%)",
+                formatter.appendPercentage(new StringBuilder(), Long.MAX_VALUE - 1000, Long.MAX_VALUE, 4).toString());
+        assertEquals("7.9 EiB of 1 B (922337203685477580700%)", formatter.formatPercentage(Long.MAX_VALUE, 1));
+        assertEquals("1 KiB of 3 KiB (33.33%)",
+                formatter.appendPercentage(new StringBuilder(), 1024, 3072, 2).toString());
+        assertThrows(IllegalArgumentException.class, () -> formatter.formatPercentage(-1, 10));
+        assertThrows(IllegalArgumentException.class, () -> formatter.appendPercentage(new StringBuilder(), 1, 10, 7));
+
+        DataSizeFormatter halfUp = DataSizeFormatter.builder().withRounding(RoundingMode.HALF_UP).withDecimalSeparator('.').build();
+        assertEquals("2 KiB of 3 KiB (67%)", halfUp.formatPercentage(2048, 3072));
+        assertEquals("977 KiB of 977 KiB (100%)", halfUp.formatPercentage(999_995, 1_000_000));
+        DataSizeFormatter up = DataSizeFormatter.builder().withRounding(RoundingMode.UP).build();
+        assertEquals("1 B of 1000 B (1%)", up.formatPercentage(1, 1000));
+    }
+
+    @Test
+    public void testRatio() {
+        DataSizeFormatter formatter = DataSizeFormatter.builder()
+                .withDecimals(DataSizeUnitDecimals.builder().withGigabyteDecimals(2).build())
+                .withDecimalSeparator(',')
+                .build();
+        long gib = 1L << 30;
+        assertEquals("10,00 GiB -> 1,20 GiB (8,33x)",
+                formatter.appendRatio(new StringBuilder(), 10 * gib, gib * 12 / 10 + 1, 2).toString());
+        assertEquals("10 KiB -> 0 B (-)", formatter.appendRatio(new StringBuilder(), 10240, 0, 2).toString());
+        assertEquals("7,9 EiB -> 1 B (9223372036854775807x)",
+                formatter.appendRatio(new StringBuilder(), Long.MAX_VALUE, 1, 0).toString());
+        assertEquals("1 B -> 3 B (0,333333x)", formatter.appendRatio(new StringBuilder(), 1, 3, 6).toString());
+    }
+
+    @Test
+    public void testProportionSharedUnit() {
+        // The unit shared by both values must give the same result as formatting them separately
+        DataSizeFormatter[] formatters = {
+                DataSizeFormatter.builder().build(),
+                DataSizeFormatter.builder().withBinary(false).withRounding(RoundingMode.HALF_UP).build(),
+                DataSizeFormatter.builder().withUnitRange(DataSizeUnit.KILO, DataSizeUnit.GIGA).build(),
+                DataSizeFormatter.builder().withSignificantDigits(3).withBits(true).build(),
+        };
+        Random random = new Random(48);
+        for (DataSizeFormatter formatter : formatters) {
+            for (int i = 0; i < 10_000; i++) {
+                long total = random.nextLong() >>> (1 + random.nextInt(63));
+                long part = (total == 0) ? 0 : (random.nextLong() >>> 1) % total;
+                String expected = formatter.format(part) + " of " + formatter.format(total) + " (";
+                assertTrue(formatter.formatPercentage(part, total).startsWith(expected));
+            }
+        }
+    }
+
+    @Test
+    public void testMulDiv() {
+        Random random = new Random(128);
+        for (int i = 0; i < 100_000; i++) {
+            long c = (random.nextLong() >>> (1 + random.nextInt(63))) | 1;
+            long a = (random.nextLong() >>> 1) % c;
+            long b = random.nextInt() >>> 1;
+            long expected = BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).divide(BigInteger.valueOf(c)).longValueExact();
+            assertEquals(expected, DataSizeFormatter.mulDiv(a, b, c));
+        }
+        assertEquals(99, DataSizeFormatter.mulDiv(Long.MAX_VALUE - 1, 100, Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,49 @@
+package net.lbruun.datasize;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataSizeMethodHandlesTest {
+
+    private static final MethodHandle BINARY =
+            DataSizeMethodHandles.formatter(true, DataSizeUnitSuffixes.SUFFIXES_ISO80000, '.', null);
+
+    @Test
+    public void testStaticFinal() throws Throwable {
+        assertEquals("0 B", (String) BINARY.invokeExact(0L));
+        assertEquals("1023 B", (String) BINARY.invokeExact(1023L));
+        assertEquals("1 KiB", (String) BINARY.invokeExact(1024L));
+        assertEquals("1.5 MiB", (String) BINARY.invokeExact(3L << 19));
+        assertEquals("7.9 EiB", (String) BINARY.invokeExact(Long.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> {
+            String s = (String) BINARY.invokeExact(-1L);
+        });
+    }
+
+    @Test
+    public void testSameAsAsString() throws Throwable {
+        DataSizeUnitDecimals decimals = DataSizeUnitDecimals.builder()
+                .withKilobyteDecimals(0)
+                .withMegabyteDecimals(3)
+                .withTerabyteDecimals(6)
+                .build();
+        Random random = new Random(42);
+        for (boolean useBinary : new boolean[]{true, false}) {
+            for (DataSizeUnitDecimals d : new DataSizeUnitDecimals[]{null, decimals}) {
+                MethodHandle mh = DataSizeMethodHandles.formatter(useBinary, DataSizeUnitSuffixes.SUFFIXES_GNU, ',', d);
+                for (int i = 0; i < 20_000; i++) {
+                    long value = random.nextLong() >>> (1 + random.nextInt(63));
+                    if (i < 64) {
+                        value = (1L << i) - 1;  // all powers of two minus one, including 0 and Long.MAX_VALUE
+                    }
+                    assertEquals(DataSize.asString(value, useBinary, DataSizeUnitSuffixes.SUFFIXES_GNU, ',', d),
+                            (String) mh.invokeExact(value));
+                }
+            }
+        }
+    }
+}
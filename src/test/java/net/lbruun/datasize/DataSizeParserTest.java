@@ -0,0 +1,43 @@
+package net.lbruun.datasize;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataSizeParserTest {
+
+    @Test
+    public void testParse() {
+        assertEquals(4096, DataSizeParser.parse("4096", true));
+        assertEquals(4096, DataSizeParser.parse(" 4096 B ", true));
+        assertEquals(1024, DataSizeParser.parse("1K", true));
+        assertEquals(1000, DataSizeParser.parse("1K", false));
+        assertEquals(1024, DataSizeParser.parse("1KiB", false));
+        assertEquals(64_000_000L, DataSizeParser.parse("64 MB", false));
+        assertEquals(1992294, DataSizeParser.parse("1.9M", true));
+        assertEquals(1992294, DataSizeParser.parse("1,9 MiB", false, ','));
+        assertEquals(1536, DataSizeParser.parse("1.5k", true));
+        assertEquals(Long.MAX_VALUE, DataSizeParser.parse("9223372036854775807", true));
+        assertEquals(8646911284551352320L, DataSizeParser.parse("7.5 EiB", true));
+    }
+
+    @Test
+    public void testParseBytes() {
+        byte[] buf = "x 2.5G y".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(2_500_000_000L, DataSizeParser.parse(buf, 2, 4, false, '.'));
+        assertEquals(2684354560L, DataSizeParser.parse(buf, 2, 4, true, '.'));
+    }
+
+    @Test
+    public void testInvalid() {
+        assertThrows(NumberFormatException.class, () -> DataSizeParser.parse("", true));
+        assertThrows(NumberFormatException.class, () -> DataSizeParser.parse("MiB", true));
+        assertThrows(NumberFormatException.class, () -> DataSizeParser.parse("1.", true));
+        assertThrows(NumberFormatException.class, () -> DataSizeParser.parse("-1", true));
+        assertThrows(NumberFormatException.class, () -> DataSizeParser.parse("1 X", true));
+        assertThrows(NumberFormatException.class, () -> DataSizeParser.parse("9223372036854775808", true));
+        assertThrows(NumberFormatException.class, () -> DataSizeParser.parse("8 EiB", true));
+    }
+}
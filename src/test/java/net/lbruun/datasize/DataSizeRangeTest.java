@@ -0,0 +1,75 @@
+package net.lbruun.datasize;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataSizeRangeTest {
+
+    @Test
+    public void testExamples() {
+        assertEquals(DataSizeRange.of(1_992_295, 2_097_151), DataSizeRange.ofDisplayedBinary("1.9 MiB"));
+        assertEquals(DataSizeRange.of(0, 0), DataSizeRange.ofDisplayedBinary("0 B"));
+        assertEquals(DataSizeRange.of(1023, 1023), DataSizeRange.ofDisplayedBinary(" 1023 B "));
+        assertEquals(DataSizeRange.of(1024, 2047), DataSizeRange.ofDisplayedBinary("1 KiB"));
+        assertEquals(DataSizeRange.of(1_900_000, 1_999_999), DataSizeRange.ofDisplayedDecimal("1.9 MB"));
+        assertEquals(DataSizeRange.of(7L << 60, (7L << 60) + 115292150460684697L), DataSizeRange.ofDisplayedBinary("7.0 EiB"));
+        assertEquals(Long.MAX_VALUE, DataSizeRange.ofDisplayedBinary("7.9 EiB").getMax());
+
+        // Well-formed, but never produced
+        assertTrue(DataSizeRange.ofDisplayedBinary("1.90 MiB").isEmpty());
+        assertTrue(DataSizeRange.ofDisplayedBinary("1500 KiB").isEmpty());
+        assertTrue(DataSizeRange.ofDisplayedBinary("01 KiB").isEmpty());
+        assertTrue(DataSizeRange.ofDisplayedBinary("0.5 MiB").isEmpty());
+        assertTrue(DataSizeRange.ofDisplayedBinary("8.0 EiB").isEmpty());
+        assertTrue(DataSizeRange.ofDisplayedBinary("1024 B").isEmpty());
+        assertEquals(DataSizeRange.EMPTY, DataSizeRange.ofDisplayedBinary("1.90 MiB"));
+
+        assertThrows(NumberFormatException.class, () -> DataSizeRange.ofDisplayedBinary("1.9 MB"));
+        assertThrows(NumberFormatException.class, () -> DataSizeRange.ofDisplayedBinary("abc"));
+        assertThrows(NumberFormatException.class, () -> DataSizeRange.ofDisplayedBinary("1. MiB"));
+        assertThrows(IllegalArgumentException.class, () -> DataSizeRange.of(2, 1));
+
+        DataSizeRange range = DataSizeRange.of(10, 20);
+        assertTrue(range.contains(10));
+        assertTrue(range.contains(20));
+        assertFalse(range.contains(21));
+        assertEquals("[10, 20]", range.toString());
+        assertFalse(DataSizeRange.EMPTY.contains(0));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        DataSizeUnitDecimals maxDecimals = DataSizeUnitDecimals.builder()
+                .withKilobyteDecimals(6)
+                .withMegabyteDecimals(6)
+                .withGigabyteDecimals(6)
+                .withTerabyteDecimals(6)
+                .withPetabyteDecimals(3)
+                .withExabyteDecimals(0)
+                .build();
+        Random random = new Random(42);
+        for (boolean useBinary : new boolean[]{true, false}) {
+            for (DataSizeUnitSuffixes suffixes : new DataSizeUnitSuffixes[]{DataSizeUnitSuffixes.SUFFIXES_ISO80000, DataSizeUnitSuffixes.SUFFIXES_GNU}) {
+                for (DataSizeUnitDecimals decimals : new DataSizeUnitDecimals[]{null, maxDecimals}) {
+                    for (int i = 0; i < 5_000; i++) {
+                        long value = random.nextLong() >>> (1 + random.nextInt(63));
+                        String s = DataSize.asString(value, useBinary, suffixes, ',', decimals);
+                        DataSizeRange range = DataSizeRange.ofDisplayed(s, useBinary, suffixes, ',', decimals);
+                        assertTrue(range.contains(value), () -> s + " " + range + " " + value);
+                        assertEquals(s, DataSize.asString(range.getMin(), useBinary, suffixes, ',', decimals));
+                        assertEquals(s, DataSize.asString(range.getMax(), useBinary, suffixes, ',', decimals));
+                        if (range.getMin() > 0) {
+                            assertNotEquals(s, DataSize.asString(range.getMin() - 1, useBinary, suffixes, ',', decimals));
+                        }
+                        if (range.getMax() < Long.MAX_VALUE) {
+                            assertNotEquals(s, DataSize.asString(range.getMax() + 1, useBinary, suffixes, ',', decimals));
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package net.lbruun.datasize;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataSizeTemplateTest {
+
+    private static final long MIB = 1L << 20;
+
+    private final DataSizeFormatter formatter = DataSizeFormatter.builder()
+            .withDecimalSeparator('.')
+            .build();
+
+    @Test
+    public void testLayouts() {
+        long value = MIB * 19 / 10 + 1;
+        assertEquals("[1.9 MiB]", DataSizeTemplate.compile("[{value}{suffix}]", formatter).format(value));
+        assertEquals("1.9MiB/s", DataSizeTemplate.compile("{value}{unit}/s", formatter).format(value));
+        assertEquals("size=1.9 (MiB)", DataSizeTemplate.compile("size={value} ({unit})", formatter).format(value));
+        assertEquals("1|.|9|MiB", DataSizeTemplate.compile("{major}|{sep}|{minor}|{unit}", formatter).format(value));
+        assertEquals("{1.9} MiB", DataSizeTemplate.compile("{{{value}}}{suffix}", formatter).format(value));
+        assertEquals("no tokens", DataSizeTemplate.compile("no tokens", formatter).format(value));
+        assertEquals("", DataSizeTemplate.compile("", formatter).format(value));
+    }
+
+    @Test
+    public void testNoDecimals() {
+        DataSizeTemplate template = DataSizeTemplate.compile("{major}{sep}{minor}|{value}|{unit}", formatter);
+        assertEquals("500|500|B", template.format(500));
+        assertEquals("2|2|KiB", template.format(2048));
+    }
+
+    @Test
+    public void testSigns() {
+        DataSizeFormatter negativeOnly = DataSizeFormatter.builder()
+                .withDecimalSeparator('.')
+                .withSignPolicy(DataSizeFormatter.SignPolicy.NEGATIVE_ONLY)
+                .build();
+        DataSizeTemplate template = DataSizeTemplate.compile("({value} {unit})", negativeOnly);
+        assertEquals("(-1.5 MiB)", template.format(-MIB * 3 / 2));
+        assertEquals("(-8.0 EiB)", template.format(Long.MIN_VALUE));
+
+        DataSizeFormatter always = DataSizeFormatter.builder()
+                .withDecimalSeparator('.')
+                .withSignPolicy(DataSizeFormatter.SignPolicy.ALWAYS)
+                .build();
+        assertEquals("(+0 B)", DataSizeTemplate.compile("({value} {unit})", always).format(0));
+
+        DataSizeFormatter reject = DataSizeFormatter.builder()
+                .withSignPolicy(DataSizeFormatter.SignPolicy.REJECT_NEGATIVE)
+                .build();
+        DataSizeTemplate rejecting = DataSizeTemplate.compile("{value}", reject);
+        assertThrows(IllegalArgumentException.class, () -> rejecting.format(-1));
+        assertThrows(IllegalArgumentException.class, () -> rejecting.formatTo(-1, new byte[100], 0));
+    }
+
+    @Test
+    public void testInvalidTemplates() {
+        assertThrows(IllegalArgumentException.class, () -> DataSizeTemplate.compile("{value", formatter));
+        assertThrows(IllegalArgumentException.class, () -> DataSizeTemplate.compile("value}", formatter));
+        assertThrows(IllegalArgumentException.class, () -> DataSizeTemplate.compile("{bytes}", formatter));
+        assertThrows(IllegalArgumentException.class, () -> DataSizeTemplate.compile("{}", formatter));
+        assertThrows(NullPointerException.class, () -> DataSizeTemplate.compile(null, formatter));
+        assertThrows(NullPointerException.class, () -> DataSizeTemplate.compile("{value}", null));
+    }
+
+    @Test
+    public void testOffsetsAndUtf8() {
+        DataSizeTemplate template = DataSizeTemplate.compile("größe: {value}{suffix} «ok»", formatter);
+        String expected = "größe: 1.9 MiB «ok»";
+        long value = MIB * 19 / 10 + 1;
+
+        byte[] bytes = new byte[3 + template.getMaxFormattedLength()];
+        int end = template.formatTo(value, bytes, 3);
+        assertEquals(expected, new String(bytes, 3, end - 3, StandardCharsets.UTF_8));
+
+        char[] chars = new char[5 + template.getMaxFormattedLength()];
+        end = template.formatTo(value, chars, 5);
+        assertEquals(expected, new String(chars, 5, end - 5));
+
+        assertEquals("x" + expected, template.appendTo(new StringBuilder("x"), value).toString());
+        assertThrows(IndexOutOfBoundsException.class, () -> template.formatTo(value, new byte[4], 0));
+    }
+
+    @Test
+    public void testSameAsFormatter() {
+        DataSizeFormatter[] formatters = {
+                formatter,
+                DataSizeFormatter.builder().withBinary(false).withSuffixes(DataSizeUnitSuffixes.SUFFIXES_GNU).build(),
+                DataSizeFormatter.builder().withBits(true).withSignPolicy(DataSizeFormatter.SignPolicy.NEGATIVE_ONLY).withSuffixes(DataSizeUnitSuffixes.SUFFIXES_BPS).build(),
+                DataSizeFormatter.builder().withSignificantDigits(3).withRounding(RoundingMode.HALF_UP).build(),
+                DataSizeFormatter.builder().withFixedUnit(DataSizeUnit.KILO).withSignPolicy(DataSizeFormatter.SignPolicy.NEGATIVE_ONLY).build(),
+                DataSizeFormatter.builder().withMaxWidth(6).withSignPolicy(DataSizeFormatter.SignPolicy.ALWAYS_EXCEPT_ZERO).build(),
+        };
+        long[] edges = {0, 1, 999, 1000, 1023, 1024, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1, -1};
+        Random random = new Random(49);
+        for (DataSizeFormatter f : formatters) {
+            DataSizeTemplate template = DataSizeTemplate.compile("{value}{suffix}", f);
+            char[] chars = new char[template.getMaxFormattedLength()];
+            byte[] bytes = new byte[template.getMaxFormattedLength()];
+            for (int i = 0; i < 20_000; i++) {
+                final long value = (i < edges.length) ? edges[i] : random.nextLong() >> random.nextInt(64);
+                if (value < 0 && f.getSignPolicy() == DataSizeFormatter.SignPolicy.REJECT_NEGATIVE) {
+                    assertThrows(IllegalArgumentException.class, () -> template.format(value));
+                    continue;
+                }
+                String expected = f.format(value);
+                assertEquals(expected, template.format(value), f + ": " + value);
+                assertEquals(expected, new String(chars, 0, template.formatTo(value, chars, 0)));
+                assertEquals(expected, new String(bytes, 0, template.formatTo(value, bytes, 0), StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -25,4 +25,50 @@ class DataSizeUnitTest {
         assertEquals(DataSizeUnit.MEGA, DataSizeUnit.findUnitForValue((1000L*1000L), false));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testToBytes() {
+        assertEquals(67_108_864L, DataSizeUnit.MEGA.toBytes(64, true));
+        assertEquals(64_000_000L, DataSizeUnit.MEGA.toBytes(64, false));
+        assertEquals(5L, DataSizeUnit.BYTE.toBytes(5, true));
+        assertEquals(-2048L, DataSizeUnit.KILO.toBytes(-2, true));
+        assertEquals(7L * 1024L * 1024L * 1024L * 1024L * 1024L * 1024L, DataSizeUnit.EXA.toBytes(7, true));
+
+        // Saturation
+        assertEquals(Long.MAX_VALUE, DataSizeUnit.EXA.toBytes(8, true));
+        assertEquals(Long.MIN_VALUE, DataSizeUnit.EXA.toBytes(-9, true));
+        assertEquals(Long.MAX_VALUE, DataSizeUnit.EXA.toBytes(10, false));
+        assertEquals(9_000_000_000_000_000_000L, DataSizeUnit.EXA.toBytes(9, false));
+        assertEquals(Long.MAX_VALUE, DataSizeUnit.KILO.toBytes(Long.MAX_VALUE / 1000 + 1, false));
+        assertEquals((Long.MAX_VALUE / 1000) * 1000, DataSizeUnit.KILO.toBytes(Long.MAX_VALUE / 1000, false));
+        assertEquals(Long.MAX_VALUE, DataSizeUnit.KILO.toBytes((Long.MAX_VALUE >> 10) + 1, true));
+        assertEquals((Long.MAX_VALUE >> 10) << 10, DataSizeUnit.KILO.toBytes(Long.MAX_VALUE >> 10, true));
+        assertEquals(Long.MIN_VALUE, DataSizeUnit.TERA.toBytes(Long.MIN_VALUE, true));
+
+        assertThrows(ArithmeticException.class, () -> DataSizeUnit.EXA.toBytesExact(8, true));
+        assertEquals(1_000_000_000L, DataSizeUnit.GIGA.toBytesExact(1, false));
+        // Results equal to Long.MIN_VALUE are exact
+        assertEquals(Long.MIN_VALUE, DataSizeUnit.EXA.toBytesExact(-8, true));
+        assertEquals(Long.MIN_VALUE, DataSizeUnit.KILO.toBytesExact(Long.MIN_VALUE >> 10, true));
+        assertEquals(Long.MIN_VALUE, DataSizeUnit.BYTE.toBytesExact(Long.MIN_VALUE, false));
+        assertThrows(ArithmeticException.class, () -> DataSizeUnit.EXA.toBytesExact(-9, true));
+        assertThrows(ArithmeticException.class, () -> DataSizeUnit.KILO.toBytesExact(Long.MIN_VALUE / 1000 - 1, false));
+        assertEquals(-9_000_000_000_000_000_000L, DataSizeUnit.EXA.toBytesExact(-9, false));
+    }
+
+    @Test
+    public void testConvert() {
+        assertEquals(3072L, DataSizeUnit.MEGA.convert(3, DataSizeUnit.GIGA, true));
+        assertEquals(3000L, DataSizeUnit.MEGA.convert(3, DataSizeUnit.GIGA, false));
+        assertEquals(2L, DataSizeUnit.GIGA.convert(3000, DataSizeUnit.MEGA, true));
+        assertEquals(3L, DataSizeUnit.GIGA.convert(3000, DataSizeUnit.MEGA, false));
+        assertEquals(-2L, DataSizeUnit.GIGA.convert(-3000, DataSizeUnit.MEGA, true));
+        assertEquals(42L, DataSizeUnit.PETA.convert(42, DataSizeUnit.PETA, true));
+        assertEquals(Long.MAX_VALUE, DataSizeUnit.KILO.convert(Long.MAX_VALUE, DataSizeUnit.EXA, true));
+        assertEquals(-8L, DataSizeUnit.EXA.convert(Long.MIN_VALUE, DataSizeUnit.BYTE, true));
+        assertEquals(-7L, DataSizeUnit.EXA.convert(Long.MIN_VALUE + 1, DataSizeUnit.BYTE, true));
+
+        assertEquals(64L, DataSizeUnit.MEGA.fromBytes(67_108_865L, true));
+        assertEquals(67L, DataSizeUnit.MEGA.fromBytes(67_108_865L, false));
+    }
+
+}
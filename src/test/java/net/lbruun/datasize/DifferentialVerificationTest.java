@@ -0,0 +1,348 @@
+package net.lbruun.datasize;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Verifies the optimized formatting and parsing paths against the slow {@link ReferenceFormatter}.
+ * Values are taken from every unit boundary and every decimal step (each plus/minus one), for the
+ * decimals the formatter under test actually uses, as well as from a seeded random generator covering
+ * the full range of {@code long}. With more than {@value #MAX_STEPS} decimal steps per major value,
+ * as with 6 decimals, the steps are sampled: {@value #MAX_STEPS} evenly spaced steps plus the first
+ * and last {@value #EDGE_STEPS}.
+ */
+class DifferentialVerificationTest {
+
+    private static final long SEED = 0x5EED_DA7A_517EL;
+    private static final int RANDOM_VALUES = 20_000;
+    private static final long[] MAJORS = {1, 2, 7, 9, 10, 99, 100, 512, 999, 1000, 1023};
+    private static final int MAX_STEPS = 1000;
+    private static final int EDGE_STEPS = 100;
+
+    /**
+     * All values around unit boundaries and around every decimal step with the given
+     * decimals, for majors in {@link #MAJORS}.
+     */
+    private static long[] boundaries(boolean useBinary, boolean bits, int[] decimalsArr) {
+        TreeSet<Long> set = new TreeSet<>();
+        add(set, BigInteger.ZERO);
+        add(set, BigInteger.valueOf(Long.MAX_VALUE));
+        for (int unit = 1; unit < decimalsArr.length; unit++) {
+            BigInteger unitSize = ReferenceFormatter.unitSize(unit, useBinary).toBigIntegerExact();
+            if (bits) {
+                unitSize = unitSize.shiftRight(3);
+            }
+            BigInteger steps = BigInteger.TEN.pow(decimalsArr[unit]);
+            long noOfSteps = steps.longValue();
+            long stride = Math.max(1, noOfSteps / MAX_STEPS);
+            for (long major : MAJORS) {
+                for (long k = 0; k < noOfSteps; k = nextStep(k, stride, noOfSteps)) {
+                    // ceil((major + k / steps) * unitSize)
+                    BigInteger[] qr = BigInteger.valueOf(major).multiply(steps).add(BigInteger.valueOf(k))
+                            .multiply(unitSize).divideAndRemainder(steps);
+                    BigInteger b = (qr[1].signum() == 0) ? qr[0] : qr[0].add(BigInteger.ONE);
+                    if (b.bitLength() > 63) {
+                        break;
+                    }
+                    add(set, b);
+                }
+            }
+        }
+        long[] result = new long[set.size()];
+        int i = 0;
+        for (long v : set) {
+            result[i++] = v;
+        }
+        return result;
+    }
+
+    /**
+     * The step after {@code k}: the next one near either end, otherwise the next multiple of {@code stride}.
+     */
+    private static long nextStep(long k, long stride, long noOfSteps) {
+        if (k < EDGE_STEPS || k >= noOfSteps - EDGE_STEPS - 1) {
+            return k + 1;
+        }
+        return Math.min(k - (k % stride) + stride, noOfSteps - EDGE_STEPS - 1);
+    }
+
+    /**
+     * The decimals per unit which the formatter may use.
+     */
+    private static int[] decimalsOf(DataSizeFormatter formatter) {
+        return (formatter.getSignificantDigits() > 0 || formatter.getMaxWidth() > 0) ?
+                ReferenceFormatter.MAX_DECIMALS :
+                formatter.getDecimals().getDecimalsArray();
+    }
+
+    private static void add(TreeSet<Long> set, BigInteger value) {
+        for (int delta = -1; delta <= 1; delta++) {
+            BigInteger v = value.add(BigInteger.valueOf(delta));
+            if (v.signum() >= 0 && v.bitLength() <= 63) {
+                set.add(v.longValue());
+            }
+        }
+    }
+
+    private static long[] randomValues(Random random, boolean allowNegative) {
+        long[] values = new long[RANDOM_VALUES];
+        for (int i = 0; i < values.length; i++) {
+            // Alternate between uniform over the full range and log-uniform magnitudes
+            long v = (i % 2 == 0) ? random.nextLong() : (random.nextLong() >> random.nextInt(64));
+            if (!allowNegative && v < 0) {
+                v = -(v + 1);
+            }
+            values[i] = v;
+        }
+        values[0] = Long.MAX_VALUE;
+        values[1] = 0;
+        if (allowNegative) {
+            values[2] = Long.MIN_VALUE;
+            values[3] = -1;
+        }
+        return values;
+    }
+
+    private static List<DataSizeFormatter> formatters() {
+        List<DataSizeFormatter> list = new ArrayList<>();
+        for (boolean useBinary : new boolean[]{true, false}) {
+            DataSizeFormatter.Builder b = DataSizeFormatter.builder().withBinary(useBinary).withDecimalSeparator(',');
+            list.add(b.build());
+            list.add(DataSizeFormatter.builder().withBinary(useBinary).withDecimalSeparator('.')
+                    .withDecimals(maxDecimals())
+                    .withRounding(RoundingMode.HALF_UP)
+                    .build());
+            list.add(DataSizeFormatter.builder().withBinary(useBinary).withDecimalSeparator('.')
+                    .withBits(true)
+                    .withSignPolicy(DataSizeFormatter.SignPolicy.ALWAYS)
+                    .build());
+            list.add(DataSizeFormatter.builder().withBinary(useBinary).withDecimalSeparator('.')
+                    .withFixedUnit(DataSizeUnit.MEGA)
+                    .withSignPolicy(DataSizeFormatter.SignPolicy.NEGATIVE_ONLY)
+                    .withRounding(RoundingMode.UP)
+                    .build());
+            list.add(DataSizeFormatter.builder().withBinary(useBinary).withDecimalSeparator('.')
+                    .withUnitRange(DataSizeUnit.KILO, DataSizeUnit.TERA)
+                    .withSignificantDigits(3)
+                    .withRounding(RoundingMode.HALF_UP)
+                    .build());
+            list.add(DataSizeFormatter.builder().withBinary(useBinary).withDecimalSeparator('.')
+                    .withSuffixes(DataSizeUnitSuffixes.SUFFIXES_GNU)
+                    .withSignificantDigits(2)
+                    .withRounding(RoundingMode.UP)
+                    .build());
+            list.add(DataSizeFormatter.builder().withBinary(useBinary).withDecimalSeparator('.')
+                    .withSuffixes(DataSizeUnitSuffixes.SUFFIXES_GNU)
+                    .withMaxWidth(4)
+                    .withPadding(true)
+                    .withSignPolicy(DataSizeFormatter.SignPolicy.ALWAYS_EXCEPT_ZERO)
+                    .build());
+            list.add(DataSizeFormatter.builder().withBinary(useBinary).withDecimalSeparator('.')
+                    .withBits(true)
+                    .withSuffixes(DataSizeUnitSuffixes.SUFFIXES_BPS)
+                    .withMaxWidth(10)
+                    .withRounding(RoundingMode.HALF_UP)
+                    .build());
+            list.add(DataSizeFormatter.builder().withBinary(useBinary).withDecimalSeparator('.')
+                    .withBits(true)
+                    .withFixedUnit(DataSizeUnit.BYTE)
+                    .withSignPolicy(DataSizeFormatter.SignPolicy.NEGATIVE_ONLY)
+                    .build());
+        }
+        return list;
+    }
+
+    private static DataSizeUnitDecimals maxDecimals() {
+        return DataSizeUnitDecimals.builder()
+                .withKilobyteDecimals(6)
+                .withMegabyteDecimals(6)
+                .withGigabyteDecimals(6)
+                .withTerabyteDecimals(6)
+                .withPetabyteDecimals(3)
+                .withExabyteDecimals(1)
+                .build();
+    }
+
+    private static void verify(DataSizeFormatter formatter, long value, byte[] buf) {
+        String expected = ReferenceFormatter.format(formatter, value);
+        assertEquals(expected, formatter.format(value), () -> "format(" + value + ")");
+        int end = formatter.formatTo(value, buf, 0);
+        assertEquals(expected, new String(buf, 0, end, StandardCharsets.UTF_8), () -> "formatTo(" + value + ")");
+    }
+
+    @Test
+    public void testNoOfDigits() {
+        for (int exp = 1; exp <= 12; exp++) {
+            long p = BigInteger.TEN.pow(exp).longValueExact();
+            for (long v : new long[]{p - 1, p, p + 1}) {
+                if (v < 1_000_000_000_000L) {
+                    assertEquals(Long.toString(v).length(), DataSize.noOfDigits(v), () -> "noOfDigits(" + v + ")");
+                    assertEquals(Long.toString(v).length(), DataSize.noOfDigits(-v), () -> "noOfDigits(-" + v + ")");
+                }
+            }
+        }
+        Random random = new Random(SEED);
+        for (int i = 0; i < RANDOM_VALUES; i++) {
+            long v = (random.nextLong() >>> 1) % 1_000_000_000_000L >> random.nextInt(40);
+            assertEquals(Long.toString(v).length(), DataSize.noOfDigits(v), () -> "noOfDigits(" + v + ")");
+        }
+    }
+
+    @Test
+    public void testMinorForExabyte() {
+        for (boolean useBinary : new boolean[]{true, false}) {
+            BigInteger exa = ReferenceFormatter.unitSize(6, useBinary).toBigIntegerExact();
+            List<Long> values = new ArrayList<>();
+            for (int k = 1; k <= 9; k++) {
+                BigInteger[] qr = exa.multiply(BigInteger.valueOf(k)).divideAndRemainder(BigInteger.TEN);
+                long threshold = qr[0].longValueExact() + ((qr[1].signum() == 0) ? 0 : 1);
+                values.add(threshold - 1);
+                values.add(threshold);
+                values.add(threshold + 1);
+            }
+            values.add(0L);
+            values.add(exa.longValueExact() - 1);
+            Random random = new Random(SEED);
+            for (int i = 0; i < RANDOM_VALUES; i++) {
+                values.add((random.nextLong() >>> 1) % exa.longValueExact());
+            }
+            for (long remainder : values) {
+                long expected = BigInteger.valueOf(remainder).multiply(BigInteger.TEN).divide(exa).longValueExact();
+                assertEquals(expected, DataSize.getMinorForExabyte(remainder, useBinary),
+                        () -> "getMinorForExabyte(" + remainder + ", " + useBinary + ")");
+            }
+        }
+    }
+
+    @Test
+    public void testAsStringBoundaries() {
+        DataSizeUnitDecimals[] decimalsSets = {DataSizeUnitDecimals.DEFAULT, maxDecimals()};
+        for (boolean useBinary : new boolean[]{true, false}) {
+            DataSizeUnitSuffixes suffixes = (useBinary) ? DataSizeUnitSuffixes.SUFFIXES_ISO80000 : DataSizeUnitSuffixes.SUFFIXES_SI;
+            for (DataSizeUnitDecimals decimals : decimalsSets) {
+                for (long value : boundaries(useBinary, false, decimals.getDecimalsArray())) {
+                    assertEquals(ReferenceFormatter.asString(value, useBinary, suffixes, '.', decimals),
+                            DataSize.asString(value, useBinary, suffixes, '.', decimals),
+                            () -> "asString(" + value + ", " + useBinary + ", " + decimals + ")");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAsStringRandom() {
+        Random random = new Random(SEED);
+        DataSizeUnitDecimals[] decimalsSets = {DataSizeUnitDecimals.DEFAULT, maxDecimals()};
+        for (boolean useBinary : new boolean[]{true, false}) {
+            for (DataSizeUnitDecimals decimals : decimalsSets) {
+                for (long value : randomValues(random, false)) {
+                    assertEquals(ReferenceFormatter.asString(value, useBinary, DataSizeUnitSuffixes.SUFFIXES_GNU, ',', decimals),
+                            DataSize.asString(value, useBinary, DataSizeUnitSuffixes.SUFFIXES_GNU, ',', decimals),
+                            () -> "asString(" + value + ", " + useBinary + ")");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFormatterBoundaries() {
+        for (DataSizeFormatter formatter : formatters()) {
+            byte[] buf = new byte[formatter.getMaxFormattedLength()];
+            boolean allowNegative = formatter.getSignPolicy() != DataSizeFormatter.SignPolicy.REJECT_NEGATIVE;
+            for (long value : boundaries(formatter.isBinary(), formatter.isBits(), decimalsOf(formatter))) {
+                verify(formatter, value, buf);
+                if (allowNegative) {
+                    verify(formatter, -value, buf);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFormatterRandom() {
+        Random random = new Random(SEED);
+        for (DataSizeFormatter formatter : formatters()) {
+            byte[] buf = new byte[formatter.getMaxFormattedLength()];
+            boolean allowNegative = formatter.getSignPolicy() != DataSizeFormatter.SignPolicy.REJECT_NEGATIVE;
+            for (long value : randomValues(random, allowNegative)) {
+                verify(formatter, value, buf);
+            }
+        }
+    }
+
+    @Test
+    public void testParserRandom() {
+        Random random = new Random(SEED);
+        String letters = "BKMGTPEkmgtpe";
+        for (int i = 0; i < RANDOM_VALUES; i++) {
+            StringBuilder number = new StringBuilder();
+            number.append(random.nextLong() >>> (1 + random.nextInt(63)));
+            int fractionDigits = random.nextInt(4) == 0 ? 0 : random.nextInt(13);
+            if (fractionDigits > 0) {
+                number.append('.');
+                for (int d = 0; d < fractionDigits; d++) {
+                    number.append((char) ('0' + random.nextInt(10)));
+                }
+            }
+            char letter = letters.charAt(random.nextInt(letters.length()));
+            boolean iSuffix = letter != 'B' && random.nextBoolean();
+            boolean useBinary = random.nextBoolean();
+            String text = number + (random.nextBoolean() ? " " : "")
+                    + ((letter == 'B') ? "B" : (letter + (iSuffix ? "i" : "") + (random.nextBoolean() ? "B" : "")));
+            Long expected = ReferenceFormatter.parse(number.toString(), letter, iSuffix, useBinary);
+            if (expected == null) {
+                assertThrows(NumberFormatException.class, () -> DataSizeParser.parse(text, useBinary), text);
+            } else {
+                assertEquals(expected.longValue(), DataSizeParser.parse(text, useBinary), text);
+                byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+                assertEquals(expected.longValue(), DataSizeParser.parse(bytes, 0, bytes.length, useBinary, '.'), text);
+            }
+        }
+    }
+
+    @Test
+    public void testUnitConversions() {
+        Random random = new Random(SEED);
+        BigInteger max = BigInteger.valueOf(Long.MAX_VALUE);
+        BigInteger min = BigInteger.valueOf(Long.MIN_VALUE);
+        for (boolean useBinary : new boolean[]{true, false}) {
+            for (DataSizeUnit unit : DataSizeUnit.values()) {
+                BigInteger size = ReferenceFormatter.unitSize(unit.ordinal(), useBinary).toBigIntegerExact();
+                long limit = max.divide(size).longValueExact();
+                long[] amounts = new long[2_000];
+                amounts[0] = limit;
+                amounts[1] = limit + 1;
+                amounts[2] = -limit;
+                amounts[3] = -limit - 1;
+                amounts[4] = Long.MAX_VALUE;
+                amounts[5] = Long.MIN_VALUE;
+                for (int i = 6; i < amounts.length; i++) {
+                    amounts[i] = random.nextLong() >> random.nextInt(64);
+                }
+                for (long amount : amounts) {
+                    BigInteger exact = BigInteger.valueOf(amount).multiply(size);
+                    long saturated = exact.max(min).min(max).longValue();
+                    assertEquals(saturated, unit.toBytes(amount, useBinary), () -> unit + ".toBytes(" + amount + ")");
+                    if (exact.bitLength() <= 63) {
+                        assertEquals(exact.longValue(), unit.toBytesExact(amount, useBinary));
+                    } else {
+                        assertThrows(ArithmeticException.class, () -> unit.toBytesExact(amount, useBinary));
+                    }
+                    // fromBytes truncates toward zero, as BigInteger.divide does
+                    assertEquals(BigInteger.valueOf(amount).divide(size).longValueExact(), unit.fromBytes(amount, useBinary),
+                            () -> unit + ".fromBytes(" + amount + ")");
+                }
+            }
+        }
+    }
+}
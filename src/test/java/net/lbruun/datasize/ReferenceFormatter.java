@@ -0,0 +1,130 @@
+package net.lbruun.datasize;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Slow, straightforward reference implementation of the formatting rules, using {@code BigDecimal}
+ * throughout. Used to verify the optimized code paths. It deliberately shares no code with them.
+ */
+final class ReferenceFormatter {
+
+    /**
+     * Most decimals per unit when the number of decimals is chosen per value, by significant digits or max width.
+     */
+    static final int[] MAX_DECIMALS = {0, 6, 6, 6, 6, 3, 1};
+    private static final BigInteger EIGHT = BigInteger.valueOf(8);
+
+    private ReferenceFormatter() {
+    }
+
+    /**
+     * Reference for {@link DataSize#asString(long, boolean, DataSizeUnitSuffixes, char, DataSizeUnitDecimals)}.
+     */
+    static String asString(long value, boolean useBinary, DataSizeUnitSuffixes suffixes, char decimalSeparator, DataSizeUnitDecimals decimals) {
+        if (value < 0) {
+            throw new IllegalArgumentException();
+        }
+        return format(BigInteger.valueOf(value), useBinary, false, suffixes.getSuffixesArray(),
+                ((decimals == null) ? DataSizeUnitDecimals.DEFAULT : decimals).getDecimalsArray(),
+                decimalSeparator, 0, 6, 0, 0, false, RoundingMode.DOWN, "");
+    }
+
+    /**
+     * Reference for {@link DataSizeFormatter#format(long)}.
+     */
+    static String format(DataSizeFormatter f, long value) {
+        String sign = "";
+        if (value < 0) {
+            if (f.getSignPolicy() == DataSizeFormatter.SignPolicy.REJECT_NEGATIVE) {
+                throw new IllegalArgumentException();
+            }
+            sign = "-";
+        } else if (f.getSignPolicy() == DataSizeFormatter.SignPolicy.ALWAYS
+                || (value > 0 && f.getSignPolicy() == DataSizeFormatter.SignPolicy.ALWAYS_EXCEPT_ZERO)) {
+            sign = "+";
+        }
+        return format(BigInteger.valueOf(value).abs(), f.isBinary(), f.isBits(), f.getSuffixes().getSuffixesArray(),
+                f.getDecimals().getDecimalsArray(), f.getDecimalSeparator(),
+                f.getMinUnit().ordinal(), f.getMaxUnit().ordinal(),
+                f.getSignificantDigits(), f.getMaxWidth(), f.isPadding(), f.getRounding(), sign);
+    }
+
+    private static String format(BigInteger bytes, boolean useBinary, boolean bits, String[] suffixes, int[] decimalsArr,
+                                 char decimalSeparator, int minUnit, int maxUnit,
+                                 int significantDigits, int maxWidth, boolean pad, RoundingMode rounding, String sign) {
+        BigDecimal quantity = new BigDecimal((bits) ? bytes.multiply(EIGHT) : bytes);
+        boolean dynamic = significantDigits > 0 || maxWidth > 0;
+
+        // The largest unit within range in which the quantity is at least 1
+        int unit = minUnit;
+        while (unit < maxUnit && quantity.compareTo(unitSize(unit + 1, useBinary)) >= 0) {
+            unit++;
+        }
+
+        while (true) {
+            boolean canPromote = unit < maxUnit && minUnit != maxUnit;
+            BigDecimal q = quantity.divide(unitSize(unit, useBinary));
+            BigDecimal truncated = q.setScale(0, RoundingMode.DOWN);
+            int d = (dynamic) ? dynamicDecimals(unit, truncated, significantDigits, maxWidth, sign, suffixes) : decimalsArr[unit];
+            BigDecimal result = q.setScale(d, rounding);
+            if (result.setScale(0, RoundingMode.DOWN).compareTo(truncated) != 0 && dynamic) {
+                // Rounded into a longer major part, e.g. 9.96 -> 10.0
+                d = dynamicDecimals(unit, result.setScale(0, RoundingMode.DOWN), significantDigits, maxWidth, sign, suffixes);
+                result = result.setScale(d, RoundingMode.UNNECESSARY);
+            }
+            if (canPromote && result.compareTo(unitSize(unit + 1, useBinary).divide(unitSize(unit, useBinary))) >= 0) {
+                unit++;
+                continue;
+            }
+            String s = sign + result.toPlainString().replace('.', decimalSeparator) + suffixes[unit];
+            if (maxWidth > 0 && canPromote && s.length() > maxWidth) {
+                unit++;
+                continue;
+            }
+            StringBuilder sb = new StringBuilder();
+            if (pad) {
+                for (int i = s.length(); i < maxWidth; i++) {
+                    sb.append(' ');
+                }
+            }
+            return sb.append(s).toString();
+        }
+    }
+
+    private static int dynamicDecimals(int unit, BigDecimal major, int significantDigits, int maxWidth, String sign, String[] suffixes) {
+        int majorDigits = major.toPlainString().length();
+        int d = MAX_DECIMALS[unit];
+        if (significantDigits > 0) {
+            d = Math.min(d, significantDigits - majorDigits);
+        }
+        if (maxWidth > 0) {
+            d = Math.min(d, maxWidth - sign.length() - majorDigits - 1 - suffixes[unit].length());
+        }
+        return Math.max(d, 0);
+    }
+
+    /**
+     * Reference for {@link DataSizeParser#parse(CharSequence, boolean, char)}, for input of the form
+     * {@code digits[.digits][ ][unit letter][i][B]}. Returns {@code null} if the value is out of range.
+     */
+    static Long parse(String number, char unitLetter, boolean iSuffix, boolean useBinary) {
+        // The parser takes at most 9 decimals into account
+        int dot = number.indexOf('.');
+        if (dot >= 0 && number.length() - dot - 1 > 9) {
+            number = number.substring(0, dot + 10);
+        }
+        int unit = "BKMGTPE".indexOf(Character.toUpperCase(unitLetter));
+        BigDecimal bytes = new BigDecimal(number).multiply(unitSize(unit, useBinary || iSuffix))
+                .setScale(0, RoundingMode.DOWN);
+        if (bytes.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) {
+            return null;
+        }
+        return bytes.longValueExact();
+    }
+
+    static BigDecimal unitSize(int unit, boolean useBinary) {
+        return (useBinary) ? new BigDecimal(BigInteger.ONE.shiftLeft(10 * unit)) : BigDecimal.TEN.pow(3 * unit);
+    }
+}
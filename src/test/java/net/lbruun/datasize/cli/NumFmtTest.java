@@ -0,0 +1,68 @@
+package net.lbruun.datasize.cli;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumFmtTest {
+
+    private static String run(String input, int expectedExitCode, String... args) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int exitCode = NumFmt.run(args,
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+                out,
+                new PrintStream(err, true, "UTF-8"));
+        assertEquals(expectedExitCode, exitCode, err.toString("UTF-8"));
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void testToIec() throws IOException {
+        assertEquals("1.9M ./a file\n950 ./b\n0 ./c",
+                run("2000000 ./a file\n950 ./b\n0 ./c", NumFmt.EXIT_OK));
+        assertEquals("1.9 MiB ./a\n", run("2000000 ./a\n", NumFmt.EXIT_OK, "--to=iec-i"));
+        assertEquals("2.0M\n", run("2000000\n", NumFmt.EXIT_OK, "--to=si"));
+    }
+
+    @Test
+    public void testFieldAndDelimiter() throws IOException {
+        assertEquals("a;2.0 MB;c\nno-field\n",
+                run("a;2000000;c\nno-field\n", NumFmt.EXIT_OK, "--to=si-b", "--field=2", "-d", ";"));
+        assertEquals("  x  1.907M\n",
+                run("  x  2000000\n", NumFmt.EXIT_OK, "--field=2", "--decimals=0,3,2,3,3,1"));
+    }
+
+    @Test
+    public void testFrom() throws IOException {
+        assertEquals("1992294 a\n1000 b\n1024 c\n",
+                run("1.9Mi a\n1K b\n1KiB c\n", NumFmt.EXIT_OK, "--from=auto"));
+        assertEquals("1024\n", run("1K\n", NumFmt.EXIT_OK, "--from=iec"));
+    }
+
+    @Test
+    public void testInvalid() throws IOException {
+        assertEquals("1.9M\n", run("2000000\nabc\n12\n", NumFmt.EXIT_INVALID_INPUT));
+        assertEquals("1.9M\nabc\n12\n", run("2000000\nabc\n12\n", NumFmt.EXIT_OK, "--invalid=ignore"));
+        run("", NumFmt.EXIT_USAGE, "--bogus");
+        run("", NumFmt.EXIT_USAGE, "--to=iec", "--from=iec");
+    }
+
+    @Test
+    public void testLongInput() throws IOException {
+        StringBuilder in = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            int k = i % 1000;
+            in.append(1024 * k).append(" /some/path/").append(i).append('\n');
+            expected.append((k == 0) ? "0" : k + "K").append(" /some/path/").append(i).append('\n');
+        }
+        assertEquals(expected.toString(), run(in.toString(), NumFmt.EXIT_OK));
+    }
+}
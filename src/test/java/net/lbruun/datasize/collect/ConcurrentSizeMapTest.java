@@ -0,0 +1,175 @@
+package net.lbruun.datasize.collect;
+
+import net.lbruun.datasize.DataSizeFormatter;
+import net.lbruun.datasize.DataSizeUnitDecimals;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentSizeMapTest {
+
+    @Test
+    public void testBasicOperations() {
+        ConcurrentSizeMap map = new ConcurrentSizeMap();
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.get(42));
+        assertFalse(map.containsKey(42));
+
+        assertEquals(100, map.add(42, 100));
+        assertEquals(150, map.add(42, 50));
+        assertEquals(7, map.add(0, 7));
+        assertEquals(-3, map.add(-1, -3));
+        assertEquals(3, map.size());
+        assertEquals(154, map.total());
+        assertTrue(map.containsKey(0));
+
+        assertEquals(150, map.put(42, 10));
+        assertEquals(0, map.put(43, 5));
+        assertEquals(10, map.remove(42));
+        assertEquals(0, map.remove(42));
+        assertEquals(7, map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertEquals(2, map.size());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.total());
+    }
+
+    @Test
+    public void testSaturation() {
+        ConcurrentSizeMap map = new ConcurrentSizeMap();
+        map.add(1, Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, map.add(1, 1));
+        map.add(2, Long.MIN_VALUE);
+        assertEquals(Long.MIN_VALUE, map.add(2, -1));
+        map.add(3, Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, map.snapshot(0).total());
+    }
+
+    @Test
+    public void testAgainstHashMap() {
+        // Small stripes and many removals exercise resizing and backward-shift deletion
+        ConcurrentSizeMap map = new ConcurrentSizeMap(0, 2);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000) - 100;
+            int op = random.nextInt(10);
+            if (op == 0) {
+                assertEquals(expected.getOrDefault(key, 0L).longValue(), map.remove(key));
+                expected.remove(key);
+            } else if (op == 1) {
+                long value = random.nextInt(1000);
+                assertEquals(expected.getOrDefault(key, 0L).longValue(), map.put(key, value));
+                expected.put(key, value);
+            } else {
+                long delta = random.nextInt(1000);
+                expected.merge(key, delta, Long::sum);
+                assertEquals(expected.get(key).longValue(), map.add(key, delta));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = -100; key < 4_900; key++) {
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+            assertEquals(expected.getOrDefault(key, 0L).longValue(), map.get(key));
+        }
+        Map<Long, Long> iterated = new HashMap<>();
+        map.forEach((k, v) -> assertNull(iterated.put(k, v)));
+        assertEquals(expected, iterated);
+
+        ConcurrentSizeMap.Snapshot snapshot = map.snapshot();
+        assertEquals(expected.size(), snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            assertEquals(expected.get(snapshot.getKey(i)).longValue(), snapshot.getValue(i));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.getKey(snapshot.size()));
+    }
+
+    @Test
+    public void testTopNAndThreshold() {
+        ConcurrentSizeMap map = new ConcurrentSizeMap(1000);
+        for (long key = 0; key < 1000; key++) {
+            map.add(key, key * 1024);
+        }
+        SizeTopK<Long> top = map.topN(3);
+        assertArrayEquals(new long[]{999 * 1024, 998 * 1024, 997 * 1024}, top.sizesDescending());
+        assertEquals(999L, top.entries().get(0).getKey().longValue());
+        assertArrayEquals(top.sizesDescending(), map.snapshot().topN(3).sizesDescending());
+
+        assertEquals(100, map.countAtLeast(900 * 1024));
+        ConcurrentSizeMap.Snapshot over = map.snapshot(900 * 1024);
+        assertEquals(100, over.size());
+        over.forEach((k, v) -> assertTrue(k >= 900 && v == k * 1024));
+    }
+
+    @Test
+    public void testConcurrentAdds() throws Exception {
+        ConcurrentSizeMap map = new ConcurrentSizeMap(0, 4);
+        int threads = 8;
+        int keys = 10_000;
+        int rounds = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            Future<?>[] futures = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                futures[t] = executor.submit(() -> {
+                    start.await();
+                    for (int r = 0; r < rounds; r++) {
+                        for (long key = 0; key < keys; key++) {
+                            map.add(key, key);
+                        }
+                    }
+                    return null;
+                });
+            }
+            // Concurrent optimistic reads must never see a torn or decreasing value
+            Future<?> reader = executor.submit(() -> {
+                start.await();
+                long previous = 0;
+                while (previous < (long) threads * rounds * (keys - 1)) {
+                    long value = map.get(keys - 1);
+                    assertTrue(value >= previous && value % (keys - 1) == 0);
+                    previous = value;
+                }
+                return null;
+            });
+            start.countDown();
+            for (Future<?> f : futures) {
+                f.get(60, TimeUnit.SECONDS);
+            }
+            reader.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(keys, map.size());
+        for (long key = 0; key < keys; key++) {
+            assertEquals(key * threads * rounds, map.get(key));
+        }
+    }
+
+    @Test
+    public void testUsage() {
+        DataSizeFormatter formatter = DataSizeFormatter.builder()
+                .withDecimals(DataSizeUnitDecimals.builder().withGigabyteDecimals(2).build())
+                .withDecimalSeparator('.')
+                .build();
+        ConcurrentSizeMap map = new ConcurrentSizeMap();
+        map.add(7, 4_509_715_661L);
+        assertEquals("4.20 GiB of 5.00 GiB", map.formatUsage(7, 5L << 30, formatter));
+        assertEquals("0 B of 5.00 GiB", map.formatUsage(8, 5L << 30, formatter));
+        StringBuilder sb = new StringBuilder("Used: ");
+        map.appendUsage(sb, 7, 5L << 30, formatter);
+        assertEquals("Used: 4.20 GiB of 5.00 GiB", sb.toString());
+    }
+}
@@ -0,0 +1,95 @@
+package net.lbruun.datasize.collect;
+
+import net.lbruun.datasize.DataSizeFormatter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapSizeColumnTest {
+
+    @Test
+    public void testAppendAndGetAcrossChunks() {
+        OffHeapSizeColumn column = OffHeapSizeColumn.allocateDirect(8);
+        for (long i = 0; i < 20; i++) {
+            column.append(i * 1000);
+        }
+        column.appendAll(LongStream.range(20, 45).map(i -> i * 1000).toArray(), 0, 25);
+        assertEquals(45, column.size());
+        for (long i = 0; i < 45; i++) {
+            assertEquals(i * 1000, column.get(i));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> column.get(45));
+
+        List<Long> seen = new ArrayList<>();
+        column.forEach(seen::add);
+        assertEquals(45, seen.size());
+        assertEquals(44_000L, seen.get(44));
+    }
+
+    @Test
+    public void testAggregation() {
+        OffHeapSizeColumn column = OffHeapSizeColumn.allocateDirect(16);
+        long[] values = LongStream.rangeClosed(1, 1000).toArray();
+        column.appendAll(values, 0, values.length);
+        OffHeapSizeColumn.Stats stats = column.stats();
+        assertEquals(1000, stats.getCount());
+        assertEquals(500_500, stats.getSum());
+        assertEquals(1, stats.getMin());
+        assertEquals(1000, stats.getMax());
+        assertEquals(500, stats.getAverage());
+        assertEquals(101, column.countAtLeast(900));
+        assertEquals("count=1000, total=488 KiB, min=1 B, avg=500 B, max=1000 B",
+                stats.format(DataSizeFormatter.builder().withDecimalSeparator('.').build()));
+
+        column.append(Long.MAX_VALUE);
+        assertThrows(ArithmeticException.class, column::stats);
+
+        assertEquals(0, OffHeapSizeColumn.allocateDirect().stats().getCount());
+    }
+
+    @Test
+    public void testWriteFormatted() throws IOException {
+        OffHeapSizeColumn column = OffHeapSizeColumn.allocateDirect(2);
+        column.appendAll(new long[]{950, 2_000_000L, 9L * 1024L * 1024L * 1024L}, 0, 3);
+        StringBuilder sb = new StringBuilder();
+        column.writeFormatted(sb, DataSizeFormatter.builder().withDecimalSeparator('.').build(), "\n");
+        assertEquals("950 B\n1.9 MiB\n9.00 GiB\n", sb.toString());
+
+        StringWriter writer = new StringWriter();
+        column.writeFormatted(writer, DataSizeFormatter.builder().withDecimalSeparator('.').build(), " | ");
+        assertEquals("950 B | 1.9 MiB | 9.00 GiB | ", writer.toString());
+    }
+
+    @Test
+    public void testMappedReopen(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("sizes.col");
+        try (OffHeapSizeColumn column = OffHeapSizeColumn.mapped(file, 4)) {
+            assertTrue(column.isMapped());
+            column.appendAll(new long[]{1, 2, 3, 4, 5, 6}, 0, 6);
+        }
+        try (OffHeapSizeColumn column = OffHeapSizeColumn.mapped(file, 1024)) {
+            assertEquals(6, column.size());
+            assertEquals(6, column.get(5));
+            column.append(7);
+            column.append(8);
+            column.append(9);
+            assertEquals(45, column.stats().getSum());
+        }
+        try (OffHeapSizeColumn column = OffHeapSizeColumn.mapped(file, 4)) {
+            assertEquals(9, column.size());
+        }
+
+        Path notAColumn = tempDir.resolve("other");
+        Files.write(notAColumn, new byte[100]);
+        assertThrows(IOException.class, () -> OffHeapSizeColumn.mapped(notAColumn, 4));
+    }
+}
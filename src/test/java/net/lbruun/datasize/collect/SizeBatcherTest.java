@@ -0,0 +1,136 @@
+package net.lbruun.datasize.collect;
+
+import net.lbruun.datasize.DataSizeUnit;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SizeBatcherTest {
+
+    private static final long MIB = 1L << 20;
+
+    @Test
+    public void testSizeLimit() {
+        List<List<String>> batches = new ArrayList<>();
+        SizeBatcher<String> batcher = SizeBatcher.<String>builder(batches::add)
+                .withMaxBytes("64 MiB", true)
+                .build();
+        assertEquals(64 * MIB, batcher.getMaxBytes());
+        batcher.add("a", 30 * MIB);
+        batcher.add("b", 30 * MIB);
+        assertTrue(batches.isEmpty());
+        batcher.add("c", 30 * MIB);  // does not fit, closes [a, b]
+        assertEquals(Collections.singletonList(Arrays.asList("a", "b")), batches);
+        batcher.add("d", 34 * MIB);  // exactly full, closes [c, d]
+        assertEquals(Arrays.asList("c", "d"), batches.get(1));
+        batcher.add("huge", 100 * MIB);  // batch of its own
+        assertEquals(Collections.singletonList("huge"), batches.get(2));
+        batcher.add("e", 0);
+        batcher.flush();
+        batcher.flush();
+        assertEquals(Collections.singletonList("e"), batches.get(3));
+        assertEquals(4, batches.size());
+        assertEquals(4, batcher.getBatchCount());
+        assertThrows(UnsupportedOperationException.class, () -> batches.get(0).add("x"));
+    }
+
+    @Test
+    public void testCountLimit() {
+        List<List<Integer>> batches = new ArrayList<>();
+        SizeBatcher<Integer> batcher = SizeBatcher.<Integer>builder(batches::add)
+                .withMaxBytes(64, DataSizeUnit.MEGA, false)
+                .withMaxCount(3)
+                .build();
+        assertEquals(64_000_000, batcher.getMaxBytes());
+        for (int i = 0; i < 7; i++) {
+            batcher.add(i, 10);
+        }
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 2), Arrays.asList(3, 4, 5)), batches);
+        batcher.flush();
+        assertEquals(Collections.singletonList(6), batches.get(2));
+    }
+
+    @Test
+    public void testLargeBatches() {
+        // Batches spanning many segments
+        List<List<Integer>> batches = new ArrayList<>();
+        SizeBatcher<Integer> batcher = SizeBatcher.<Integer>builder(batches::add).withMaxBytes(5000).build();
+        for (int i = 0; i < 12_000; i++) {
+            batcher.add(i, 1);
+        }
+        batcher.flush();
+        assertEquals(3, batches.size());
+        assertEquals(5000, batches.get(0).size());
+        assertEquals(Integer.valueOf(11_999), batches.get(2).get(1999));
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        SizeBatcher.Builder<String> builder = SizeBatcher.builder(b -> { });
+        assertThrows(IllegalArgumentException.class, () -> builder.withMaxBytes(0));
+        assertThrows(IllegalArgumentException.class, () -> builder.withMaxBytes(8, DataSizeUnit.TERA, true));
+        assertThrows(IllegalArgumentException.class, () -> builder.withMaxCount(SizeBatcher.MAX_COUNT + 1));
+        assertThrows(NumberFormatException.class, () -> builder.withMaxBytes("lots", true));
+        SizeBatcher<String> batcher = builder.build();
+        assertThrows(IllegalArgumentException.class, () -> batcher.add("a", -1));
+        assertThrows(NullPointerException.class, () -> batcher.add(null, 1));
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        int threads = 4;
+        int perThread = 100_000;
+        long maxBytes = 10_000;
+        // Batches are delivered from several threads, in no particular order
+        ConcurrentLinkedQueue<List<Long>> batches = new ConcurrentLinkedQueue<>();
+        SizeBatcher<Long> batcher = SizeBatcher.<Long>builder(batches::add)
+                .withMaxBytes(maxBytes)
+                .withMaxCount(500)
+                .build();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long base = (long) t * perThread;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (long i = base; i < base + perThread; i++) {
+                    batcher.add(i, 1 + (i % 50));
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        batcher.flush();
+
+        boolean[] seen = new boolean[threads * perThread];
+        for (List<Long> batch : batches) {
+            assertTrue(batch.size() <= 500);
+            long bytes = 0;
+            for (long item : batch) {
+                assertFalse(seen[(int) item]);
+                seen[(int) item] = true;
+                bytes += 1 + (item % 50);
+            }
+            assertTrue(bytes <= maxBytes);
+        }
+        for (boolean s : seen) {
+            assertTrue(s);
+        }
+        assertEquals(batches.size(), batcher.getBatchCount());
+    }
+}
@@ -0,0 +1,138 @@
+package net.lbruun.datasize.collect;
+
+import net.lbruun.datasize.DataSizeFormatter;
+import net.lbruun.datasize.DataSizeUnitDecimals;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SizeTimeSeriesTest {
+
+    private static final long GIB = 1L << 30;
+
+    @Test
+    public void testRingBuffer() {
+        SizeTimeSeries series = SizeTimeSeries.builder().withCapacity(4).build();
+        assertEquals(0, series.samples().size());
+        assertEquals(0, series.latest());
+        for (int i = 1; i <= 6; i++) {
+            series.record(i * 1000L, i * 10L);
+        }
+        SizeTimeSeries.Samples samples = series.samples();
+        assertEquals(4, samples.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals((i + 3) * 1000L, samples.getTimestamp(i));
+            assertEquals((i + 3) * 10L, samples.getValue(i));
+            assertEquals(samples.getValue(i), samples.getMin(i));
+            assertEquals(samples.getValue(i), samples.getMax(i));
+        }
+        assertEquals(60, series.latest());
+        assertThrows(IndexOutOfBoundsException.class, () -> samples.getValue(4));
+        assertThrows(IllegalArgumentException.class, () -> series.record(5999, 0));
+    }
+
+    @Test
+    public void testDownsampling() {
+        SizeTimeSeries series = SizeTimeSeries.builder()
+                .withCapacity(16)
+                .withTier(60_000, 3)
+                .withTier(3_600_000, 2)
+                .build();
+        assertEquals(2, series.getTierCount());
+        // One reading every 20 seconds for 5 minutes: 100, 50, 200, 101, 51, 201, ...
+        long[] pattern = {100, 50, 200};
+        for (int i = 0; i < 15; i++) {
+            series.record(i * 20_000L, pattern[i % 3] + i / 3);
+        }
+        SizeTimeSeries.Samples minutes = series.samples(0);
+        // Minutes 0..3 are complete, minute 4 is still open; only the last 3 are retained
+        assertEquals(3, minutes.size());
+        for (int i = 0; i < 3; i++) {
+            int minute = i + 1;
+            assertEquals(minute * 60_000L, minutes.getTimestamp(i));
+            assertEquals(50 + minute, minutes.getMin(i));
+            assertEquals(200 + minute, minutes.getMax(i));
+            assertEquals(200 + minute, minutes.getValue(i));
+        }
+        assertEquals(0, series.samples(1).size());
+        series.record(3_600_000L, 7);
+        SizeTimeSeries.Samples hours = series.samples(1);
+        assertEquals(1, hours.size());
+        assertEquals(0, hours.getTimestamp(0));
+        assertEquals(50, hours.getMin(0));
+        assertEquals(204, hours.getMax(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> series.samples(2));
+    }
+
+    @Test
+    public void testGrowthAndProjection() {
+        SizeTimeSeries series = SizeTimeSeries.builder().withCapacity(1000).build();
+        long start = 1_700_000_000_000L;
+        // 800 GiB growing by 3.2 GiB per hour, sampled every 10 seconds for 2 hours
+        for (int i = 0; i <= 720; i++) {
+            long t = start + i * 10_000L;
+            series.record(t, 800 * GIB + (long) (3.2 * GIB * (i * 10_000L) / 3_600_000L));
+        }
+        assertEquals(3.2 * GIB, series.growthRate(3_600_000L), GIB * 1e-6);
+        long latest = series.latest();
+        long capacity = latest + (long) (3.2 * GIB * 48);
+        assertEquals(48 * 3_600_000L, series.timeToThreshold(capacity, 3_600_000L), 1000);
+        assertEquals(0, series.timeToThreshold(latest, 3_600_000L));
+
+        DataSizeFormatter formatter = DataSizeFormatter.builder()
+                .withDecimals(DataSizeUnitDecimals.builder().withGigabyteDecimals(1).build())
+                .withDecimalSeparator('.')
+                .build();
+        String summary = series.appendSummary(new StringBuilder(), formatter, 3_600_000L, capacity).toString();
+        assertEquals("used: 806.3 GiB, +3.1 GiB/h, full in 2d", summary);
+
+        SizeTimeSeries flat = SizeTimeSeries.builder().build();
+        flat.record(0, 100);
+        flat.record(1000, 100);
+        assertEquals(0.0, flat.growthRate(60_000));
+        assertEquals(-1, flat.timeToThreshold(200, 60_000));
+        assertEquals("used: 100 B, +0 B/h, full in -",
+                flat.appendSummary(new StringBuilder(), formatter, 60_000, 200).toString());
+    }
+
+    @Test
+    public void testAppendDuration() {
+        assertEquals("2d", SizeTimeSeries.appendDuration(new StringBuilder(), 2 * 86_400_000L + 5).toString());
+        assertEquals("23h", SizeTimeSeries.appendDuration(new StringBuilder(), 86_399_999L).toString());
+        assertEquals("45m", SizeTimeSeries.appendDuration(new StringBuilder(), 45 * 60_000L).toString());
+        assertEquals("0s", SizeTimeSeries.appendDuration(new StringBuilder(), 999).toString());
+        assertEquals("-", SizeTimeSeries.appendDuration(new StringBuilder(), -1).toString());
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        SizeTimeSeries series = SizeTimeSeries.builder().withCapacity(64).withTier(10, 8).build();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> reader = executor.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    SizeTimeSeries.Samples s = series.samples();
+                    // Readings are recorded with value == timestamp, consecutively
+                    for (int k = 0; k < s.size(); k++) {
+                        assertEquals(s.getTimestamp(k), s.getValue(k));
+                        if (k > 0) {
+                            assertEquals(s.getTimestamp(k - 1) + 1, s.getTimestamp(k));
+                        }
+                    }
+                }
+                return null;
+            });
+            for (long t = 0; t < 200_000; t++) {
+                series.record(t, t);
+            }
+            reader.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
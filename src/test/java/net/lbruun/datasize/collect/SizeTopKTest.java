@@ -0,0 +1,91 @@
+package net.lbruun.datasize.collect;
+
+import net.lbruun.datasize.DataSize;
+import net.lbruun.datasize.DataSizeFormatter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SizeTopKTest {
+
+    @Test
+    public void testRetainsLargest() {
+        SizeTopK<String> topK = new SizeTopK<>(3);
+        assertEquals(Long.MIN_VALUE, topK.threshold());
+        topK.offer(10, "a");
+        topK.offer(50, "b");
+        topK.offer(5, "c");
+        assertEquals(5, topK.threshold());
+        assertFalse(topK.accepts(5));
+        assertFalse(topK.offer(1, "d"));
+        assertTrue(topK.offer(40, "e"));
+        assertTrue(topK.offer(100, "f"));
+
+        List<SizeTopK.Entry<String>> entries = topK.entries();
+        assertEquals(3, entries.size());
+        assertEquals("f", entries.get(0).getKey());
+        assertEquals("b", entries.get(1).getKey());
+        assertEquals("e", entries.get(2).getKey());
+        assertArrayEquals(new long[]{100, 50, 40}, topK.sizesDescending());
+    }
+
+    @Test
+    public void testAgainstFullSort() {
+        Random random = new Random(42);
+        long[] values = LongStream.generate(() -> random.nextLong() >>> 1).limit(10_000).toArray();
+        SizeTopK<Integer> topK = new SizeTopK<>(100);
+        for (int i = 0; i < values.length; i++) {
+            topK.offer(values[i], i);
+        }
+        long[] expected = LongStream.of(values).boxed()
+                .sorted((a, b) -> Long.compare(b, a))
+                .limit(100)
+                .mapToLong(Long::longValue)
+                .toArray();
+        assertArrayEquals(expected, topK.sizesDescending());
+        for (SizeTopK.Entry<Integer> entry : topK.entries()) {
+            assertEquals(values[entry.getKey()], entry.getSize());
+        }
+    }
+
+    @Test
+    public void testMergeAndCollector() {
+        SizeTopK<String> a = new SizeTopK<>(2);
+        a.offer(1, "a1");
+        a.offer(7, "a7");
+        SizeTopK<String> b = new SizeTopK<>(2);
+        b.offer(5, "b5");
+        b.offer(9, "b9");
+        assertArrayEquals(new long[]{9, 7}, a.merge(b).sizesDescending());
+
+        SizeTopK<Integer> collected = IntStream.range(0, 100_000).boxed()
+                .parallel()
+                .collect(SizeTopK.collector(5, i -> i, i -> (long) i));
+        assertArrayEquals(new long[]{99_999, 99_998, 99_997, 99_996, 99_995}, collected.sizesDescending());
+    }
+
+    @Test
+    public void testRender() {
+        SizeTopK<String> topK = new SizeTopK<>(2);
+        topK.offer(2_000_000L, "/big");
+        topK.offer(950, "/small");
+        topK.offer(1, "/tiny");
+        List<Map.Entry<String, DataSize>> rendered = topK.render(DataSizeFormatter.builder().withDecimalSeparator('.').build());
+        assertEquals("/big=1.9 MiB, /small=950 B",
+                rendered.stream().map(e -> e.getKey() + "=" + e.getValue()).collect(Collectors.joining(", ")));
+        topK.clear();
+        assertEquals(0, topK.size());
+    }
+
+    @Test
+    public void testInvalidK() {
+        assertThrows(IllegalArgumentException.class, () -> new SizeTopK<String>(0));
+    }
+}
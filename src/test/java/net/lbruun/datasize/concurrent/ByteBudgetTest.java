@@ -0,0 +1,190 @@
+package net.lbruun.datasize.concurrent;
+
+import net.lbruun.datasize.DataSizeFormatter;
+import net.lbruun.datasize.DataSizeUnit;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteBudgetTest {
+
+    private static final long GIB = 1L << 30;
+
+    @Test
+    public void testTryAcquireAndRelease() {
+        ByteBudget budget = ByteBudget.builder().withLimit(8, DataSizeUnit.GIGA, true).build();
+        assertEquals(8 * GIB, budget.getLimit());
+        assertTrue(budget.tryAcquire(3 * GIB));
+        assertTrue(budget.tryAcquire(5 * GIB));
+        assertFalse(budget.tryAcquire(1));
+        assertTrue(budget.tryAcquire(0));
+        assertEquals(8 * GIB, budget.getUsed());
+        budget.release(2 * GIB);
+        assertEquals(2 * GIB, budget.getAvailable());
+        assertTrue(budget.tryAcquire(2 * GIB));
+        budget.release(8 * GIB);
+        assertThrows(IllegalStateException.class, () -> budget.release(1));
+        assertThrows(IllegalArgumentException.class, () -> budget.tryAcquire(-1));
+        assertThrows(IllegalArgumentException.class, () -> budget.tryAcquire(8 * GIB + 1));
+        assertThrows(IllegalArgumentException.class, () -> budget.release(-1));
+    }
+
+    @Test
+    public void testBuilder() {
+        assertEquals(2_000_000_000L, ByteBudget.builder().withLimit("2 GB", false).build().getLimit());
+        assertEquals(1, ByteBudget.builder().withLimit(1).build().getLimit());
+        assertThrows(IllegalStateException.class, () -> ByteBudget.builder().build());
+        assertThrows(IllegalArgumentException.class, () -> ByteBudget.builder().withLimit(0));
+        assertThrows(ArithmeticException.class, () -> ByteBudget.builder().withLimit(8, DataSizeUnit.EXA, true));
+        assertThrows(IllegalArgumentException.class, () -> ByteBudget.builder().withStripes(0));
+    }
+
+    @Test
+    public void testUsage() {
+        ByteBudget budget = ByteBudget.builder()
+                .withLimit("2 GiB", true)
+                .withFormatter(DataSizeFormatter.builder().withDecimalSeparator('.').build())
+                .build();
+        assertTrue(budget.tryAcquire(GIB + GIB / 2));
+        assertEquals("1.50 GiB of 2.00 GiB (75%)", budget.appendUsage(new StringBuilder()).toString());
+        assertEquals("ByteBudget[1.50 GiB of 2.00 GiB (75%)]", budget.toString());
+    }
+
+    @Test
+    public void testTimedWait() throws InterruptedException {
+        ByteBudget budget = ByteBudget.builder().withLimit(100).build();
+        assertTrue(budget.tryAcquire(100));
+        long start = System.nanoTime();
+        assertFalse(budget.tryAcquire(10, 50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(0, budget.getWaitingThreads());
+
+        Thread releaser = new Thread(() -> {
+            sleep(50);
+            budget.release(60);
+        });
+        releaser.start();
+        assertTrue(budget.tryAcquire(50, 10, TimeUnit.SECONDS));
+        releaser.join();
+        assertEquals(10, budget.getAvailable());
+    }
+
+    @Test
+    public void testInterrupt() throws InterruptedException {
+        ByteBudget budget = ByteBudget.builder().withLimit(100).build();
+        assertTrue(budget.tryAcquire(100));
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            try {
+                budget.acquire(1);
+            } catch (InterruptedException ex) {
+                interrupted.set(true);
+            }
+        });
+        waiter.start();
+        while (budget.getWaitingThreads() == 0) {
+            Thread.yield();
+        }
+        waiter.interrupt();
+        waiter.join(10_000);
+        assertTrue(interrupted.get());
+        assertEquals(0, budget.getWaitingThreads());
+    }
+
+    @Test
+    public void testReleaseWakesWaiters() throws InterruptedException {
+        ByteBudget budget = ByteBudget.builder().withLimit(100).build();
+        assertTrue(budget.tryAcquire(100));
+        CountDownLatch done = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            new Thread(() -> {
+                try {
+                    budget.acquire(30);
+                    done.countDown();
+                } catch (InterruptedException ignored) {
+                }
+            }).start();
+        }
+        while (budget.getWaitingThreads() < 3) {
+            Thread.yield();
+        }
+        budget.release(100);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(10, budget.getAvailable());
+    }
+
+    @Test
+    public void testStripedOverRelease() {
+        ByteBudget budget = ByteBudget.builder().withLimit(1000).withStripes(8).build();
+        assertThrows(IllegalStateException.class, () -> budget.release(20));
+        assertTrue(budget.tryAcquire(1000));
+        assertFalse(budget.tryAcquire(20));
+
+        budget.release(300);
+        assertThrows(IllegalStateException.class, () -> budget.release(701));
+        budget.release(700);
+        assertEquals(1000, budget.getAvailable());
+        assertThrows(IllegalStateException.class, () -> budget.release(1));
+        assertTrue(budget.tryAcquire(1000));
+        assertFalse(budget.tryAcquire(1));
+    }
+
+    @Test
+    public void testConcurrentStriped() throws InterruptedException {
+        testConcurrent(ByteBudget.builder().withLimit(1000).withStripes(8).build());
+        testConcurrent(ByteBudget.builder().withLimit(1000).build());
+    }
+
+    private static void testConcurrent(ByteBudget budget) throws InterruptedException {
+        AtomicLong inUse = new AtomicLong();
+        AtomicBoolean overcommitted = new AtomicBoolean();
+        AtomicLong timeouts = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int seed = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        long bytes = 1 + ((i * 31L + seed) % 300);
+                        if (i % 2 == 0) {
+                            budget.acquire(bytes);
+                        } else if (!budget.tryAcquire(bytes, 5, TimeUnit.SECONDS)) {
+                            timeouts.incrementAndGet();
+                            continue;
+                        }
+                        if (inUse.addAndGet(bytes) > 1000) {
+                            overcommitted.set(true);
+                        }
+                        inUse.addAndGet(-bytes);
+                        budget.release(bytes);
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse(overcommitted.get());
+        assertEquals(0, timeouts.get());
+        assertEquals(1000, budget.getAvailable());
+        assertTrue(budget.tryAcquire(1000));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package net.lbruun.datasize.concurrent;
+
+import net.lbruun.datasize.DataSizeFormatter;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgressReporterTest {
+
+    private static final long MIB = 1L << 20;
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final DataSizeFormatter formatter = DataSizeFormatter.builder().withDecimalSeparator('.').build();
+
+    @Test
+    public void testReport() {
+        List<String> output = new ArrayList<>();
+        // Interval so long that only explicit calls to report() sample
+        try (ProgressReporter reporter = ProgressReporter.builder(output::add)
+                .withInterval(1, TimeUnit.DAYS)
+                .withFormatter(formatter)
+                .build()) {
+            long start = System.nanoTime();
+            ProgressReporter.Handle a = reporter.register("a.bin", 10 * MIB);
+            ProgressReporter.Handle b = reporter.register("b.bin", -1);
+
+            a.add(MIB);
+            a.add(MIB);
+            b.set(3 * MIB);
+            reporter.report(start + SECOND);
+            assertEquals(1, output.size());
+            assertEquals("a.bin: 2.0 MiB of 10.0 MiB (20%), 2.0 MiB/s\n"
+                    + "b.bin: 3.0 MiB, 3.0 MiB/s\n", output.get(0));
+
+            // Only changed handles are rendered, nothing at all if none changed
+            a.add(MIB / 2);
+            reporter.report(start + 2 * SECOND);
+            assertEquals("a.bin: 2.5 MiB of 10.0 MiB (25%), 512 KiB/s\n", output.get(1));
+            reporter.report(start + 3 * SECOND);
+            assertEquals(2, output.size());
+
+            // A closed handle gets a final line and is removed
+            a.set(10 * MIB);
+            a.close();
+            reporter.report(start + 4 * SECOND);
+            assertEquals("a.bin: 10.0 MiB of 10.0 MiB (100%), done\n", output.get(2));
+            assertEquals(1, reporter.getHandleCount());
+
+            b.close();
+        }
+        // close() reports what is left
+        assertEquals("b.bin: 3.0 MiB, done\n", output.get(3));
+        assertEquals(4, output.size());
+    }
+
+    @Test
+    public void testSamplingThread() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        StringBuffer output = new StringBuffer();
+        ProgressReporter reporter = ProgressReporter.builder(lines -> {
+                    output.append(lines);
+                    if (lines.contains("done")) {
+                        done.countDown();
+                    }
+                })
+                .withInterval(10, TimeUnit.MILLISECONDS)
+                .withFormatter(formatter)
+                .build();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            ProgressReporter.Handle handle = reporter.register("t" + t, 1000 * 1024);
+            Thread thread = new Thread(() -> {
+                try (ProgressReporter.Handle h = handle) {
+                    for (int i = 0; i < 1000; i++) {
+                        h.add(1024);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        reporter.close();
+        for (int t = 0; t < 8; t++) {
+            assertTrue(output.toString().contains("t" + t + ": 1000 KiB of 1000 KiB (100%), done\n"), output::toString);
+        }
+        assertEquals(0, reporter.getHandleCount());
+        assertThrows(IllegalStateException.class, () -> reporter.register("late", 1));
+    }
+
+    @Test
+    public void testSinkFailure() {
+        List<LogRecord> records = new ArrayList<>();
+        Handler capture = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(ProgressReporter.class.getName());
+        boolean useParentHandlers = logger.getUseParentHandlers();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(capture);
+        try {
+            List<String> output = new ArrayList<>();
+            try (ProgressReporter reporter = ProgressReporter.builder(lines -> {
+                        output.add(lines);
+                        if (output.size() == 1) {
+                            throw new IllegalStateException("broken console");
+                        }
+                        throw new AssertionError("broken harder");
+                    })
+                    .withInterval(1, TimeUnit.DAYS)
+                    .withFormatter(formatter)
+                    .build()) {
+                ProgressReporter.Handle handle = reporter.register("x", 100);
+                handle.add(1);
+                reporter.report(System.nanoTime());
+                handle.add(1);
+                reporter.report(System.nanoTime());
+                handle.add(1);
+                reporter.report(System.nanoTime());
+                assertEquals(3, output.size());
+            }
+            assertEquals(3, records.size());
+            for (LogRecord record : records) {
+                assertEquals(Level.WARNING, record.getLevel());
+                assertEquals("Progress sink failed", record.getMessage());
+            }
+            assertTrue(records.get(0).getThrown() instanceof IllegalStateException);
+            assertTrue(records.get(1).getThrown() instanceof AssertionError);
+        } finally {
+            logger.removeHandler(capture);
+            logger.setUseParentHandlers(useParentHandlers);
+        }
+    }
+
+    @Test
+    public void testArguments() {
+        assertThrows(NullPointerException.class, () -> ProgressReporter.builder(null));
+        ProgressReporter.Builder builder = ProgressReporter.builder(s -> { });
+        assertThrows(IllegalArgumentException.class, () -> builder.withInterval(0, TimeUnit.SECONDS));
+        try (ProgressReporter reporter = builder.build()) {
+            assertEquals(SECOND, reporter.getIntervalNanos());
+            assertThrows(IllegalArgumentException.class, () -> reporter.register("x", -2));
+            ProgressReporter.Handle handle = reporter.register("x", -1);
+            assertThrows(IllegalArgumentException.class, () -> handle.add(-1));
+            assertThrows(IllegalArgumentException.class, () -> handle.set(-1));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package net.lbruun.datasize.io;
+
+import net.lbruun.datasize.DataSizeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkPlannerTest {
+
+    private static final long MIB = 1L << 20;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testPlan() {
+        ChunkPlanner planner = ChunkPlanner.builder().withChunkSize("8 MiB", true).build();
+        assertEquals(8 * MIB, planner.getChunkSize());
+
+        ChunkPlanner.Plan plan = planner.plan(20 * MIB + 1);
+        assertEquals(3, plan.size());
+        assertArrayEquals(new long[]{0, 8 * MIB, 8 * MIB, 8 * MIB, 16 * MIB, 4 * MIB + 1}, plan.toArray());
+        assertThrows(IndexOutOfBoundsException.class, () -> plan.getOffset(3));
+
+        assertEquals(2, planner.plan(16 * MIB).size());
+        assertEquals(8 * MIB, planner.plan(16 * MIB).getLength(1));
+        assertEquals(0, planner.plan(0).size());
+        assertEquals(1, planner.plan(1).size());
+        assertThrows(IllegalArgumentException.class, () -> planner.plan(-1));
+    }
+
+    @Test
+    public void testUnits() {
+        assertEquals(8_000_000, ChunkPlanner.builder().withChunkSize("8 MB", false).build().getChunkSize());
+        assertEquals(8 * MIB, ChunkPlanner.builder().withChunkSize(8, DataSizeUnit.MEGA, true).build().getChunkSize());
+        assertThrows(IllegalArgumentException.class, () -> ChunkPlanner.builder().withChunkSize(0));
+        assertThrows(NumberFormatException.class, () -> ChunkPlanner.builder().withChunkSize("eight", true));
+    }
+
+    @Test
+    public void testMaxChunks() {
+        ChunkPlanner planner = ChunkPlanner.builder()
+                .withChunkSize(8 * MIB)
+                .withMaxChunks(10_000)
+                .withAlignment(MIB)
+                .build();
+        ChunkPlanner.Plan small = planner.plan(80_000 * MIB);
+        assertEquals(10_000, small.size());
+        assertEquals(8 * MIB, small.getChunkSize());
+
+        // 100 GiB does not fit in 10000 chunks of 8 MiB, needs 10.24 MiB, raised to 11 MiB
+        ChunkPlanner.Plan large = planner.plan(100 * 1024 * MIB);
+        assertEquals(11 * MIB, large.getChunkSize());
+        assertEquals(9310, large.size());
+
+        ChunkPlanner unaligned = ChunkPlanner.builder().withChunkSize(10).withMaxChunks(3).build();
+        assertEquals(34, unaligned.plan(100).getChunkSize());
+        assertEquals(3, unaligned.plan(100).size());
+    }
+
+    @Test
+    public void testTransfer() throws IOException {
+        byte[] content = new byte[1_000_003];
+        new Random(3).nextBytes(content);
+        Path file = tempDir.resolve("file");
+        Files.write(file, content);
+        ChunkPlanner.Plan plan = ChunkPlanner.builder().withChunkSize(64 * 1024).build().plan(content.length);
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(file);
+             WritableByteChannel target = Channels.newChannel(copy)) {
+            long total = 0;
+            for (int i = 0; i < plan.size(); i++) {
+                total += plan.transfer(channel, i, target);
+            }
+            assertEquals(content.length, total);
+        }
+        assertArrayEquals(content, copy.toByteArray());
+
+        ChunkPlanner.Plan tooLong = ChunkPlanner.builder().withChunkSize(64 * 1024).build().plan(content.length + 10);
+        try (FileChannel channel = FileChannel.open(file);
+             WritableByteChannel target = Channels.newChannel(new ByteArrayOutputStream())) {
+            assertThrows(EOFException.class, () -> tooLong.transfer(channel, tooLong.size() - 1, target));
+        }
+        assertTrue(Arrays.equals(content, Files.readAllBytes(file)));
+    }
+}
@@ -0,0 +1,119 @@
+package net.lbruun.datasize.io;
+
+import net.lbruun.datasize.DataSizeFormatter;
+import net.lbruun.datasize.DataSizeUnitSuffixes;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FieldHumanizerTest {
+
+    private static final DataSizeFormatter FORMATTER = DataSizeFormatter.builder()
+            .withDecimalSeparator('.')
+            .build();
+
+    private static String viaChannels(FieldHumanizer humanizer, String input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        humanizer.transfer(
+                Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))),
+                Channels.newChannel(out));
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String viaReader(FieldHumanizer humanizer, String input) throws IOException {
+        StringWriter out = new StringWriter();
+        humanizer.transfer(new StringReader(input), out);
+        return out.toString();
+    }
+
+    private static void assertBoth(FieldHumanizer humanizer, String expected, String input) throws IOException {
+        assertEquals(expected, viaChannels(humanizer, input));
+        assertEquals(expected, viaReader(humanizer, input));
+    }
+
+    @Test
+    public void testKeys() throws IOException {
+        FieldHumanizer humanizer = FieldHumanizer.builder()
+                .withFormatter(FORMATTER)
+                .withKeys("bytes_sent", "rx")
+                .build();
+        assertBoth(humanizer,
+                "GET /x status=200 bytes_sent=1.9 MiB rx=1 KiB\n",
+                "GET /x status=200 bytes_sent=2000000 rx=1024\n");
+        // Not matching: key is part of a longer key, value is not a plain number, value overflows
+        assertBoth(humanizer,
+                "total_bytes_sent=2000000 rx=12ms rx=99999999999999999999 tx=1024\n",
+                "total_bytes_sent=2000000 rx=12ms rx=99999999999999999999 tx=1024\n");
+        // Several lines, the last one without line terminator, and non-ASCII content
+        assertBoth(humanizer,
+                "rx=1.9 MiB\n\nnaïve \"rx\"=5\nrx=0 B",
+                "rx=2000000\n\nnaïve \"rx\"=5\nrx=0");
+    }
+
+    @Test
+    public void testKeyValueSeparator() throws IOException {
+        FieldHumanizer humanizer = FieldHumanizer.builder()
+                .withFormatter(FORMATTER)
+                .withKeys("size")
+                .withKeyValueSeparator(':')
+                .build();
+        assertBoth(humanizer, "a:1 size:1.9 MiB size=2000000\n", "a:1 size:2000000 size=2000000\n");
+    }
+
+    @Test
+    public void testColumns() throws IOException {
+        FieldHumanizer humanizer = FieldHumanizer.builder()
+                .withFormatter(DataSizeFormatter.builder().withSuffixes(DataSizeUnitSuffixes.SUFFIXES_GNU).build())
+                .withColumns(1, 3)
+                .build();
+        assertBoth(humanizer, "1K  ./a\t1.9M\n950 x\n", "1024  ./a\t2000000\n950 x\n");
+
+        FieldHumanizer csv = FieldHumanizer.builder()
+                .withFormatter(FORMATTER)
+                .withColumns(2)
+                .withDelimiter(',')
+                .build();
+        assertBoth(csv, "a,1.9 MiB,c\nb,,c\nc,abc\n", "a,2000000,c\nb,,c\nc,abc\n");
+    }
+
+    @Test
+    public void testLargeInput() throws IOException {
+        FieldHumanizer humanizer = FieldHumanizer.builder()
+                .withFormatter(FORMATTER)
+                .withKeys("bytes")
+                .build();
+        StringBuilder in = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        char[] padding = new char[5000];
+        Arrays.fill(padding, 'x');
+        for (int i = 0; i < 2000; i++) {
+            String pad = (i % 50 == 0) ? new String(padding) : "";
+            in.append("id=").append(i).append(pad).append(" bytes=").append(1024 * 1024).append('\n');
+            expected.append("id=").append(i).append(pad).append(" bytes=1.0 MiB\n");
+        }
+        // Also a single line longer than the internal buffer
+        for (int i = 0; i < 20_000; i++) {
+            in.append("bytes=1024 ");
+            expected.append("bytes=1 KiB ");
+        }
+        assertBoth(humanizer, expected.toString(), in.toString());
+    }
+
+    @Test
+    public void testBuilder() {
+        assertThrows(IllegalArgumentException.class, () -> FieldHumanizer.builder().build());
+        assertThrows(IllegalArgumentException.class,
+                () -> FieldHumanizer.builder().withKeys("a").withColumns(1).build());
+        assertThrows(IllegalArgumentException.class, () -> FieldHumanizer.builder().withKeys("a b"));
+        assertThrows(IllegalArgumentException.class, () -> FieldHumanizer.builder().withColumns(0));
+    }
+}
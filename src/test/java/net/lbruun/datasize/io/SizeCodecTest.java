@@ -0,0 +1,130 @@
+package net.lbruun.datasize.io;
+
+import net.lbruun.datasize.DataSize;
+import net.lbruun.datasize.DataSizeFormatter;
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SizeCodecTest {
+
+    private static long[] roundTrip(long[] values) {
+        ByteBuffer buf = ByteBuffer.allocate((int) SizeCodec.maxEncodedLength(values.length));
+        SizeCodec.encode(values, 0, values.length, buf);
+        buf.flip();
+        assertEquals(values.length, SizeCodec.peekCount(buf));
+        long[] decoded = new long[values.length];
+        assertEquals(values.length, SizeCodec.decode(buf, decoded, 0));
+        assertFalse(buf.hasRemaining());
+        return decoded;
+    }
+
+    private static int encodedLength(long[] values) {
+        ByteBuffer buf = ByteBuffer.allocate((int) SizeCodec.maxEncodedLength(values.length));
+        SizeCodec.encode(values, 0, values.length, buf);
+        return buf.position();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        long[] extremes = {0, 1, -1, Long.MAX_VALUE, Long.MIN_VALUE, 0, Long.MIN_VALUE, Long.MAX_VALUE, 42};
+        assertArrayEquals(extremes, roundTrip(extremes));
+        assertArrayEquals(new long[0], roundTrip(new long[0]));
+        assertArrayEquals(new long[]{Long.MIN_VALUE}, roundTrip(new long[]{Long.MIN_VALUE}));
+
+        Random random = new Random(42);
+        for (int n = 0; n < 100; n++) {
+            long[] values = new long[random.nextInt(200)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (random.nextLong() >> random.nextInt(64)) << random.nextInt(20);
+            }
+            assertArrayEquals(values, roundTrip(values));
+        }
+    }
+
+    @Test
+    public void testCompactness() {
+        Random random = new Random(42);
+        long[] sorted = new long[10_000];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = random.nextInt(1 << 30);
+        }
+        Arrays.sort(sorted);
+        assertTrue(encodedLength(sorted) < 3 * sorted.length);
+
+        // Block-aligned sizes: the common trailing zeros cost nothing
+        long[] blocks = new long[10_000];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = (long) random.nextInt(64) << 12;
+        }
+        assertTrue(encodedLength(blocks) <= blocks.length + 6);
+        assertArrayEquals(blocks, roundTrip(blocks));
+    }
+
+    @Test
+    public void testConsumerAndOffsets() {
+        long[] values = {5, 10, 15, 20};
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        buf.put((byte) 99);
+        SizeCodec.encode(values, 1, 2, buf);
+        SizeCodec.encode(values, 0, 4, buf);
+        buf.flip();
+        assertEquals(99, buf.get());
+        long[] sum = {0};
+        assertEquals(2, SizeCodec.decode(buf, v -> sum[0] += v));
+        assertEquals(25, sum[0]);
+        long[] dst = new long[6];
+        assertThrows(IndexOutOfBoundsException.class, () -> SizeCodec.decode(buf, dst, 3));
+        assertEquals(4, SizeCodec.decode(buf, dst, 2));
+        assertArrayEquals(new long[]{0, 0, 5, 10, 15, 20}, dst);
+    }
+
+    @Test
+    public void testErrors() {
+        long[] values = {1L << 40, 3L << 40, -1};
+        ByteBuffer small = ByteBuffer.allocate(4);
+        small.put((byte) 1);
+        assertThrows(BufferOverflowException.class, () -> SizeCodec.encode(values, 0, values.length, small));
+        assertEquals(1, small.position());
+
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        SizeCodec.encode(values, 0, values.length, buf);
+        buf.flip();
+        buf.limit(buf.limit() - 1);
+        assertThrows(BufferUnderflowException.class, () -> SizeCodec.decode(buf, new long[3], 0));
+
+        ByteBuffer malformed = ByteBuffer.wrap(new byte[]{1, 64, 0});
+        assertThrows(IllegalArgumentException.class, () -> SizeCodec.decode(malformed, new long[1], 0));
+        byte[] tooLong = new byte[13];
+        Arrays.fill(tooLong, (byte) 0xFF);
+        tooLong[0] = 1;
+        tooLong[1] = 0;
+        assertThrows(IllegalArgumentException.class, () -> SizeCodec.decode(ByteBuffer.wrap(tooLong), new long[1], 0));
+
+        // A huge count in a tiny block is rejected before allocating for it
+        byte[] hugeCount = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0};
+        DataSizeFormatter formatter = DataSizeFormatter.builder().build();
+        assertThrows(IllegalArgumentException.class, () -> SizeCodec.decode(ByteBuffer.wrap(hugeCount), formatter));
+        assertThrows(IllegalArgumentException.class, () -> SizeCodec.decode(ByteBuffer.wrap(hugeCount), v -> { }));
+        assertEquals(Integer.MAX_VALUE, SizeCodec.peekCount(ByteBuffer.wrap(hugeCount)));
+    }
+
+    @Test
+    public void testRenderOnReceivingSide() {
+        DataSizeFormatter formatter = DataSizeFormatter.builder().withDecimalSeparator('.').build();
+        DataSize[] sent = {new DataSize(1024, formatter), new DataSize(3L << 20, formatter)};
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        SizeCodec.encode(sent, buf);
+        buf.flip();
+        DataSize[] received = SizeCodec.decode(buf, formatter);
+        assertEquals(2, received.length);
+        assertEquals(1024, received[0].getValue());
+        assertEquals("3.0 MiB", received[1].toString());
+    }
+}
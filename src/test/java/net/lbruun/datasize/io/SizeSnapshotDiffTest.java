@@ -0,0 +1,312 @@
+package net.lbruun.datasize.io;
+
+import net.lbruun.datasize.DataSizeFormatter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SizeSnapshotDiffTest {
+
+    private static final long GIB = 1L << 30;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        Path file = tempDir.resolve("snapshot");
+        try (SizeSnapshotWriter writer = SizeSnapshotWriter.create(file)) {
+            writer.add("/data", 300);
+            writer.add("/data/a", 100);
+            writer.add("/data/b", 200);
+            writer.add("/data/b/æøå", 0);
+            writer.add("/data/bb", 5L << 40);
+            assertThrows(IllegalArgumentException.class, () -> writer.add("/data/b", 1));
+            assertThrows(IllegalArgumentException.class, () -> writer.add("/data/bb", 1));
+            assertThrows(IllegalArgumentException.class, () -> writer.add("/data/c", -1));
+            assertEquals(5, writer.getCount());
+            writer.finish();
+        }
+        try (SizeSnapshotReader reader = SizeSnapshotReader.open(file)) {
+            assertThrows(IllegalStateException.class, reader::path);
+            assertTrue(reader.next());
+            assertEquals("/data", reader.path());
+            assertEquals(300, reader.size());
+            assertTrue(reader.next());
+            assertTrue(reader.next());
+            assertEquals("/data/b", reader.path());
+            assertTrue(reader.next());
+            assertEquals("/data/b/æøå", reader.path());
+            assertEquals(0, reader.size());
+            assertTrue(reader.next());
+            assertEquals("/data/bb", reader.path());
+            assertEquals(5L << 40, reader.size());
+            assertFalse(reader.next());
+            assertFalse(reader.next());
+            assertEquals(5, reader.getCount());
+        }
+    }
+
+    @Test
+    public void testInvalidFiles() throws IOException {
+        Path file = tempDir.resolve("snapshot");
+        try (SizeSnapshotWriter writer = SizeSnapshotWriter.create(file)) {
+            for (int i = 0; i < 1000; i++) {
+                writer.add(String.format("/data/%04d", i), i);
+            }
+            writer.finish();
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        Path truncated = tempDir.resolve("truncated");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> readAll(truncated));
+
+        Path garbage = tempDir.resolve("garbage");
+        Files.write(garbage, new byte[100]);
+        assertThrows(IOException.class, () -> SizeSnapshotReader.open(garbage));
+    }
+
+    @Test
+    public void testUnfinished() throws IOException {
+        Path file = tempDir.resolve("snapshot");
+        assertThrows(IllegalStateException.class, () -> {
+            try (SizeSnapshotWriter writer = SizeSnapshotWriter.create(file)) {
+                writer.add("/a", 1);
+                writer.add("/b", 2);
+                throw new IllegalStateException("walk failed");
+            }
+        });
+        assertThrows(IOException.class, () -> readAll(file));
+
+        // An earlier snapshot is left as it was
+        try (SizeSnapshotWriter writer = SizeSnapshotWriter.create(file)) {
+            writer.add("/a", 1);
+            writer.finish();
+            assertThrows(IllegalStateException.class, () -> writer.add("/b", 2));
+        }
+        try (SizeSnapshotWriter writer = SizeSnapshotWriter.create(file)) {
+            writer.add("/x", 5);
+        }
+        try (SortingSizeSnapshotWriter writer = SortingSizeSnapshotWriter.create(file, 1)) {
+            writer.add("/y", 5);
+            writer.add("/x", 5);
+        }
+        TreeMap<String, Long> expected = new TreeMap<>();
+        expected.put("/a", 1L);
+        assertEquals(expected, readAll(file));
+        // No temporary files are left
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testPermissions() throws IOException {
+        assumeTrue(Files.getFileStore(tempDir).supportsFileAttributeView("posix"));
+        // Snapshots get the default permissions of new files, not owner-only ones
+        Set<PosixFilePermission> expected = Files.getPosixFilePermissions(Files.createFile(tempDir.resolve("reference")));
+        Path file = tempDir.resolve("snapshot");
+        try (SizeSnapshotWriter writer = SizeSnapshotWriter.create(file)) {
+            writer.add("/a", 1);
+            writer.finish();
+        }
+        assertEquals(expected, Files.getPosixFilePermissions(file));
+
+        Path sorted = tempDir.resolve("sorted");
+        try (SortingSizeSnapshotWriter writer = SortingSizeSnapshotWriter.create(sorted, 1)) {
+            writer.add("/b", 2);
+            writer.add("/a", 1);
+            writer.finish();
+        }
+        assertEquals(expected, Files.getPosixFilePermissions(sorted));
+    }
+
+    @Test
+    public void testLongPaths() throws IOException {
+        Path file = tempDir.resolve("snapshot");
+        String longPath = "/" + new String(new char[200_000]).replace('\0', 'x');
+        try (SizeSnapshotWriter writer = SizeSnapshotWriter.create(file)) {
+            writer.add("/a", 1);
+            writer.add(longPath, 2);
+            writer.add(longPath + "/y", 3);
+            writer.finish();
+        }
+        TreeMap<String, Long> read = readAll(file);
+        assertEquals(3, read.size());
+        assertEquals(2L, read.get(longPath));
+        assertEquals(3L, read.get(longPath + "/y"));
+    }
+
+    @Test
+    public void testSortingWriter() throws IOException {
+        Random random = new Random(42);
+        TreeMap<String, Long> expected = new TreeMap<>();
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            paths.add("/data/tenant" + random.nextInt(3000) + "/dir" + random.nextInt(3));
+        }
+        Collections.shuffle(paths, random);
+        Path file = tempDir.resolve("sorted");
+        try (SortingSizeSnapshotWriter writer = SortingSizeSnapshotWriter.create(file, 700)) {
+            for (String path : paths) {
+                long size = random.nextInt(1 << 20);
+                writer.add(path, size);
+                expected.merge(path, size, Long::sum);
+            }
+            writer.finish();
+        }
+        assertEquals(expected, readAll(file));
+        // Only the snapshot is left
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testSortingWriterInMemory() throws IOException {
+        Path file = tempDir.resolve("sorted");
+        try (SortingSizeSnapshotWriter writer = SortingSizeSnapshotWriter.create(file, 10)) {
+            writer.add("/b", 2);
+            writer.add("/a", 1);
+            writer.add("/b", 3);
+            writer.finish();
+        }
+        TreeMap<String, Long> expected = new TreeMap<>();
+        expected.put("/a", 1L);
+        expected.put("/b", 5L);
+        assertEquals(expected, readAll(file));
+        assertThrows(IllegalArgumentException.class, () -> SortingSizeSnapshotWriter.create(file, 0));
+    }
+
+    @Test
+    public void testDiff() throws IOException {
+        Path older = tempDir.resolve("older");
+        Path newer = tempDir.resolve("newer");
+        try (SizeSnapshotWriter writer = SizeSnapshotWriter.create(older)) {
+            writer.add("/data/gone", 2 * GIB);
+            writer.add("/data/same", 7 * GIB);
+            writer.add("/data/tenant42", GIB);
+            writer.add("/data/tenant7", 5 * GIB);
+            writer.finish();
+        }
+        try (SizeSnapshotWriter writer = SizeSnapshotWriter.create(newer)) {
+            writer.add("/data/new", 3 * GIB);
+            writer.add("/data/same", 7 * GIB);
+            writer.add("/data/tenant42", GIB + GIB * 25 / 2);
+            writer.add("/data/tenant7", 4 * GIB);
+            writer.finish();
+        }
+        SizeSnapshotDiff diff = SizeSnapshotDiff.compare(older, newer, 10);
+        assertEquals(15 * GIB, diff.getOldTotal());
+        assertEquals(15 * GIB + GIB * 25 / 2, diff.getNewTotal());
+        assertEquals(1, diff.getAdded());
+        assertEquals(1, diff.getRemoved());
+        assertEquals(2, diff.getChanged());
+
+        assertEquals(2, diff.getGrowers().size());
+        assertEquals("/data/tenant42", diff.getGrowers().get(0).getPath());
+        assertEquals("/data/new", diff.getGrowers().get(1).getPath());
+        assertEquals(0, diff.getGrowers().get(1).getOldSize());
+        assertEquals(2, diff.getShrinkers().size());
+        assertEquals("/data/gone", diff.getShrinkers().get(0).getPath());
+        assertEquals(-2 * GIB, diff.getShrinkers().get(0).getDelta());
+        assertEquals("/data/tenant7", diff.getShrinkers().get(1).getPath());
+
+        DataSizeFormatter formatter = DataSizeFormatter.builder().withDecimalSeparator('.').build();
+        assertEquals("+12.50 GiB in /data/tenant42",
+                diff.getGrowers().get(0).appendTo(new StringBuilder(), formatter).toString());
+        String report = diff.appendReport(new StringBuilder(), formatter).toString();
+        assertEquals("total: +12.50 GiB (15.00 GiB -> 27.50 GiB), 1 added, 1 removed, 2 changed\n"
+                + "grew:\n"
+                + "  +12.50 GiB in /data/tenant42\n"
+                + "  +3.00 GiB in /data/new\n"
+                + "shrank:\n"
+                + "  -2.00 GiB in /data/gone\n"
+                + "  -1.00 GiB in /data/tenant7\n", report);
+
+        // The report signs deltas itself
+        DataSizeFormatter negativeOnly = DataSizeFormatter.builder()
+                .withDecimalSeparator('.')
+                .withSignPolicy(DataSizeFormatter.SignPolicy.NEGATIVE_ONLY)
+                .build();
+        assertEquals(report, diff.appendReport(new StringBuilder(), negativeOnly).toString());
+        for (DataSizeFormatter.SignPolicy signPolicy : new DataSizeFormatter.SignPolicy[]{
+                DataSizeFormatter.SignPolicy.ALWAYS, DataSizeFormatter.SignPolicy.ALWAYS_EXCEPT_ZERO}) {
+            DataSizeFormatter signed = DataSizeFormatter.builder().withSignPolicy(signPolicy).build();
+            assertThrows(IllegalArgumentException.class, () -> diff.appendReport(new StringBuilder(), signed));
+            assertThrows(IllegalArgumentException.class, () -> diff.getGrowers().get(0).appendTo(new StringBuilder(), signed));
+        }
+    }
+
+    @Test
+    public void testDiffRandom() throws IOException {
+        Random random = new Random(7);
+        TreeMap<String, Long> oldMap = new TreeMap<>();
+        TreeMap<String, Long> newMap = new TreeMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            String path = "/v/" + Integer.toString(random.nextInt(1_000_000), 36);
+            if (random.nextInt(10) > 0) {
+                oldMap.put(path, (long) random.nextInt(1 << 30));
+            }
+            if (random.nextInt(10) > 0) {
+                newMap.put(path, (long) random.nextInt(1 << 30));
+            }
+        }
+        Path older = write(oldMap, "older");
+        Path newer = write(newMap, "newer");
+        SizeSnapshotDiff diff = SizeSnapshotDiff.compare(older, newer, 5);
+
+        List<Long> deltas = new ArrayList<>();
+        TreeMap<String, Long> union = new TreeMap<>(oldMap);
+        union.putAll(newMap);
+        for (String path : union.keySet()) {
+            deltas.add(newMap.getOrDefault(path, 0L) - oldMap.getOrDefault(path, 0L));
+        }
+        Collections.sort(deltas);
+        assertEquals(5, diff.getShrinkers().size());
+        assertEquals(5, diff.getGrowers().size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(deltas.get(i), diff.getShrinkers().get(i).getDelta());
+            assertEquals(deltas.get(deltas.size() - 1 - i), diff.getGrowers().get(i).getDelta());
+        }
+        assertEquals(oldMap.values().stream().mapToLong(Long::longValue).sum(), diff.getOldTotal());
+        assertEquals(newMap.values().stream().mapToLong(Long::longValue).sum(), diff.getNewTotal());
+    }
+
+    private Path write(TreeMap<String, Long> map, String name) throws IOException {
+        Path file = tempDir.resolve(name);
+        try (SizeSnapshotWriter writer = SizeSnapshotWriter.create(file)) {
+            for (Map.Entry<String, Long> entry : map.entrySet()) {
+                writer.add(entry.getKey(), entry.getValue());
+            }
+            writer.finish();
+        }
+        return file;
+    }
+
+    private static TreeMap<String, Long> readAll(Path file) throws IOException {
+        TreeMap<String, Long> map = new TreeMap<>();
+        try (SizeSnapshotReader reader = SizeSnapshotReader.open(file)) {
+            while (reader.next()) {
+                map.put(reader.path(), reader.size());
+            }
+        }
+        return map;
+    }
+}
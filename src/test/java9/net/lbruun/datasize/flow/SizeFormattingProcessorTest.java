@@ -0,0 +1,191 @@
+package net.lbruun.datasize.flow;
+
+import net.lbruun.datasize.DataSizeFormatter;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SizeFormattingProcessorTest {
+
+    private static final DataSizeFormatter FORMATTER = DataSizeFormatter.builder().withDecimalSeparator('.').build();
+
+    /**
+     * Subscriber which requests batches one at a time, only when told to.
+     */
+    private static class ManualSubscriber<T> implements Flow.Subscriber<List<SizeFormattingProcessor.Formatted<T>>> {
+        final List<List<SizeFormattingProcessor.Formatted<T>>> batches = new ArrayList<>();
+        final CompletableFuture<Void> completion = new CompletableFuture<>();
+        volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public synchronized void onNext(List<SizeFormattingProcessor.Formatted<T>> item) {
+            batches.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completion.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completion.complete(null);
+        }
+
+        synchronized List<String> texts() {
+            List<String> texts = new ArrayList<>();
+            for (List<SizeFormattingProcessor.Formatted<T>> batch : batches) {
+                for (SizeFormattingProcessor.Formatted<T> f : batch) {
+                    texts.add(f.getText());
+                }
+            }
+            return texts;
+        }
+    }
+
+    @Test
+    public void testFormatsInBatches() throws Exception {
+        SizeFormattingProcessor<Long> processor = SizeFormattingProcessor.builder(FORMATTER, Long::longValue)
+                .withMaxBatchSize(10)
+                .build();
+        ManualSubscriber<Long> subscriber = new ManualSubscriber<>();
+        processor.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        try (SubmissionPublisher<Long> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            for (long i = 0; i < 1000; i++) {
+                publisher.submit(i * 1024);
+            }
+        }
+        subscriber.completion.get(30, TimeUnit.SECONDS);
+        List<String> texts = subscriber.texts();
+        assertEquals(1000, texts.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(FORMATTER.format(i * 1024L), texts.get(i));
+        }
+        for (List<SizeFormattingProcessor.Formatted<Long>> batch : subscriber.batches) {
+            assertTrue(batch.size() >= 1 && batch.size() <= 10);
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        SizeFormattingProcessor<Long> processor = SizeFormattingProcessor.builder(FORMATTER, Long::longValue)
+                .withMaxBatchSize(4)
+                .withBufferCapacity(8)
+                .build();
+        ManualSubscriber<Long> subscriber = new ManualSubscriber<>();
+        processor.subscribe(subscriber);
+        SubmissionPublisher<Long> publisher = new SubmissionPublisher<>();
+        publisher.subscribe(processor);
+        for (long i = 0; i < 20; i++) {
+            publisher.offer(i, (s, item) -> false);
+        }
+        // Nothing is delivered without demand, and no more than 8 elements are taken from upstream
+        Thread.sleep(100);
+        assertTrue(subscriber.batches.isEmpty());
+        assertTrue(publisher.estimateMaximumLag() >= 12);
+
+        subscriber.subscription.request(1);
+        awaitBatches(subscriber, 1);
+        Thread.sleep(50);
+        assertEquals(1, subscriber.batches.size());
+        assertEquals(4, subscriber.batches.get(0).size());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        publisher.close();
+        subscriber.completion.get(30, TimeUnit.SECONDS);
+        assertEquals(20, subscriber.texts().size());
+        assertEquals("19 B", subscriber.texts().get(19));
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        SizeFormattingProcessor<long[]> processor = SizeFormattingProcessor.<long[]>builder(FORMATTER, e -> e[1])
+                .withCoalescing(e -> e[0])
+                .withBufferCapacity(4)
+                .build();
+        ManualSubscriber<long[]> subscriber = new ManualSubscriber<>();
+        processor.subscribe(subscriber);
+        try (SubmissionPublisher<long[]> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            // Three keys, many updates each, while the subscriber requests nothing
+            for (long i = 0; i < 300; i++) {
+                publisher.submit(new long[]{i % 3, i});
+            }
+            // The upstream is not held back by the slow subscriber
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (publisher.estimateMaximumLag() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(0, publisher.estimateMaximumLag());
+        }
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.completion.get(30, TimeUnit.SECONDS);
+        Map<Long, Long> latest = new HashMap<>();
+        for (List<SizeFormattingProcessor.Formatted<long[]>> batch : subscriber.batches) {
+            for (SizeFormattingProcessor.Formatted<long[]> f : batch) {
+                latest.put(f.getElement()[0], f.getSize());
+            }
+        }
+        assertEquals(3, latest.size());
+        assertEquals(297, latest.get(0L));
+        assertEquals(298, latest.get(1L));
+        assertEquals(299, latest.get(2L));
+        assertEquals(3, subscriber.texts().size());
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        SizeFormattingProcessor<Long> processor = SizeFormattingProcessor.builder(FORMATTER, Long::longValue).build();
+        ManualSubscriber<Long> subscriber = new ManualSubscriber<>();
+        processor.subscribe(subscriber);
+
+        ManualSubscriber<Long> second = new ManualSubscriber<>();
+        processor.subscribe(second);
+        assertThrows(Exception.class, () -> second.completion.get(30, TimeUnit.SECONDS));
+
+        subscriber.subscription.request(0);
+        Exception ex = assertThrows(Exception.class, () -> subscriber.completion.get(30, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof IllegalArgumentException);
+
+        // Negative sizes are rejected by the default formatter
+        SizeFormattingProcessor<Long> rejecting = SizeFormattingProcessor.builder(FORMATTER, Long::longValue).build();
+        ManualSubscriber<Long> s = new ManualSubscriber<>();
+        rejecting.subscribe(s);
+        s.subscription.request(Long.MAX_VALUE);
+        try (SubmissionPublisher<Long> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(rejecting);
+            publisher.submit(-1L);
+        }
+        ex = assertThrows(Exception.class, () -> s.completion.get(30, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof IllegalArgumentException);
+    }
+
+    private static void awaitBatches(ManualSubscriber<?> subscriber, int n) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (System.nanoTime() < deadline) {
+            synchronized (subscriber) {
+                if (subscriber.batches.size() >= n) {
+                    return;
+                }
+            }
+            Thread.sleep(5);
+        }
+        fail("timed out waiting for " + n + " batches");
+    }
+}
@@ -0,0 +1,105 @@
+package net.lbruun.datasize.io;
+
+import net.lbruun.datasize.DataSize;
+import net.lbruun.datasize.DataSizeFormatter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedSizeCountersTest {
+
+    private static final int ADDS_PER_PROCESS = 1_000_000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testSurvivesReopen() throws IOException {
+        Path file = tempDir.resolve("counters");
+        try (MappedSizeCounters counters = MappedSizeCounters.open(file, "sent", "received")) {
+            assertEquals(2, counters.size());
+            assertEquals(1, counters.indexOf("received"));
+            assertEquals(-1, counters.indexOf("other"));
+            assertEquals(1024, counters.add(0, 1024));
+            assertEquals(3072, counters.add(0, 2048));
+            counters.set(1, 5L << 20);
+            assertTrue(counters.compareAndSet(1, 5L << 20, 6L << 20));
+            assertFalse(counters.compareAndSet(1, 5L << 20, 7L << 20));
+            assertThrows(IndexOutOfBoundsException.class, () -> counters.get(2));
+        }
+        if (Files.getFileStore(file).supportsFileAttributeView("posix")) {
+            // A monitoring process may have read access only
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("r--r--r--"));
+        }
+        try (MappedSizeCounters counters = MappedSizeCounters.openExisting(file)) {
+            assertThrows(ReadOnlyBufferException.class, () -> counters.add(0, 1));
+            assertThrows(ReadOnlyBufferException.class, () -> counters.set(0, 1));
+            assertEquals("received", counters.getName(1));
+            assertArrayEquals(new long[]{3072, 6L << 20}, counters.snapshot());
+            DataSizeFormatter formatter = DataSizeFormatter.builder().withDecimalSeparator('.').build();
+            Map<String, DataSize> snapshot = counters.snapshot(formatter);
+            assertEquals("[sent, received]", snapshot.keySet().toString());
+            assertEquals("3 KiB", snapshot.get("sent").toString());
+            assertEquals("6.0 MiB", snapshot.get("received").toString());
+        }
+        assertThrows(IOException.class, () -> MappedSizeCounters.open(file, "sent"));
+    }
+
+    @Test
+    public void testInvalidFiles() throws IOException {
+        Path garbage = tempDir.resolve("garbage");
+        Files.write(garbage, new byte[100]);
+        assertThrows(IOException.class, () -> MappedSizeCounters.open(garbage, "a"));
+        assertThrows(IOException.class, () -> MappedSizeCounters.openExisting(tempDir.resolve("missing")));
+        String longName = new String(new char[60]).replace('\0', 'a');
+        assertThrows(IllegalArgumentException.class, () -> MappedSizeCounters.open(tempDir.resolve("x"), longName));
+        assertThrows(IllegalArgumentException.class, () -> MappedSizeCounters.open(tempDir.resolve("y")));
+    }
+
+    @Test
+    public void testSharedWithOtherProcess() throws Exception {
+        Path file = tempDir.resolve("shared");
+        try (MappedSizeCounters counters = MappedSizeCounters.open(file, "bytes")) {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    ChildProcess.class.getName(), file.toString())
+                    .inheritIO()
+                    .start();
+            // Start adding once the other process does, so that the updates interleave
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (counters.get(0) == 0 && child.isAlive() && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            for (int i = 0; i < ADDS_PER_PROCESS; i++) {
+                counters.add(0, 1);
+            }
+            assertTrue(child.waitFor(60, TimeUnit.SECONDS));
+            assertEquals(0, child.exitValue());
+            assertEquals(2L * ADDS_PER_PROCESS, counters.get(0));
+        }
+    }
+
+    /**
+     * Entry point of the other process in {@link #testSharedWithOtherProcess()}.
+     */
+    public static class ChildProcess {
+        public static void main(String[] args) throws IOException {
+            try (MappedSizeCounters counters = MappedSizeCounters.open(Paths.get(args[0]), "bytes")) {
+                for (int i = 0; i < ADDS_PER_PROCESS; i++) {
+                    counters.add(0, 1);
+                }
+            }
+        }
+    }
+}